@@ -21,6 +21,7 @@ package org.openlmis.core;
 import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
 import com.crashlytics.android.Crashlytics;
@@ -89,6 +90,11 @@ public class LMISApp extends Application {
         return System.currentTimeMillis();
     }
 
+    //the database opens with plain cursors, tests count the queries through their own factory
+    public SQLiteDatabase.CursorFactory getCursorFactory() {
+        return null;
+    }
+
     public static Context getContext() {
         return instance.getApplicationContext();
     }
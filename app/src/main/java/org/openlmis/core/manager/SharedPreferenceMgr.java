@@ -53,6 +53,7 @@ public class SharedPreferenceMgr {
     public static final String KEY_STOCK_SYNC_END_TIME = "sync_stock_end_time";
     public static final String KEY_STOCK_SYNC_CURRENT_INDEX = "sync_stock_current_index";
     public static final String KEY_LAST_SYNC_PRODUCT_TIME = "last_sync_product_time";
+    public static final String KEY_LAST_SYNC_REQUISITION_TIME = "last_sync_requisition_time";
     public static final String KEY_SHOW_PRODUCT_UPDATE_BANNER = "show_product_update_banner";
     public static final String KEY_PRODUCT_UPDATE_BANNER_TEXT = "product_update_banner_text";
     public static final String LATEST_PHYSICAL_INVENTORY_TIME = "latest_physical_inventory_time";
@@ -155,6 +156,14 @@ public class SharedPreferenceMgr {
         sharedPreferences.edit().putString(KEY_LAST_SYNC_PRODUCT_TIME, lastSyncProductTime).apply();
     }
 
+    public String getLastSyncRequisitionTime() {
+        return sharedPreferences.getString(KEY_LAST_SYNC_REQUISITION_TIME, null);
+    }
+
+    public void setLastSyncRequisitionTime(String lastSyncRequisitionTime) {
+        sharedPreferences.edit().putString(KEY_LAST_SYNC_REQUISITION_TIME, lastSyncRequisitionTime).apply();
+    }
+
     public boolean isNeedShowProductsUpdateBanner() {
         return sharedPreferences.getBoolean(KEY_SHOW_PRODUCT_UPDATE_BANNER, false);
     }
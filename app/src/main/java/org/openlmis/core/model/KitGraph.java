@@ -0,0 +1,46 @@
+package org.openlmis.core.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//kit to contained products and product to containing kits, both with the quantity per kit
+public class KitGraph {
+    private final Map<String, List<KitProduct>> itemsByKitCode = new HashMap<>();
+    private final Map<String, List<KitProduct>> kitsByProductCode = new HashMap<>();
+
+    public KitGraph(List<KitProduct> kitProducts) {
+        for (KitProduct kitProduct : kitProducts) {
+            edgesOf(itemsByKitCode, kitProduct.getKitCode()).add(kitProduct);
+            edgesOf(kitsByProductCode, kitProduct.getProductCode()).add(kitProduct);
+        }
+    }
+
+    private static List<KitProduct> edgesOf(Map<String, List<KitProduct>> edges, String code) {
+        List<KitProduct> kitProducts = edges.get(code);
+        if (kitProducts == null) {
+            kitProducts = new ArrayList<>();
+            edges.put(code, kitProducts);
+        }
+        return kitProducts;
+    }
+
+    public List<KitProduct> itemsOf(String kitCode) {
+        return unmodifiable(itemsByKitCode.get(kitCode));
+    }
+
+    public List<KitProduct> kitsOf(String productCode) {
+        return unmodifiable(kitsByProductCode.get(productCode));
+    }
+
+    public Set<String> getKitCodes() {
+        return Collections.unmodifiableSet(itemsByKitCode.keySet());
+    }
+
+    private static List<KitProduct> unmodifiable(List<KitProduct> kitProducts) {
+        return kitProducts == null ? Collections.<KitProduct>emptyList() : Collections.unmodifiableList(kitProducts);
+    }
+}
@@ -27,8 +27,12 @@ import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.field.ForeignCollectionField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import org.apache.commons.lang3.StringUtils;
+
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -71,6 +75,10 @@ public class Product extends BaseModel implements Comparable<Product> {
     @DatabaseField
     boolean isKit;
 
+    //read through the getter on every write, so products_fts indexes code, name, strength and type without case or accents
+    @DatabaseField(useGetSet = true)
+    String searchText;
+
     @ForeignCollectionField()
     private ForeignCollection<Lot> lotList;
 
@@ -117,6 +125,16 @@ public class Product extends BaseModel implements Comparable<Product> {
         return primaryName == null ? 0 : primaryName.compareTo(another.getPrimaryName());
     }
 
+    public String getSearchText() {
+        return toSearchText(StringUtils.join(new String[]{code, primaryName, strength, type}, " "));
+    }
+
+    //"Ácido Fólico-5mg" becomes "acido folico 5mg": sqlite only lower cases ascii, so products and keywords are folded here alike
+    public static String toSearchText(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}+", "").replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
     public String getUnit() {
         return strength + " " + getType();
     }
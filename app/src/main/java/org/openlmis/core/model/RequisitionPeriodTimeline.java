@@ -0,0 +1,39 @@
+package org.openlmis.core.model;
+
+import java.util.Date;
+
+import lombok.Getter;
+
+//what period generation needs to know about a program's regular requisitions, kept in memory between changes
+public class RequisitionPeriodTimeline {
+    private final boolean hasForms;
+    @Getter
+    private final Date lastPeriodEnd;
+    @Getter
+    private final boolean lastFormAuthorized;
+    @Getter
+    private final Date earliestMovementDate;
+
+    private RequisitionPeriodTimeline(boolean hasForms, Date lastPeriodEnd, boolean lastFormAuthorized, Date earliestMovementDate) {
+        this.hasForms = hasForms;
+        this.lastPeriodEnd = lastPeriodEnd;
+        this.lastFormAuthorized = lastFormAuthorized;
+        this.earliestMovementDate = earliestMovementDate;
+    }
+
+    public static RequisitionPeriodTimeline after(RnRForm lastRegularForm) {
+        return new RequisitionPeriodTimeline(true, lastRegularForm.getPeriodEnd(), lastRegularForm.isAuthorized(), null);
+    }
+
+    public static RequisitionPeriodTimeline withoutForms(Date earliestMovementDate) {
+        return new RequisitionPeriodTimeline(false, null, false, earliestMovementDate);
+    }
+
+    public boolean hasForms() {
+        return hasForms;
+    }
+
+    public boolean isLastFormCompleted() {
+        return !hasForms() || lastFormAuthorized;
+    }
+}
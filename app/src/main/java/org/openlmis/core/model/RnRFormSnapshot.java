@@ -0,0 +1,35 @@
+package org.openlmis.core.model;
+
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@DatabaseTable(tableName = "rnr_form_snapshots")
+public class RnRFormSnapshot extends BaseModel {
+
+    @DatabaseField(unique = true)
+    private long formId;
+
+    @DatabaseField
+    private boolean emergency;
+
+    @DatabaseField
+    private String idempotencyKey;
+
+    @DatabaseField(dataType = DataType.BYTE_ARRAY)
+    private byte[] payload;
+
+    public RnRFormSnapshot(long formId, boolean emergency, String idempotencyKey, byte[] payload) {
+        this.formId = formId;
+        this.emergency = emergency;
+        this.idempotencyKey = idempotencyKey;
+        this.payload = payload;
+    }
+}
@@ -24,6 +24,7 @@ import android.support.annotation.NonNull;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import com.j256.ormlite.dao.ForeignCollection;
+import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.field.ForeignCollectionField;
 import com.j256.ormlite.table.DatabaseTable;
@@ -79,6 +80,18 @@ public class StockCard extends BaseModel implements Comparable<StockCard> {
     @DatabaseField
     private float avgMonthlyConsumption = -1;
 
+    //read through the getter on every write, so the indexed column follows stockOnHand and avgMonthlyConsumption
+    @DatabaseField(dataType = DataType.ENUM_INTEGER, useGetSet = true)
+    private StockStatus stockStatus;
+
+    //declared from the most to the least severe, the column stores the ordinal so it sorts by severity
+    public enum StockStatus {
+        STOCK_OUT,
+        LOW_STOCK,
+        OVER_STOCK,
+        NORMAL
+    }
+
     @Override
     public int compareTo(@NonNull StockCard another) {
         return product == null ? 0 : product.compareTo(another.getProduct());
@@ -109,6 +122,26 @@ public class StockCard extends BaseModel implements Comparable<StockCard> {
         return stockOnHand < (int) Math.ceil(this.avgMonthlyConsumption * 0.05);
     }
 
+    public StockStatus getStockStatus() {
+        if (stockOnHand == 0) {
+            return StockStatus.STOCK_OUT;
+        }
+        if (getCMM() < 0) {
+            return StockStatus.NORMAL;
+        }
+        if (isOverStock()) {
+            return StockStatus.OVER_STOCK;
+        }
+        if (isLowStock()) {
+            return StockStatus.LOW_STOCK;
+        }
+        return StockStatus.NORMAL;
+    }
+
+    public void setStockStatus(StockStatus stockStatus) {
+        this.stockStatus = stockStatus;
+    }
+
     public List<LotOnHand> getLotOnHandListWrapper() {
         lotOnHandListWrapper = ListUtil.wrapOrEmpty(foreignLotOnHandList, lotOnHandListWrapper);
         return lotOnHandListWrapper;
@@ -0,0 +1,14 @@
+package org.openlmis.core.model;
+
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//a stock overview row: the card carries only its id, stock on hand, CMM and the product fields the row shows
+@Data
+@AllArgsConstructor
+public class StockCardSummary {
+    private StockCard stockCard;
+    private Date earliestLotExpiryDate;
+}
@@ -0,0 +1,58 @@
+package org.openlmis.core.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@DatabaseTable(tableName = "sync_metrics")
+public class SyncMetric extends BaseModel {
+
+    @DatabaseField
+    private String runId;
+
+    @DatabaseField
+    private String step;
+
+    @DatabaseField(index = true)
+    private long startedAt;
+
+    @DatabaseField
+    private long totalMillis;
+
+    @DatabaseField
+    private long networkMillis;
+
+    @DatabaseField
+    private int requestCount;
+
+    @DatabaseField
+    private long requestBytes;
+
+    @DatabaseField
+    private long responseBytes;
+
+    @DatabaseField
+    private int recordCount;
+
+    @DatabaseField
+    private boolean succeeded = true;
+
+    @DatabaseField
+    private String failureReason;
+
+    public SyncMetric(String runId, String step, long startedAt) {
+        this.runId = runId;
+        this.step = step;
+        this.startedAt = startedAt;
+    }
+
+    public long getPersistenceMillis() {
+        return Math.max(totalMillis - networkMillis, 0);
+    }
+}
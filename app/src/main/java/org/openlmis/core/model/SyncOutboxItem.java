@@ -0,0 +1,46 @@
+package org.openlmis.core.model;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@DatabaseTable(tableName = "sync_outbox")
+public class SyncOutboxItem extends BaseModel {
+
+    public enum Status {
+        PENDING, DEAD
+    }
+
+    @DatabaseField(uniqueCombo = true)
+    private SyncType syncType;
+
+    @DatabaseField(uniqueCombo = true)
+    private long syncObjectId;
+
+    @DatabaseField
+    private String idempotencyKey;
+
+    @DatabaseField
+    private Status status = Status.PENDING;
+
+    @DatabaseField
+    private int attempts;
+
+    @DatabaseField
+    private long nextAttemptTime;
+
+    @DatabaseField
+    private String lastError;
+
+    public SyncOutboxItem(SyncType syncType, long syncObjectId, String idempotencyKey) {
+        this.syncType = syncType;
+        this.syncObjectId = syncObjectId;
+        this.idempotencyKey = idempotencyKey;
+    }
+}
@@ -0,0 +1,19 @@
+package org.openlmis.core.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SyncStepSummary {
+    private String step;
+    private int runs;
+    private int failures;
+    private long averageTotalMillis;
+    private long averageNetworkMillis;
+    private long averageResponseBytes;
+
+    public long getAveragePersistenceMillis() {
+        return Math.max(averageTotalMillis - averageNetworkMillis, 0);
+    }
+}
@@ -7,6 +7,7 @@ import com.j256.ormlite.dao.Dao;
 
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Cmm;
+import org.openlmis.core.model.SyncType;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
 import org.roboguice.shaded.goole.common.base.Predicate;
@@ -14,16 +15,22 @@ import org.roboguice.shaded.goole.common.collect.FluentIterable;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class CmmRepository {
 
     @Inject
     DbUtil dbUtil;
 
+    @Inject
+    SyncOutboxRepository syncOutboxRepository;
+
+    private final Context context;
     private GenericDao<Cmm> cmmDao;
 
     @Inject
     public CmmRepository(Context context) {
+        this.context = context;
         cmmDao = new GenericDao<>(Cmm.class, context);
     }
 
@@ -42,7 +49,29 @@ public class CmmRepository {
         if (sameCardSamePeriodCmm != null) {
             cmm.setId(sameCardSamePeriodCmm.getId());
         }
-        cmmDao.createOrUpdate(cmm);
+        try {
+            dbUtil.callInTransaction(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    cmmDao.createOrUpdate(cmm);
+                    if (!cmm.isSynced()) {
+                        syncOutboxRepository.enqueue(SyncType.Cmm, cmm.getId());
+                    }
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new LMISException(e);
+        }
+    }
+
+    public List<Cmm> queryByIds(final List<Long> ids) throws LMISException {
+        return dbUtil.withDao(Cmm.class, new DbUtil.Operation<Cmm, List<Cmm>>() {
+            @Override
+            public List<Cmm> operate(Dao<Cmm, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy("id", true).where().in("id", ids).query();
+            }
+        });
     }
 
     public List<Cmm> list() throws LMISException {
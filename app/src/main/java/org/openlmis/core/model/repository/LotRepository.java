@@ -1,20 +1,29 @@
 package org.openlmis.core.model.repository;
 
 import android.content.Context;
+import android.database.Cursor;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Lot;
 import org.openlmis.core.model.LotMovementItem;
 import org.openlmis.core.model.LotOnHand;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
+import org.openlmis.core.persistence.LmisSqliteOpenHelper;
+import org.openlmis.core.utils.DateUtil;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LotRepository {
 
@@ -64,6 +73,39 @@ public class LotRepository {
         }
     }
 
+    //lotsOnHand comes from queryLotsOnHandGroupByProductId, new lots and quantities are written back to it so no lot is looked up twice
+    public void batchCreateLotMovementsWithResolvedLots(List<LotMovementItem> lotMovementItems, Map<Long, Map<String, LotOnHand>> lotsOnHand) throws LMISException {
+        for (LotMovementItem lotMovementItem : lotMovementItems) {
+            Lot lot = lotMovementItem.getLot();
+            Map<String, LotOnHand> lotsOnHandOfProduct = lotsOnHand.get(lot.getProduct().getId());
+            if (lotsOnHandOfProduct == null) {
+                lotsOnHandOfProduct = new HashMap<>();
+                lotsOnHand.put(lot.getProduct().getId(), lotsOnHandOfProduct);
+            }
+
+            LotOnHand lotOnHand = lotsOnHandOfProduct.get(lot.getLotNumber().toUpperCase());
+            if (lotOnHand == null) {
+                lot.setCreatedAt(new Date());
+                lot.setUpdatedAt(new Date());
+                createOrUpdateLot(lot);
+                lotOnHand = new LotOnHand(lot, lotMovementItem.getStockMovementItem().getStockCard(), 0L);
+                lotsOnHandOfProduct.put(lot.getLotNumber().toUpperCase(), lotOnHand);
+            } else if (lotOnHand.getStockCard() == null) {
+                lotOnHand.setStockCard(lotMovementItem.getStockMovementItem().getStockCard());
+            }
+            if (lotMovementItem.isStockOnHandReset()) {
+                lotOnHand.setQuantityOnHand(lotMovementItem.getStockOnHand());
+            } else {
+                lotOnHand.setQuantityOnHand(lotOnHand.getQuantityOnHand() + lotMovementItem.getMovementQuantity());
+            }
+            createOrUpdateLotOnHand(lotOnHand);
+
+            lotMovementItem.setLot(lotOnHand.getLot());
+            lotMovementItem.setStockOnHand(lotOnHand.getQuantityOnHand());
+            createLotMovementItem(lotMovementItem);
+        }
+    }
+
     public void createOrUpdateLot(final Lot lot) throws LMISException {
         dbUtil.withDao(Lot.class, new DbUtil.Operation<Lot, Void>() {
             @Override
@@ -124,6 +166,191 @@ public class LotRepository {
         });
     }
 
+    public List<Lot> queryLotsByProductIds(List<Long> productIds) {
+        List<Lot> lots = new ArrayList<>();
+        if (productIds.isEmpty()) {
+            return lots;
+        }
+        String rawSql = "SELECT * FROM lots "
+                + "WHERE product_id IN (" + StringUtils.join(productIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                Lot lot = new Lot();
+                lot.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                lot.setLotNumber(cursor.getString(cursor.getColumnIndexOrThrow("lotNumber")));
+                lot.setExpirationDate(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("expirationDate")), DateUtil.DB_DATE_FORMAT));
+                lot.setCreatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("createdAt")), DateUtil.DATE_TIME_FORMAT));
+                lot.setUpdatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("updatedAt")), DateUtil.DATE_TIME_FORMAT));
+                Product product = new Product();
+                product.setId(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")));
+                lot.setProduct(product);
+                lots.add(lot);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return lots;
+    }
+
+    //lots with stock left, keyed by the product id of their stock card
+    public Map<Long, List<LotOnHand>> queryNonEmptyLotsOnHandGroupByProductId(List<Long> productIds) {
+        Map<Long, List<LotOnHand>> lotsOnHand = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return lotsOnHand;
+        }
+        String rawSql = "SELECT s.product_id, l.id AS lot_id, l.lotNumber, l.expirationDate, h.id, h.quantityOnHand FROM lots_on_hand h "
+                + "JOIN lots l ON h.lot_id = l.id "
+                + "JOIN stock_cards s ON h.stockCard_id = s.id "
+                + "WHERE h.quantityOnHand > 0 AND s.product_id IN (" + StringUtils.join(productIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                long productId = cursor.getLong(cursor.getColumnIndexOrThrow("product_id"));
+                Lot lot = new Lot();
+                lot.setId(cursor.getLong(cursor.getColumnIndexOrThrow("lot_id")));
+                lot.setLotNumber(cursor.getString(cursor.getColumnIndexOrThrow("lotNumber")));
+                lot.setExpirationDate(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("expirationDate")), DateUtil.DB_DATE_FORMAT));
+                LotOnHand lotOnHand = new LotOnHand(lot, null, cursor.getLong(cursor.getColumnIndexOrThrow("quantityOnHand")));
+                lotOnHand.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+
+                List<LotOnHand> lotsOnHandOfProduct = lotsOnHand.get(productId);
+                if (lotsOnHandOfProduct == null) {
+                    lotsOnHandOfProduct = new ArrayList<>();
+                    lotsOnHand.put(productId, lotsOnHandOfProduct);
+                }
+                lotsOnHandOfProduct.add(lotOnHand);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return lotsOnHand;
+    }
+
+    //every lot of the products with its lot on hand, keyed by product id and then by the upper cased lot number;
+    //a lot without one yet gets an unsaved lot on hand with no stock card, so the lot itself is never created twice
+    public Map<Long, Map<String, LotOnHand>> queryLotsOnHandGroupByProductId(List<Long> productIds) {
+        Map<Long, Map<String, LotOnHand>> lotsOnHand = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return lotsOnHand;
+        }
+        String rawSql = "SELECT l.id AS lot_id, l.product_id, l.lotNumber, l.expirationDate, l.createdAt AS lot_createdAt, l.updatedAt AS lot_updatedAt, "
+                + "h.id, h.stockCard_id, h.quantityOnHand, h.createdAt, h.updatedAt FROM lots l "
+                + "LEFT JOIN lots_on_hand h ON h.lot_id = l.id "
+                + "WHERE l.product_id IN (" + StringUtils.join(productIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                long productId = cursor.getLong(cursor.getColumnIndexOrThrow("product_id"));
+                Product product = new Product();
+                product.setId(productId);
+                Lot lot = new Lot();
+                lot.setId(cursor.getLong(cursor.getColumnIndexOrThrow("lot_id")));
+                lot.setProduct(product);
+                lot.setLotNumber(cursor.getString(cursor.getColumnIndexOrThrow("lotNumber")));
+                lot.setExpirationDate(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("expirationDate")), DateUtil.DB_DATE_FORMAT));
+                lot.setCreatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("lot_createdAt")), DateUtil.DATE_TIME_FORMAT));
+                lot.setUpdatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("lot_updatedAt")), DateUtil.DATE_TIME_FORMAT));
+                LotOnHand lotOnHand;
+                if (cursor.isNull(cursor.getColumnIndexOrThrow("id"))) {
+                    lotOnHand = new LotOnHand(lot, null, 0L);
+                } else {
+                    StockCard stockCard = new StockCard();
+                    stockCard.setId(cursor.getLong(cursor.getColumnIndexOrThrow("stockCard_id")));
+                    lotOnHand = new LotOnHand(lot, stockCard, cursor.getLong(cursor.getColumnIndexOrThrow("quantityOnHand")));
+                    lotOnHand.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                    lotOnHand.setCreatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("createdAt")), DateUtil.DATE_TIME_FORMAT));
+                    lotOnHand.setUpdatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("updatedAt")), DateUtil.DATE_TIME_FORMAT));
+                }
+
+                Map<String, LotOnHand> lotsOnHandOfProduct = lotsOnHand.get(productId);
+                if (lotsOnHandOfProduct == null) {
+                    lotsOnHandOfProduct = new HashMap<>();
+                    lotsOnHand.put(productId, lotsOnHandOfProduct);
+                }
+                lotsOnHandOfProduct.put(lot.getLotNumber().toUpperCase(), lotOnHand);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return lotsOnHand;
+    }
+
+    //lots with stock that expired before today, the earliest first
+    public List<LotOnHand> queryExpiredLotsOnHand(Date today) {
+        return queryNonEmptyLotsOnHandByExpiry(null, DateUtil.formatDate(today, DateUtil.DB_DATE_FORMAT));
+    }
+
+    //lots with stock that expire from today up to and including today plus days, the earliest first
+    public List<LotOnHand> queryLotsOnHandExpiringWithin(Date today, int days) {
+        return queryNonEmptyLotsOnHandByExpiry(DateUtil.formatDate(today, DateUtil.DB_DATE_FORMAT),
+                DateUtil.formatDate(DateUtil.addDayOfMonth(today, days + 1), DateUtil.DB_DATE_FORMAT));
+    }
+
+    //expirationDate is stored as yyyy-MM-dd, so the bounds are a range scan on the lots expiry index
+    private List<LotOnHand> queryNonEmptyLotsOnHandByExpiry(String fromDate, String beforeDate) {
+        List<String> args = new ArrayList<>();
+        String expiryRange = "l.expirationDate < ?";
+        args.add(beforeDate);
+        if (fromDate != null) {
+            expiryRange = "l.expirationDate >= ? AND " + expiryRange;
+            args.add(0, fromDate);
+        }
+        String rawSql = "SELECT l.id AS lot_id, l.lotNumber, l.expirationDate, p.id AS product_id, p.code, p.primaryName, "
+                + "h.id, h.stockCard_id, h.quantityOnHand FROM lots l "
+                + "JOIN lots_on_hand h ON h.lot_id = l.id "
+                + "JOIN products p ON l.product_id = p.id "
+                + "WHERE " + expiryRange + " AND h.quantityOnHand > 0 "
+                + "ORDER BY l.expirationDate, p.code";
+        List<LotOnHand> lotsOnHand = new ArrayList<>();
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, args.toArray(new String[args.size()]));
+        if (cursor.moveToFirst()) {
+            do {
+                Product product = new Product();
+                product.setId(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")));
+                product.setCode(cursor.getString(cursor.getColumnIndexOrThrow("code")));
+                product.setPrimaryName(cursor.getString(cursor.getColumnIndexOrThrow("primaryName")));
+                Lot lot = new Lot();
+                lot.setId(cursor.getLong(cursor.getColumnIndexOrThrow("lot_id")));
+                lot.setProduct(product);
+                lot.setLotNumber(cursor.getString(cursor.getColumnIndexOrThrow("lotNumber")));
+                lot.setExpirationDate(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("expirationDate")), DateUtil.DB_DATE_FORMAT));
+                StockCard stockCard = new StockCard();
+                stockCard.setId(cursor.getLong(cursor.getColumnIndexOrThrow("stockCard_id")));
+                stockCard.setProduct(product);
+                LotOnHand lotOnHand = new LotOnHand(lot, stockCard, cursor.getLong(cursor.getColumnIndexOrThrow("quantityOnHand")));
+                lotOnHand.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                lotsOnHand.add(lotOnHand);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return lotsOnHand;
+    }
+
+    public Map<Long, Long> queryLotOnHandIdsGroupByLotId(List<Long> lotIds) {
+        Map<Long, Long> lotOnHandIds = new HashMap<>();
+        if (lotIds.isEmpty()) {
+            return lotOnHandIds;
+        }
+        String rawSql = "SELECT id, lot_id FROM lots_on_hand "
+                + "WHERE lot_id IN (" + StringUtils.join(lotIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                lotOnHandIds.put(cursor.getLong(cursor.getColumnIndexOrThrow("lot_id")), cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return lotOnHandIds;
+    }
+
     public void createOrUpdateLotsInformation(final List<LotOnHand> lotOnHandListWrapper) throws LMISException {
         dbUtil.withDaoAsBatch(LotOnHand.class, new DbUtil.Operation<LotOnHand, Object>() {
             @Override
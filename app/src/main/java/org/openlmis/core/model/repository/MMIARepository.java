@@ -32,6 +32,7 @@ import org.openlmis.core.model.RegimenItem;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.RnrFormItem;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.utils.Constants;
 import org.openlmis.core.utils.DateUtil;
 import org.roboguice.shaded.goole.common.base.Function;
@@ -40,6 +41,7 @@ import org.roboguice.shaded.goole.common.collect.FluentIterable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.inject.InjectResource;
 
@@ -122,8 +124,8 @@ public class MMIARepository extends RnrFormRepository {
     }
 
     @Override
-    protected RnrFormItem createRnrFormItemByPeriod(StockCard stockCard, Date startDate, Date endDate) throws LMISException {
-        RnrFormItem rnrFormItem = super.createRnrFormItemByPeriod(stockCard, startDate, endDate);
+    protected RnrFormItem createRnrFormItemByPeriod(StockCard stockCard, List<StockMovementItem> stockMovementItems, Map<Long, Long> lastRnrInventories) throws LMISException {
+        RnrFormItem rnrFormItem = super.createRnrFormItemByPeriod(stockCard, stockMovementItems, lastRnrInventories);
 
         rnrFormItem.setProduct(stockCard.getProduct());
         Date earliestLotExpiryDate = stockCard.getEarliestLotExpiryDate();
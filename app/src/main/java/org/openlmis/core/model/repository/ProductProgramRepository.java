@@ -12,12 +12,19 @@ import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
 import org.roboguice.shaded.goole.common.base.Function;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
+import org.roboguice.shaded.goole.common.collect.Lists;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ProductProgramRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     GenericDao<ProductProgram> genericDao;
 
     @Inject
@@ -54,14 +61,57 @@ public class ProductProgramRepository {
 
     public void batchSave(final List<ProductProgram> productPrograms) {
         try {
+            Map<String, Long> existingIds = queryIdsGroupByProductAndProgramCode();
+
+            Map<String, ProductProgram> productProgramsToSave = new LinkedHashMap<>();
             for (ProductProgram productProgram : productPrograms) {
-                createOrUpdate(productProgram);
+                String key = productProgramKey(productProgram.getProductCode(), productProgram.getProgramCode());
+                Long existingId = existingIds.get(key);
+                if (existingId != null) {
+                    productProgram.setId(existingId);
+                }
+                productProgramsToSave.put(key, productProgram);
+            }
+
+            for (final List<ProductProgram> batch : Lists.partition(new ArrayList<>(productProgramsToSave.values()), BATCH_SIZE)) {
+                dbUtil.withDaoAsBatch(ProductProgram.class, new DbUtil.Operation<ProductProgram, Void>() {
+                    @Override
+                    public Void operate(Dao<ProductProgram, String> dao) throws SQLException {
+                        for (ProductProgram productProgram : batch) {
+                            if (productProgram.getId() == 0) {
+                                dao.create(productProgram);
+                            } else {
+                                dao.update(productProgram);
+                            }
+                        }
+                        return null;
+                    }
+                });
             }
         } catch (LMISException e) {
             e.reportToFabric();
         }
     }
 
+    private Map<String, Long> queryIdsGroupByProductAndProgramCode() throws LMISException {
+        List<ProductProgram> productPrograms = dbUtil.withDao(ProductProgram.class, new DbUtil.Operation<ProductProgram, List<ProductProgram>>() {
+            @Override
+            public List<ProductProgram> operate(Dao<ProductProgram, String> dao) throws SQLException {
+                return dao.queryBuilder().selectColumns("id", "productCode", "programCode").query();
+            }
+        });
+
+        Map<String, Long> ids = new HashMap<>();
+        for (ProductProgram productProgram : productPrograms) {
+            ids.put(productProgramKey(productProgram.getProductCode(), productProgram.getProgramCode()), productProgram.getId());
+        }
+        return ids;
+    }
+
+    private String productProgramKey(String productCode, String programCode) {
+        return productCode + "|" + programCode;
+    }
+
     public List<ProductProgram> listActiveProductProgramsByProgramCodes(final List<String> programCodes) throws LMISException {
         return dbUtil.withDao(ProductProgram.class, new DbUtil.Operation<ProductProgram, List<ProductProgram>>() {
             @Override
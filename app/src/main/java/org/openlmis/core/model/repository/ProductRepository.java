@@ -26,23 +26,36 @@ import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.Where;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.KitGraph;
 import org.openlmis.core.model.KitProduct;
 import org.openlmis.core.model.Product;
+import org.openlmis.core.model.service.KitGraphCache;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
 import org.openlmis.core.persistence.LmisSqliteOpenHelper;
 import org.roboguice.shaded.goole.common.base.Function;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
+import org.roboguice.shaded.goole.common.collect.Lists;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ProductRepository {
 
+    private static final int BATCH_SIZE = 500;
+
+    public static final int SEARCH_LIMIT = 50;
+
     GenericDao<Product> genericDao;
 
     GenericDao<KitProduct> kitProductGenericDao;
@@ -50,6 +63,9 @@ public class ProductRepository {
     @Inject
     DbUtil dbUtil;
 
+    @Inject
+    KitGraphCache kitGraphCache;
+
     @Inject
     public ProductRepository(Context context) {
         genericDao = new GenericDao<>(Product.class, context);
@@ -118,15 +134,98 @@ public class ProductRepository {
     }
 
     public void batchCreateOrUpdateProducts(final List<Product> productList) throws LMISException {
-        dbUtil.withDaoAsBatch(Product.class, new DbUtil.Operation<Product, Void>() {
-            @Override
-            public Void operate(Dao<Product, String> dao) throws LMISException {
-                for (Product product : productList) {
-                    createOrUpdate(product);
+        Map<String, Product> existingProducts = queryProductsGroupByCode();
+        Set<String> existingKitProductKeys = queryKitProductKeys();
+
+        Map<String, Product> productsToSave = new LinkedHashMap<>();
+        for (Product product : productList) {
+            Product existingProduct = existingProducts.get(product.getCode());
+            if (existingProduct != null) {
+                product.setId(existingProduct.getId());
+                product.setArchived(existingProduct.isArchived());
+            }
+            productsToSave.put(product.getCode(), product);
+        }
+
+        List<KitProduct> kitProductsToCreate = new ArrayList<>();
+        for (Product product : productList) {
+            if (product.getKitProductList() == null) {
+                continue;
+            }
+            for (KitProduct kitProduct : product.getKitProductList()) {
+                if (!existingProducts.containsKey(kitProduct.getProductCode()) && !productsToSave.containsKey(kitProduct.getProductCode())) {
+                    Product newProduct = new Product();
+                    newProduct.setCode(kitProduct.getProductCode());
+                    productsToSave.put(newProduct.getCode(), newProduct);
+                }
+                if (existingKitProductKeys.add(kitProductKey(kitProduct.getKitCode(), kitProduct.getProductCode()))) {
+                    kitProductsToCreate.add(kitProduct);
                 }
-                return null;
+            }
+        }
+
+        for (final List<Product> products : Lists.partition(new ArrayList<>(productsToSave.values()), BATCH_SIZE)) {
+            dbUtil.withDaoAsBatch(Product.class, new DbUtil.Operation<Product, Void>() {
+                @Override
+                public Void operate(Dao<Product, String> dao) throws SQLException {
+                    for (Product product : products) {
+                        if (product.getId() == 0) {
+                            dao.create(product);
+                        } else {
+                            dao.update(product);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        for (final List<KitProduct> kitProducts : Lists.partition(kitProductsToCreate, BATCH_SIZE)) {
+            dbUtil.withDaoAsBatch(KitProduct.class, new DbUtil.Operation<KitProduct, Void>() {
+                @Override
+                public Void operate(Dao<KitProduct, String> dao) throws SQLException {
+                    for (KitProduct kitProduct : kitProducts) {
+                        dao.create(kitProduct);
+                    }
+                    return null;
+                }
+            });
+        }
+        kitGraphCache.invalidate();
+    }
+
+    public Map<String, Product> queryProductsGroupByCode() throws LMISException {
+        List<Product> products = dbUtil.withDao(Product.class, new DbUtil.Operation<Product, List<Product>>() {
+            @Override
+            public List<Product> operate(Dao<Product, String> dao) throws SQLException {
+                return dao.queryBuilder().selectColumns("id", "code", "primaryName", "isActive", "isArchived", "isKit").query();
             }
         });
+
+        Map<String, Product> productsGroupByCode = new HashMap<>();
+        for (Product product : products) {
+            productsGroupByCode.put(product.getCode(), product);
+        }
+        return productsGroupByCode;
+    }
+
+    private Set<String> queryKitProductKeys() throws LMISException {
+        List<KitProduct> kitProducts = dbUtil.withDao(KitProduct.class, new DbUtil.Operation<KitProduct, List<KitProduct>>() {
+            @Override
+            public List<KitProduct> operate(Dao<KitProduct, String> dao) throws SQLException {
+                return dao.queryBuilder().selectColumns("kitCode", "productCode").query();
+            }
+        });
+
+        Set<String> kitProductKeys = new HashSet<>();
+        for (KitProduct kitProduct : kitProducts) {
+            kitProductKeys.add(kitProductKey(kitProduct.getKitCode(), kitProduct.getProductCode()));
+        }
+        return kitProductKeys;
+    }
+
+    private String kitProductKey(String kitCode, String productCode) {
+        return kitCode + "|" + productCode;
     }
 
     //DON'T USE - THIS WILL BE PRIVATE WHEN KIT FEATURE TOGGLE IS ON
@@ -154,6 +253,7 @@ public class ProductRepository {
                 KitProduct kitProductInDB = queryKitProductByCode(kitProduct.getKitCode(), kitProduct.getProductCode());
                 if (kitProductInDB == null) {
                     kitProductGenericDao.create(kitProduct);
+                    kitGraphCache.invalidate();
                 }
             }
         }
@@ -178,12 +278,17 @@ public class ProductRepository {
     }
 
     public List<KitProduct> queryKitProductByKitCode(final String kitCode) throws LMISException {
-        return dbUtil.withDao(KitProduct.class, new DbUtil.Operation<KitProduct, List<KitProduct>>() {
-            @Override
-            public List<KitProduct> operate(Dao<KitProduct, String> dao) throws SQLException {
-                return dao.queryBuilder().where().eq("kitCode", kitCode).query();
-            }
-        });
+        return new ArrayList<>(getKitGraph().itemsOf(kitCode));
+    }
+
+    public KitGraph getKitGraph() throws LMISException {
+        KitGraph kitGraph = kitGraphCache.get();
+        if (kitGraph == null) {
+            long version = kitGraphCache.version();
+            kitGraph = new KitGraph(kitProductGenericDao.queryForAll());
+            kitGraphCache.put(kitGraph, version);
+        }
+        return kitGraph;
     }
 
     public Product getByCode(final String code) throws LMISException {
@@ -195,6 +300,15 @@ public class ProductRepository {
         });
     }
 
+    public List<Product> queryProductsByCodes(final List<String> codes) throws LMISException {
+        return dbUtil.withDao(Product.class, new DbUtil.Operation<Product, List<Product>>() {
+            @Override
+            public List<Product> operate(Dao<Product, String> dao) throws SQLException {
+                return dao.queryBuilder().where().in("code", codes).query();
+            }
+        });
+    }
+
     public Product getProductById(final long id) throws LMISException {
         return dbUtil.withDao(Product.class, new DbUtil.Operation<Product, Product>() {
             @Override
@@ -219,12 +333,7 @@ public class ProductRepository {
     }
 
     public List<KitProduct> queryKitProductByProductCode(final String productCode) throws LMISException {
-        return dbUtil.withDao(KitProduct.class, new DbUtil.Operation<KitProduct, List<KitProduct>>() {
-            @Override
-            public List<KitProduct> operate(Dao<KitProduct, String> dao) throws SQLException {
-                return dao.queryBuilder().where().eq("productCode", productCode).query();
-            }
-        });
+        return new ArrayList<>(getKitGraph().kitsOf(productCode));
     }
 
     public List<String> listArchivedProductCodes() throws LMISException {
@@ -266,6 +375,56 @@ public class ProductRepository {
                 + "WHERE ri.form_id IN "
                 + "(SELECT id FROM rnr_forms r1 WHERE r1.emergency = 0 AND r1.status = 'DRAFT'))";
         final Cursor cursor = LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().rawQuery(rawSql, null);
+        return readProducts(cursor);
+    }
+
+    //the first products by name whose words start with the words of the keyword, an empty keyword matches every product
+    public List<Product> searchActiveProductsInVIAProgramButNotInDraftVIAForm(String keyword, List<String> excludedCodes, int limit) throws LMISException {
+        String searchMatch = toSearchMatch(keyword);
+        String rawSql = "SELECT DISTINCT p1.* FROM products p1 "
+                + "JOIN product_programs p2 "
+                + "ON p1.code = p2.productCode "
+                + "JOIN programs p3 "
+                + "ON p2.programCode = p3.programCode "
+                + "WHERE (p3.programCode = 'VIA' OR p3.parentCode = 'VIA') "
+                + "AND p2.isActive = 1 AND p1.isActive = 1 "
+                + "AND p1.isKit = 0 "
+                + "AND p1.id NOT IN "
+                + "(SELECT product_id FROM rnr_form_items ri "
+                + "WHERE ri.form_id IN "
+                + "(SELECT id FROM rnr_forms r1 WHERE r1.emergency = 0 AND r1.status = 'DRAFT')) "
+                + "AND p1.code NOT IN ('" + StringUtils.join(escapeQuotes(excludedCodes), "','") + "') "
+                + (searchMatch == null ? "" : "AND p1.id IN (SELECT docid FROM products_fts WHERE products_fts MATCH ?) ")
+                + "ORDER BY p1.primaryName, p1.id LIMIT " + limit;
+        final Cursor cursor = LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase()
+                .rawQuery(rawSql, searchMatch == null ? null : new String[]{searchMatch});
+        return readProducts(cursor);
+    }
+
+    //"Lámi 150" becomes "lami* 150*": every word of the keyword has to start a word of the code, name, strength or type,
+    //null when there is nothing to match
+    public static String toSearchMatch(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        List<String> prefixes = new ArrayList<>();
+        for (String word : Product.toSearchText(keyword).split(" ")) {
+            if (!word.isEmpty()) {
+                prefixes.add(word + "*");
+            }
+        }
+        return prefixes.isEmpty() ? null : StringUtils.join(prefixes, " ");
+    }
+
+    private List<String> escapeQuotes(List<String> values) {
+        List<String> escapedValues = new ArrayList<>();
+        for (String value : values) {
+            escapedValues.add(value.replace("'", "''"));
+        }
+        return escapedValues;
+    }
+
+    private List<Product> readProducts(Cursor cursor) {
         List<Product> products = new ArrayList<>();
         if (cursor.moveToFirst()) {
             do {
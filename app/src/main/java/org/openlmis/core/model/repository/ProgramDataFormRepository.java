@@ -5,7 +5,6 @@ import android.util.Log;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.stmt.DeleteBuilder;
 
 import org.openlmis.core.exceptions.LMISException;
@@ -16,7 +15,6 @@ import org.openlmis.core.model.ProgramDataFormItem;
 import org.openlmis.core.model.ProgramDataFormSignature;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
-import org.openlmis.core.persistence.LmisSqliteOpenHelper;
 
 import java.sql.SQLException;
 import java.util.Collections;
@@ -45,7 +43,7 @@ public class ProgramDataFormRepository {
     }
 
     public void batchCreateOrUpdate(final ProgramDataForm form) throws SQLException {
-        TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Void>() {
+        dbUtil.callInTransaction(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 genericDao.createOrUpdate(form);
@@ -71,7 +69,7 @@ public class ProgramDataFormRepository {
 
     public void batchSaveForms(final List<ProgramDataForm> programDataForms) {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Void>() {
+            dbUtil.callInTransaction(new Callable<Void>() {
                 @Override
                 public Void call() throws Exception {
                     for (ProgramDataForm programDataForm: programDataForms) {
@@ -135,7 +133,7 @@ public class ProgramDataFormRepository {
     }
 
     public void delete(final ProgramDataForm programDataForm) throws LMISException, SQLException {
-        TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Void>() {
+        dbUtil.callInTransaction(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 genericDao.delete(programDataForm);
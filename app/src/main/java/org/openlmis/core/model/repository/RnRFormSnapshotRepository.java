@@ -0,0 +1,84 @@
+package org.openlmis.core.model.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnRFormSnapshot;
+import org.openlmis.core.network.adapter.RnrFormAdapter;
+import org.openlmis.core.persistence.DbUtil;
+
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+public class RnRFormSnapshotRepository {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Inject
+    DbUtil dbUtil;
+
+    //created lazily, the adapter injects RnrFormRepository which depends on this repository
+    private Gson gson;
+
+    public RnRFormSnapshot queryByFormId(final long formId) throws LMISException {
+        return dbUtil.withDao(RnRFormSnapshot.class, new DbUtil.Operation<RnRFormSnapshot, RnRFormSnapshot>() {
+            @Override
+            public RnRFormSnapshot operate(Dao<RnRFormSnapshot, String> dao) throws SQLException {
+                return dao.queryBuilder().where().eq("formId", formId).queryForFirst();
+            }
+        });
+    }
+
+    //an unchanged payload keeps its key, so the server can recognise a form it has already accepted
+    public RnRFormSnapshot createOrUpdate(RnRForm form) throws LMISException {
+        final byte[] payload = serialize(form);
+        final RnRFormSnapshot existing = queryByFormId(form.getId());
+        if (existing != null && Arrays.equals(payload, existing.getPayload())) {
+            return existing;
+        }
+
+        final RnRFormSnapshot snapshot = existing == null ? new RnRFormSnapshot() : existing;
+        snapshot.setFormId(form.getId());
+        snapshot.setEmergency(form.isEmergency());
+        snapshot.setIdempotencyKey(UUID.randomUUID().toString());
+        snapshot.setPayload(payload);
+        snapshot.setUpdatedAt(new Date());
+        dbUtil.withDao(RnRFormSnapshot.class, new DbUtil.Operation<RnRFormSnapshot, Void>() {
+            @Override
+            public Void operate(Dao<RnRFormSnapshot, String> dao) throws SQLException {
+                dao.createOrUpdate(snapshot);
+                return null;
+            }
+        });
+        return snapshot;
+    }
+
+    public void deleteByFormId(final long formId) throws LMISException {
+        dbUtil.withDao(RnRFormSnapshot.class, new DbUtil.Operation<RnRFormSnapshot, Void>() {
+            @Override
+            public Void operate(Dao<RnRFormSnapshot, String> dao) throws SQLException {
+                dao.delete(dao.queryBuilder().where().eq("formId", formId).query());
+                return null;
+            }
+        });
+    }
+
+    private synchronized byte[] serialize(RnRForm form) throws LMISException {
+        if (gson == null) {
+            gson = new GsonBuilder().registerTypeAdapter(RnRForm.class, new RnrFormAdapter()).create();
+        }
+        try {
+            return gson.toJson(form, RnRForm.class).getBytes(UTF_8);
+        } catch (JsonParseException e) {
+            throw new LMISException(e);
+        }
+    }
+}
@@ -21,10 +21,8 @@ import android.content.Context;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.stmt.Where;
 
-import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.model.BaseInfoItem;
@@ -38,9 +36,9 @@ import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.helper.RnrFormHelper;
 import org.openlmis.core.model.service.RequisitionPeriodService;
+import org.openlmis.core.model.service.RequisitionPeriodTimelines;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
-import org.openlmis.core.persistence.LmisSqliteOpenHelper;
 import org.openlmis.core.utils.DateUtil;
 import org.roboguice.shaded.goole.common.base.Function;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
@@ -48,7 +46,9 @@ import org.roboguice.shaded.goole.common.collect.FluentIterable;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 public class RnrFormRepository {
@@ -83,6 +83,9 @@ public class RnrFormRepository {
     @Inject
     RnrFormHelper rnrFormHelper;
 
+    @Inject
+    RnRFormSnapshotRepository rnRFormSnapshotRepository;
+
     GenericDao<RnRForm> genericDao;
     GenericDao<RnrFormItem> rnrFormItemGenericDao;
 
@@ -93,6 +96,8 @@ public class RnrFormRepository {
     private RequisitionPeriodService requisitionPeriodService;
     @Inject
     private StockMovementRepository stockMovementRepository;
+    @Inject
+    private RequisitionPeriodTimelines requisitionPeriodTimelines;
 
     @Inject
     public RnrFormRepository(Context context) {
@@ -114,14 +119,23 @@ public class RnrFormRepository {
 
     public void create(RnRForm rnRForm) throws LMISException {
         genericDao.create(rnRForm);
+        requisitionPeriodTimelines.invalidate();
     }
 
-    public void createRnRsWithItems(final List<RnRForm> forms) throws LMISException {
+    public void createOrUpdateSyncedRnRsWithItems(final List<RnRForm> forms) throws LMISException {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     for (RnRForm form : forms) {
+                        RnRForm existingForm = queryExistingForm(form);
+                        if (existingForm != null) {
+                            if (!existingForm.isSynced()) {
+                                //local changes not yet submitted win over the server copy
+                                continue;
+                            }
+                            removeRnrForm(existingForm);
+                        }
                         createOrUpdateWithItems(form);
                     }
                     return null;
@@ -132,14 +146,34 @@ public class RnrFormRepository {
         }
     }
 
+    protected RnRForm queryExistingForm(final RnRForm form) throws LMISException {
+        if (form.getProgram() == null || form.getPeriodBegin() == null) {
+            return null;
+        }
+        return dbUtil.withDao(RnRForm.class, new DbUtil.Operation<RnRForm, RnRForm>() {
+            @Override
+            public RnRForm operate(Dao<RnRForm, String> dao) throws SQLException {
+                Where<RnRForm, String> where = dao.queryBuilder().where().eq("program_id", form.getProgram().getId())
+                        .and().eq("periodBegin", form.getPeriodBegin())
+                        .and().eq("emergency", form.isEmergency());
+                if (form.isEmergency() && form.getSubmittedTime() != null) {
+                    where.and().eq("submittedTime", form.getSubmittedTime());
+                }
+                return where.queryForFirst();
+            }
+        });
+    }
+
     public void createOrUpdateWithItems(final RnRForm form) throws LMISException {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     genericDao.createOrUpdate(form);
                     createOrUpdateRnrWrappers(form);
                     genericDao.refresh(form);
+                    updateSnapshot(form);
+                    requisitionPeriodTimelines.invalidate();
                     return null;
                 }
             });
@@ -148,6 +182,20 @@ public class RnrFormRepository {
         }
     }
 
+    //the payload is serialized once when the form is authorized and sent as is on every sync attempt
+    private void updateSnapshot(RnRForm form) throws LMISException {
+        if (form.isSynced()) {
+            rnRFormSnapshotRepository.deleteByFormId(form.getId());
+        } else if (form.isAuthorized()) {
+            try {
+                rnRFormSnapshotRepository.createOrUpdate(form);
+            } catch (LMISException e) {
+                //sync up takes the snapshot again before submitting
+                e.reportToFabric();
+            }
+        }
+    }
+
     public boolean isPeriodUnique(final RnRForm form) {
         try {
             return null == dbUtil.withDao(RnRForm.class, new DbUtil.Operation<RnRForm, RnRForm>() {
@@ -215,15 +263,29 @@ public class RnrFormRepository {
                 }
             }).toList();
 
-            rnrFormItemRepository.deleteFormItems(rnRForm.getDeactivatedAndUnsupportedProductItems(supportedProductCodes));
+            List<RnrFormItem> deactivatedItems = rnRForm.getDeactivatedAndUnsupportedProductItems(supportedProductCodes);
+            if (!deactivatedItems.isEmpty()) {
+                rnrFormItemRepository.deleteFormItems(deactivatedItems);
+                rnRFormSnapshotRepository.deleteByFormId(rnRForm.getId());
+            }
         }
     }
 
+    //the movements and last inventories of all stock cards are read once per form, not once per stock card
     public List<RnrFormItem> generateRnrFormItems(final RnRForm form, List<StockCard> stockCards) throws LMISException {
         List<RnrFormItem> rnrFormItems = new ArrayList<>();
         List<String> programCodes = programRepository.queryProgramCodesByProgramCodeOrParentCode(form.getProgram().getProgramCode());
+        Map<Long, List<StockMovementItem>> periodMovements = stockMovementRepository.queryStockItemsByCreatedDate(form.getPeriodBegin(), form.getPeriodEnd());
+        Map<Long, Long> lastRnrInventories = null;
         for (StockCard stockCard : stockCards) {
-            RnrFormItem rnrFormItem = createRnrFormItemByPeriod(stockCard, form.getPeriodBegin(), form.getPeriodEnd());
+            List<StockMovementItem> stockMovementItems = periodMovements.get(stockCard.getId());
+            if (stockMovementItems == null) {
+                stockMovementItems = new ArrayList<>();
+                if (lastRnrInventories == null) {
+                    lastRnrInventories = lastRnrInventories();
+                }
+            }
+            RnrFormItem rnrFormItem = createRnrFormItemByPeriod(stockCard, stockMovementItems, lastRnrInventories);
             rnrFormItem.setForm(form);
             rnrFormItems.add(rnrFormItem);
             rnrFormItem.setCategory(productProgramRepository.queryByCode(rnrFormItem.getProduct().getCode(), programCodes).getCategory());
@@ -237,7 +299,9 @@ public class RnrFormRepository {
             regimenItemRepository.deleteRegimenItems(form.getRegimenItemListWrapper());
             baseInfoItemRepository.batchDelete(form.getBaseInfoItemListWrapper());
             signatureRepository.batchDelete(form.getSignaturesWrapper());
+            rnRFormSnapshotRepository.deleteByFormId(form.getId());
             genericDao.delete(form);
+            requisitionPeriodTimelines.invalidate();
         }
     }
 
@@ -282,12 +346,11 @@ public class RnrFormRepository {
         });
     }
 
-    protected RnrFormItem createRnrFormItemByPeriod(StockCard stockCard, Date startDate, Date endDate) throws LMISException {
+    protected RnrFormItem createRnrFormItemByPeriod(StockCard stockCard, List<StockMovementItem> stockMovementItems, Map<Long, Long> lastRnrInventories) throws LMISException {
         RnrFormItem rnrFormItem = new RnrFormItem();
-        List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockItemsByCreatedDate(stockCard.getId(), startDate, endDate);
 
         if (stockMovementItems.isEmpty()) {
-            rnrFormHelper.initRnrFormItemWithoutMovement(rnrFormItem, lastRnrInventory(stockCard));
+            rnrFormHelper.initRnrFormItemWithoutMovement(rnrFormItem, lastRnrInventoryOf(stockCard, lastRnrInventories));
         } else {
             rnrFormItem.setInitialAmount(stockMovementItems.get(0).calculatePreviousSOH());
             rnrFormHelper.assignTotalValues(rnrFormItem, stockMovementItems);
@@ -317,7 +380,7 @@ public class RnrFormRepository {
 
     private RnRForm createInitRnrForm(final RnRForm rnrForm) throws LMISException {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     create(rnrForm);
@@ -351,18 +414,27 @@ public class RnrFormRepository {
         }
     }
 
-    protected long lastRnrInventory(StockCard stockCard) throws LMISException {
+    private long lastRnrInventoryOf(StockCard stockCard, Map<Long, Long> lastRnrInventories) {
+        if (lastRnrInventories.isEmpty()) {
+            return 0;
+        }
+        Long lastRnrInventory = lastRnrInventories.get(stockCard.getProduct().getId());
+        return lastRnrInventory == null ? 0 : lastRnrInventory;
+    }
+
+    //inventory of each product in the last regular form, keyed by product id
+    protected Map<Long, Long> lastRnrInventories() throws LMISException {
+        Map<Long, Long> inventories = new HashMap<>();
         List<RnRForm> rnRForms = listInclude(RnRForm.Emergency.No, programCode);
         if (rnRForms.isEmpty()) {
-            return 0;
+            return inventories;
         }
-        List<RnrFormItem> rnrFormItemListWrapper = rnRForms.get(rnRForms.size() - 1).getRnrFormItemListWrapper();
-        for (RnrFormItem item : rnrFormItemListWrapper) {
-            if (item.getProduct().getId() == stockCard.getProduct().getId()) {
-                return item.getInventory();
+        for (RnrFormItem item : rnRForms.get(rnRForms.size() - 1).getRnrFormItemListWrapper()) {
+            if (!inventories.containsKey(item.getProduct().getId())) {
+                inventories.put(item.getProduct().getId(), item.getInventory());
             }
         }
-        return 0;
+        return inventories;
     }
 
     private List<RnRForm> list(String programCode, final boolean isWithEmergency) throws LMISException {
@@ -412,10 +484,7 @@ public class RnrFormRepository {
         String rawSqlDeleteRnrForms = "DELETE FROM rnr_forms "
                 + "WHERE periodEnd < '" + dueDateShouldDataLivedInDB + "'; ";
 
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteRnrFormItems);
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteBaseInfoItems);
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteRegimeItems);
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteSignature);
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteRnrForms);
+        dbUtil.execSQL(rawSqlDeleteRnrFormItems, rawSqlDeleteBaseInfoItems, rawSqlDeleteRegimeItems, rawSqlDeleteSignature, rawSqlDeleteRnrForms);
+        requisitionPeriodTimelines.invalidate();
     }
 }
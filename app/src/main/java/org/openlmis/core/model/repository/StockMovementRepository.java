@@ -5,12 +5,20 @@ import android.database.Cursor;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.Where;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.manager.MovementReasonManager;
 import org.openlmis.core.model.Lot;
 import org.openlmis.core.model.LotMovementItem;
+import org.openlmis.core.model.LotOnHand;
 import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.SyncType;
+import org.openlmis.core.model.service.RequisitionPeriodTimelines;
+import org.openlmis.core.network.model.StockCardDigest;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
 import org.openlmis.core.persistence.LmisSqliteOpenHelper;
@@ -19,8 +27,11 @@ import org.roboguice.shaded.goole.common.collect.Lists;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class StockMovementRepository {
     @Inject
@@ -30,6 +41,10 @@ public class StockMovementRepository {
 
     @Inject
     private LotRepository lotRepository;
+    @Inject
+    private SyncOutboxRepository syncOutboxRepository;
+    @Inject
+    private RequisitionPeriodTimelines requisitionPeriodTimelines;
 
     GenericDao<StockMovementItem> genericDao;
 
@@ -40,6 +55,7 @@ public class StockMovementRepository {
 
     public void create(StockMovementItem stockMovementItem) throws LMISException {
         genericDao.create(stockMovementItem);
+        requisitionPeriodTimelines.invalidate();
     }
 
     public List<StockMovementItem> listUnSynced() throws LMISException {
@@ -51,20 +67,28 @@ public class StockMovementRepository {
         });
     }
 
-    protected void batchCreateOrUpdateStockMovementsAndLotInfo(final List<StockMovementItem> stockMovementItems) throws LMISException {
-        dbUtil.withDaoAsBatch(StockMovementItem.class, new DbUtil.Operation<StockMovementItem, Void>() {
+    public List<StockMovementItem> queryByIds(final List<Long> ids) throws LMISException {
+        return dbUtil.withDao(StockMovementItem.class, new DbUtil.Operation<StockMovementItem, List<StockMovementItem>>() {
             @Override
-            public Void operate(Dao<StockMovementItem, String> dao) throws SQLException, LMISException {
-                for (StockMovementItem stockMovementItem : stockMovementItems) {
-                    updateDateTimeIfEmpty(stockMovementItem);
-                    dao.createOrUpdate(stockMovementItem);
-                    lotRepository.batchCreateLotsAndLotMovements(stockMovementItem.getLotMovementItemListWrapper());
-                }
-                return null;
+            public List<StockMovementItem> operate(Dao<StockMovementItem, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy("id", true).where().in("id", ids).query();
             }
         });
     }
 
+    //called inside the caller's transaction, lotsOnHand is keyed by product id and lot number and kept up to date as lots are written
+    protected void batchCreateStockMovementsWithResolvedLots(List<StockMovementItem> stockMovementItems, Map<Long, Map<String, LotOnHand>> lotsOnHand) throws LMISException {
+        for (StockMovementItem stockMovementItem : stockMovementItems) {
+            updateDateTimeIfEmpty(stockMovementItem);
+            genericDao.create(stockMovementItem);
+            if (!stockMovementItem.isSynced()) {
+                syncOutboxRepository.enqueue(SyncType.StockCards, stockMovementItem.getId());
+            }
+            lotRepository.batchCreateLotMovementsWithResolvedLots(stockMovementItem.getLotMovementItemListWrapper(), lotsOnHand);
+        }
+        requisitionPeriodTimelines.invalidate();
+    }
+
     private void updateDateTimeIfEmpty(StockMovementItem stockMovementItem) {
         if (stockMovementItem.getCreatedTime() == null) {
             stockMovementItem.setCreatedTime(new Date());
@@ -76,6 +100,9 @@ public class StockMovementRepository {
     public void batchCreateStockMovementItemAndLotItems(final StockMovementItem stockMovementItem) throws LMISException {
         stockMovementItem.setCreatedTime(new Date(LMISApp.getInstance().getCurrentTimeMillis()));
         create(stockMovementItem);
+        if (!stockMovementItem.isSynced()) {
+            syncOutboxRepository.enqueue(SyncType.StockCards, stockMovementItem.getId());
+        }
 
         lotRepository.batchCreateLotsAndLotMovements(stockMovementItem.getLotMovementItemListWrapper());
         lotRepository.batchCreateLotsAndLotMovements(stockMovementItem.getNewAddedLotMovementItemListWrapper());
@@ -88,12 +115,16 @@ public class StockMovementRepository {
                 for (StockMovementItem stockMovementItem : stockMovementItems) {
                     updateDateTimeIfEmpty(stockMovementItem);
                     dao.createOrUpdate(stockMovementItem);
+                    if (!stockMovementItem.isSynced()) {
+                        syncOutboxRepository.enqueue(SyncType.StockCards, stockMovementItem.getId());
+                    }
                     for (LotMovementItem lotMovementItem : stockMovementItem.getLotMovementItemListWrapper()) {
                         Lot existingLot = lotRepository.getLotByLotNumberAndProductId(lotMovementItem.getLot().getLotNumber(), lotMovementItem.getLot().getProduct().getId());
                         lotMovementItem.setLot(existingLot);
                         lotRepository.createLotMovementItem(lotMovementItem);
                     }
                 }
+                requisitionPeriodTimelines.invalidate();
                 return null;
             }
         });
@@ -133,14 +164,50 @@ public class StockMovementRepository {
         return movementDates;
     }
 
+    //digests of the cards with movements in [startDate, endDate), in the order the server builds them
+    public List<StockCardDigest> queryStockCardDigests(String startDate, String endDate) {
+        String rawSql = "SELECT p1.code, s1.movementDate, s1.documentNumber, s1.movementQuantity, s1.reason, s1.stockOnHand FROM stock_items s1 "
+                + "JOIN stock_cards s2 ON s1.stockCard_id = s2.id "
+                + "JOIN products p1 ON s2.product_id = p1.id "
+                + "WHERE s1.movementDate >= ? AND s1.movementDate < ? "
+                + "ORDER BY p1.code, s1.movementDate, s1.documentNumber";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, new String[]{startDate, endDate});
+        List<StockCardDigest> digests = new ArrayList<>();
+        StockCardDigest.Builder digest = null;
+        if (cursor.moveToFirst()) {
+            do {
+                String productCode = cursor.getString(0);
+                if (digest == null || !digest.getProductCode().equals(productCode)) {
+                    if (digest != null) {
+                        digests.add(digest.build());
+                    }
+                    digest = new StockCardDigest.Builder(productCode);
+                }
+                digest.addMovement(cursor.getString(1), cursor.getString(2), cursor.getLong(3), cursor.getString(4), cursor.getLong(5));
+            } while (cursor.moveToNext());
+            digests.add(digest.build());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return digests;
+    }
+
     public Date queryEarliestStockMovementDateByProgram(final String programCode) {
+        String rawSql = "SELECT MIN(movementDate) FROM stock_items s1 "
+                + "JOIN stock_cards s2 ON s1.stockCard_id = s2.id "
+                + "JOIN products p1 ON s2.product_id = p1.id "
+                + "JOIN product_programs p2 ON p2.productCode = p1.code "
+                + "JOIN programs p3 ON p2.programCode = p3.programCode "
+                + "WHERE p1.isActive = 1 AND p1.isArchived = 0 AND p2.isActive = 1 AND p3.programCode = '" + programCode + "' "
+                + "OR p3.parentCode = '" + programCode + "'";
+        final Cursor cursor = LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().rawQuery(rawSql, null);
         Date earliestDate = null;
-
-        for (String movementDate : queryStockMovementDatesByProgram(programCode)) {
-            Date date = DateUtil.parseString(movementDate, DateUtil.DB_DATE_FORMAT);
-            if (earliestDate == null || date.before(earliestDate)) {
-                earliestDate = date;
-            }
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            earliestDate = DateUtil.parseString(cursor.getString(0), DateUtil.DB_DATE_FORMAT);
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
         }
         return earliestDate;
     }
@@ -159,13 +226,31 @@ public class StockMovementRepository {
         });
     }
 
-    public List<StockMovementItem> queryStockMovementHistory(final long stockCardId, final long startIndex, final long maxRows) throws LMISException {
-        return dbUtil.withDao(StockMovementItem.class, new DbUtil.Operation<StockMovementItem, List<StockMovementItem>>() {
+    //the maxRows movements right before olderThan in the card's history (the latest ones when it is null), oldest first;
+    //pages are found by seeking to the (movementDate, createdTime, id) of the last page's oldest movement in the index,
+    //so older pages cost the same as the first one
+    public List<StockMovementItem> queryStockMovementHistory(final long stockCardId, final StockMovementItem olderThan, final long maxRows) throws LMISException {
+        List<StockMovementItem> stockMovementItems = dbUtil.withDao(StockMovementItem.class, new DbUtil.Operation<StockMovementItem, List<StockMovementItem>>() {
             @Override
             public List<StockMovementItem> operate(Dao<StockMovementItem, String> dao) throws SQLException {
-                return dao.queryBuilder().offset(startIndex).limit(maxRows).orderBy("movementDate", true).orderBy("createdTime", true).orderBy("id", true).where().eq("stockCard_id", stockCardId).query();
+                QueryBuilder<StockMovementItem, String> queryBuilder = dao.queryBuilder();
+                queryBuilder.limit(maxRows).orderBy("movementDate", false).orderBy("createdTime", false).orderBy("id", false);
+                Where<StockMovementItem, String> where = queryBuilder.where();
+                if (olderThan == null) {
+                    where.eq("stockCard_id", stockCardId);
+                } else {
+                    //the movementDate bound alone lets SQLite seek, the rest only skips the movements of that same day
+                    where.and(where.eq("stockCard_id", stockCardId),
+                            where.le("movementDate", olderThan.getMovementDate()),
+                            where.or(where.lt("movementDate", olderThan.getMovementDate()),
+                                    where.lt("createdTime", olderThan.getCreatedTime()),
+                                    where.and(where.eq("createdTime", olderThan.getCreatedTime()), where.lt("id", olderThan.getId()))));
+                }
+                return queryBuilder.query();
             }
         });
+        Collections.reverse(stockMovementItems);
+        return stockMovementItems;
     }
 
     public List<StockMovementItem> queryStockItemsByCreatedDate(final long stockCardId, final Date periodBeginDate, final Date periodEndDate) throws LMISException {
@@ -184,6 +269,98 @@ public class StockMovementRepository {
         });
     }
 
+    //movements created within (periodBegin, periodEnd] grouped by stock card id, each in the order of the card's history
+    public Map<Long, List<StockMovementItem>> queryStockItemsByCreatedDate(Date periodBegin, Date periodEnd) {
+        String rawSql = "SELECT stockCard_id, id, movementType, movementQuantity, stockOnHand FROM stock_items "
+                + "WHERE createdTime > ? AND createdTime <= ? "
+                + "ORDER BY stockCard_id, movementDate, createdTime, id";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{DateUtil.formatDateTime(periodBegin), DateUtil.formatDateTime(periodEnd)});
+        Map<Long, List<StockMovementItem>> stockMovementItems = new HashMap<>();
+        if (cursor.moveToFirst()) {
+            do {
+                long stockCardId = cursor.getLong(0);
+                List<StockMovementItem> itemsOfStockCard = stockMovementItems.get(stockCardId);
+                if (itemsOfStockCard == null) {
+                    itemsOfStockCard = new ArrayList<>();
+                    stockMovementItems.put(stockCardId, itemsOfStockCard);
+                }
+                StockMovementItem stockMovementItem = new StockMovementItem();
+                stockMovementItem.setId(cursor.getLong(1));
+                if (!cursor.isNull(2)) {
+                    stockMovementItem.setMovementType(MovementReasonManager.MovementType.valueOf(cursor.getString(2)));
+                }
+                stockMovementItem.setMovementQuantity(cursor.getLong(3));
+                stockMovementItem.setStockOnHand(cursor.getLong(4));
+                itemsOfStockCard.add(stockMovementItem);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockMovementItems;
+    }
+
+    //movements on or after the date of the given stock cards grouped by stock card id, each in the order of the card's history
+    public Map<Long, List<StockMovementItem>> queryStockMovementsSinceGroupByStockCardId(List<Long> stockCardIds, Date since) {
+        Map<Long, List<StockMovementItem>> stockMovementItems = new HashMap<>();
+        if (stockCardIds.isEmpty()) {
+            return stockMovementItems;
+        }
+        String rawSql = "SELECT stockCard_id, id, movementDate, reason, movementType, movementQuantity, stockOnHand, documentNumber "
+                + "FROM stock_items "
+                + "WHERE stockCard_id IN (" + StringUtils.join(stockCardIds, ",") + ") AND movementDate >= ? "
+                + "ORDER BY stockCard_id, movementDate, id";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{DateUtil.formatDate(since, DateUtil.DB_DATE_FORMAT)});
+        if (cursor.moveToFirst()) {
+            do {
+                long stockCardId = cursor.getLong(0);
+                List<StockMovementItem> itemsOfStockCard = stockMovementItems.get(stockCardId);
+                if (itemsOfStockCard == null) {
+                    itemsOfStockCard = new ArrayList<>();
+                    stockMovementItems.put(stockCardId, itemsOfStockCard);
+                }
+                StockMovementItem stockMovementItem = new StockMovementItem();
+                stockMovementItem.setId(cursor.getLong(1));
+                stockMovementItem.setMovementDate(DateUtil.parseString(cursor.getString(2), DateUtil.DB_DATE_FORMAT));
+                stockMovementItem.setReason(cursor.getString(3));
+                if (!cursor.isNull(4)) {
+                    stockMovementItem.setMovementType(MovementReasonManager.MovementType.valueOf(cursor.getString(4)));
+                }
+                stockMovementItem.setMovementQuantity(cursor.getLong(5));
+                stockMovementItem.setStockOnHand(cursor.getLong(6));
+                stockMovementItem.setDocumentNumber(cursor.getString(7));
+                itemsOfStockCard.add(stockMovementItem);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockMovementItems;
+    }
+
+    public long countStockCardsWithMovementsSince(Date since) {
+        return countSince("SELECT COUNT(DISTINCT stockCard_id) FROM stock_items WHERE movementDate >= ?", since);
+    }
+
+    public long countStockMovementsSince(Date since) {
+        return countSince("SELECT COUNT(*) FROM stock_items WHERE movementDate >= ?", since);
+    }
+
+    private long countSince(String rawSql, Date since) {
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{DateUtil.formatDate(since, DateUtil.DB_DATE_FORMAT)});
+        long count = 0;
+        if (cursor.moveToFirst()) {
+            count = cursor.getLong(0);
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return count;
+    }
+
     public List<StockMovementItem> queryStockMovementsByMovementDate(final long stockCardId, final Date startDate, final Date endDate) throws LMISException {
         return dbUtil.withDao(StockMovementItem.class, new DbUtil.Operation<StockMovementItem, List<StockMovementItem>>() {
             @Override
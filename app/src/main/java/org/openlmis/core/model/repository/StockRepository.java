@@ -22,8 +22,8 @@ import android.database.Cursor;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.misc.TransactionManager;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.SharedPreferenceMgr;
@@ -32,7 +32,9 @@ import org.openlmis.core.model.Product;
 import org.openlmis.core.model.Program;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockCardSummary;
 import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.service.RequisitionPeriodTimelines;
 import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.persistence.GenericDao;
 import org.openlmis.core.persistence.LmisSqliteOpenHelper;
@@ -43,7 +45,10 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 import static org.roboguice.shaded.goole.common.collect.FluentIterable.from;
@@ -63,6 +68,8 @@ public class StockRepository {
     LotRepository lotRepository;
     @Inject
     StockMovementRepository stockMovementRepository;
+    @Inject
+    RequisitionPeriodTimelines requisitionPeriodTimelines;
 
     GenericDao<StockCard> genericDao;
 
@@ -71,22 +78,32 @@ public class StockRepository {
         genericDao = new GenericDao<>(StockCard.class, context);
     }
 
-    public void batchSaveUnpackStockCardsWithMovementItemsAndUpdateProduct(final List<StockCard> stockCards) {
+    //lots are resolved up front and kept in memory, everything the unpack writes goes in one transaction
+    public void batchSaveUnpackStockCards(final List<StockCard> stockCards) throws LMISException {
+        final Map<Long, Map<String, LotOnHand>> lotsOnHand = lotRepository.queryLotsOnHandGroupByProductId(productIdsOf(stockCards));
         try {
-            dbUtil.withDaoAsBatch(StockCard.class, new DbUtil.Operation<StockCard, Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
-                public Object operate(Dao<StockCard, String> dao) throws SQLException, LMISException {
+                public Object call() throws Exception {
                     for (StockCard stockCard : stockCards) {
-                        dao.createOrUpdate(stockCard);
-                        updateProductOfStockCard(stockCard.getProduct());
-                        stockMovementRepository.batchCreateOrUpdateStockMovementsAndLotInfo(stockCard.getStockMovementItemsWrapper());
+                        genericDao.createOrUpdate(stockCard);
+                        productRepository.updateProduct(stockCard.getProduct());
+                        stockMovementRepository.batchCreateStockMovementsWithResolvedLots(stockCard.getStockMovementItemsWrapper(), lotsOnHand);
                     }
                     return null;
                 }
             });
-        } catch (LMISException e) {
-            e.reportToFabric();
+        } catch (SQLException e) {
+            throw new LMISException(e);
+        }
+    }
+
+    private List<Long> productIdsOf(List<StockCard> stockCards) {
+        List<Long> productIds = new ArrayList<>();
+        for (StockCard stockCard : stockCards) {
+            productIds.add(stockCard.getProduct().getId());
         }
+        return productIds;
     }
 
     public void createOrUpdate(final StockCard stockCard) {
@@ -107,7 +124,7 @@ public class StockRepository {
 
     protected void saveStockCardAndBatchUpdateMovements(final StockCard stockCard) {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     createOrUpdate(stockCard);
@@ -131,7 +148,7 @@ public class StockRepository {
 
     public void createOrUpdateStockCardWithStockMovement(final StockCard stockCard) {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     createOrUpdate(stockCard);
@@ -147,7 +164,7 @@ public class StockRepository {
 
     public void addStockMovementAndUpdateStockCard(final StockMovementItem stockMovementItem) {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     StockCard stockcard = stockMovementItem.getStockCard();
@@ -204,6 +221,47 @@ public class StockRepository {
     }
 
     public List<StockCard> listEmergencyStockCards() throws LMISException {
+        return listStockCardsByProductIds(queryEmergencyProductIds());
+    }
+
+    //the first emergency stock cards by product name whose product matches the keyword, see ProductRepository.toSearchMatch
+    public List<StockCard> searchEmergencyStockCards(String keyword, int limit) throws LMISException {
+        List<Long> productIds = queryEmergencyProductIds();
+        if (productIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String searchMatch = ProductRepository.toSearchMatch(keyword);
+        String rawSql = "SELECT s.id FROM stock_cards s "
+                + "JOIN products p ON s.product_id = p.id "
+                + "WHERE p.id IN (" + StringUtils.join(productIds, ",") + ") "
+                + (searchMatch == null ? "" : "AND p.id IN (SELECT docid FROM products_fts WHERE products_fts MATCH ?) ")
+                + "ORDER BY p.primaryName, p.id LIMIT " + limit;
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, searchMatch == null ? null : new String[]{searchMatch});
+        final List<Long> stockCardIds = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            do {
+                stockCardIds.add(cursor.getLong(0));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        if (stockCardIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<StockCard> stockCards = dbUtil.withDao(StockCard.class, new DbUtil.Operation<StockCard, List<StockCard>>() {
+            @Override
+            public List<StockCard> operate(Dao<StockCard, String> dao) throws SQLException {
+                return dao.queryBuilder().where().in("id", stockCardIds).query();
+            }
+        });
+        Collections.sort(stockCards);
+        return stockCards;
+    }
+
+    private List<Long> queryEmergencyProductIds() throws LMISException {
         List<Program> programs = programRepository.listEmergencyPrograms();
 
         List<String> programCodes = from(programs).transform(new Function<Program, String>() {
@@ -212,8 +270,142 @@ public class StockRepository {
                 return program.getProgramCode();
             }
         }).toList();
-        List<Long> productIds = productProgramRepository.queryActiveProductIdsByProgramsWithKits(programCodes, false);
-        return listStockCardsByProductIds(productIds);
+        return productProgramRepository.queryActiveProductIdsByProgramsWithKits(programCodes, false);
+    }
+
+    //same rule as the stock overview: no kits, and only cards with stock or of active, not archived products
+    private static final String SHOWN_IN_OVERVIEW = "product_id IN (SELECT id FROM products WHERE isKit = 0) "
+            + "AND (stockOnHand > 0 OR product_id IN (SELECT id FROM products WHERE isActive = 1 AND isArchived = 0))";
+
+    //overview cards of one status, found through the stockStatus index
+    public List<StockCard> listOverviewStockCardsByStatus(final StockCard.StockStatus stockStatus) throws LMISException {
+        List<StockCard> stockCards = dbUtil.withDao(StockCard.class, new DbUtil.Operation<StockCard, List<StockCard>>() {
+            @Override
+            public List<StockCard> operate(Dao<StockCard, String> dao) throws SQLException {
+                return dao.queryBuilder().where().eq("stockStatus", stockStatus).and().raw(SHOWN_IN_OVERVIEW).query();
+            }
+        });
+        Collections.sort(stockCards);
+        return stockCards;
+    }
+
+    //overview cards from the most to the least severe status
+    public List<StockCard> listOverviewStockCardsOrderByStatus() throws LMISException {
+        return dbUtil.withDao(StockCard.class, new DbUtil.Operation<StockCard, List<StockCard>>() {
+            @Override
+            public List<StockCard> operate(Dao<StockCard, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy("stockStatus", true).where().raw(SHOWN_IN_OVERVIEW).query();
+            }
+        });
+    }
+
+    public Map<StockCard.StockStatus, Long> countOverviewStockCardsGroupByStatus() {
+        Map<StockCard.StockStatus, Long> counts = new EnumMap<>(StockCard.StockStatus.class);
+        for (StockCard.StockStatus stockStatus : StockCard.StockStatus.values()) {
+            counts.put(stockStatus, 0L);
+        }
+        String rawSql = "SELECT s.stockStatus, COUNT(*) AS count FROM stock_cards s "
+                + "JOIN products p ON p.id = s.product_id "
+                + "WHERE p.isKit = 0 AND (s.stockOnHand > 0 OR (p.isActive = 1 AND p.isArchived = 0)) "
+                + "GROUP BY s.stockStatus";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                StockCard.StockStatus stockStatus = StockCard.StockStatus.values()[cursor.getInt(cursor.getColumnIndexOrThrow("stockStatus"))];
+                counts.put(stockStatus, cursor.getLong(cursor.getColumnIndexOrThrow("count")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    //one page of the stock overview ordered by product name, reading only the columns a row shows
+    public List<StockCardSummary> listOverviewStockCardSummaries(long offset, long limit) {
+        String rawSql = "SELECT s.id, s.stockOnHand, s.avgMonthlyConsumption, p.id AS product_id, p.code, p.primaryName, "
+                + "p.strength, p.type, p.isActive, p.isArchived, "
+                + "(SELECT MIN(l.expirationDate) FROM lots_on_hand h JOIN lots l ON l.id = h.lot_id "
+                + "WHERE h.stockCard_id = s.id AND h.quantityOnHand > 0) AS earliestLotExpiryDate "
+                + "FROM stock_cards s JOIN products p ON p.id = s.product_id "
+                + "WHERE p.isKit = 0 AND (s.stockOnHand > 0 OR (p.isActive = 1 AND p.isArchived = 0)) "
+                + "ORDER BY p.primaryName, s.id LIMIT ? OFFSET ?";
+        List<StockCardSummary> summaries = new ArrayList<>();
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{String.valueOf(limit), String.valueOf(offset)});
+        if (cursor.moveToFirst()) {
+            do {
+                Product product = new Product();
+                product.setId(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")));
+                product.setCode(cursor.getString(cursor.getColumnIndexOrThrow("code")));
+                product.setPrimaryName(cursor.getString(cursor.getColumnIndexOrThrow("primaryName")));
+                product.setStrength(cursor.getString(cursor.getColumnIndexOrThrow("strength")));
+                product.setType(cursor.getString(cursor.getColumnIndexOrThrow("type")));
+                product.setActive(cursor.getInt(cursor.getColumnIndexOrThrow("isActive")) == 1);
+                product.setArchived(cursor.getInt(cursor.getColumnIndexOrThrow("isArchived")) == 1);
+
+                StockCard stockCard = new StockCard();
+                stockCard.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                stockCard.setProduct(product);
+                stockCard.setStockOnHand(cursor.getLong(cursor.getColumnIndexOrThrow("stockOnHand")));
+                stockCard.setAvgMonthlyConsumption(cursor.getFloat(cursor.getColumnIndexOrThrow("avgMonthlyConsumption")));
+
+                String earliestLotExpiryDate = cursor.getString(cursor.getColumnIndexOrThrow("earliestLotExpiryDate"));
+                summaries.add(new StockCardSummary(stockCard,
+                        earliestLotExpiryDate == null ? null : DateUtil.parseString(earliestLotExpiryDate, DateUtil.DB_DATE_FORMAT)));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return summaries;
+    }
+
+    //one page of the stock cards with movements on or after the date, ordered by product name, reading only what the history shows
+    public List<StockCard> listStockCardsWithMovementsSince(Date since, long offset, long limit) {
+        String rawSql = "SELECT s.id, s.stockOnHand, p.id AS product_id, p.code, p.primaryName, p.strength, p.type "
+                + "FROM stock_cards s JOIN products p ON p.id = s.product_id "
+                + "WHERE s.id IN (SELECT stockCard_id FROM stock_items WHERE movementDate >= ?) "
+                + "ORDER BY p.primaryName, s.id LIMIT ? OFFSET ?";
+        List<StockCard> stockCards = new ArrayList<>();
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{DateUtil.formatDate(since, DateUtil.DB_DATE_FORMAT), String.valueOf(limit), String.valueOf(offset)});
+        if (cursor.moveToFirst()) {
+            do {
+                Product product = new Product();
+                product.setId(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")));
+                product.setCode(cursor.getString(cursor.getColumnIndexOrThrow("code")));
+                product.setPrimaryName(cursor.getString(cursor.getColumnIndexOrThrow("primaryName")));
+                product.setStrength(cursor.getString(cursor.getColumnIndexOrThrow("strength")));
+                product.setType(cursor.getString(cursor.getColumnIndexOrThrow("type")));
+
+                StockCard stockCard = new StockCard();
+                stockCard.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                stockCard.setProduct(product);
+                stockCard.setStockOnHand(cursor.getLong(cursor.getColumnIndexOrThrow("stockOnHand")));
+                stockCards.add(stockCard);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockCards;
+    }
+
+    public Map<Long, Float> queryAvgMonthlyConsumptionGroupByStockCardId() {
+        Map<Long, Float> avgMonthlyConsumptions = new HashMap<>();
+        String rawSql = "SELECT id, avgMonthlyConsumption FROM stock_cards";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                avgMonthlyConsumptions.put(cursor.getLong(cursor.getColumnIndexOrThrow("id")),
+                        cursor.getFloat(cursor.getColumnIndexOrThrow("avgMonthlyConsumption")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return avgMonthlyConsumptions;
     }
 
     public StockCard queryStockCardById(final long id) throws LMISException {
@@ -229,6 +421,76 @@ public class StockRepository {
         });
     }
 
+    //cards of the given products, the products are attached as they are so none of them is queried again
+    public Map<Long, StockCard> queryStockCardsGroupByProductId(List<Product> products) {
+        Map<Long, StockCard> stockCards = new HashMap<>();
+        if (products.isEmpty()) {
+            return stockCards;
+        }
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : products) {
+            productsById.put(product.getId(), product);
+        }
+        String rawSql = "SELECT id, product_id, expireDates, stockOnHand, avgMonthlyConsumption, createdAt, updatedAt FROM stock_cards "
+                + "WHERE product_id IN (" + StringUtils.join(productsById.keySet(), ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                StockCard stockCard = new StockCard();
+                stockCard.setId(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+                stockCard.setProduct(productsById.get(cursor.getLong(cursor.getColumnIndexOrThrow("product_id"))));
+                stockCard.setExpireDates(cursor.getString(cursor.getColumnIndexOrThrow("expireDates")));
+                stockCard.setStockOnHand(cursor.getLong(cursor.getColumnIndexOrThrow("stockOnHand")));
+                stockCard.setAvgMonthlyConsumption(cursor.getFloat(cursor.getColumnIndexOrThrow("avgMonthlyConsumption")));
+                stockCard.setCreatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("createdAt")), DateUtil.DATE_TIME_FORMAT));
+                stockCard.setUpdatedAt(DateUtil.parseString(cursor.getString(cursor.getColumnIndexOrThrow("updatedAt")), DateUtil.DATE_TIME_FORMAT));
+                stockCards.put(stockCard.getProduct().getId(), stockCard);
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockCards;
+    }
+
+    public Map<Long, Long> queryStockCardIdsGroupByProductId(List<Long> productIds) {
+        Map<Long, Long> stockCardIds = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return stockCardIds;
+        }
+        String rawSql = "SELECT id, product_id FROM stock_cards "
+                + "WHERE product_id IN (" + StringUtils.join(productIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                stockCardIds.put(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")), cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockCardIds;
+    }
+
+    public Map<Long, Long> queryStockOnHandGroupByProductId(List<Long> productIds) {
+        Map<Long, Long> stockOnHands = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return stockOnHands;
+        }
+        String rawSql = "SELECT product_id, stockOnHand FROM stock_cards "
+                + "WHERE product_id IN (" + StringUtils.join(productIds, ",") + ")";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                stockOnHands.put(cursor.getLong(cursor.getColumnIndexOrThrow("product_id")), cursor.getLong(cursor.getColumnIndexOrThrow("stockOnHand")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockOnHands;
+    }
+
     public void updateStockCardWithProduct(final StockCard stockCard) throws LMISException {
         dbUtil.withDaoAsBatch(StockCard.class, new DbUtil.Operation<StockCard, Object>() {
             @Override
@@ -286,7 +548,7 @@ public class StockRepository {
 
     public void batchCreateSyncDownStockCardsAndMovements(final List<StockCard> stockCards) {
         try {
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new Callable<Object>() {
+            dbUtil.callInTransaction(new Callable<Object>() {
                 @Override
                 public Object call() throws Exception {
                     for (StockCard stockCard : stockCards) {
@@ -312,7 +574,7 @@ public class StockRepository {
         String rawSqlDeleteStockMovementItems = "DELETE FROM stock_items "
                 + "WHERE movementDate < '" + dueDateShouldDataLivedInDB + "'; ";
 
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteLotItems);
-        LmisSqliteOpenHelper.getInstance(LMISApp.getContext()).getWritableDatabase().execSQL(rawSqlDeleteStockMovementItems);
+        dbUtil.execSQL(rawSqlDeleteLotItems, rawSqlDeleteStockMovementItems);
+        requisitionPeriodTimelines.invalidate();
     }
 }
\ No newline at end of file
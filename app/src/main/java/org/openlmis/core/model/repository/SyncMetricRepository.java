@@ -0,0 +1,85 @@
+package org.openlmis.core.model.repository;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.SyncMetric;
+import org.openlmis.core.model.SyncStepSummary;
+import org.openlmis.core.persistence.DbUtil;
+import org.openlmis.core.persistence.LmisSqliteOpenHelper;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SyncMetricRepository {
+
+    @Inject
+    DbUtil dbUtil;
+    @Inject
+    Context context;
+
+    public void save(final SyncMetric syncMetric) throws LMISException {
+        dbUtil.withDao(SyncMetric.class, new DbUtil.Operation<SyncMetric, Void>() {
+            @Override
+            public Void operate(Dao<SyncMetric, String> dao) throws SQLException {
+                dao.create(syncMetric);
+                return null;
+            }
+        });
+    }
+
+    public List<SyncMetric> queryStartedSince(final long since) throws LMISException {
+        return dbUtil.withDao(SyncMetric.class, new DbUtil.Operation<SyncMetric, List<SyncMetric>>() {
+            @Override
+            public List<SyncMetric> operate(Dao<SyncMetric, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy("id", true).where().ge("startedAt", since).query();
+            }
+        });
+    }
+
+    public void deleteStartedBefore(final long before) throws LMISException {
+        dbUtil.withDao(SyncMetric.class, new DbUtil.Operation<SyncMetric, Void>() {
+            @Override
+            public Void operate(Dao<SyncMetric, String> dao) throws SQLException {
+                DeleteBuilder<SyncMetric, String> deleteBuilder = dao.deleteBuilder();
+                deleteBuilder.where().lt("startedAt", before);
+                deleteBuilder.delete();
+                return null;
+            }
+        });
+    }
+
+    //slowest steps first
+    public List<SyncStepSummary> querySummariesSince(long since) {
+        List<SyncStepSummary> summaries = new ArrayList<>();
+        String rawSql = "SELECT step, COUNT(*) AS runs, "
+                + "SUM(CASE WHEN succeeded = 0 THEN 1 ELSE 0 END) AS failures, "
+                + "AVG(totalMillis) AS averageTotalMillis, "
+                + "AVG(networkMillis) AS averageNetworkMillis, "
+                + "AVG(responseBytes) AS averageResponseBytes "
+                + "FROM sync_metrics WHERE startedAt >= " + since + " "
+                + "GROUP BY step ORDER BY averageTotalMillis DESC";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().rawQuery(rawSql, null);
+        if (cursor.moveToFirst()) {
+            do {
+                summaries.add(new SyncStepSummary(
+                        cursor.getString(cursor.getColumnIndexOrThrow("step")),
+                        cursor.getInt(cursor.getColumnIndexOrThrow("runs")),
+                        cursor.getInt(cursor.getColumnIndexOrThrow("failures")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("averageTotalMillis")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("averageNetworkMillis")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("averageResponseBytes"))));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return summaries;
+    }
+}
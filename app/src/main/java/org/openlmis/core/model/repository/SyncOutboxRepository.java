@@ -0,0 +1,167 @@
+package org.openlmis.core.model.repository;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.SyncOutboxItem;
+import org.openlmis.core.model.SyncType;
+import org.openlmis.core.persistence.DbUtil;
+import org.openlmis.core.persistence.LmisSqliteOpenHelper;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+public class SyncOutboxRepository {
+
+    //only rejections by the server count as attempts, an item rejected this many times is dead-lettered:
+    //it is no longer sent and is shown as a sync error until its object is written again
+    public static final int MAX_ATTEMPTS = 8;
+    public static final long BASE_BACKOFF_MILLIS = 60 * 1000L;
+    public static final long MAX_BACKOFF_MILLIS = 24 * 60 * 60 * 1000L;
+
+    @Inject
+    DbUtil dbUtil;
+
+    @Inject
+    Context context;
+
+    //called from inside the write transaction of the synced object, a re-enqueued object gets a fresh key and attempt budget
+    public void enqueue(final SyncType syncType, final long syncObjectId) throws LMISException {
+        dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, Void>() {
+            @Override
+            public Void operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                SyncOutboxItem item = dao.queryBuilder().where()
+                        .eq("syncType", syncType)
+                        .and().eq("syncObjectId", syncObjectId)
+                        .queryForFirst();
+                if (item == null) {
+                    dao.create(new SyncOutboxItem(syncType, syncObjectId, UUID.randomUUID().toString()));
+                    return null;
+                }
+                item.setIdempotencyKey(UUID.randomUUID().toString());
+                item.setStatus(SyncOutboxItem.Status.PENDING);
+                item.setAttempts(0);
+                item.setNextAttemptTime(0);
+                item.setLastError(null);
+                item.setUpdatedAt(new Date());
+                dao.update(item);
+                return null;
+            }
+        });
+    }
+
+    public List<SyncOutboxItem> listDue(final SyncType syncType, final long now, final long limit) throws LMISException {
+        return dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, List<SyncOutboxItem>>() {
+            @Override
+            public List<SyncOutboxItem> operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                return dao.queryBuilder()
+                        .orderBy("id", true)
+                        .limit(limit)
+                        .where().eq("status", SyncOutboxItem.Status.PENDING)
+                        .and().eq("syncType", syncType)
+                        .and().le("nextAttemptTime", now)
+                        .query();
+            }
+        });
+    }
+
+    //due movements in the order they were made, movements of a card wait behind an earlier one still backing off
+    //so the server never gets a card's movements out of order; a dead-lettered one holds nothing back.
+    //Outbox items of deleted movements are listed so they can be dropped
+    public List<SyncOutboxItem> listDueStockMovements(long now, long limit) throws LMISException {
+        String rawSql = "SELECT o.id FROM sync_outbox o "
+                + "LEFT JOIN stock_items s ON s.id = o.syncObjectId "
+                + "WHERE o.status = '" + SyncOutboxItem.Status.PENDING + "' AND o.syncType = '" + SyncType.StockCards + "' AND o.nextAttemptTime <= ? "
+                + "AND NOT EXISTS (SELECT 1 FROM sync_outbox b JOIN stock_items bs ON bs.id = b.syncObjectId "
+                + "WHERE b.status = o.status AND b.syncType = o.syncType AND b.nextAttemptTime > ? "
+                + "AND bs.stockCard_id = s.stockCard_id AND bs.id < s.id) "
+                + "ORDER BY o.syncObjectId LIMIT ?";
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(context).getWritableDatabase()
+                .rawQuery(rawSql, new String[]{String.valueOf(now), String.valueOf(now), String.valueOf(limit)});
+        final List<Long> ids = new ArrayList<>();
+        if (cursor.moveToFirst()) {
+            do {
+                ids.add(cursor.getLong(0));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, List<SyncOutboxItem>>() {
+            @Override
+            public List<SyncOutboxItem> operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy("syncObjectId", true).where().in("id", ids).query();
+            }
+        });
+    }
+
+    //codes of the products whose cards have movements not on the server yet, dead-lettered ones included
+    public List<String> queryUnsyncedStockCardProductCodes() throws LMISException {
+        final String rawSql = "SELECT DISTINCT p.code FROM sync_outbox o "
+                + "JOIN stock_items s ON s.id = o.syncObjectId "
+                + "JOIN stock_cards c ON c.id = s.stockCard_id "
+                + "JOIN products p ON p.id = c.product_id "
+                + "WHERE o.syncType = '" + SyncType.StockCards + "'";
+        return dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, List<String>>() {
+            @Override
+            public List<String> operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                List<String> productCodes = new ArrayList<>();
+                for (String[] row : dao.queryRaw(rawSql)) {
+                    productCodes.add(row[0]);
+                }
+                return productCodes;
+            }
+        });
+    }
+
+    public boolean hasDeadLetters() throws LMISException {
+        return dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, Boolean>() {
+            @Override
+            public Boolean operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                return dao.queryBuilder().where().eq("status", SyncOutboxItem.Status.DEAD).queryForFirst() != null;
+            }
+        });
+    }
+
+    public void remove(final List<SyncOutboxItem> items) throws LMISException {
+        dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, Void>() {
+            @Override
+            public Void operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                dao.delete(items);
+                return null;
+            }
+        });
+    }
+
+    public void markFailed(final SyncOutboxItem item, String errorMessage, long now) throws LMISException {
+        item.setAttempts(item.getAttempts() + 1);
+        item.setLastError(errorMessage);
+        item.setUpdatedAt(new Date());
+        if (item.getAttempts() >= MAX_ATTEMPTS) {
+            item.setStatus(SyncOutboxItem.Status.DEAD);
+        } else {
+            item.setNextAttemptTime(now + backoffMillis(item.getAttempts()));
+        }
+        dbUtil.withDao(SyncOutboxItem.class, new DbUtil.Operation<SyncOutboxItem, Void>() {
+            @Override
+            public Void operate(Dao<SyncOutboxItem, String> dao) throws SQLException {
+                dao.update(item);
+                return null;
+            }
+        });
+    }
+
+    protected static long backoffMillis(int attempts) {
+        return Math.min(BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20), MAX_BACKOFF_MILLIS);
+    }
+}
@@ -0,0 +1,33 @@
+package org.openlmis.core.model.service;
+
+import com.google.inject.Singleton;
+
+import org.openlmis.core.model.KitGraph;
+
+//dropped whenever products sync, kit compositions only change with the product catalog
+@Singleton
+public class KitGraphCache {
+
+    private KitGraph kitGraph;
+    private long version;
+
+    public synchronized KitGraph get() {
+        return kitGraph;
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    //a graph loaded while products changed is not kept, the next caller loads it again
+    public synchronized void put(KitGraph kitGraph, long loadedAtVersion) {
+        if (version == loadedAtVersion) {
+            this.kitGraph = kitGraph;
+        }
+    }
+
+    public synchronized void invalidate() {
+        version++;
+        kitGraph = null;
+    }
+}
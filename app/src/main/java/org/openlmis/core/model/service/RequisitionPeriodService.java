@@ -7,6 +7,7 @@ import org.openlmis.core.LMISApp;
 import org.openlmis.core.R;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Period;
+import org.openlmis.core.model.RequisitionPeriodTimeline;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.repository.RnrFormRepository;
 import org.openlmis.core.model.repository.StockMovementRepository;
@@ -17,6 +18,9 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
+import rx.Observable;
+import rx.Subscriber;
+
 public class RequisitionPeriodService {
 
     @Inject
@@ -28,20 +32,61 @@ public class RequisitionPeriodService {
     @Inject
     private StockMovementRepository stockMovementRepository;
 
+    @Inject
+    RequisitionPeriodTimelines timelines;
+
     public Period generateNextPeriod(String programCode, Date physicalInventoryDate) throws LMISException {
+        RequisitionPeriodTimeline timeline = timelineOf(programCode);
+
+        if (!timeline.hasForms()) {
+            return generatePeriodBasedOnDefaultDates(physicalInventoryDate, timeline);
+        }
+
+        return generatePeriodBasedOnPreviousRnr(timeline.getLastPeriodEnd(), physicalInventoryDate);
+    }
+
+    public boolean isTimelineLoaded(String programCode) {
+        return timelines.get(programCode) != null;
+    }
+
+    public Observable<Void> loadTimelines(final String... programCodes) {
+        return Observable.create(new Observable.OnSubscribe<Void>() {
+            @Override
+            public void call(Subscriber<? super Void> subscriber) {
+                try {
+                    for (String programCode : programCodes) {
+                        timelineOf(programCode);
+                    }
+                    subscriber.onCompleted();
+                } catch (LMISException e) {
+                    subscriber.onError(e);
+                }
+            }
+        });
+    }
+
+    protected RequisitionPeriodTimeline timelineOf(String programCode) throws LMISException {
+        RequisitionPeriodTimeline timeline = timelines.get(programCode);
+        if (timeline == null) {
+            long version = timelines.version();
+            timeline = loadTimeline(programCode);
+            timelines.put(programCode, timeline, version);
+        }
+        return timeline;
+    }
+
+    private RequisitionPeriodTimeline loadTimeline(String programCode) throws LMISException {
         List<RnRForm> rnRForms = rnrFormRepository.listInclude(RnRForm.Emergency.No, programCode);
 
         if (rnRForms.isEmpty()) {
-            return generatePeriodBasedOnDefaultDates(physicalInventoryDate, programCode);
+            return RequisitionPeriodTimeline.withoutForms(stockMovementRepository.queryEarliestStockMovementDateByProgram(programCode));
         }
-
-        RnRForm lastRnR = rnRForms.get(rnRForms.size() - 1);
-        return generatePeriodBasedOnPreviousRnr(lastRnR, physicalInventoryDate);
+        return RequisitionPeriodTimeline.after(rnRForms.get(rnRForms.size() - 1));
     }
 
-    private Period generatePeriodBasedOnPreviousRnr(RnRForm lastRnR, Date physicalInventoryDate) throws LMISException {
+    private Period generatePeriodBasedOnPreviousRnr(Date lastPeriodEnd, Date physicalInventoryDate) throws LMISException {
         DateTime periodBeginDate, periodEndDate;
-        periodBeginDate = new DateTime(lastRnR.getPeriodEnd());
+        periodBeginDate = new DateTime(lastPeriodEnd);
 
         if (LMISApp.getInstance().getFeatureToggleFor(R.bool.feature_training)) {
             return Period.generateForTraining(periodBeginDate.plusDays(1).toDate());
@@ -57,11 +102,11 @@ public class RequisitionPeriodService {
         return new Period(periodBeginDate, periodEndDate);
     }
 
-    private Period generatePeriodBasedOnDefaultDates(Date physicalInventoryDate, String programCode) throws LMISException {
+    private Period generatePeriodBasedOnDefaultDates(Date physicalInventoryDate, RequisitionPeriodTimeline timeline) throws LMISException {
         if (LMISApp.getInstance().getFeatureToggleFor(R.bool.feature_training)) {
             return Period.generateForTraining(new Date(LMISApp.getInstance().getCurrentTimeMillis()));
         }
-        DateTime periodBeginDate = calculatePeriodBeginDate(programCode);
+        DateTime periodBeginDate = calculatePeriodBeginDate(timeline.getEarliestMovementDate());
         DateTime periodEndDate;
         if (physicalInventoryDate == null) {
             periodEndDate = defaultEndDateTo20th(periodBeginDate);
@@ -71,8 +116,8 @@ public class RequisitionPeriodService {
         return new Period(periodBeginDate, periodEndDate);
     }
 
-    private DateTime calculatePeriodBeginDate(String programCode) throws LMISException {
-        DateTime initializeDateTime = new DateTime(stockMovementRepository.queryEarliestStockMovementDateByProgram(programCode));
+    private DateTime calculatePeriodBeginDate(Date earliestMovementDate) throws LMISException {
+        DateTime initializeDateTime = new DateTime(earliestMovementDate);
         int initializeDayOfMonth = initializeDateTime.getDayOfMonth();
 
         Calendar currentBeginDate = Calendar.getInstance();
@@ -98,9 +143,9 @@ public class RequisitionPeriodService {
     }
 
     public boolean hasMissedPeriod(String programCode) throws LMISException {
-        List<RnRForm> rnRForms = rnrFormRepository.listInclude(RnRForm.Emergency.No, programCode);
+        RequisitionPeriodTimeline timeline = timelineOf(programCode);
 
-        if (rnRForms.size() == 0 || rnRForms.get(rnRForms.size() - 1).isAuthorized()) {
+        if (timeline.isLastFormCompleted()) {
             DateTime nextPeriodInScheduleEnd = generateNextPeriod(programCode, null).getEnd();
 
             DateTime lastInventoryDateForNextPeriodInSchedule = nextPeriodInScheduleEnd
@@ -110,8 +155,7 @@ public class RequisitionPeriodService {
             return lastInventoryDateForNextPeriodInSchedule.isBefore(LMISApp.getInstance().getCurrentTimeMillis());
         }
 
-        Date lastRnrPeriodEndDate = rnRForms.get(rnRForms.size() - 1).getPeriodEnd();
-        return new DateTime(lastRnrPeriodEndDate).isBefore(LMISApp.getInstance().getCurrentTimeMillis());
+        return new DateTime(timeline.getLastPeriodEnd()).isBefore(LMISApp.getInstance().getCurrentTimeMillis());
     }
 
     public int getMissedPeriodOffsetMonth(String programCode) throws LMISException {
@@ -123,8 +167,7 @@ public class RequisitionPeriodService {
     }
 
     public int getIncompletePeriodOffsetMonth(String programCode) throws LMISException {
-        List<RnRForm> rnRForms = rnrFormRepository.listInclude(RnRForm.Emergency.No, programCode);
-        if (rnRForms.size() == 0 || rnRForms.get(rnRForms.size() - 1).isAuthorized()) {
+        if (timelineOf(programCode).isLastFormCompleted()) {
             return getMissedPeriodOffsetMonth(programCode);
         } else return getMissedPeriodOffsetMonth(programCode) + 1;
     }
@@ -0,0 +1,36 @@
+package org.openlmis.core.model.service;
+
+import com.google.inject.Singleton;
+
+import org.openlmis.core.model.RequisitionPeriodTimeline;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//timelines by program code, dropped whenever requisitions or stock movements change
+@Singleton
+public class RequisitionPeriodTimelines {
+
+    private final Map<String, RequisitionPeriodTimeline> timelines = new HashMap<>();
+    private long version;
+
+    public synchronized RequisitionPeriodTimeline get(String programCode) {
+        return timelines.get(programCode);
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    //a timeline loaded while data changed is not kept, the next caller loads it again
+    public synchronized void put(String programCode, RequisitionPeriodTimeline timeline, long loadedAtVersion) {
+        if (version == loadedAtVersion) {
+            timelines.put(programCode, timeline);
+        }
+    }
+
+    public synchronized void invalidate() {
+        version++;
+        timelines.clear();
+    }
+}
@@ -0,0 +1,117 @@
+package org.openlmis.core.model.service;
+
+import com.google.inject.Inject;
+
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.Lot;
+import org.openlmis.core.model.LotMovementItem;
+import org.openlmis.core.model.LotOnHand;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.repository.LotRepository;
+import org.openlmis.core.model.repository.ProductRepository;
+import org.openlmis.core.model.repository.StockRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StockCardResolver {
+
+    @Inject
+    ProductRepository productRepository;
+    @Inject
+    StockRepository stockRepository;
+    @Inject
+    LotRepository lotRepository;
+
+    public void resolve(List<StockCard> stockCards) throws LMISException {
+        if (stockCards == null || stockCards.isEmpty()) {
+            return;
+        }
+
+        Map<String, Product> productsByCode = queryProductsByCode(stockCards);
+        List<Long> productIds = new ArrayList<>();
+        for (Product product : productsByCode.values()) {
+            productIds.add(product.getId());
+        }
+        Map<Long, Long> stockCardIds = stockRepository.queryStockCardIdsGroupByProductId(productIds);
+        Map<String, Lot> existingLots = queryLotsByProductAndLotNumber(productIds, productsByCode);
+        Map<Long, Long> lotOnHandIds = queryLotOnHandIds(existingLots);
+
+        for (StockCard stockCard : stockCards) {
+            String productCode = stockCard.getProduct().getCode();
+            Product product = productsByCode.get(productCode);
+            if (product == null) {
+                throw new LMISException("Can't find product " + productCode + " of synced stock card");
+            }
+            stockCard.setProduct(product);
+            Long stockCardId = stockCardIds.get(product.getId());
+            if (stockCardId != null) {
+                stockCard.setId(stockCardId);
+            }
+
+            for (LotOnHand lotOnHand : stockCard.getLotOnHandListWrapper()) {
+                lotOnHand.getLot().setProduct(product);
+                Lot existingLot = existingLots.get(lotKey(product.getId(), lotOnHand.getLot().getLotNumber().toUpperCase()));
+                if (existingLot != null) {
+                    Long lotOnHandId = lotOnHandIds.get(existingLot.getId());
+                    if (lotOnHandId != null) {
+                        lotOnHand.setId(lotOnHandId);
+                    }
+                    lotOnHand.setLot(existingLot);
+                }
+            }
+
+            for (StockMovementItem stockMovementItem : stockCard.getStockMovementItemsWrapper()) {
+                for (LotMovementItem lotMovementItem : stockMovementItem.getLotMovementItemListWrapper()) {
+                    lotMovementItem.getLot().setProduct(product);
+                }
+            }
+        }
+    }
+
+    private Map<String, Product> queryProductsByCode(List<StockCard> stockCards) throws LMISException {
+        List<String> codes = new ArrayList<>();
+        for (StockCard stockCard : stockCards) {
+            codes.add(stockCard.getProduct().getCode());
+        }
+        Map<String, Product> productsByCode = new HashMap<>();
+        for (Product product : productRepository.queryProductsByCodes(codes)) {
+            if (!productsByCode.containsKey(product.getCode())) {
+                productsByCode.put(product.getCode(), product);
+            }
+        }
+        return productsByCode;
+    }
+
+    private Map<String, Lot> queryLotsByProductAndLotNumber(List<Long> productIds, Map<String, Product> productsByCode) {
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productsByCode.values()) {
+            productsById.put(product.getId(), product);
+        }
+        Map<String, Lot> lots = new HashMap<>();
+        for (Lot lot : lotRepository.queryLotsByProductIds(productIds)) {
+            String key = lotKey(lot.getProduct().getId(), lot.getLotNumber());
+            if (!lots.containsKey(key)) {
+                lot.setProduct(productsById.get(lot.getProduct().getId()));
+                lots.put(key, lot);
+            }
+        }
+        return lots;
+    }
+
+    private Map<Long, Long> queryLotOnHandIds(Map<String, Lot> existingLots) {
+        List<Long> lotIds = new ArrayList<>();
+        for (Lot lot : existingLots.values()) {
+            lotIds.add(lot.getId());
+        }
+        return lotRepository.queryLotOnHandIdsGroupByLotId(lotIds);
+    }
+
+    private String lotKey(long productId, String lotNumber) {
+        return productId + "|" + lotNumber;
+    }
+}
@@ -49,12 +49,15 @@ public class StockService {
         return stockMovementItem.getMovementPeriod().getBegin().toDate();
     }
 
-    public void monthlyUpdateAvgMonthlyConsumption() {
+    //true when the CMM of this period had not been calculated yet and was just updated
+    public boolean monthlyUpdateAvgMonthlyConsumption() {
         DateTime recordLowStockAvgPeriod = SharedPreferenceMgr.getInstance().getLatestUpdateLowStockAvgTime();
         Period period = Period.of(today());
         if (recordLowStockAvgPeriod.isBefore(period.getBegin())) {
             immediatelyUpdateAvgMonthlyConsumption();
+            return true;
         }
+        return false;
     }
 
     public void immediatelyUpdateAvgMonthlyConsumption() {
@@ -0,0 +1,49 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.network;
+
+import android.content.Context;
+
+import org.openlmis.core.BuildConfig;
+import org.openlmis.core.LMISApp;
+import org.openlmis.core.R;
+
+import lombok.Getter;
+
+//headers and timings are always logged, bodies only on debug builds or once QA mode is switched on from the login screen
+@Getter
+public class HttpLogPolicy {
+
+    private final int maxBodyBytes;
+    private final int bodySampleRate;
+
+    public HttpLogPolicy(Context context) {
+        this(context.getResources().getInteger(R.integer.http_log_max_body_bytes),
+                BuildConfig.DEBUG ? 1 : context.getResources().getInteger(R.integer.http_log_body_sample_rate));
+    }
+
+    public HttpLogPolicy(int maxBodyBytes, int bodySampleRate) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.bodySampleRate = Math.max(bodySampleRate, 1);
+    }
+
+    public boolean isBodyLoggingEnabled() {
+        return BuildConfig.DEBUG || LMISApp.getInstance().isQAEnabled();
+    }
+}
@@ -22,10 +22,11 @@ package org.openlmis.core.network;
 import org.json.JSONObject;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.ProgramDataForm;
-import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.User;
 import org.openlmis.core.network.model.AppInfoRequest;
 import org.openlmis.core.network.model.CmmEntry;
+import org.openlmis.core.network.model.StockCardDigestRequest;
+import org.openlmis.core.network.model.StockCardDigestResponse;
 import org.openlmis.core.network.model.StockMovementEntry;
 import org.openlmis.core.network.model.SyncDownLatestProductsResponse;
 import org.openlmis.core.network.model.SyncDownProgramDataResponse;
@@ -39,13 +40,17 @@ import java.util.List;
 import retrofit.Callback;
 import retrofit.http.Body;
 import retrofit.http.GET;
+import retrofit.http.Header;
 import retrofit.http.POST;
 import retrofit.http.PUT;
 import retrofit.http.Path;
 import retrofit.http.Query;
+import retrofit.mime.TypedInput;
 
 public interface LMISRestApi {
 
+    String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     @POST("/rest-api/login")
     void authorizeUser(@Body User user, Callback<UserResponse> callback);
 
@@ -53,13 +58,13 @@ public interface LMISRestApi {
     //sync up
 
     @POST("/rest-api/requisitions")
-    SyncUpRequisitionResponse submitRequisition(@Body RnRForm rnRForm) throws LMISException;
+    SyncUpRequisitionResponse submitRequisition(@Body TypedInput rnrFormJson, @Header(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) throws LMISException;
 
     @POST("/rest-api/sdp-requisitions")
-    SyncUpRequisitionResponse submitEmergencyRequisition(@Body RnRForm rnRForm) throws LMISException;
+    SyncUpRequisitionResponse submitEmergencyRequisition(@Body TypedInput rnrFormJson, @Header(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) throws LMISException;
 
     @POST("/rest-api/facilities/{facilityId}/stockCards")
-    JSONObject syncUpStockMovementData(@Path("facilityId") String facilityId, @Body List<StockMovementEntry> entries) throws LMISException;
+    JSONObject syncUpStockMovementData(@Path("facilityId") String facilityId, @Body List<StockMovementEntry> entries, @Header(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) throws LMISException;
 
     @POST("/rest-api/facilities/{facilityId}/unSyncedStockCards")
     Void syncUpUnSyncedStockCards(@Path("facilityId") String facilityId, @Body List<String> unSyncedStockCardCodes) throws LMISException;
@@ -68,7 +73,7 @@ public interface LMISRestApi {
     Void syncUpArchivedProducts(@Path("facilityId") String facilityId, @Body List<String> archivedProductsCodes) throws LMISException;
 
     @PUT("/rest-api/facilities/{facilityId}/Cmms")
-    Void syncUpCmms(@Path("facilityId") String facilityId, @Body List<CmmEntry> cmms) throws LMISException;
+    Void syncUpCmms(@Path("facilityId") String facilityId, @Body List<CmmEntry> cmms, @Header(IDEMPOTENCY_KEY_HEADER) String idempotencyKey) throws LMISException;
 
     @POST("/rest-api/update-app-info")
     Void updateAppVersion(@Body AppInfoRequest appInfo) throws LMISException;
@@ -77,11 +82,17 @@ public interface LMISRestApi {
     //sync down
 
     @GET("/rest-api/requisitions")
-    SyncDownRequisitionsResponse fetchRequisitions(@Query("facilityCode") String facilityCode) throws LMISException;
+    SyncDownRequisitionsResponse fetchRequisitions(@Query("facilityCode") String facilityCode, @Query("afterUpdatedTime") String afterUpdatedTime) throws LMISException;
 
     @GET("/rest-api/facilities/{facilityId}/stockCards")
     SyncDownStockCardResponse fetchStockMovementData(@Path("facilityId") String facilityId, @Query("startTime") String startDate, @Query("endTime") String endDate) throws LMISException;
 
+    @GET("/rest-api/facilities/{facilityId}/stockCards")
+    SyncDownStockCardResponse fetchStockMovementData(@Path("facilityId") String facilityId, @Query("startTime") String startDate, @Query("endTime") String endDate, @Query("productCodes") String productCodes) throws LMISException;
+
+    @POST("/rest-api/facilities/{facilityId}/stockCardDigests")
+    StockCardDigestResponse compareStockCardDigests(@Path("facilityId") String facilityId, @Body StockCardDigestRequest digestRequest) throws LMISException;
+
     @GET("/rest-api/latest-products")
     SyncDownLatestProductsResponse fetchLatestProducts(@Query("afterUpdatedTime") String afterUpdatedTime) throws LMISException;
 
@@ -42,7 +42,7 @@ import org.openlmis.core.model.User;
 import org.openlmis.core.network.adapter.ProductAdapter;
 import org.openlmis.core.network.adapter.ProgramDataFormAdapter;
 import org.openlmis.core.network.adapter.RnrFormAdapter;
-import org.openlmis.core.network.adapter.StockCardAdapter;
+import org.openlmis.core.network.adapter.StockCardDecodeAdapter;
 import org.openlmis.core.network.model.DataErrorResponse;
 
 import java.security.cert.X509Certificate;
@@ -76,9 +76,8 @@ public class LMISRestManager {
         RestAdapter.Builder restBuilder = new RestAdapter.Builder()
                 .setEndpoint(baseUrl)
                 .setErrorHandler(new APIErrorHandler())
-                .setLogLevel(RestAdapter.LogLevel.FULL)
                 .setRequestInterceptor(getRequestInterceptor())
-                .setClient(getSSLClient())
+                .setClient(new LoggingClient(new MeteredClient(getSSLClient()), new HttpLogPolicy(context)))
                 .setConverter(registerTypeAdapter());
 
         lmisRestApi = restBuilder.build().create(LMISRestApi.class);
@@ -164,7 +163,7 @@ public class LMISRestManager {
         return new GsonConverter(new GsonBuilder()
                 .registerTypeAdapter(RnRForm.class, new RnrFormAdapter())
                 .registerTypeAdapter(Product.class, new ProductAdapter())
-                .registerTypeAdapter(StockCard.class, new StockCardAdapter())
+                .registerTypeAdapter(StockCard.class, new StockCardDecodeAdapter())
                 .registerTypeAdapter(ProgramDataForm.class, new ProgramDataFormAdapter())
                 .create());
     }
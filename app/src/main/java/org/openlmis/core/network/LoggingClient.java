@@ -0,0 +1,209 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.RestAdapter;
+import retrofit.android.AndroidLog;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * Logs method, url, headers and timing of every call. Bodies are logged for one call in
+ * {@link HttpLogPolicy#getBodySampleRate()} and cut at {@link HttpLogPolicy#getMaxBodyBytes()},
+ * a response body is never read further than that for logging.
+ */
+public class LoggingClient implements Client {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+
+    private final Client delegate;
+    private final HttpLogPolicy policy;
+    private final RestAdapter.Log log;
+    private final AtomicInteger callCount = new AtomicInteger();
+
+    public LoggingClient(Client delegate, HttpLogPolicy policy) {
+        this(delegate, policy, new AndroidLog("LMIS-HTTP"));
+    }
+
+    public LoggingClient(Client delegate, HttpLogPolicy policy, RestAdapter.Log log) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.log = log;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        boolean logBody = policy.isBodyLoggingEnabled() && callCount.getAndIncrement() % policy.getBodySampleRate() == 0;
+
+        log.log("---> HTTP " + request.getMethod() + " " + request.getUrl());
+        logHeaders(request.getHeaders());
+        if (logBody && request.getBody() != null) {
+            logRequestBody(request.getBody());
+        }
+
+        long start = System.currentTimeMillis();
+        Response response;
+        try {
+            response = delegate.execute(request);
+        } catch (IOException e) {
+            log.log("<--- HTTP FAILED " + request.getUrl() + " (" + (System.currentTimeMillis() - start) + "ms): " + e.getMessage());
+            throw e;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        if (response == null) {
+            return null;
+        }
+
+        log.log("<--- HTTP " + response.getStatus() + " " + request.getUrl() + " (" + elapsed + "ms)");
+        logHeaders(response.getHeaders());
+        if (logBody && response.getBody() != null) {
+            return logResponseBody(response);
+        }
+        return response;
+    }
+
+    private void logHeaders(List<Header> headers) {
+        for (Header header : headers) {
+            String value = AUTHORIZATION_HEADER.equalsIgnoreCase(header.getName()) ? "<redacted>" : header.getValue();
+            log.log(header.getName() + ": " + value);
+        }
+    }
+
+    private void logRequestBody(TypedOutput body) throws IOException {
+        PrefixOutputStream prefix = new PrefixOutputStream(policy.getMaxBodyBytes());
+        body.writeTo(prefix);
+        logBody(prefix.toByteArray(), prefix.getTotalBytes());
+    }
+
+    private Response logResponseBody(Response response) throws IOException {
+        TypedInput body = response.getBody();
+        if (body instanceof TypedByteArray) {
+            byte[] bytes = ((TypedByteArray) body).getBytes();
+            logBody(copyOf(bytes, Math.min(bytes.length, policy.getMaxBodyBytes())), bytes.length);
+            return response;
+        }
+
+        InputStream in = body.in();
+        byte[] prefix = readPrefix(in, policy.getMaxBodyBytes());
+        logBody(prefix, body.length());
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                new PrefixedTypedInput(body, prefix, in));
+    }
+
+    private void logBody(byte[] prefix, long totalBytes) {
+        log.log(new String(prefix, UTF_8));
+        if (totalBytes < 0 || totalBytes > prefix.length) {
+            log.log("... body truncated at " + prefix.length + " bytes" + (totalBytes < 0 ? "" : " of " + totalBytes));
+        }
+    }
+
+    private static byte[] readPrefix(InputStream in, int maxBytes) throws IOException {
+        byte[] buffer = new byte[maxBytes];
+        int total = 0;
+        while (total < maxBytes) {
+            int read = in.read(buffer, total, maxBytes - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return copyOf(buffer, total);
+    }
+
+    private static byte[] copyOf(byte[] bytes, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static class PrefixOutputStream extends OutputStream {
+        private final byte[] prefix;
+        private int prefixLength;
+        private long totalBytes;
+
+        PrefixOutputStream(int maxBytes) {
+            prefix = new byte[maxBytes];
+        }
+
+        @Override
+        public void write(int b) {
+            if (prefixLength < prefix.length) {
+                prefix[prefixLength++] = (byte) b;
+            }
+            totalBytes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            int copied = Math.min(length, prefix.length - prefixLength);
+            System.arraycopy(bytes, offset, prefix, prefixLength, copied);
+            prefixLength += copied;
+            totalBytes += length;
+        }
+
+        byte[] toByteArray() {
+            return copyOf(prefix, prefixLength);
+        }
+
+        long getTotalBytes() {
+            return totalBytes;
+        }
+    }
+
+    //hands the already logged prefix back in front of the rest of the stream
+    private static class PrefixedTypedInput implements TypedInput {
+        private final TypedInput body;
+        private final InputStream in;
+
+        PrefixedTypedInput(TypedInput body, byte[] prefix, InputStream rest) {
+            this.body = body;
+            this.in = new SequenceInputStream(new ByteArrayInputStream(prefix), rest);
+        }
+
+        @Override
+        public String mimeType() {
+            return body.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return body.length();
+        }
+
+        @Override
+        public InputStream in() {
+            return in;
+        }
+    }
+}
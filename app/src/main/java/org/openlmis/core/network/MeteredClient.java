@@ -0,0 +1,80 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.network;
+
+import org.openlmis.core.service.SyncMetricsRecorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import retrofit.client.Client;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+//while a sync step is measured the response body is read here, so the step's network time includes the download
+public class MeteredClient implements Client {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Client delegate;
+
+    public MeteredClient(Client delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!SyncMetricsRecorder.isMeasuring()) {
+            return delegate.execute(request);
+        }
+
+        long start = System.currentTimeMillis();
+        long requestBytes = request.getBody() == null ? 0 : request.getBody().length();
+        long responseBytes = 0;
+        try {
+            Response response = delegate.execute(request);
+            TypedInput body = response == null ? null : response.getBody();
+            if (body == null) {
+                return response;
+            }
+            byte[] bytes = readFully(body.in());
+            responseBytes = bytes.length;
+            return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(), new TypedByteArray(body.mimeType(), bytes));
+        } finally {
+            SyncMetricsRecorder.recordNetworkCall(System.currentTimeMillis() - start, requestBytes, responseBytes);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -25,7 +25,6 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.inject.Inject;
@@ -59,7 +58,6 @@ public class RnrFormAdapter implements JsonSerializer<RnRForm>, JsonDeserializer
     RnrFormSignatureRepository signatureRepository;
 
     private final Gson gson;
-    private final JsonParser jsonParser;
 
     public RnrFormAdapter() {
         RoboGuice.getInjector(LMISApp.getContext()).injectMembersWithoutViews(this);
@@ -67,7 +65,6 @@ public class RnrFormAdapter implements JsonSerializer<RnRForm>, JsonDeserializer
                 .registerTypeAdapter(RegimenItem.class, new RegimenItemAdapter())
                 .registerTypeAdapter(RnrFormItem.class, new RnrFormItemAdapter())
                 .create();
-        jsonParser = new JsonParser();
     }
 
     @Override
@@ -103,10 +100,10 @@ public class RnrFormAdapter implements JsonSerializer<RnRForm>, JsonDeserializer
         JsonObject root = gson.toJsonTree(rnRForm).getAsJsonObject();
         String programCode = rnRForm.getProgram().getProgramCode();
         List<RnRFormSignature> signatureList = signatureRepository.queryByRnrFormId(rnRForm.getId());
-        root.add("products", jsonParser.parse(gson.toJson(rnRForm.getRnrFormItemListWrapper())));
-        root.add("regimens", jsonParser.parse(gson.toJson(rnRForm.getRegimenItemListWrapper())));
-        root.add("patientQuantifications", jsonParser.parse(gson.toJson(rnRForm.getBaseInfoItemListWrapper())));
-        root.add("rnrSignatures", jsonParser.parse(gson.toJson(signatureList)));
+        root.add("products", gson.toJsonTree(rnRForm.getRnrFormItemListWrapper()));
+        root.add("regimens", gson.toJsonTree(rnRForm.getRegimenItemListWrapper()));
+        root.add("patientQuantifications", gson.toJsonTree(rnRForm.getBaseInfoItemListWrapper()));
+        root.add("rnrSignatures", gson.toJsonTree(signatureList));
         root.addProperty("agentCode", UserInfoMgr.getInstance().getUser().getFacilityCode());
         root.addProperty("programCode", programCode);
         return root;
@@ -0,0 +1,62 @@
+package org.openlmis.core.network.adapter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+import org.openlmis.core.model.Lot;
+import org.openlmis.core.model.LotMovementItem;
+import org.openlmis.core.model.LotOnHand;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+
+import java.util.List;
+
+/**
+ * Decodes a stock card without any database lookup. Product, lots and card id only hold
+ * what the server sent until they are resolved by {@link org.openlmis.core.model.service.StockCardResolver}.
+ */
+public class StockCardDecodeAdapter implements JsonDeserializer<StockCard> {
+
+    private final Gson gson;
+
+    public StockCardDecodeAdapter() {
+        gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation()
+                .registerTypeAdapter(StockMovementItem.class, new StockMovementItemAdapter())
+                .registerTypeAdapter(Product.class, new ProductAdapter())
+                .registerTypeAdapter(Lot.class, new LotAdapter())
+                .create();
+    }
+
+    @Override
+    public StockCard deserialize(JsonElement json, java.lang.reflect.Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+        StockCard stockCard = gson.fromJson(json, StockCard.class);
+
+        setupStockCardExpireDates(stockCard);
+
+        for (LotOnHand lotOnHand : stockCard.getLotOnHandListWrapper()) {
+            lotOnHand.getLot().setProduct(stockCard.getProduct());
+            lotOnHand.setStockCard(stockCard);
+        }
+
+        for (StockMovementItem stockMovementItem : stockCard.getStockMovementItemsWrapper()) {
+            stockMovementItem.setStockCard(stockCard);
+            for (LotMovementItem lotMovementItem : stockMovementItem.getLotMovementItemListWrapper()) {
+                lotMovementItem.getLot().setProduct(stockCard.getProduct());
+            }
+        }
+        return stockCard;
+    }
+
+    private void setupStockCardExpireDates(StockCard stockCard) {
+        List<StockMovementItem> wrapper = stockCard.getStockMovementItemsWrapper();
+        int size = wrapper.size();
+        if (size > 0) {
+            stockCard.setExpireDates(wrapper.get(size - 1).getExpireDates());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.openlmis.core.network.model;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.Charset;
+
+import lombok.Getter;
+
+/**
+ * Digest of the movements of one stock card within a sync window. Both sides build it the same way:
+ * a 64 bit FNV-1a hash over "movementDate|documentNumber|movementQuantity|reason|stockOnHand\n" of every
+ * movement, ordered by movement date then document number, sent as hex.
+ */
+@Getter
+public class StockCardDigest {
+    private final String productCode;
+    private final int movementCount;
+    private final String hash;
+
+    private StockCardDigest(String productCode, int movementCount, String hash) {
+        this.productCode = productCode;
+        this.movementCount = movementCount;
+        this.hash = hash;
+    }
+
+    public boolean matches(StockCardDigest other) {
+        return other != null && movementCount == other.movementCount && hash.equals(other.hash);
+    }
+
+    public static class Builder {
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        private final String productCode;
+        private int movementCount;
+        private long hash = FNV_OFFSET_BASIS;
+
+        public Builder(String productCode) {
+            this.productCode = productCode;
+        }
+
+        public Builder addMovement(String movementDate, String documentNumber, long movementQuantity, String reason, long stockOnHand) {
+            String canonical = movementDate + '|' + StringUtils.defaultString(documentNumber) + '|' + movementQuantity
+                    + '|' + StringUtils.defaultString(reason) + '|' + stockOnHand + '\n';
+            for (byte b : canonical.getBytes(UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= FNV_PRIME;
+            }
+            movementCount++;
+            return this;
+        }
+
+        public String getProductCode() {
+            return productCode;
+        }
+
+        public StockCardDigest build() {
+            return new StockCardDigest(productCode, movementCount, Long.toHexString(hash));
+        }
+    }
+}
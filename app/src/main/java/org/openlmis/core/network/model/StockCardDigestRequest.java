@@ -0,0 +1,18 @@
+package org.openlmis.core.network.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class StockCardDigestRequest {
+    private String startTime;
+    private String endTime;
+    private List<StockCardDigest> stockCards;
+
+    public StockCardDigestRequest(String startTime, String endTime, List<StockCardDigest> stockCards) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.stockCards = stockCards;
+    }
+}
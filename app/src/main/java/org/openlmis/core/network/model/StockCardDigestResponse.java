@@ -0,0 +1,11 @@
+package org.openlmis.core.network.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class StockCardDigestResponse {
+    //cards of the window whose server digest differs from the device one, or the device does not hold
+    List<String> changedProductCodes;
+}
@@ -29,4 +29,5 @@ import lombok.Setter;
 @Setter
 public class SyncDownRequisitionsResponse {
     List<RnRForm> requisitions;
+    String latestUpdatedTime;
 }
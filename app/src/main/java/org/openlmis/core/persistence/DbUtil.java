@@ -24,6 +24,7 @@ import android.database.sqlite.SQLiteOpenHelper;
 import com.google.inject.Inject;
 import com.j256.ormlite.android.AndroidConnectionSource;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
 
 import org.openlmis.core.LMISApp;
@@ -36,6 +37,10 @@ import static com.j256.ormlite.dao.DaoManager.createDao;
 
 public class DbUtil {
 
+    //database access through DbUtil is serialized, so writes from concurrent sync steps and screens never interleave.
+    //Transactions take it before the connection, so one never waits on a thread that holds the lock
+    private static final Object DB_LOCK = new Object();
+
     @Inject
     private Context context;
 
@@ -56,59 +61,81 @@ public class DbUtil {
 
     public <DomainType, ReturnType> ReturnType withDao(
             Class<DomainType> domainClass, Operation<DomainType, ReturnType> operation) throws LMISException {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
-        try {
-            Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return operation.operate(dao);
-        } catch (SQLException e) {
-            throw new LMISException(e);
+        synchronized (DB_LOCK) {
+            SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+            try {
+                Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
+                return operation.operate(dao);
+            } catch (SQLException e) {
+                throw new LMISException(e);
+            }
         }
     }
 
     public <DomainType, ReturnType> ReturnType withDao(
             Context context, Class<DomainType> domainClass, Operation<DomainType, ReturnType> operation) throws LMISException {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
-        try {
-            Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return operation.operate(dao);
-        } catch (SQLException e) {
-            throw new LMISException(e);
+        synchronized (DB_LOCK) {
+            SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+            try {
+                Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
+                return operation.operate(dao);
+            } catch (SQLException e) {
+                throw new LMISException(e);
+            }
         }
     }
 
     public <DomainType, ReturnType> ReturnType withDaoAsBatch(
             Context context, Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) throws LMISException {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
-        try {
-            final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return dao.callBatchTasks(new Callable<ReturnType>() {
-                @Override
-                public ReturnType call() throws Exception {
-                    return operation.operate(dao);
-                }
-            });
-        } catch (SQLException e) {
-            throw new LMISException(e);
-        } catch (Exception e) {
-            throw new LMISException(e);
+        synchronized (DB_LOCK) {
+            SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+            try {
+                final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
+                return dao.callBatchTasks(new Callable<ReturnType>() {
+                    @Override
+                    public ReturnType call() throws Exception {
+                        return operation.operate(dao);
+                    }
+                });
+            } catch (SQLException e) {
+                throw new LMISException(e);
+            } catch (Exception e) {
+                throw new LMISException(e);
+            }
         }
     }
 
     public <DomainType, ReturnType> ReturnType withDaoAsBatch(
             Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) throws LMISException {
-        SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
-        try {
-            final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
-            return dao.callBatchTasks(new Callable<ReturnType>() {
-                @Override
-                public ReturnType call() throws Exception {
-                    return operation.operate(dao);
-                }
-            });
-        } catch (SQLException e) {
-            throw new LMISException(e);
-        } catch (Exception e) {
-            throw new LMISException(e);
+        synchronized (DB_LOCK) {
+            SQLiteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+            try {
+                final Dao<DomainType, String> dao = initialiseDao(openHelper, domainClass);
+                return dao.callBatchTasks(new Callable<ReturnType>() {
+                    @Override
+                    public ReturnType call() throws Exception {
+                        return operation.operate(dao);
+                    }
+                });
+            } catch (SQLException e) {
+                throw new LMISException(e);
+            } catch (Exception e) {
+                throw new LMISException(e);
+            }
+        }
+    }
+
+    public <ReturnType> ReturnType callInTransaction(Callable<ReturnType> callable) throws SQLException {
+        synchronized (DB_LOCK) {
+            return TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), callable);
+        }
+    }
+
+    public void execSQL(String... sqls) {
+        synchronized (DB_LOCK) {
+            for (String sql : sqls) {
+                LmisSqliteOpenHelper.getInstance(context).getWritableDatabase().execSQL(sql);
+            }
         }
     }
 
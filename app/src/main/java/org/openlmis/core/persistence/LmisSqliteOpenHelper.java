@@ -25,6 +25,7 @@ import android.util.Log;
 import com.j256.ormlite.android.apptools.OrmLiteSqliteOpenHelper;
 import com.j256.ormlite.support.ConnectionSource;
 
+import org.openlmis.core.LMISApp;
 import org.openlmis.core.persistence.migrations.AddActiveColumnToProductTable;
 import org.openlmis.core.persistence.migrations.AddCategoryColumnToProductPrograms;
 import org.openlmis.core.persistence.migrations.AddCmmTable;
@@ -37,6 +38,7 @@ import org.openlmis.core.persistence.migrations.AddIsArchivedToProduct;
 import org.openlmis.core.persistence.migrations.AddIsCustomColumnToRegime;
 import org.openlmis.core.persistence.migrations.AddIsEmergencyColumnToProgram;
 import org.openlmis.core.persistence.migrations.AddIsKitColumnToProduct;
+import org.openlmis.core.persistence.migrations.AddLotExpiryIndexes;
 import org.openlmis.core.persistence.migrations.AddLotMovementItemsTable;
 import org.openlmis.core.persistence.migrations.AddLotOnHandTable;
 import org.openlmis.core.persistence.migrations.AddLotsTable;
@@ -44,12 +46,20 @@ import org.openlmis.core.persistence.migrations.AddLowStockAvgColumnToStockCardT
 import org.openlmis.core.persistence.migrations.AddManualAddColumnToRnrFormItemsTable;
 import org.openlmis.core.persistence.migrations.AddNewPrograms;
 import org.openlmis.core.persistence.migrations.AddParentCodeToProgramTable;
+import org.openlmis.core.persistence.migrations.AddProductSearchTable;
+import org.openlmis.core.persistence.migrations.AddProductSearchTextColumn;
 import org.openlmis.core.persistence.migrations.AddRapidTestColumnsTemplate;
 import org.openlmis.core.persistence.migrations.AddRapidTestProgram;
 import org.openlmis.core.persistence.migrations.AddRequestedColumnToStockItems;
+import org.openlmis.core.persistence.migrations.AddRnRFormSnapshotTable;
 import org.openlmis.core.persistence.migrations.AddSignatureFieldInStockMovementItemTable;
+import org.openlmis.core.persistence.migrations.AddStockItemsHistoryIndex;
+import org.openlmis.core.persistence.migrations.AddStockItemsMovementDateIndex;
+import org.openlmis.core.persistence.migrations.AddStockStatusColumnToStockCards;
 import org.openlmis.core.persistence.migrations.AddSubmittedDateToRnRForm;
 import org.openlmis.core.persistence.migrations.AddSyncErrorsMessageTable;
+import org.openlmis.core.persistence.migrations.AddSyncMetricsTable;
+import org.openlmis.core.persistence.migrations.AddSyncOutboxTable;
 import org.openlmis.core.persistence.migrations.AddSyncTagToStockMovementItem;
 import org.openlmis.core.persistence.migrations.ChangeMovementReasonToCode;
 import org.openlmis.core.persistence.migrations.ChangeProgramTableName;
@@ -127,13 +137,22 @@ public final class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
             add(new CreateProgramDataItemsTable());
             add(new CreateProgramDataFormSignatureTable());
             add(new AddDoneColumnToDraftInventoryTable());
+            add(new AddSyncOutboxTable());
+            add(new AddRnRFormSnapshotTable());
+            add(new AddSyncMetricsTable());
+            add(new AddStockStatusColumnToStockCards());
+            add(new AddLotExpiryIndexes());
+            add(new AddProductSearchTable());
+            add(new AddStockItemsMovementDateIndex());
+            add(new AddStockItemsHistoryIndex());
+            add(new AddProductSearchTextColumn());
         }
     };
     private static int instanceCount = 0;
     private static LmisSqliteOpenHelper _helperInstance;
 
     private LmisSqliteOpenHelper(Context context) {
-        super(context, "lmis_db", null, MIGRATIONS.size());
+        super(context, "lmis_db", cursorFactoryOf(context), MIGRATIONS.size());
         ++instanceCount;
         Log.d("LmisSqliteOpenHelper", "Instance Created : total count : " + instanceCount);
     }
@@ -145,6 +164,11 @@ public final class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
         return _helperInstance;
     }
 
+    private static SQLiteDatabase.CursorFactory cursorFactoryOf(Context context) {
+        Context application = context.getApplicationContext();
+        return application instanceof LMISApp ? ((LMISApp) application).getCursorFactory() : null;
+    }
+
     public static void closeHelper() {
         _helperInstance = null;
         --instanceCount;
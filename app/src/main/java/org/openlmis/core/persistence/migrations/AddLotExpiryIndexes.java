@@ -0,0 +1,11 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddLotExpiryIndexes extends Migration {
+    @Override
+    public void up() {
+        execSQL("CREATE INDEX `lots_expirationDate_idx` ON `lots` (`expirationDate`)");
+        execSQL("CREATE INDEX `lots_on_hand_lot_id_idx` ON `lots_on_hand` (`lot_id`)");
+    }
+}
@@ -0,0 +1,22 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddProductSearchTable extends Migration {
+    @Override
+    public void up() {
+        execSQL("CREATE VIRTUAL TABLE `products_fts` USING fts4(`code`, `primaryName`, `strength`, `type`)");
+        execSQL("INSERT INTO `products_fts` (`docid`, `code`, `primaryName`, `strength`, `type`) "
+                + "SELECT `id`, `code`, `primaryName`, `strength`, `type` FROM `products`");
+
+        //every write to products reaches the search table, whichever dao or raw statement made it
+        execSQL("CREATE TRIGGER `products_fts_after_insert` AFTER INSERT ON `products` BEGIN "
+                + "INSERT INTO `products_fts` (`docid`, `code`, `primaryName`, `strength`, `type`) "
+                + "VALUES (new.`id`, new.`code`, new.`primaryName`, new.`strength`, new.`type`); END");
+        execSQL("CREATE TRIGGER `products_fts_after_update` AFTER UPDATE OF `code`, `primaryName`, `strength`, `type` ON `products` BEGIN "
+                + "UPDATE `products_fts` SET `code` = new.`code`, `primaryName` = new.`primaryName`, "
+                + "`strength` = new.`strength`, `type` = new.`type` WHERE `docid` = old.`id`; END");
+        execSQL("CREATE TRIGGER `products_fts_after_delete` AFTER DELETE ON `products` BEGIN "
+                + "DELETE FROM `products_fts` WHERE `docid` = old.`id`; END");
+    }
+}
@@ -0,0 +1,51 @@
+package org.openlmis.core.persistence.migrations;
+
+import android.database.Cursor;
+
+import org.openlmis.core.model.Product;
+import org.openlmis.core.persistence.Migration;
+
+public class AddProductSearchTextColumn extends Migration {
+    @Override
+    public void up() {
+        execSQL("ALTER TABLE `products` ADD COLUMN `searchText` VARCHAR");
+        fillSearchTextOfExistingProducts();
+
+        //the search table now indexes the folded text the model writes, the simple tokenizer leaves accents and non ascii case alone
+        execSQL("DROP TRIGGER `products_fts_after_insert`");
+        execSQL("DROP TRIGGER `products_fts_after_update`");
+        execSQL("DROP TRIGGER `products_fts_after_delete`");
+        execSQL("DROP TABLE `products_fts`");
+        execSQL("CREATE VIRTUAL TABLE `products_fts` USING fts4(`searchText`)");
+        execSQL("INSERT INTO `products_fts` (`docid`, `searchText`) SELECT `id`, `searchText` FROM `products`");
+
+        execSQL("CREATE TRIGGER `products_fts_after_insert` AFTER INSERT ON `products` BEGIN "
+                + "INSERT INTO `products_fts` (`docid`, `searchText`) VALUES (new.`id`, new.`searchText`); END");
+        execSQL("CREATE TRIGGER `products_fts_after_update` AFTER UPDATE OF `searchText` ON `products` BEGIN "
+                + "UPDATE `products_fts` SET `searchText` = new.`searchText` WHERE `docid` = old.`id`; END");
+        execSQL("CREATE TRIGGER `products_fts_after_delete` AFTER DELETE ON `products` BEGIN "
+                + "DELETE FROM `products_fts` WHERE `docid` = old.`id`; END");
+    }
+
+    //existing products get the text the model computes
+    private void fillSearchTextOfExistingProducts() {
+        if (db == null) {
+            return;
+        }
+        Cursor cursor = db.rawQuery("SELECT id, code, primaryName, strength, type FROM products", null);
+        if (cursor.moveToFirst()) {
+            do {
+                Product product = new Product();
+                product.setCode(cursor.getString(cursor.getColumnIndexOrThrow("code")));
+                product.setPrimaryName(cursor.getString(cursor.getColumnIndexOrThrow("primaryName")));
+                product.setStrength(cursor.getString(cursor.getColumnIndexOrThrow("strength")));
+                product.setType(cursor.getString(cursor.getColumnIndexOrThrow("type")));
+                db.execSQL("UPDATE products SET searchText = ? WHERE id = ?",
+                        new Object[]{product.getSearchText(), cursor.getLong(cursor.getColumnIndexOrThrow("id"))});
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+}
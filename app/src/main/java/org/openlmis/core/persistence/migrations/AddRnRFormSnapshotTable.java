@@ -0,0 +1,17 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddRnRFormSnapshotTable extends Migration {
+    @Override
+    public void up() {
+        execSQL("create table `rnr_form_snapshots` "
+                + "(`createdAt` VARCHAR NOT NULL, "
+                + "`updatedAt` VARCHAR NOT NULL, "
+                + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "`formId` BIGINT NOT NULL UNIQUE, "
+                + "`emergency` BOOLEAN DEFAULT 0, "
+                + "`idempotencyKey` VARCHAR NOT NULL, "
+                + "`payload` BLOB NOT NULL) ");
+    }
+}
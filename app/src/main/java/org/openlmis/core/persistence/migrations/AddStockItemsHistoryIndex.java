@@ -0,0 +1,10 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddStockItemsHistoryIndex extends Migration {
+    @Override
+    public void up() {
+        execSQL("CREATE INDEX `stock_items_stockCard_id_movementDate_createdTime_idx` ON `stock_items` (`stockCard_id`, `movementDate`, `createdTime`, `id`)");
+    }
+}
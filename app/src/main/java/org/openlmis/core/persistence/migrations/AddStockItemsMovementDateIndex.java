@@ -0,0 +1,10 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddStockItemsMovementDateIndex extends Migration {
+    @Override
+    public void up() {
+        execSQL("CREATE INDEX `stock_items_movementDate_stockCard_id_idx` ON `stock_items` (`movementDate`, `stockCard_id`)");
+    }
+}
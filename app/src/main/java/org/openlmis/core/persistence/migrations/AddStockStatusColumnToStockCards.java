@@ -0,0 +1,52 @@
+package org.openlmis.core.persistence.migrations;
+
+import android.database.Cursor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.persistence.Migration;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+public class AddStockStatusColumnToStockCards extends Migration {
+    @Override
+    public void up() {
+        execSQL("ALTER TABLE 'stock_cards' ADD COLUMN stockStatus INTEGER NOT NULL DEFAULT " + StockCard.StockStatus.STOCK_OUT.ordinal());
+        execSQL("CREATE INDEX `stock_cards_stockStatus_idx` ON `stock_cards` (`stockStatus`)");
+
+        //existing cards get the status the model computes, one update per status
+        for (Map.Entry<StockCard.StockStatus, List<Long>> entry : stockCardIdsGroupByStatus().entrySet()) {
+            execSQL("UPDATE stock_cards SET stockStatus = " + entry.getKey().ordinal()
+                    + " WHERE id IN (" + StringUtils.join(entry.getValue(), ",") + ")");
+        }
+    }
+
+    private Map<StockCard.StockStatus, List<Long>> stockCardIdsGroupByStatus() {
+        Map<StockCard.StockStatus, List<Long>> stockCardIds = new EnumMap<>(StockCard.StockStatus.class);
+        if (db == null) {
+            return stockCardIds;
+        }
+        Cursor cursor = db.rawQuery("SELECT id, stockOnHand, avgMonthlyConsumption FROM stock_cards", null);
+        if (cursor.moveToFirst()) {
+            do {
+                StockCard stockCard = new StockCard();
+                stockCard.setStockOnHand(cursor.getLong(cursor.getColumnIndexOrThrow("stockOnHand")));
+                stockCard.setAvgMonthlyConsumption(cursor.getFloat(cursor.getColumnIndexOrThrow("avgMonthlyConsumption")));
+
+                List<Long> idsOfStatus = stockCardIds.get(stockCard.getStockStatus());
+                if (idsOfStatus == null) {
+                    idsOfStatus = new ArrayList<>();
+                    stockCardIds.put(stockCard.getStockStatus(), idsOfStatus);
+                }
+                idsOfStatus.add(cursor.getLong(cursor.getColumnIndexOrThrow("id")));
+            } while (cursor.moveToNext());
+        }
+        if (!cursor.isClosed()) {
+            cursor.close();
+        }
+        return stockCardIds;
+    }
+}
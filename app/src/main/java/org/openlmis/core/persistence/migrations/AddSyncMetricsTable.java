@@ -0,0 +1,25 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddSyncMetricsTable extends Migration {
+    @Override
+    public void up() {
+        execSQL("create table `sync_metrics` "
+                + "(`createdAt` VARCHAR NOT NULL, "
+                + "`updatedAt` VARCHAR NOT NULL, "
+                + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "`runId` VARCHAR, "
+                + "`step` VARCHAR, "
+                + "`startedAt` BIGINT NOT NULL DEFAULT 0, "
+                + "`totalMillis` BIGINT NOT NULL DEFAULT 0, "
+                + "`networkMillis` BIGINT NOT NULL DEFAULT 0, "
+                + "`requestCount` INTEGER NOT NULL DEFAULT 0, "
+                + "`requestBytes` BIGINT NOT NULL DEFAULT 0, "
+                + "`responseBytes` BIGINT NOT NULL DEFAULT 0, "
+                + "`recordCount` INTEGER NOT NULL DEFAULT 0, "
+                + "`succeeded` BOOLEAN DEFAULT 1, "
+                + "`failureReason` VARCHAR) ");
+        execSQL("CREATE INDEX `sync_metrics_startedAt_idx` ON `sync_metrics` (`startedAt`)");
+    }
+}
@@ -0,0 +1,29 @@
+package org.openlmis.core.persistence.migrations;
+
+import org.openlmis.core.persistence.Migration;
+
+public class AddSyncOutboxTable extends Migration {
+    @Override
+    public void up() {
+        execSQL("create table `sync_outbox` "
+                + "(`createdAt` VARCHAR NOT NULL, "
+                + "`updatedAt` VARCHAR NOT NULL, "
+                + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "`syncType` VARCHAR NOT NULL, "
+                + "`syncObjectId` BIGINT NOT NULL, "
+                + "`idempotencyKey` VARCHAR NOT NULL, "
+                + "`status` VARCHAR NOT NULL, "
+                + "`attempts` INTEGER NOT NULL DEFAULT 0, "
+                + "`nextAttemptTime` BIGINT NOT NULL DEFAULT 0, "
+                + "`lastError` VARCHAR, "
+                + "UNIQUE (`syncType`, `syncObjectId`)) ");
+        execSQL("CREATE INDEX `sync_outbox_status_type_next_attempt_idx` ON `sync_outbox` (`status`, `syncType`, `nextAttemptTime`)");
+
+        execSQL("INSERT INTO `sync_outbox` (`createdAt`, `updatedAt`, `syncType`, `syncObjectId`, `idempotencyKey`, `status`) "
+                + "SELECT datetime('now', 'localtime'), datetime('now', 'localtime'), 'StockCards', `id`, lower(hex(randomblob(16))), 'PENDING' "
+                + "FROM `stock_items` WHERE `synced` = 0 OR `synced` IS NULL");
+        execSQL("INSERT INTO `sync_outbox` (`createdAt`, `updatedAt`, `syncType`, `syncObjectId`, `idempotencyKey`, `status`) "
+                + "SELECT datetime('now', 'localtime'), datetime('now', 'localtime'), 'Cmm', `id`, lower(hex(randomblob(16))), 'PENDING' "
+                + "FROM `cmm` WHERE `synced` = 0 OR `synced` IS NULL");
+    }
+}
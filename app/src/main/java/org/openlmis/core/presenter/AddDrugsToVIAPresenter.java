@@ -30,6 +30,8 @@ public class AddDrugsToVIAPresenter extends Presenter {
     @Getter
     final List<InventoryViewModel> inventoryViewModelList = new ArrayList<>();
 
+    private List<String> existingProductCodes = new ArrayList<>();
+
     public AddDrugsToVIAPresenter() {
     }
 
@@ -37,25 +39,27 @@ public class AddDrugsToVIAPresenter extends Presenter {
     public void attachView(BaseView v) {
     }
 
-    public Observable<Void> loadActiveProductsNotInVIAForm(final List<String> existingProducts) {
-        return Observable.create(new Observable.OnSubscribe<Void>() {
+    public Observable<List<InventoryViewModel>> loadActiveProductsNotInVIAForm(final List<String> existingProducts) {
+        if (existingProducts != null) {
+            existingProductCodes = existingProducts;
+        }
+        return searchActiveProductsNotInVIAForm(null);
+    }
+
+    //only the first matches are loaded, the adapter keeps the checked products of earlier searches in inventoryViewModelList
+    public Observable<List<InventoryViewModel>> searchActiveProductsNotInVIAForm(final String keyword) {
+        return Observable.create(new Observable.OnSubscribe<List<InventoryViewModel>>() {
             @Override
-            public void call(final Subscriber<? super Void> subscriber) {
+            public void call(final Subscriber<? super List<InventoryViewModel>> subscriber) {
                 try {
-                    inventoryViewModelList.addAll(FluentIterable.from(productRepository.queryActiveProductsInVIAProgramButNotInDraftVIAForm())
-                            .filter(new Predicate<Product>() {
-                                @Override
-                                public boolean apply(Product product) {
-                                    return !existingProducts.contains(product.getCode());
-                                }
-                            })
+                    List<Product> products = productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm(keyword, existingProductCodes, ProductRepository.SEARCH_LIMIT);
+                    subscriber.onNext(FluentIterable.from(products)
                             .transform(new Function<Product, InventoryViewModel>() {
                                 @Override
                                 public InventoryViewModel apply(Product product) {
                                     return new AddDrugsToViaInventoryViewModel(product);
                                 }
                             }).toList());
-                    subscriber.onNext(null);
                     subscriber.onCompleted();
                 } catch (LMISException e) {
                     e.reportToFabric();
@@ -2,19 +2,22 @@ package org.openlmis.core.presenter;
 
 import com.google.inject.Inject;
 
+import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.exceptions.ViewNotMatchException;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.repository.StockMovementRepository;
 import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.utils.ToastUtil;
 import org.openlmis.core.view.BaseView;
 import org.openlmis.core.view.viewmodel.StockHistoryViewModel;
-import org.roboguice.shaded.goole.common.base.Function;
-import org.roboguice.shaded.goole.common.base.Predicate;
-import org.roboguice.shaded.goole.common.collect.FluentIterable;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.Observer;
@@ -25,29 +28,59 @@ import rx.schedulers.Schedulers;
 
 public class AllDrugsMovementPresenter extends Presenter {
 
+    static final int PAGE_SIZE = 20;
+
     @Inject
     StockRepository stockRepository;
 
+    @Inject
+    StockMovementRepository stockMovementRepository;
+
     AllDrugsMovementView view;
 
     List<StockHistoryViewModel> viewModelList = new ArrayList<>();
 
-    List<StockHistoryViewModel> filteredViewModelList = new ArrayList<>();
+    private Date movementWindowStart;
+    private long productCount;
+    private long movementCount;
+    private boolean hasMorePages;
+    private boolean isLoadingPage;
+    private Subscription pageSubscription;
 
     @Override
     public void attachView(BaseView v) throws ViewNotMatchException {
         view = (AllDrugsMovementView) v;
     }
 
+    //only the first page of cards with movements in the last days is loaded, with just the movements in that window
     public void loadMovementHistory(final int days) {
+        movementWindowStart = DateUtil.minusDayOfMonth(new Date(LMISApp.getInstance().getCurrentTimeMillis()), days);
         view.loading();
-        Subscription subscription = Observable.create(new Observable.OnSubscribe<List<StockHistoryViewModel>>() {
+        loadPage(0);
+    }
+
+    public void loadNextPage() {
+        if (!hasMorePages || isLoadingPage) {
+            return;
+        }
+        loadPage(viewModelList.size());
+    }
+
+    private void loadPage(final int offset) {
+        if (pageSubscription != null) {
+            pageSubscription.unsubscribe();
+        }
+        isLoadingPage = true;
+        final Date since = movementWindowStart;
+        pageSubscription = Observable.create(new Observable.OnSubscribe<List<StockHistoryViewModel>>() {
             @Override
             public void call(Subscriber<? super List<StockHistoryViewModel>> subscriber) {
                 try {
-                    loadAllMovementHistory();
-                    filterViewModels(days);
-                    subscriber.onNext(filteredViewModelList);
+                    if (offset == 0) {
+                        productCount = stockMovementRepository.countStockCardsWithMovementsSince(since);
+                        movementCount = stockMovementRepository.countStockMovementsSince(since);
+                    }
+                    subscriber.onNext(loadMovementHistoryPage(since, offset));
                     subscriber.onCompleted();
                 } catch (Exception e) {
                     subscriber.onError(e);
@@ -56,57 +89,57 @@ public class AllDrugsMovementPresenter extends Presenter {
         }).observeOn(AndroidSchedulers.mainThread()).subscribeOn(Schedulers.io()).subscribe(new Observer<List<StockHistoryViewModel>>() {
             @Override
             public void onCompleted() {
+                isLoadingPage = false;
                 view.loaded();
             }
 
             @Override
             public void onError(Throwable e) {
+                isLoadingPage = false;
                 view.loaded();
                 new LMISException(e).reportToFabric();
                 ToastUtil.show(e.getMessage());
             }
 
             @Override
-            public void onNext(List<StockHistoryViewModel> stockMovementHistoryViewModels) {
-                view.refreshRecyclerView(stockMovementHistoryViewModels);
-                view.updateHistoryCount(filteredViewModelList.size(), getMovementCount());
+            public void onNext(List<StockHistoryViewModel> stockHistoryViewModels) {
+                hasMorePages = stockHistoryViewModels.size() == PAGE_SIZE;
+                if (offset == 0) {
+                    viewModelList.clear();
+                    viewModelList.addAll(stockHistoryViewModels);
+                    view.refreshRecyclerView(stockHistoryViewModels);
+                    view.updateHistoryCount((int) productCount, (int) movementCount);
+                } else {
+                    viewModelList.addAll(stockHistoryViewModels);
+                    view.appendToRecyclerView(stockHistoryViewModels);
+                }
             }
         });
-        subscriptions.add(subscription);
+        subscriptions.add(pageSubscription);
     }
 
-    private int getMovementCount() {
-        int movementCount = 0;
-        for (StockHistoryViewModel viewModel : filteredViewModelList) {
-            movementCount += viewModel.getFilteredMovementItemViewModelList().size();
+    protected List<StockHistoryViewModel> loadMovementHistoryPage(Date since, int offset) {
+        List<StockCard> stockCards = stockRepository.listStockCardsWithMovementsSince(since, offset, PAGE_SIZE);
+        List<Long> stockCardIds = new ArrayList<>();
+        for (StockCard stockCard : stockCards) {
+            stockCardIds.add(stockCard.getId());
         }
-        return movementCount;
-    }
-
-    protected void filterViewModels(final int days) {
-        filteredViewModelList.clear();
-        filteredViewModelList.addAll(FluentIterable.from(viewModelList).filter(new Predicate<StockHistoryViewModel>() {
-            @Override
-            public boolean apply(StockHistoryViewModel stockHistoryViewModel) {
-                return !stockHistoryViewModel.filter(days).isEmpty();
-            }
-        }).toList());
-    }
+        Map<Long, List<StockMovementItem>> stockMovementItems = stockMovementRepository.queryStockMovementsSinceGroupByStockCardId(stockCardIds, since);
 
-    protected void loadAllMovementHistory() {
-        if (viewModelList.isEmpty()) {
-            viewModelList.addAll(FluentIterable.from(stockRepository.list()).transform(new Function<StockCard, StockHistoryViewModel>() {
-                @Override
-                public StockHistoryViewModel apply(StockCard stockCard) {
-                    return new StockHistoryViewModel(stockCard);
-                }
-            }).toList());
+        List<StockHistoryViewModel> stockHistoryViewModels = new ArrayList<>();
+        for (StockCard stockCard : stockCards) {
+            List<StockMovementItem> itemsOfStockCard = stockMovementItems.get(stockCard.getId());
+            stockHistoryViewModels.add(new StockHistoryViewModel(stockCard,
+                    itemsOfStockCard == null ? new ArrayList<StockMovementItem>() : itemsOfStockCard));
         }
+        return stockHistoryViewModels;
     }
 
     public interface AllDrugsMovementView extends BaseView {
         void refreshRecyclerView(List<StockHistoryViewModel> stockHistoryViewModels);
 
+        void appendToRecyclerView(List<StockHistoryViewModel> stockHistoryViewModels);
+
         void updateHistoryCount(int productCount, int movementCount);
     }
 }
@@ -100,12 +100,13 @@ public class ProductPresenter extends Presenter {
         return Strings.join("+", list);
     }
 
-    public Observable<List<InventoryViewModel>> loadEmergencyProducts() {
+    //only the first matches are loaded, an empty keyword opens the screen with the first products by name
+    public Observable<List<InventoryViewModel>> searchEmergencyProducts(final String keyword) {
         return Observable.create(new Observable.OnSubscribe<List<InventoryViewModel>>() {
             @Override
             public void call(final Subscriber<? super List<InventoryViewModel>> subscriber) {
                 try {
-                    ImmutableList<InventoryViewModel> inventoryViewModels = from(stockRepository.listEmergencyStockCards()).transform(new Function<StockCard, InventoryViewModel>() {
+                    ImmutableList<InventoryViewModel> inventoryViewModels = from(stockRepository.searchEmergencyStockCards(keyword, ProductRepository.SEARCH_LIMIT)).transform(new Function<StockCard, InventoryViewModel>() {
                         @Override
                         public InventoryViewModel apply(StockCard stockCard) {
                             return InventoryViewModel.buildEmergencyModel(stockCard);
@@ -24,6 +24,7 @@ import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.Product.IsKit;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockCardSummary;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.model.service.RequisitionPeriodService;
@@ -36,6 +37,7 @@ import org.roboguice.shaded.goole.common.base.Predicate;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.Observer;
@@ -48,9 +50,17 @@ import static org.roboguice.shaded.goole.common.collect.FluentIterable.from;
 
 public class StockCardPresenter extends Presenter {
 
+    static final int PAGE_SIZE = 50;
+    private static final int ALL_REMAINING = -1;
 
     private List<InventoryViewModel> inventoryViewModels;
 
+    private boolean hasMorePages;
+    private boolean isLoadingPage;
+    private long overviewTotal;
+    private Subscription pageSubscription;
+    private Map<Long, Float> recalculatedAvgMonthlyConsumptions;
+
     @Inject
     StockRepository stockRepository;
     @Inject
@@ -72,23 +82,156 @@ public class StockCardPresenter extends Presenter {
         return inventoryViewModels;
     }
 
+    public long getOverviewTotal() {
+        return overviewTotal;
+    }
+
     public void loadStockCards(ArchiveStatus status) {
         view.loading();
         Subscription subscription = getLoadStockCardsObservable(status).subscribe(afterLoadHandler);
         subscriptions.add(subscription);
     }
 
+    public void loadStockCardsInStatus(final StockCard.StockStatus stockStatus) {
+        view.loading();
+        Subscription subscription = Observable.create(new Observable.OnSubscribe<List<StockCard>>() {
+            @Override
+            public void call(Subscriber<? super List<StockCard>> subscriber) {
+                try {
+                    stockService.monthlyUpdateAvgMonthlyConsumption();
+                    subscriber.onNext(stockRepository.listOverviewStockCardsByStatus(stockStatus));
+                    subscriber.onCompleted();
+                } catch (LMISException e) {
+                    subscriber.onError(e);
+                }
+            }
+        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(afterLoadHandler);
+        subscriptions.add(subscription);
+    }
+
     public void loadKits() {
         view.loading();
         Subscription subscription = createOrGetKitStockCardsObservable().subscribe(afterLoadHandler);
         subscriptions.add(subscription);
     }
 
-    public void refreshStockCardViewModelsSOH() {
+    //reloads at least as many rows as are shown, so coming back from a stock card keeps the list where it was
+    public void loadOverviewStockCards() {
+        view.loading();
+        loadOverviewPage(0, Math.max(PAGE_SIZE, inventoryViewModels.size()));
+    }
+
+    public void loadNextOverviewPage() {
+        if (!hasMorePages || isLoadingPage) {
+            return;
+        }
+        loadOverviewPage(inventoryViewModels.size(), PAGE_SIZE);
+    }
+
+    //searching and sorting by anything but name need every row
+    public void loadRemainingOverviewPages() {
+        if (!hasMorePages) {
+            return;
+        }
+        loadOverviewPage(inventoryViewModels.size(), ALL_REMAINING);
+    }
+
+    private void loadOverviewPage(final long offset, final long limit) {
+        if (pageSubscription != null) {
+            pageSubscription.unsubscribe();
+        }
+        isLoadingPage = true;
+        pageSubscription = Observable.create(new Observable.OnSubscribe<List<StockCardSummary>>() {
+            @Override
+            public void call(Subscriber<? super List<StockCardSummary>> subscriber) {
+                if (offset == 0) {
+                    overviewTotal = countOverviewStockCards();
+                }
+                subscriber.onNext(stockRepository.listOverviewStockCardSummaries(offset, limit));
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(new Observer<List<StockCardSummary>>() {
+            @Override
+            public void onCompleted() {
+                isLoadingPage = false;
+                view.loaded();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                isLoadingPage = false;
+                e.printStackTrace();
+                ToastUtil.show(e.getMessage());
+                view.loaded();
+            }
+
+            @Override
+            public void onNext(List<StockCardSummary> stockCardSummaries) {
+                if (offset == 0) {
+                    inventoryViewModels.clear();
+                }
+                hasMorePages = limit != ALL_REMAINING && stockCardSummaries.size() == limit;
+                for (StockCardSummary stockCardSummary : stockCardSummaries) {
+                    inventoryViewModels.add(InventoryViewModel.buildFromSummary(stockCardSummary));
+                }
+                applyRecalculatedAvgMonthlyConsumptions();
+                view.refresh(inventoryViewModels);
+                if (offset == 0) {
+                    updateAvgMonthlyConsumptionInBackground();
+                }
+            }
+        });
+        subscriptions.add(pageSubscription);
+    }
+
+    private long countOverviewStockCards() {
+        long total = 0;
+        for (Long count : stockRepository.countOverviewStockCardsGroupByStatus().values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    //the first page is shown with the stored CMM, a new period's CMM is pushed to the loaded rows once calculated
+    private void updateAvgMonthlyConsumptionInBackground() {
+        Subscription subscription = Observable.create(new Observable.OnSubscribe<Map<Long, Float>>() {
+            @Override
+            public void call(Subscriber<? super Map<Long, Float>> subscriber) {
+                if (stockService.monthlyUpdateAvgMonthlyConsumption()) {
+                    subscriber.onNext(stockRepository.queryAvgMonthlyConsumptionGroupByStockCardId());
+                }
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(new Observer<Map<Long, Float>>() {
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                e.printStackTrace();
+            }
+
+            @Override
+            public void onNext(Map<Long, Float> avgMonthlyConsumptions) {
+                recalculatedAvgMonthlyConsumptions = avgMonthlyConsumptions;
+                applyRecalculatedAvgMonthlyConsumptions();
+                view.refreshStockStatus();
+            }
+        });
+        subscriptions.add(subscription);
+    }
+
+    //pages read while the CMM was being calculated get the new values too
+    private void applyRecalculatedAvgMonthlyConsumptions() {
+        if (recalculatedAvgMonthlyConsumptions == null) {
+            return;
+        }
         for (InventoryViewModel inventoryViewModel : inventoryViewModels) {
-            final StockCard stockCard = inventoryViewModel.getStockCard();
-            stockRepository.refresh(stockCard);
-            inventoryViewModel.setStockOnHand(stockCard.getStockOnHand());
+            Float avgMonthlyConsumption = recalculatedAvgMonthlyConsumptions.get(inventoryViewModel.getStockCardId());
+            if (avgMonthlyConsumption != null) {
+                inventoryViewModel.getStockCard().setAvgMonthlyConsumption(avgMonthlyConsumption);
+            }
         }
     }
 
@@ -216,5 +359,7 @@ public class StockCardPresenter extends Presenter {
 
     public interface StockCardListView extends BaseView {
         void refresh(List<InventoryViewModel> data);
+
+        void refreshStockStatus();
     }
 }
@@ -59,6 +59,7 @@ public class StockMovementHistoryPresenter extends Presenter {
     Context context;
     public static final long MAXROWS = 30L;
     private long stockCardId;
+    private StockMovementItem oldestLoadedMovementItem;
 
     @Inject
     private StockMovementRepository stockMovementRepository;
@@ -68,12 +69,17 @@ public class StockMovementHistoryPresenter extends Presenter {
         this.view = (StockMovementHistoryView) v;
     }
 
-    public void loadStockMovementViewModels(final long startIndex) {
+    //each call loads the page of movements right before the oldest one shown
+    public void loadStockMovementViewModels() {
         Subscription subscription = Observable.create(new Observable.OnSubscribe<List<StockMovementViewModel>>() {
             @Override
             public void call(Subscriber<? super List<StockMovementViewModel>> subscriber) {
                 try {
-                    List<StockMovementViewModel> list = from(stockMovementRepository.queryStockMovementHistory(stockCardId, startIndex, MAXROWS)).transform(new Function<StockMovementItem, StockMovementViewModel>() {
+                    List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCardId, oldestLoadedMovementItem, MAXROWS);
+                    if (!stockMovementItems.isEmpty()) {
+                        oldestLoadedMovementItem = stockMovementItems.get(0);
+                    }
+                    List<StockMovementViewModel> list = from(stockMovementItems).transform(new Function<StockMovementItem, StockMovementViewModel>() {
                         @Override
                         public StockMovementViewModel apply(StockMovementItem stockMovementItem) {
                             return new StockMovementViewModel(stockMovementItem);
@@ -2,20 +2,35 @@ package org.openlmis.core.presenter;
 
 import com.google.inject.Inject;
 
+import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.exceptions.ViewNotMatchException;
+import org.openlmis.core.model.SyncStepSummary;
 import org.openlmis.core.model.SyncType;
 import org.openlmis.core.model.repository.SyncErrorsRepository;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
+import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.view.BaseView;
 import org.openlmis.core.view.widget.SyncDateBottomSheet;
 
+import java.util.List;
+
 public class SyncErrorsPresenter extends Presenter {
 
+    public static final long SYNC_PERFORMANCE_WINDOW_MILLIS = 7 * DateUtil.MILLISECONDS_DAY;
+
     private SyncDateBottomSheet view;
 
     @Inject
     SyncErrorsRepository repository;
 
+    @Inject
+    SyncMetricRepository syncMetricRepository;
+
+    @Inject
+    SyncOutboxRepository syncOutboxRepository;
+
     @Override
     public void attachView(BaseView v) throws ViewNotMatchException {
         this.view = (SyncDateBottomSheet) v;
@@ -25,8 +40,18 @@ public class SyncErrorsPresenter extends Presenter {
         return hasSyncError(SyncType.RnRForm);
     }
 
+    //movements and cmms the server kept rejecting are no longer sent, they are shown until they are written again
     public boolean hasStockCardSyncError() {
-        return hasSyncError(SyncType.StockCards);
+        return hasSyncError(SyncType.StockCards) || hasDeadLetters();
+    }
+
+    private boolean hasDeadLetters() {
+        try {
+            return syncOutboxRepository.hasDeadLetters();
+        } catch (LMISException e) {
+            e.reportToFabric();
+            return false;
+        }
     }
 
     private boolean hasSyncError(SyncType syncType) {
@@ -37,4 +62,8 @@ public class SyncErrorsPresenter extends Presenter {
             return false;
         }
     }
+
+    public List<SyncStepSummary> getRecentSyncStepSummaries() {
+        return syncMetricRepository.querySummariesSince(LMISApp.getInstance().getCurrentTimeMillis() - SYNC_PERFORMANCE_WINDOW_MILLIS);
+    }
 }
@@ -12,6 +12,7 @@ import org.openlmis.core.model.LotOnHand;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.repository.LotRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.utils.DateUtil;
@@ -24,8 +25,11 @@ import org.roboguice.shaded.goole.common.base.Predicate;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import lombok.Getter;
 import rx.Observable;
@@ -40,6 +44,9 @@ public class UnpackKitPresenter extends Presenter {
     @Inject
     private StockRepository stockRepository;
 
+    @Inject
+    private LotRepository lotRepository;
+
     protected String kitCode;
 
     @Getter
@@ -59,11 +66,16 @@ public class UnpackKitPresenter extends Presenter {
                 try {
                     UnpackKitPresenter.this.kitCode = kitCode;
                     inventoryViewModels.clear();
-                    List<KitProduct> kitProducts = productRepository.queryKitProductByKitCode(kitCode);
+                    List<KitProduct> kitProducts = productRepository.getKitGraph().itemsOf(kitCode);
+                    Map<String, Product> products = queryKitItemsGroupByCode(kitProducts);
+                    Map<Long, List<LotOnHand>> lotsOnHand = lotRepository.queryNonEmptyLotsOnHandGroupByProductId(productIdsOf(products.values()));
                     for (KitProduct kitProduct : kitProducts) {
-                        final Product product = productRepository.getByCode(kitProduct.getProductCode());
+                        final Product product = products.get(kitProduct.getProductCode());
+                        if (product == null) {
+                            continue;
+                        }
                         InventoryViewModel inventoryViewModel = new UnpackKitInventoryViewModel(product);
-                        setExistingLotViewModels(inventoryViewModel);
+                        setExistingLotViewModels(inventoryViewModel, lotsOnHand.get(product.getId()));
                         inventoryViewModel.setKitExpectQuantity(kitProduct.getQuantity() * kitNum);
                         inventoryViewModel.setChecked(true);
                         inventoryViewModels.add(inventoryViewModel);
@@ -83,26 +95,27 @@ public class UnpackKitPresenter extends Presenter {
             @Override
             public void call(final Subscriber<? super Void> subscriber) {
                 try {
-                    List<StockCard> stockCards = new ArrayList<>();
-                    stockCards.addAll(FluentIterable.from(inventoryViewModels).filter(new Predicate<InventoryViewModel>() {
+                    List<InventoryViewModel> unpackedViewModels = FluentIterable.from(inventoryViewModels).filter(new Predicate<InventoryViewModel>() {
                         @Override
                         public boolean apply(InventoryViewModel inventoryViewModel) {
                             return inventoryViewModel.getLotListQuantityTotalAmount() > 0;
                         }
-                    }).transform(new Function<InventoryViewModel, StockCard>() {
-                        @Override
-                        public StockCard apply(InventoryViewModel inventoryViewModel) {
-                            try {
-                                return createStockCardForProductWithLot(inventoryViewModel, documentNumber, signature);
-                            } catch (LMISException e) {
-                                subscriber.onError(e);
-                            }
-                            return null;
-                        }
-                    }).toList());
+                    }).toList();
+
+                    Product kit = productRepository.getByCode(kitCode);
+                    List<Product> products = new ArrayList<>();
+                    for (InventoryViewModel inventoryViewModel : unpackedViewModels) {
+                        products.add(inventoryViewModel.getProduct());
+                    }
+                    products.add(kit);
+                    Map<Long, StockCard> existingStockCards = stockRepository.queryStockCardsGroupByProductId(products);
 
-                    stockCards.add(getStockCardForKit(kitUnpackQuantity, documentNumber, signature));
-                    stockRepository.batchSaveUnpackStockCardsWithMovementItemsAndUpdateProduct(stockCards);
+                    List<StockCard> stockCards = new ArrayList<>();
+                    for (InventoryViewModel inventoryViewModel : unpackedViewModels) {
+                        stockCards.add(createStockCardForProductWithLot(inventoryViewModel, existingStockCards.get(inventoryViewModel.getProductId()), documentNumber, signature));
+                    }
+                    stockCards.add(getStockCardForKit(existingStockCards.get(kit.getId()), kitUnpackQuantity, documentNumber, signature));
+                    stockRepository.batchSaveUnpackStockCards(stockCards);
 
                     subscriber.onNext(null);
                     subscriber.onCompleted();
@@ -114,10 +127,7 @@ public class UnpackKitPresenter extends Presenter {
         }).observeOn(AndroidSchedulers.mainThread()).subscribeOn(Schedulers.io());
     }
 
-    protected StockCard getStockCardForKit(int kitUnpackQuantity, String documentNumber, String signature) throws LMISException {
-        Product kit = productRepository.getByCode(kitCode);
-        StockCard kitStockCard = stockRepository.queryStockCardByProductId(kit.getId());
-
+    protected StockCard getStockCardForKit(StockCard kitStockCard, int kitUnpackQuantity, String documentNumber, String signature) {
         kitStockCard.setStockOnHand(kitStockCard.getStockOnHand() - kitUnpackQuantity);
 
         if (0 == kitStockCard.getStockOnHand()) {
@@ -139,11 +149,11 @@ public class UnpackKitPresenter extends Presenter {
         return kitStockCard;
     }
 
+    //stockCard is the product's existing card, or null when the kit brings the product in for the first time
     @NonNull
-    protected StockCard createStockCardForProductWithLot(InventoryViewModel inventoryViewModel, String documentNumber, String signature) throws LMISException {
+    protected StockCard createStockCardForProductWithLot(InventoryViewModel inventoryViewModel, StockCard stockCard, String documentNumber, String signature) {
         List<StockMovementItem> stockMovementItems = new ArrayList<>();
 
-        StockCard stockCard = stockRepository.queryStockCardByProductId(inventoryViewModel.getProductId());
         if (stockCard == null) {
             stockCard = new StockCard();
             stockCard.setProduct(inventoryViewModel.getProduct());
@@ -182,10 +192,32 @@ public class UnpackKitPresenter extends Presenter {
         return unpackMovementItem;
     }
 
-    private void setExistingLotViewModels(InventoryViewModel inventoryViewModel) throws LMISException {
-        StockCard stockCard = stockRepository.queryStockCardByProductId(inventoryViewModel.getProductId());
-        if (stockCard != null) {
-            List<LotMovementViewModel> lotMovementViewModels = FluentIterable.from(stockCard.getNonEmptyLotOnHandList()).transform(new Function<LotOnHand, LotMovementViewModel>() {
+    private Map<String, Product> queryKitItemsGroupByCode(List<KitProduct> kitProducts) throws LMISException {
+        List<String> productCodes = new ArrayList<>();
+        for (KitProduct kitProduct : kitProducts) {
+            productCodes.add(kitProduct.getProductCode());
+        }
+        Map<String, Product> products = new HashMap<>();
+        if (productCodes.isEmpty()) {
+            return products;
+        }
+        for (Product product : productRepository.queryProductsByCodes(productCodes)) {
+            products.put(product.getCode(), product);
+        }
+        return products;
+    }
+
+    private List<Long> productIdsOf(Collection<Product> products) {
+        List<Long> productIds = new ArrayList<>();
+        for (Product product : products) {
+            productIds.add(product.getId());
+        }
+        return productIds;
+    }
+
+    private void setExistingLotViewModels(InventoryViewModel inventoryViewModel, List<LotOnHand> nonEmptyLotsOnHand) {
+        if (nonEmptyLotsOnHand != null) {
+            List<LotMovementViewModel> lotMovementViewModels = FluentIterable.from(nonEmptyLotsOnHand).transform(new Function<LotOnHand, LotMovementViewModel>() {
                 @Override
                 public LotMovementViewModel apply(LotOnHand lotOnHand) {
                     return new LotMovementViewModel(lotOnHand.getLot().getLotNumber(),
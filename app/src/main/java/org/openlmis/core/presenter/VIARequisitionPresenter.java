@@ -27,6 +27,7 @@ import org.openlmis.core.LMISApp;
 import org.openlmis.core.R;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.exceptions.ViewNotMatchException;
+import org.openlmis.core.model.KitGraph;
 import org.openlmis.core.model.KitProduct;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.RnRForm;
@@ -53,7 +54,9 @@ import org.roboguice.shaded.goole.common.collect.ImmutableList;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -154,12 +157,13 @@ public class VIARequisitionPresenter extends BaseRequisitionPresenter {
         if (requisitionFormItemViewModels.size() > 0) {
             return requisitionFormItemViewModels;
         }
+        final KitStock kitStock = isHistoryForm() ? null : queryKitStock();
         return from(form.getRnrItems(IsKit.No)).transform(new Function<RnrFormItem, RequisitionFormItemViewModel>() {
             @Override
             public RequisitionFormItemViewModel apply(RnrFormItem item) {
                 RequisitionFormItemViewModel requisitionFormItemViewModel = new RequisitionFormItemViewModel(item);
                 if (!isHistoryForm()) {
-                    adjustTheoretical(requisitionFormItemViewModel);
+                    adjustTheoretical(requisitionFormItemViewModel, kitStock);
                 }
                 return requisitionFormItemViewModel;
             }
@@ -176,33 +180,49 @@ public class VIARequisitionPresenter extends BaseRequisitionPresenter {
 
     }
 
-    private void adjustTheoretical(RequisitionFormItemViewModel requisitionFormItemViewModel) {
+    private void adjustTheoretical(RequisitionFormItemViewModel requisitionFormItemViewModel, KitStock kitStock) {
         Product product = requisitionFormItemViewModel.getItem().getProduct();
-        requisitionFormItemViewModel.setAdjustmentViewModels(generateAdjustInfo(product));
+        requisitionFormItemViewModel.setAdjustmentViewModels(generateAdjustInfo(product, kitStock));
     }
 
-    private List<RnRFormItemAdjustmentViewModel> generateAdjustInfo(Product product) {
+    private List<RnRFormItemAdjustmentViewModel> generateAdjustInfo(Product product, KitStock kitStock) {
         List<RnRFormItemAdjustmentViewModel> list = new ArrayList<>();
+        for (KitProduct kitProduct : kitStock.kitGraph.kitsOf(product.getCode())) {
+            Product kit = kitStock.kitsByCode.get(kitProduct.getKitCode());
+            if (kit == null) {
+                continue;
+            }
+            Long kitSOH = kitStock.stockOnHandByKitId.get(kit.getId());
+            if (kitSOH != null && kitSOH != 0) {
+                list.add(new RnRFormItemAdjustmentViewModel(kitSOH, kitProduct.getQuantity(), kit.getPrimaryName()));
+            }
+        }
+        return list;
+    }
+
+    //kits and their stock on hand read once per form instead of once per product
+    private KitStock queryKitStock() {
+        KitStock kitStock = new KitStock();
         try {
-            List<KitProduct> kitProducts = productRepository.queryKitProductByProductCode(product.getCode());
-            for (KitProduct kitProduct : kitProducts) {
-                Product kit = productRepository.getByCode(kitProduct.getKitCode());
-                long kitSOH = getKitSOH(kit);
-                if (kitSOH != 0) {
-                    list.add(new RnRFormItemAdjustmentViewModel(kitSOH, kitProduct.getQuantity(), kit.getPrimaryName()));
+            kitStock.kitGraph = productRepository.getKitGraph();
+            if (!kitStock.kitGraph.getKitCodes().isEmpty()) {
+                List<Long> kitIds = new ArrayList<>();
+                for (Product kit : productRepository.queryProductsByCodes(new ArrayList<>(kitStock.kitGraph.getKitCodes()))) {
+                    kitStock.kitsByCode.put(kit.getCode(), kit);
+                    kitIds.add(kit.getId());
                 }
+                kitStock.stockOnHandByKitId = stockRepository.queryStockOnHandGroupByProductId(kitIds);
             }
         } catch (LMISException e) {
             e.reportToFabric();
         }
-        return list;
+        return kitStock;
     }
 
-    private long getKitSOH(Product kit) throws LMISException {
-        if (stockRepository.queryStockCardByProductId(kit.getId()) == null) {
-            return 0;
-        }
-        return stockRepository.queryStockCardByProductId(kit.getId()).getStockOnHand();
+    private static class KitStock {
+        KitGraph kitGraph = new KitGraph(new ArrayList<KitProduct>());
+        Map<String, Product> kitsByCode = new HashMap<>();
+        Map<Long, Long> stockOnHandByKitId = new HashMap<>();
     }
 
     @Override
@@ -27,6 +27,8 @@ import org.openlmis.core.LMISApp;
 import org.openlmis.core.googleAnalytics.TrackerActions;
 import org.openlmis.core.googleAnalytics.TrackerCategories;
 import org.openlmis.core.network.NetworkConnectionManager;
+import org.openlmis.core.service.SyncDownManager;
+import org.openlmis.core.service.SyncScheduler;
 import org.openlmis.core.service.SyncService;
 
 import roboguice.RoboGuice;
@@ -35,14 +37,18 @@ public class NetworkChangeReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         SyncService syncService = RoboGuice.getInjector(context).getInstance(SyncService.class);
+        SyncScheduler syncScheduler = RoboGuice.getInjector(context).getInstance(SyncScheduler.class);
+        SyncDownManager syncDownManager = RoboGuice.getInjector(context).getInstance(SyncDownManager.class);
         if (NetworkConnectionManager.isConnectionAvailable(context)) {
             Log.d("NetworkChangeReceiver :", "network connected, start sync service...");
             LMISApp.getInstance().trackEvent(TrackerCategories.NETWORK, TrackerActions.NetworkConnected);
-            syncService.requestSyncImmediately();
+            syncScheduler.requestSync();
             syncService.kickOff();
         } else {
             Log.d("NetworkChangeReceiver :", "network disconnect, stop sync service...");
             LMISApp.getInstance().trackEvent(TrackerCategories.NETWORK, TrackerActions.NetworkDisconnected);
+            syncScheduler.cancel();
+            syncDownManager.cancelSyncDown();
             syncService.shutDown();
         }
     }
@@ -0,0 +1,152 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+
+package org.openlmis.core.service;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subjects.ReplaySubject;
+
+/**
+ * Runs at most one flight of a task at a time. Callers arriving while a flight is running join it and
+ * see all of its events from the start, so every caller gets the same result from one run. A caller
+ * unsubscribing only detaches itself; {@link #cancel(Throwable)} stops the flight for everybody and fails it.
+ * A cancelled task keeps the flight until it has wound down, a flight joined meanwhile starts after it.
+ */
+public class SingleFlight<T> {
+
+    //callers arriving now join this one
+    private Flight joinable;
+    //the flight whose task is running, cancelled or not
+    private Flight running;
+
+    public Observable<T> join(Observable<T> task) {
+        return join(task, Schedulers.immediate());
+    }
+
+    //the task runs on the scheduler and is expected to do its work while subscribed, so its flight lands when it returns
+    public Observable<T> join(Observable<T> task, Scheduler scheduler) {
+        Flight joined;
+        boolean launchNow;
+        synchronized (this) {
+            if (joinable != null) {
+                return joinable.callers.asObservable();
+            }
+            joined = new Flight(task, scheduler);
+            joinable = joined;
+            launchNow = running == null;
+            if (launchNow) {
+                running = joined;
+            } else {
+                //a flight already waiting here was cancelled before it started, it is dropped
+                running.next = joined;
+            }
+        }
+        //launched outside the lock, so callers joining a synchronous task don't start a second flight
+        if (launchNow) {
+            launch(joined);
+        }
+        return joined.callers.asObservable();
+    }
+
+    public void cancel(Throwable reason) {
+        Flight cancelled;
+        synchronized (this) {
+            if (joinable == null) {
+                return;
+            }
+            cancelled = joinable;
+            joinable = null;
+        }
+        cancelled.work.unsubscribe();
+        cancelled.callers.onError(reason);
+    }
+
+    public synchronized boolean isInFlight() {
+        return running != null;
+    }
+
+    private void launch(final Flight launched) {
+        final Scheduler.Worker worker = launched.scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    if (!launched.work.isUnsubscribed()) {
+                        launched.task.unsafeSubscribe(launched.work);
+                    }
+                } finally {
+                    worker.unsubscribe();
+                    land(launched);
+                }
+            }
+        });
+    }
+
+    private void land(Flight landed) {
+        Flight next;
+        synchronized (this) {
+            next = landed.next;
+            running = next;
+        }
+        if (next != null) {
+            launch(next);
+        }
+    }
+
+    //callers arriving after the flight finished start a new one
+    private synchronized void detach(Flight finished) {
+        if (joinable == finished) {
+            joinable = null;
+        }
+    }
+
+    private class Flight {
+        private final Observable<T> task;
+        private final Scheduler scheduler;
+        private final ReplaySubject<T> callers = ReplaySubject.create();
+        private final Subscriber<T> work = new Subscriber<T>() {
+            @Override
+            public void onCompleted() {
+                detach(Flight.this);
+                callers.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                detach(Flight.this);
+                callers.onError(e);
+            }
+
+            @Override
+            public void onNext(T t) {
+                callers.onNext(t);
+            }
+        };
+        private Flight next;
+
+        Flight(Observable<T> task, Scheduler scheduler) {
+            this.task = task;
+            this.scheduler = scheduler;
+        }
+    }
+}
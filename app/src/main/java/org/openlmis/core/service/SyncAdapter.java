@@ -35,9 +35,17 @@ import org.openlmis.core.model.User;
 import org.openlmis.core.utils.Constants;
 
 import roboguice.RoboGuice;
+import rx.Observable;
+import rx.Subscriber;
 
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
+    private static final int MAX_PARALLEL_SYNC_STEPS = 3;
+    private static final SingleFlight<Boolean> SYNC_UP_FLIGHT = new SingleFlight<>();
+
+    //unsynced stock card codes are reported after the movements themselves are pushed
+    private static final String STEP_STOCK_CARDS = "stockCards";
+
     @Inject
     SyncUpManager syncUpManager;
 
@@ -50,6 +58,12 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     @Inject
     SharedPreferenceMgr sharedPreferenceMgr;
 
+    @Inject
+    SyncMetricsRecorder syncMetricsRecorder;
+
+    @Inject
+    SyncScheduler syncScheduler;
+
     Context context;
 
     public SyncAdapter(Context context, boolean autoInitialize) {
@@ -72,26 +86,82 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
 
     private void triggerSync() {
         sendSyncStartBroadcast();
-
-        syncDownManager.syncDownServerData();
-
-        boolean isSyncRnrSuccessful = syncUpManager.syncRnr();
-        if (isSyncRnrSuccessful) {
-            sharedPreferenceMgr.setRnrLastSyncTime();
-        }
-
-        boolean isSyncStockSuccessful = syncUpManager.syncStockCards();
-        if (isSyncStockSuccessful) {
-            sharedPreferenceMgr.setStockLastSyncTime();
+        syncScheduler.onSyncStarted();
+        boolean succeeded = false;
+        try {
+            boolean isSyncDownSuccessful = syncDownManager.syncDownServerData();
+
+            succeeded = syncUp() && isSyncDownSuccessful;
+        } finally {
+            //the scheduler backs off and the screens stop waiting however the sync ended
+            syncScheduler.onSyncFinished(succeeded);
+            sendSyncFinishedBroadcast();
         }
+    }
 
-        syncUpManager.syncRapidTestForms();
-        syncUpManager.syncUpUnSyncedStockCardCodes();
-        syncUpManager.syncAppVersion();
-        syncUpManager.syncArchivedProducts();
-        syncUpManager.syncUpCmms();
+    //a sync up already running is joined instead of pushing the same outbox items twice
+    private boolean syncUp() {
+        return SYNC_UP_FLIGHT.join(Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                SyncTaskGraph syncUpTaskGraph = createSyncUpTaskGraph().measuredBy(syncMetricsRecorder, syncMetricsRecorder.startRun(), "up.");
+                syncUpTaskGraph.run();
+                subscriber.onNext(syncUpTaskGraph.getFailedSteps().isEmpty());
+                subscriber.onCompleted();
+            }
+        })).toBlocking().last();
+    }
 
-        sendSyncFinishedBroadcast();
+    protected SyncTaskGraph createSyncUpTaskGraph() {
+        return new SyncTaskGraph(MAX_PARALLEL_SYNC_STEPS)
+                .addTask("rnr", new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean isSyncRnrSuccessful = syncUpManager.syncRnr();
+                        if (isSyncRnrSuccessful) {
+                            sharedPreferenceMgr.setRnrLastSyncTime();
+                        }
+                    }
+                })
+                .addTask(STEP_STOCK_CARDS, new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean isSyncStockSuccessful = syncUpManager.syncStockCards();
+                        if (isSyncStockSuccessful) {
+                            sharedPreferenceMgr.setStockLastSyncTime();
+                        }
+                    }
+                })
+                .addTask("rapidTests", new Runnable() {
+                    @Override
+                    public void run() {
+                        syncUpManager.syncRapidTestForms();
+                    }
+                })
+                .addTask("unSyncedStockCardCodes", new Runnable() {
+                    @Override
+                    public void run() {
+                        syncUpManager.syncUpUnSyncedStockCardCodes();
+                    }
+                }, STEP_STOCK_CARDS)
+                .addTask("appVersion", new Runnable() {
+                    @Override
+                    public void run() {
+                        syncUpManager.syncAppVersion();
+                    }
+                })
+                .addTask("archivedProducts", new Runnable() {
+                    @Override
+                    public void run() {
+                        syncUpManager.syncArchivedProducts();
+                    }
+                })
+                .addTask("cmms", new Runnable() {
+                    @Override
+                    public void run() {
+                        syncUpManager.syncUpCmms();
+                    }
+                });
     }
 
     private void sendSyncStartBroadcast() {
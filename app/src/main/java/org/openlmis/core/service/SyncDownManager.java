@@ -18,25 +18,34 @@
 
 package org.openlmis.core.service;
 
+import android.util.Log;
+
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.R;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.manager.UserInfoMgr;
 import org.openlmis.core.model.Product;
+import org.openlmis.core.model.ProductProgram;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.repository.ProductProgramRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.ProgramDataFormRepository;
 import org.openlmis.core.model.repository.ProgramRepository;
 import org.openlmis.core.model.repository.RnrFormRepository;
+import org.openlmis.core.model.repository.StockMovementRepository;
 import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.model.service.StockCardResolver;
 import org.openlmis.core.model.service.StockService;
 import org.openlmis.core.network.LMISRestApi;
 import org.openlmis.core.network.model.ProductAndSupportedPrograms;
+import org.openlmis.core.network.model.StockCardDigest;
+import org.openlmis.core.network.model.StockCardDigestRequest;
+import org.openlmis.core.network.model.StockCardDigestResponse;
 import org.openlmis.core.network.model.SyncDownLatestProductsResponse;
 import org.openlmis.core.network.model.SyncDownProgramDataResponse;
 import org.openlmis.core.network.model.SyncDownRequisitionsResponse;
@@ -46,6 +55,7 @@ import org.openlmis.core.utils.DateUtil;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.Subscriber;
@@ -54,10 +64,12 @@ import rx.schedulers.Schedulers;
 
 @Singleton
 public class SyncDownManager {
+    private static final String TAG = "SyncDownManager";
     private static final int DAYS_OF_MONTH = 30;
     private static final int MONTHS_OF_YEAR = 12;
 
-    private boolean isSyncing = false;
+    //login, the sync adapter and manual syncs all join the same sync down
+    private final SingleFlight<SyncProgress> syncDownFlight = new SingleFlight<>();
 
     protected LMISRestApi lmisRestApi;
 
@@ -68,6 +80,8 @@ public class SyncDownManager {
     @Inject
     StockRepository stockRepository;
     @Inject
+    StockMovementRepository stockMovementRepository;
+    @Inject
     ProgramRepository programRepository;
     @Inject
     ProductRepository productRepository;
@@ -77,35 +91,96 @@ public class SyncDownManager {
     ProgramDataFormRepository programDataFormRepository;
     @Inject
     StockService stockService;
+    @Inject
+    StockCardResolver stockCardResolver;
+    @Inject
+    SyncMetricsRecorder syncMetricsRecorder;
 
     public SyncDownManager() {
         lmisRestApi = LMISApp.getInstance().getRestApi();
     }
 
     public void syncDownServerData(Subscriber<SyncProgress> subscriber) {
-        if (isSyncing) {
-            return;
-        }
+        syncDownFlight.join(createSyncDownTask(), Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(subscriber);
+    }
 
-        isSyncing = true;
-        Observable.create(new Observable.OnSubscribe<SyncProgress>() {
+    private Observable<SyncProgress> createSyncDownTask() {
+        return Observable.create(new Observable.OnSubscribe<SyncProgress>() {
             @Override
-            public void call(Subscriber<? super SyncProgress> subscriber) {
+            public void call(final Subscriber<? super SyncProgress> subscriber) {
+                String runId = syncMetricsRecorder.startRun();
                 try {
-                    syncDownProducts(subscriber);
-                    syncDownLastMonthStockCards(subscriber);
-                    syncDownRequisition(subscriber);
-                    syncDownRapidTests(subscriber);
-                    syncDownLastYearStockCardsSilently(subscriber);
+                    measure(runId, "down.products", new SyncDownStep() {
+                        @Override
+                        public void run() throws LMISException {
+                            syncDownProducts(subscriber);
+                        }
+                    });
+                    if (subscriber.isUnsubscribed()) {
+                        return;
+                    }
+                    measure(runId, "down.lastMonthStockCards", new SyncDownStep() {
+                        @Override
+                        public void run() throws LMISException {
+                            syncDownLastMonthStockCards(subscriber);
+                        }
+                    });
+                    if (subscriber.isUnsubscribed()) {
+                        return;
+                    }
+                    measure(runId, "down.requisitions", new SyncDownStep() {
+                        @Override
+                        public void run() throws LMISException {
+                            syncDownRequisition(subscriber);
+                        }
+                    });
+                    if (subscriber.isUnsubscribed()) {
+                        return;
+                    }
+                    measure(runId, "down.rapidTests", new SyncDownStep() {
+                        @Override
+                        public void run() throws LMISException {
+                            syncDownRapidTests(subscriber);
+                        }
+                    });
+                    if (subscriber.isUnsubscribed()) {
+                        return;
+                    }
+                    measure(runId, "down.lastYearStockCards", new SyncDownStep() {
+                        @Override
+                        public void run() throws LMISException {
+                            syncDownLastYearStockCardsSilently(subscriber);
+                        }
+                    });
 
-                    isSyncing = false;
                     subscriber.onCompleted();
                 } catch (LMISException e) {
-                    isSyncing = false;
                     subscriber.onError(e);
                 }
             }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(subscriber);
+        });
+    }
+
+    //the step is unbound from the io thread however it ends, pooled threads are reused by later syncs
+    private void measure(String runId, String step, SyncDownStep syncDownStep) throws LMISException {
+        syncMetricsRecorder.begin(runId, step);
+        try {
+            syncDownStep.run();
+        } catch (LMISException | RuntimeException e) {
+            SyncMetricsRecorder.recordFailure(e);
+            throw e;
+        } finally {
+            syncMetricsRecorder.end();
+        }
+    }
+
+    private interface SyncDownStep {
+        void run() throws LMISException;
+    }
+
+    //the running sync down stops at its next step, and everybody waiting on it gets the network error
+    public void cancelSyncDown() {
+        syncDownFlight.cancel(new LMISException(errorMessage(R.string.hint_network_error)));
     }
 
     private void syncDownRapidTests(Subscriber<? super SyncProgress> subscriber) throws LMISException {
@@ -130,26 +205,19 @@ public class SyncDownManager {
             throw new LMISException("Can't get SyncDownRapidTestsResponse, you can check json parse to POJO logic");
         }
 
+        SyncMetricsRecorder.addRecordCount(syncDownProgramDataResponse.getProgramDataForms());
         programDataFormRepository.batchSaveForms(syncDownProgramDataResponse.getProgramDataForms());
     }
 
-    public void syncDownServerData() {
-        syncDownServerData(new Subscriber<SyncProgress>() {
-            @Override
-            public void onCompleted() {
-
-            }
-
-            @Override
-            public void onError(Throwable e) {
-
-            }
-
-            @Override
-            public void onNext(SyncProgress syncProgress) {
-
-            }
-        });
+    //for the background sync, which runs off the main thread and waits to know whether the sync down failed
+    public boolean syncDownServerData() {
+        try {
+            syncDownFlight.join(createSyncDownTask(), Schedulers.io()).toBlocking().lastOrDefault(null);
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "===> Sync down failed ->" + e.getMessage());
+            return false;
+        }
     }
 
     private void syncDownLastYearStockCardsSilently(Subscriber<? super SyncProgress> subscriber) {
@@ -162,6 +230,7 @@ public class SyncDownManager {
                 subscriber.onNext(SyncProgress.StockCardsLastYearSynced);
             } catch (LMISException e) {
                 sharedPreferenceMgr.setShouldSyncLastYearStockCardData(true);
+                SyncMetricsRecorder.recordFailure(e);
                 e.reportToFabric();
             }
         }
@@ -171,7 +240,7 @@ public class SyncDownManager {
         if (!sharedPreferenceMgr.isRequisitionDataSynced()) {
             try {
                 subscriber.onNext(SyncProgress.SyncingRequisition);
-                fetchAndSaveRequisition();
+                fetchAndSaveRequisition(null);
                 sharedPreferenceMgr.setRequisitionDataSynced(true);
                 subscriber.onNext(SyncProgress.RequisitionSynced);
             } catch (LMISException e) {
@@ -179,6 +248,19 @@ public class SyncDownManager {
                 e.reportToFabric();
                 throw new LMISException(errorMessage(R.string.msg_sync_requisition_failed));
             }
+        } else {
+            syncDownUpdatedRequisitionsSilently();
+        }
+    }
+
+    private void syncDownUpdatedRequisitionsSilently() {
+        //installs synced before the validator was kept download everything once to get one
+        String lastSyncRequisitionTime = sharedPreferenceMgr.getLastSyncRequisitionTime();
+        try {
+            fetchAndSaveRequisition(lastSyncRequisitionTime);
+        } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
+            e.reportToFabric();
         }
     }
 
@@ -212,21 +294,27 @@ public class SyncDownManager {
 
     private void fetchAndSaveProductsWithProgramsAndKits() throws LMISException {
         SyncDownLatestProductsResponse response = getSyncDownLatestProductResponse();
+        SyncMetricsRecorder.addRecordCount(response.getLatestProducts());
+        Map<String, Product> existingProducts = productRepository.queryProductsGroupByCode();
         List<Product> productList = new ArrayList<>();
+        List<ProductProgram> productPrograms = new ArrayList<>();
         for (ProductAndSupportedPrograms productAndSupportedPrograms : response.getLatestProducts()) {
             Product product = productAndSupportedPrograms.getProduct();
-            productProgramRepository.batchSave(productAndSupportedPrograms.getProductPrograms());
+            productPrograms.addAll(productAndSupportedPrograms.getProductPrograms());
 
-            updateDeactivateProductNotifyList(product);
+            updateDeactivateProductNotifyList(product, existingProducts.get(product.getCode()));
             productList.add(product);
         }
+        productProgramRepository.batchSave(productPrograms);
         productRepository.batchCreateOrUpdateProducts(productList);
         sharedPreferenceMgr.setLastSyncProductTime(response.getLatestUpdatedTime());
     }
 
     protected void updateDeactivateProductNotifyList(Product product) throws LMISException {
-        Product existingProduct = productRepository.getByCode(product.getCode());
+        updateDeactivateProductNotifyList(product, productRepository.getByCode(product.getCode()));
+    }
 
+    private void updateDeactivateProductNotifyList(Product product, Product existingProduct) throws LMISException {
         if (existingProduct == null) {
             return;
         }
@@ -261,19 +349,69 @@ public class SyncDownManager {
         //default start date is one month before and end date is one day after
         final String facilityId = UserInfoMgr.getInstance().getUser().getFacilityId();
 
-        SyncDownStockCardResponse syncDownStockCardResponse = lmisRestApi.fetchStockMovementData(facilityId, startDate, endDate);
+        SyncDownStockCardResponse syncDownStockCardResponse = fetchChangedStockCards(facilityId, startDate, endDate);
+        SyncMetricsRecorder.addRecordCount(syncDownStockCardResponse.getStockCards());
+        stockCardResolver.resolve(syncDownStockCardResponse.getStockCards());
 
         stockRepository.batchCreateSyncDownStockCardsAndMovements(syncDownStockCardResponse.getStockCards());
     }
 
-    private void fetchAndSaveRequisition() throws LMISException {
-        SyncDownRequisitionsResponse syncDownRequisitionsResponse = lmisRestApi.fetchRequisitions(UserInfoMgr.getInstance().getUser().getFacilityCode());
+    //a digest handshake first, so cards the device already holds identically are not downloaded again
+    private SyncDownStockCardResponse fetchChangedStockCards(String facilityId, String startDate, String endDate) throws LMISException {
+        List<StockCardDigest> digests = stockMovementRepository.queryStockCardDigests(startDate, endDate);
+        if (digests.isEmpty()) {
+            return lmisRestApi.fetchStockMovementData(facilityId, startDate, endDate);
+        }
+
+        StockCardDigestResponse digestResponse;
+        try {
+            digestResponse = lmisRestApi.compareStockCardDigests(facilityId, new StockCardDigestRequest(startDate, endDate, digests));
+        } catch (LMISException e) {
+            //servers without the handshake get the plain download
+            Log.w(TAG, "===> Stock card digests not compared, download the whole window: " + e.getMessage());
+            digestResponse = null;
+        }
+        if (digestResponse == null || digestResponse.getChangedProductCodes() == null) {
+            return lmisRestApi.fetchStockMovementData(facilityId, startDate, endDate);
+        }
+
+        List<String> changedProductCodes = digestResponse.getChangedProductCodes();
+        if (changedProductCodes.isEmpty()) {
+            SyncDownStockCardResponse unchanged = new SyncDownStockCardResponse();
+            unchanged.setStockCards(new ArrayList<StockCard>());
+            return unchanged;
+        }
+        return lmisRestApi.fetchStockMovementData(facilityId, startDate, endDate, StringUtils.join(changedProductCodes, ","));
+    }
+
+    private void fetchAndSaveRequisition(String afterUpdatedTime) throws LMISException {
+        long requestedAt = LMISApp.getInstance().getCurrentTimeMillis();
+        SyncDownRequisitionsResponse syncDownRequisitionsResponse = lmisRestApi.fetchRequisitions(UserInfoMgr.getInstance().getUser().getFacilityCode(), afterUpdatedTime);
 
         if (syncDownRequisitionsResponse == null) {
             throw new LMISException("Can't get SyncDownRequisitionsResponse, you can check json parse to POJO logic");
         }
 
-        rnrFormRepository.createRnRsWithItems(syncDownRequisitionsResponse.getRequisitions());
+        SyncMetricsRecorder.addRecordCount(syncDownRequisitionsResponse.getRequisitions());
+        try {
+            rnrFormRepository.createOrUpdateSyncedRnRsWithItems(syncDownRequisitionsResponse.getRequisitions());
+        } catch (LMISException e) {
+            //the upsert is rolled back as a whole so local forms are as they were,
+            //download them all again next time rather than retrying a delta that can't be saved
+            sharedPreferenceMgr.setRequisitionDataSynced(false);
+            sharedPreferenceMgr.setLastSyncRequisitionTime(null);
+            throw e;
+        }
+        sharedPreferenceMgr.setLastSyncRequisitionTime(nextRequisitionValidator(syncDownRequisitionsResponse.getLatestUpdatedTime(), afterUpdatedTime, requestedAt));
+    }
+
+    //a validator is always kept so a full download happens at most once: when the server doesn't send one
+    //the previous one is asked for again, or the time the full download was requested
+    private String nextRequisitionValidator(String latestUpdatedTime, String afterUpdatedTime, long requestedAt) {
+        if (latestUpdatedTime != null) {
+            return latestUpdatedTime;
+        }
+        return afterUpdatedTime != null ? afterUpdatedTime : String.valueOf(requestedAt);
     }
 
     private void fetchLatestOneMonthMovements() throws LMISException {
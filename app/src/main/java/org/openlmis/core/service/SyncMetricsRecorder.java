@@ -0,0 +1,139 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.openlmis.core.LMISApp;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.SyncMetric;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Records one {@link SyncMetric} row per sync step per run. A step is bound to the thread
+ * running it, so HTTP calls made by that thread are attributed to it by {@link org.openlmis.core.network.MeteredClient}
+ * and the rest of the step's time is spent on the device.
+ */
+@Singleton
+public class SyncMetricsRecorder {
+
+    public static final long RETENTION_MILLIS = 30 * 24 * 60 * 60 * 1000L;
+
+    private static final ThreadLocal<ActiveStep> ACTIVE_STEP = new ThreadLocal<>();
+
+    @Inject
+    SyncMetricRepository syncMetricRepository;
+
+    public String startRun() {
+        try {
+            syncMetricRepository.deleteStartedBefore(LMISApp.getInstance().getCurrentTimeMillis() - RETENTION_MILLIS);
+        } catch (LMISException e) {
+            e.reportToFabric();
+        }
+        return UUID.randomUUID().toString();
+    }
+
+    public void begin(String runId, String step) {
+        ACTIVE_STEP.set(new ActiveStep(new SyncMetric(runId, step, LMISApp.getInstance().getCurrentTimeMillis())));
+    }
+
+    public void end() {
+        ActiveStep activeStep = ACTIVE_STEP.get();
+        if (activeStep == null) {
+            return;
+        }
+        ACTIVE_STEP.remove();
+        activeStep.metric.setTotalMillis(System.currentTimeMillis() - activeStep.start);
+        //a step that neither talked to the server nor failed had nothing to sync
+        if (activeStep.metric.getRequestCount() == 0 && activeStep.metric.isSucceeded()) {
+            return;
+        }
+        try {
+            syncMetricRepository.save(activeStep.metric);
+        } catch (LMISException e) {
+            e.reportToFabric();
+        }
+    }
+
+    public Runnable measure(final String runId, final String step, final Runnable runnable) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                begin(runId, step);
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    recordFailure(e);
+                    throw e;
+                } finally {
+                    end();
+                }
+            }
+        };
+    }
+
+    public static boolean isMeasuring() {
+        return ACTIVE_STEP.get() != null;
+    }
+
+    public static void recordNetworkCall(long elapsedMillis, long requestBytes, long responseBytes) {
+        ActiveStep activeStep = ACTIVE_STEP.get();
+        if (activeStep != null) {
+            SyncMetric metric = activeStep.metric;
+            metric.setRequestCount(metric.getRequestCount() + 1);
+            metric.setNetworkMillis(metric.getNetworkMillis() + elapsedMillis);
+            metric.setRequestBytes(metric.getRequestBytes() + Math.max(requestBytes, 0));
+            metric.setResponseBytes(metric.getResponseBytes() + Math.max(responseBytes, 0));
+        }
+    }
+
+    public static void addRecordCount(Collection<?> records) {
+        ActiveStep activeStep = ACTIVE_STEP.get();
+        if (activeStep != null && records != null) {
+            activeStep.metric.setRecordCount(activeStep.metric.getRecordCount() + records.size());
+        }
+    }
+
+    //whether the step bound to this thread has recorded a failure, even one it recovered from
+    public static boolean isStepFailed() {
+        ActiveStep activeStep = ACTIVE_STEP.get();
+        return activeStep != null && !activeStep.metric.isSucceeded();
+    }
+
+    public static void recordFailure(Throwable error) {
+        ActiveStep activeStep = ACTIVE_STEP.get();
+        if (activeStep != null) {
+            activeStep.metric.setSucceeded(false);
+            activeStep.metric.setFailureReason(error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage());
+        }
+    }
+
+    private static class ActiveStep {
+        private final SyncMetric metric;
+        private final long start = System.currentTimeMillis();
+
+        ActiveStep(SyncMetric metric) {
+            this.metric = metric;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+
+package org.openlmis.core.service;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.openlmis.core.LMISApp;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.SyncType;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Turns connectivity changes into sync requests. Triggers are debounced so a flapping network
+ * starts one sync once it has been up for a while, a sync is not repeated within the minimum
+ * interval (longer when the battery is low and not charging) and failed syncs back off.
+ * Outbox work that is due skips the minimum interval and the long debounce, but not the backoff.
+ */
+@Singleton
+public class SyncScheduler {
+
+    public static final long DEBOUNCE_MILLIS = 30 * 1000L;
+    public static final long PENDING_WORK_DEBOUNCE_MILLIS = 5 * 1000L;
+    public static final long MAX_DEBOUNCE_MILLIS = 2 * 60 * 1000L;
+    public static final long MIN_INTERVAL_MILLIS = 15 * 60 * 1000L;
+    public static final long LOW_BATTERY_MIN_INTERVAL_MILLIS = 60 * 60 * 1000L;
+    public static final long BASE_BACKOFF_MILLIS = 60 * 1000L;
+    public static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+    public static final int LOW_BATTERY_PERCENT = 15;
+
+    private static final String TAG = "SyncScheduler";
+    private static final long NEVER = -1;
+
+    @Inject
+    SyncService syncService;
+    @Inject
+    SyncOutboxRepository syncOutboxRepository;
+    @Inject
+    Context context;
+
+    Timer timer = new HandlerTimer();
+    Scheduler pendingWorkScheduler = Schedulers.io();
+
+    private final Runnable scheduledSync = new Runnable() {
+        @Override
+        public void run() {
+            fire();
+        }
+    };
+
+    private long firstTriggerTime = NEVER;
+    private long scheduledTime = NEVER;
+    private long lastSyncStartTime = NEVER;
+    private long lastSyncFinishTime = NEVER;
+    private int consecutiveFailures;
+    private int generation;
+
+    //the outbox is read off the main thread, connectivity changes come in on it
+    public void requestSync() {
+        final long now = LMISApp.getInstance().getCurrentTimeMillis();
+        final int generation = currentGeneration();
+        Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                subscriber.onNext(hasPendingWork(now));
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(pendingWorkScheduler).observeOn(AndroidSchedulers.mainThread()).subscribe(new Action1<Boolean>() {
+            @Override
+            public void call(Boolean hasPendingWork) {
+                scheduleSync(generation, hasPendingWork);
+            }
+        });
+    }
+
+    private synchronized int currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void scheduleSync(int requestGeneration, boolean hasPendingWork) {
+        //cancelled while the outbox was read
+        if (requestGeneration != generation) {
+            return;
+        }
+        long now = LMISApp.getInstance().getCurrentTimeMillis();
+        if (firstTriggerTime == NEVER) {
+            firstTriggerTime = now;
+        }
+        long syncTime = nextSyncTime(now, hasPendingWork);
+        if (syncTime == scheduledTime) {
+            return;
+        }
+        if (scheduledTime != NEVER) {
+            timer.cancel(scheduledSync);
+            Log.d(TAG, "sync trigger coalesced, rescheduled in " + (syncTime - now) + "ms");
+        }
+        scheduledTime = syncTime;
+        timer.schedule(scheduledSync, syncTime - now);
+    }
+
+    public synchronized void cancel() {
+        generation++;
+        if (scheduledTime != NEVER) {
+            timer.cancel(scheduledSync);
+            Log.d(TAG, "scheduled sync cancelled");
+        }
+        scheduledTime = NEVER;
+        firstTriggerTime = NEVER;
+    }
+
+    public synchronized void onSyncStarted() {
+        lastSyncStartTime = LMISApp.getInstance().getCurrentTimeMillis();
+    }
+
+    //a sync in which any step failed backs off, outbox items it failed to send are also due again after their own backoff
+    public synchronized void onSyncFinished(boolean succeeded) {
+        lastSyncFinishTime = LMISApp.getInstance().getCurrentTimeMillis();
+        consecutiveFailures = succeeded ? 0 : consecutiveFailures + 1;
+    }
+
+    public synchronized boolean isSyncScheduled() {
+        return scheduledTime != NEVER;
+    }
+
+    private synchronized void fire() {
+        scheduledTime = NEVER;
+        firstTriggerTime = NEVER;
+        Log.d(TAG, "debounced sync fired");
+        syncService.requestSyncImmediately();
+    }
+
+    private long nextSyncTime(long now, boolean hasPendingWork) {
+        long syncTime = Math.min(now + (hasPendingWork ? PENDING_WORK_DEBOUNCE_MILLIS : DEBOUNCE_MILLIS), firstTriggerTime + MAX_DEBOUNCE_MILLIS);
+        if (lastSyncStartTime != NEVER && !hasPendingWork) {
+            syncTime = Math.max(syncTime, lastSyncStartTime + (isSavingBattery() ? LOW_BATTERY_MIN_INTERVAL_MILLIS : MIN_INTERVAL_MILLIS));
+        }
+        if (consecutiveFailures > 0) {
+            syncTime = Math.max(syncTime, lastSyncFinishTime + backoffMillis(consecutiveFailures));
+        }
+        return Math.max(syncTime, now);
+    }
+
+    private boolean hasPendingWork(long dueBy) {
+        try {
+            for (SyncType syncType : SyncType.values()) {
+                if (!syncOutboxRepository.listDue(syncType, dueBy, 1).isEmpty()) {
+                    return true;
+                }
+            }
+        } catch (LMISException e) {
+            e.reportToFabric();
+        }
+        return false;
+    }
+
+    private boolean isSavingBattery() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if (status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL) {
+            return false;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+    }
+
+    protected static long backoffMillis(int failures) {
+        return Math.min(BASE_BACKOFF_MILLIS << Math.min(failures - 1, 20), MAX_BACKOFF_MILLIS);
+    }
+
+    interface Timer {
+        void schedule(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    private static class HandlerTimer implements Timer {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.service;
+
+import android.util.Log;
+
+import org.openlmis.core.exceptions.LMISException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs sync steps as a dependency graph: a step starts once all the steps it depends on
+ * have succeeded, and at most maxParallelism steps run at the same time.
+ * Steps may write to the database concurrently, {@link org.openlmis.core.persistence.DbUtil} serializes the access.
+ */
+public class SyncTaskGraph {
+
+    private static final String TAG = "SyncTaskGraph";
+
+    private final int maxParallelism;
+    private final Map<String, SyncTask> tasks = new LinkedHashMap<>();
+    private final List<String> failedSteps = new ArrayList<>();
+
+    private SyncMetricsRecorder metricsRecorder;
+    private String runId;
+    private String metricPrefix;
+
+    public SyncTaskGraph(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    public SyncTaskGraph addTask(String name, Runnable step, String... dependencies) {
+        if (tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicated sync step " + name);
+        }
+        tasks.put(name, new SyncTask(name, step, Arrays.asList(dependencies)));
+        return this;
+    }
+
+    //every step is then recorded as a sync metric named metricPrefix + step name
+    public SyncTaskGraph measuredBy(SyncMetricsRecorder metricsRecorder, String runId, String metricPrefix) {
+        this.metricsRecorder = metricsRecorder;
+        this.runId = runId;
+        this.metricPrefix = metricPrefix;
+        return this;
+    }
+
+    /**
+     * Blocks until every step has finished or been skipped because a dependency failed.
+     *
+     * @return elapsed milliseconds of every finished step, in completion order
+     */
+    public Map<String, Long> run() {
+        Map<String, Integer> pendingDependencies = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        buildGraph(pendingDependencies, dependents);
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxParallelism, Math.max(tasks.size(), 1)));
+        CompletionService<SyncTaskResult> completionService = new ExecutorCompletionService<>(executor);
+        long start = System.currentTimeMillis();
+        int running = 0;
+        try {
+            for (SyncTask task : tasks.values()) {
+                if (pendingDependencies.get(task.name) == 0) {
+                    completionService.submit(task);
+                    running++;
+                }
+            }
+
+            while (running > 0) {
+                SyncTaskResult result = completionService.take().get();
+                running--;
+                timings.put(result.name, result.elapsed);
+                if (result.failed) {
+                    failedSteps.add(result.name);
+                }
+
+                if (result.error != null) {
+                    new LMISException(result.error).reportToFabric();
+                    Log.e(TAG, "===> " + result.name + " failed, skip its dependents: " + result.error.getMessage());
+                    continue;
+                }
+                for (String dependent : dependents.get(result.name)) {
+                    int remaining = pendingDependencies.get(dependent) - 1;
+                    pendingDependencies.put(dependent, remaining);
+                    if (remaining == 0) {
+                        completionService.submit(tasks.get(dependent));
+                        running++;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            new LMISException(e).reportToFabric();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logTimings(timings, System.currentTimeMillis() - start);
+        return timings;
+    }
+
+    //steps that threw or, when measured, recorded a failure they recovered from
+    public List<String> getFailedSteps() {
+        return failedSteps;
+    }
+
+    private void buildGraph(Map<String, Integer> pendingDependencies, Map<String, List<String>> dependents) {
+        for (SyncTask task : tasks.values()) {
+            pendingDependencies.put(task.name, task.dependencies.size());
+            dependents.put(task.name, new ArrayList<String>());
+        }
+        for (SyncTask task : tasks.values()) {
+            for (String dependency : task.dependencies) {
+                if (!tasks.containsKey(dependency)) {
+                    throw new IllegalArgumentException("Sync step " + task.name + " depends on unknown step " + dependency);
+                }
+                dependents.get(dependency).add(task.name);
+            }
+        }
+        checkNoCycle(pendingDependencies, dependents);
+    }
+
+    private void checkNoCycle(Map<String, Integer> pendingDependencies, Map<String, List<String>> dependents) {
+        Map<String, Integer> remaining = new HashMap<>(pendingDependencies);
+        List<String> ready = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : remaining.entrySet()) {
+            if (entry.getValue() == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            String name = ready.remove(ready.size() - 1);
+            visited++;
+            for (String dependent : dependents.get(name)) {
+                int count = remaining.get(dependent) - 1;
+                remaining.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != tasks.size()) {
+            throw new IllegalArgumentException("Sync steps have a dependency cycle");
+        }
+    }
+
+    private void logTimings(Map<String, Long> timings, long total) {
+        StringBuilder breakdown = new StringBuilder("===> Sync finished in " + total + "ms");
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            breakdown.append(", ").append(timing.getKey()).append(": ").append(timing.getValue()).append("ms");
+        }
+        Log.d(TAG, breakdown.toString());
+    }
+
+    private class SyncTask implements Callable<SyncTaskResult> {
+        private final String name;
+        private final Runnable step;
+        private final List<String> dependencies;
+
+        SyncTask(String name, Runnable step, List<String> dependencies) {
+            this.name = name;
+            this.step = step;
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public SyncTaskResult call() {
+            long start = System.currentTimeMillis();
+            if (metricsRecorder != null) {
+                metricsRecorder.begin(runId, metricPrefix + name);
+            }
+            try {
+                step.run();
+                return new SyncTaskResult(name, System.currentTimeMillis() - start, null, SyncMetricsRecorder.isStepFailed());
+            } catch (RuntimeException e) {
+                SyncMetricsRecorder.recordFailure(e);
+                return new SyncTaskResult(name, System.currentTimeMillis() - start, e, true);
+            } finally {
+                if (metricsRecorder != null) {
+                    metricsRecorder.end();
+                }
+            }
+        }
+    }
+
+    private static class SyncTaskResult {
+        private final String name;
+        private final long elapsed;
+        private final RuntimeException error;
+        private final boolean failed;
+
+        SyncTaskResult(String name, long elapsed, RuntimeException error, boolean failed) {
+            this.name = name;
+            this.elapsed = elapsed;
+            this.error = error;
+            this.failed = failed;
+        }
+    }
+}
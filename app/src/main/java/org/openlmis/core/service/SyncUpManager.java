@@ -25,33 +25,49 @@ import com.google.inject.Singleton;
 
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.exceptions.NetWorkException;
+import org.openlmis.core.exceptions.UnauthorizedException;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.manager.UserInfoMgr;
 import org.openlmis.core.model.Cmm;
 import org.openlmis.core.model.ProgramDataForm;
 import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnRFormSnapshot;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.SyncError;
+import org.openlmis.core.model.SyncOutboxItem;
 import org.openlmis.core.model.SyncType;
 import org.openlmis.core.model.repository.CmmRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.ProgramDataFormRepository;
+import org.openlmis.core.model.repository.RnRFormSnapshotRepository;
 import org.openlmis.core.model.repository.RnrFormRepository;
 import org.openlmis.core.model.repository.StockMovementRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.model.repository.SyncErrorsRepository;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
 import org.openlmis.core.network.LMISRestApi;
 import org.openlmis.core.network.model.AppInfoRequest;
 import org.openlmis.core.network.model.CmmEntry;
 import org.openlmis.core.network.model.StockMovementEntry;
+import org.openlmis.core.persistence.DbUtil;
 import org.openlmis.core.utils.Constants;
 import org.roboguice.shaded.goole.common.base.Function;
 import org.roboguice.shaded.goole.common.base.Predicate;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 
+import retrofit.mime.TypedByteArray;
 import rx.Observable;
 import rx.functions.Action1;
 import rx.functions.Func1;
@@ -63,6 +79,10 @@ public class SyncUpManager {
 
     private static final String TAG = "SyncUpManager";
 
+    private static final long OUTBOX_BATCH_SIZE = 100;
+
+    private static final String JSON_MIME_TYPE = "application/json; charset=UTF-8";
+
     @Inject
     RnrFormRepository rnrFormRepository;
 
@@ -87,6 +107,15 @@ public class SyncUpManager {
     @Inject
     private SyncErrorsRepository syncErrorsRepository;
 
+    @Inject
+    SyncOutboxRepository syncOutboxRepository;
+
+    @Inject
+    RnRFormSnapshotRepository rnRFormSnapshotRepository;
+
+    @Inject
+    DbUtil dbUtil;
+
     protected LMISRestApi lmisRestApi;
 
     public SyncUpManager() {
@@ -105,10 +134,12 @@ public class SyncUpManager {
                 return false;
             }
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
             return false;
         }
 
+        SyncMetricsRecorder.addRecordCount(forms);
         Observable.from(forms).filter(new Func1<RnRForm, Boolean>() {
             @Override
             public Boolean call(RnRForm rnRForm) {
@@ -172,21 +203,66 @@ public class SyncUpManager {
     }
 
     public boolean syncStockCards() {
+        final String facilityId = UserInfoMgr.getInstance().getUser().getFacilityId();
         try {
-            List<StockMovementItem> stockMovementItems = stockMovementRepository.listUnSynced();
-            if (stockMovementItems.isEmpty()) {
-                return false;
-            }
+            OutboxDrainResult result = drainOutbox(new OutboxSender() {
+                @Override
+                List<SyncOutboxItem> listDue(long now) throws LMISException {
+                    return syncOutboxRepository.listDueStockMovements(now, OUTBOX_BATCH_SIZE);
+                }
 
-            final String facilityId = UserInfoMgr.getInstance().getUser().getFacilityId();
-            List<StockMovementEntry> movementEntriesToSync = convertStockMovementItemsToStockMovementEntriesForSync(facilityId, stockMovementItems);
+                //a card's movements are retried together so a later one never reaches the server before an earlier one
+                @Override
+                Collection<List<SyncOutboxItem>> retryGroupsOf(List<SyncOutboxItem> outboxItems) throws LMISException {
+                    Map<Long, Long> stockCardIds = new HashMap<>();
+                    for (StockMovementItem stockMovementItem : stockMovementRepository.queryByIds(syncObjectIdsOf(outboxItems))) {
+                        stockCardIds.put(stockMovementItem.getId(), stockMovementItem.getStockCard().getId());
+                    }
+                    Map<Object, List<SyncOutboxItem>> groups = new LinkedHashMap<>();
+                    for (SyncOutboxItem outboxItem : outboxItems) {
+                        Object stockCardId = stockCardIds.get(outboxItem.getSyncObjectId());
+                        Object groupKey = stockCardId == null ? outboxItem : stockCardId;
+                        if (!groups.containsKey(groupKey)) {
+                            groups.put(groupKey, new ArrayList<SyncOutboxItem>());
+                        }
+                        groups.get(groupKey).add(outboxItem);
+                    }
+                    return groups.values();
+                }
 
-            lmisRestApi.syncUpStockMovementData(facilityId, movementEntriesToSync);
-            markStockDataSynced(stockMovementItems);
+                @Override
+                void send(List<SyncOutboxItem> outboxItems, String idempotencyKey) throws LMISException {
+                    final List<StockMovementItem> stockMovementItems = from(stockMovementRepository.queryByIds(syncObjectIdsOf(outboxItems))).filter(new Predicate<StockMovementItem>() {
+                        @Override
+                        public boolean apply(StockMovementItem stockMovementItem) {
+                            return !stockMovementItem.isSynced();
+                        }
+                    }).toList();
+                    if (!stockMovementItems.isEmpty()) {
+                        lmisRestApi.syncUpStockMovementData(facilityId, convertStockMovementItemsToStockMovementEntriesForSync(facilityId, stockMovementItems), idempotencyKey);
+                    }
+                    markSyncedAndDequeue(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            if (!stockMovementItems.isEmpty()) {
+                                markStockDataSynced(stockMovementItems);
+                            }
+                            return null;
+                        }
+                    }, outboxItems);
+                }
+            });
+            if (result.lastError != null) {
+                throw result.lastError;
+            }
+            if (result.sentCount == 0) {
+                return false;
+            }
             syncErrorsRepository.deleteBySyncTypeAndObjectId(SyncType.StockCards, 0L);
             Log.d(TAG, "===> SyncStockMovement : synced");
             return true;
         } catch (LMISException exception) {
+            SyncMetricsRecorder.recordFailure(exception);
             exception.reportToFabric();
             syncErrorsRepository.save(new SyncError(exception.getMessage(), SyncType.StockCards, 0L));
             Log.e(TAG, "===> SyncStockMovement : synced failed ->" + exception.getMessage());
@@ -217,12 +293,7 @@ public class SyncUpManager {
             return;
         }
         try {
-            List<String> unSyncedStockCardCodes = FluentIterable.from(stockMovementRepository.listUnSynced()).transform(new Function<StockMovementItem, String>() {
-                @Override
-                public String apply(StockMovementItem stockMovementItem) {
-                    return stockMovementItem.getStockCard().getProduct().getCode();
-                }
-            }).toList();
+            List<String> unSyncedStockCardCodes = syncOutboxRepository.queryUnsyncedStockCardProductCodes();
 
             final String facilityId = UserInfoMgr.getInstance().getUser().getFacilityId();
             lmisRestApi.syncUpUnSyncedStockCards(facilityId, unSyncedStockCardCodes);
@@ -232,6 +303,7 @@ public class SyncUpManager {
                 sharedPreferenceMgr.setStockLastSyncTime();
             }
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
         }
     }
@@ -241,12 +313,7 @@ public class SyncUpManager {
             return;
         }
         try {
-            List<String> unSyncedStockCardCodes = FluentIterable.from(stockMovementRepository.listUnSynced()).transform(new Function<StockMovementItem, String>() {
-                @Override
-                public String apply(StockMovementItem stockMovementItem) {
-                    return stockMovementItem.getStockCard().getProduct().getCode();
-                }
-            }).toList();
+            List<String> unSyncedStockCardCodes = syncOutboxRepository.queryUnsyncedStockCardProductCodes();
             sharedPreferenceMgr.setLastMovementHandShakeDateToToday();
             boolean isAllStockCardSyncSuccessful = unSyncedStockCardCodes.isEmpty();
             if (isAllStockCardSyncSuccessful) {
@@ -265,6 +332,7 @@ public class SyncUpManager {
                 sharedPreferenceMgr.setSyncedVersion(true);
             }
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
         }
     }
@@ -276,29 +344,53 @@ public class SyncUpManager {
             List<String> archivedProductCodes = productRepository.listArchivedProductCodes();
             lmisRestApi.syncUpArchivedProducts(facilityId, archivedProductCodes);
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
         }
     }
 
     public void syncUpCmms() {
         try {
-            List<Cmm> unsyncedCmms = cmmRepository.listUnsynced();
-            if (!unsyncedCmms.isEmpty()) {
-                List<CmmEntry> cmmEntries = FluentIterable.from(unsyncedCmms).transform(new Function<Cmm, CmmEntry>() {
-                    @Override
-                    public CmmEntry apply(Cmm cmm) {
-                        return CmmEntry.createFrom(cmm);
-                    }
-                }).toList();
-
-                lmisRestApi.syncUpCmms(UserInfoMgr.getInstance().getUser().getFacilityId(), cmmEntries);
+            OutboxDrainResult result = drainOutbox(new OutboxSender() {
+                @Override
+                List<SyncOutboxItem> listDue(long now) throws LMISException {
+                    return syncOutboxRepository.listDue(SyncType.Cmm, now, OUTBOX_BATCH_SIZE);
+                }
 
-                for (Cmm cmm : unsyncedCmms) {
-                    cmm.setSynced(true);
-                    cmmRepository.save(cmm);
+                @Override
+                void send(List<SyncOutboxItem> outboxItems, String idempotencyKey) throws LMISException {
+                    final List<Cmm> unsyncedCmms = from(cmmRepository.queryByIds(syncObjectIdsOf(outboxItems))).filter(new Predicate<Cmm>() {
+                        @Override
+                        public boolean apply(Cmm cmm) {
+                            return !cmm.isSynced();
+                        }
+                    }).toList();
+                    if (!unsyncedCmms.isEmpty()) {
+                        List<CmmEntry> cmmEntries = FluentIterable.from(unsyncedCmms).transform(new Function<Cmm, CmmEntry>() {
+                            @Override
+                            public CmmEntry apply(Cmm cmm) {
+                                return CmmEntry.createFrom(cmm);
+                            }
+                        }).toList();
+                        lmisRestApi.syncUpCmms(UserInfoMgr.getInstance().getUser().getFacilityId(), cmmEntries, idempotencyKey);
+                    }
+                    markSyncedAndDequeue(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            for (Cmm cmm : unsyncedCmms) {
+                                cmm.setSynced(true);
+                                cmmRepository.save(cmm);
+                            }
+                            return null;
+                        }
+                    }, outboxItems);
                 }
+            });
+            if (result.lastError != null) {
+                result.lastError.reportToFabric();
             }
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
         }
     }
@@ -317,17 +409,21 @@ public class SyncUpManager {
         }
     }
 
+    //sends the payload snapshotted at authorization, its key lets the server drop a resubmission it has already accepted
     private boolean submitRequisition(RnRForm rnRForm) {
         try {
-            if (rnRForm.isEmergency()) {
-                lmisRestApi.submitEmergencyRequisition(rnRForm);
+            RnRFormSnapshot snapshot = queryOrTakeSnapshot(rnRForm);
+            TypedByteArray body = new TypedByteArray(JSON_MIME_TYPE, snapshot.getPayload());
+            if (snapshot.isEmergency()) {
+                lmisRestApi.submitEmergencyRequisition(body, snapshot.getIdempotencyKey());
             } else {
-                lmisRestApi.submitRequisition(rnRForm);
+                lmisRestApi.submitRequisition(body, snapshot.getIdempotencyKey());
             }
             syncErrorsRepository.deleteBySyncTypeAndObjectId(SyncType.RnRForm, rnRForm.getId());
             Log.d(TAG, "===> SyncRnr : synced ->");
             return true;
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
             Log.e(TAG, "===> SyncRnr : sync failed ->" + e.getMessage());
             syncErrorsRepository.save(new SyncError(e.getMessage(), SyncType.RnRForm, rnRForm.getId()));
@@ -335,17 +431,111 @@ public class SyncUpManager {
         }
     }
 
+    private RnRFormSnapshot queryOrTakeSnapshot(RnRForm rnRForm) throws LMISException {
+        RnRFormSnapshot snapshot = rnRFormSnapshotRepository.queryByFormId(rnRForm.getId());
+        if (snapshot != null) {
+            return snapshot;
+        }
+        return rnRFormSnapshotRepository.createOrUpdate(rnRForm);
+    }
+
     private boolean submitProgramDataForm(ProgramDataForm programDataForm) {
         try {
             lmisRestApi.syncUpProgramDataForm(programDataForm);
             Log.d(TAG, "===> SyncRapidTests: Rapid Tests synced...");
             return true;
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
             return false;
         }
     }
 
+    //sends due outbox items in batches, a failed batch is retried group by group so a poisoned group only backs off itself.
+    //Failing to reach the server stops the drain without counting an attempt against the items
+    private OutboxDrainResult drainOutbox(OutboxSender sender) throws LMISException {
+        OutboxDrainResult result = new OutboxDrainResult();
+        List<SyncOutboxItem> batch = sender.listDue(LMISApp.getInstance().getCurrentTimeMillis());
+        while (!batch.isEmpty()) {
+            SyncMetricsRecorder.addRecordCount(batch);
+            try {
+                sender.send(batch, batchIdempotencyKey(batch));
+                result.sentCount += batch.size();
+            } catch (LMISException batchError) {
+                throwIfServerUnreachable(batchError);
+                Collection<List<SyncOutboxItem>> groups = sender.retryGroupsOf(batch);
+                if (groups.size() == 1) {
+                    markOutboxItemsFailed(batch, batchError, result);
+                } else {
+                    for (List<SyncOutboxItem> group : groups) {
+                        try {
+                            sender.send(group, batchIdempotencyKey(group));
+                            result.sentCount += group.size();
+                        } catch (LMISException groupError) {
+                            throwIfServerUnreachable(groupError);
+                            markOutboxItemsFailed(group, groupError, result);
+                        }
+                    }
+                }
+            }
+            batch = sender.listDue(LMISApp.getInstance().getCurrentTimeMillis());
+        }
+        return result;
+    }
+
+    private void throwIfServerUnreachable(LMISException e) throws LMISException {
+        if (e instanceof NetWorkException || e instanceof UnauthorizedException) {
+            throw e;
+        }
+    }
+
+    private void markOutboxItemsFailed(List<SyncOutboxItem> outboxItems, LMISException error, OutboxDrainResult result) throws LMISException {
+        for (SyncOutboxItem outboxItem : outboxItems) {
+            syncOutboxRepository.markFailed(outboxItem, error.getMessage(), LMISApp.getInstance().getCurrentTimeMillis());
+            Log.e(TAG, "===> Sync " + outboxItem.getSyncType() + " " + outboxItem.getSyncObjectId() + " failed " + outboxItem.getAttempts() + " times ->" + error.getMessage());
+            if (outboxItem.getStatus() == SyncOutboxItem.Status.DEAD) {
+                Log.e(TAG, "===> Sync " + outboxItem.getSyncType() + " " + outboxItem.getSyncObjectId() + " given up until it is written again");
+            }
+        }
+        result.lastError = error;
+        SyncMetricsRecorder.recordFailure(error);
+    }
+
+    private void markSyncedAndDequeue(final Callable<Void> markSynced, final List<SyncOutboxItem> outboxItems) throws LMISException {
+        try {
+            dbUtil.callInTransaction(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    markSynced.call();
+                    syncOutboxRepository.remove(outboxItems);
+                    return null;
+                }
+            });
+        } catch (SQLException e) {
+            throw new LMISException(e);
+        }
+    }
+
+    private String batchIdempotencyKey(List<SyncOutboxItem> outboxItems) {
+        if (outboxItems.size() == 1) {
+            return outboxItems.get(0).getIdempotencyKey();
+        }
+        StringBuilder keys = new StringBuilder();
+        for (SyncOutboxItem outboxItem : outboxItems) {
+            keys.append(outboxItem.getIdempotencyKey());
+        }
+        return UUID.nameUUIDFromBytes(keys.toString().getBytes()).toString();
+    }
+
+    private List<Long> syncObjectIdsOf(List<SyncOutboxItem> outboxItems) {
+        return from(outboxItems).transform(new Function<SyncOutboxItem, Long>() {
+            @Override
+            public Long apply(SyncOutboxItem outboxItem) {
+                return outboxItem.getSyncObjectId();
+            }
+        }).toList();
+    }
+
     private List<StockMovementEntry> convertStockMovementItemsToStockMovementEntriesForSync(final String facilityId, List<StockMovementItem> stockMovementItems) {
 
         return FluentIterable.from(stockMovementItems).transform(new Function<StockMovementItem, StockMovementEntry>() {
@@ -373,11 +563,32 @@ public class SyncUpManager {
         try {
             rnrFormRepository.createOrUpdateWithItems(rnRForm);
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
             Log.e(TAG, "===> SyncRnr : mark synced failed -> " + rnRForm.getId());
         }
     }
 
+    private abstract static class OutboxSender {
+        abstract List<SyncOutboxItem> listDue(long now) throws LMISException;
+
+        abstract void send(List<SyncOutboxItem> outboxItems, String idempotencyKey) throws LMISException;
+
+        //items that can be sent on their own when their batch fails, kept in sending order
+        Collection<List<SyncOutboxItem>> retryGroupsOf(List<SyncOutboxItem> outboxItems) throws LMISException {
+            List<List<SyncOutboxItem>> groups = new ArrayList<>();
+            for (SyncOutboxItem outboxItem : outboxItems) {
+                groups.add(Collections.singletonList(outboxItem));
+            }
+            return groups;
+        }
+    }
+
+    private static class OutboxDrainResult {
+        private int sentCount;
+        private LMISException lastError;
+    }
+
     public void syncRapidTestForms() {
         List<ProgramDataForm> forms;
         try {
@@ -395,6 +606,7 @@ public class SyncUpManager {
                 return;
             }
         } catch (LMISException e) {
+            SyncMetricsRecorder.recordFailure(e);
             e.reportToFabric();
             return;
         }
@@ -15,6 +15,7 @@ import org.openlmis.core.utils.Constants;
 import org.openlmis.core.utils.InjectPresenter;
 import org.openlmis.core.utils.ToastUtil;
 import org.openlmis.core.view.adapter.AddDrugsToVIAAdapter;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
 import org.openlmis.core.view.widget.SingleClickButtonListener;
 
 import java.util.ArrayList;
@@ -41,6 +42,8 @@ public class AddDrugsToVIAActivity extends SearchBarActivity {
 
     protected AddDrugsToVIAAdapter mAdapter;
     private Date periodBegin;
+    private String searchKeyword;
+    private Subscription searchSubscription;
 
     @Override
     protected ScreenName getScreenName() {
@@ -61,8 +64,8 @@ public class AddDrugsToVIAActivity extends SearchBarActivity {
 
         initRecyclerView();
         loading();
-        Subscription subscription = presenter.loadActiveProductsNotInVIAForm(existingAdditionalProductList).subscribe(subscriber);
-        subscriptions.add(subscription);
+        searchSubscription = presenter.loadActiveProductsNotInVIAForm(existingAdditionalProductList).subscribe(subscriber);
+        subscriptions.add(searchSubscription);
 
         btnComplete.setOnClickListener(new SingleClickButtonListener() {
             @Override
@@ -78,11 +81,10 @@ public class AddDrugsToVIAActivity extends SearchBarActivity {
         productListRecycleView.setAdapter(mAdapter);
     }
 
-    Subscriber<Void> subscriber = new Subscriber<Void>() {
+    Subscriber<List<InventoryViewModel>> subscriber = new Subscriber<List<InventoryViewModel>>() {
         @Override
         public void onCompleted() {
             loaded();
-            mAdapter.notifyDataSetChanged();
         }
 
         @Override
@@ -92,8 +94,8 @@ public class AddDrugsToVIAActivity extends SearchBarActivity {
         }
 
         @Override
-        public void onNext(Void v) {
-            mAdapter.refresh();
+        public void onNext(List<InventoryViewModel> inventoryViewModels) {
+            mAdapter.showSearchResults(searchKeyword, inventoryViewModels);
         }
     };
 
@@ -133,8 +135,19 @@ public class AddDrugsToVIAActivity extends SearchBarActivity {
     }
 
     @Override
-    public boolean onSearchStart(String query) {
-        mAdapter.filter(query);
+    public boolean onSearchStart(final String query) {
+        if (searchSubscription != null) {
+            searchSubscription.unsubscribe();
+            subscriptions.remove(searchSubscription);
+        }
+        searchSubscription = presenter.searchActiveProductsNotInVIAForm(query).subscribe(new Action1<List<InventoryViewModel>>() {
+            @Override
+            public void call(List<InventoryViewModel> inventoryViewModels) {
+                searchKeyword = query;
+                mAdapter.showSearchResults(query, inventoryViewModels);
+            }
+        }, errorAction);
+        subscriptions.add(searchSubscription);
         return false;
     }
 
@@ -88,4 +88,9 @@ public class ArchivedDrugsListActivity extends SearchBarActivity implements Stoc
     public void refresh(List<InventoryViewModel> data) {
         mAdapter.refreshList(data);
     }
+
+    @Override
+    public void refreshStockStatus() {
+        mAdapter.notifyItemRangeChanged(0, mAdapter.getItemCount());
+    }
 }
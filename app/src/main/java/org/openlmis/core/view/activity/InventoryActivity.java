@@ -135,10 +135,18 @@ public abstract class InventoryActivity extends SearchBarActivity implements Inv
 
     @Override
     public boolean onSearchStart(String query) {
-        mAdapter.filter(query);
+        mAdapter.filterAsYouType(query);
         return false;
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mAdapter != null) {
+            mAdapter.stopFilteringAsYouType();
+        }
+        super.onDestroy();
+    }
+
     @Override
     public void showErrorMessage(String msg) {
         ToastUtil.show(msg);
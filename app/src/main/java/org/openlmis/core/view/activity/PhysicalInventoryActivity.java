@@ -14,6 +14,7 @@ import org.openlmis.core.R;
 import org.openlmis.core.googleAnalytics.TrackerActions;
 import org.openlmis.core.presenter.PhysicalInventoryPresenter;
 import org.openlmis.core.utils.ToastUtil;
+import org.openlmis.core.view.adapter.InventoryListAdapter;
 import org.openlmis.core.view.adapter.PhysicalInventoryAdapter;
 import org.openlmis.core.view.fragment.SimpleDialogFragment;
 import org.openlmis.core.view.holder.PhysicalInventoryWithLotViewHolder;
@@ -98,14 +99,19 @@ public class PhysicalInventoryActivity extends InventoryActivity {
 
     @Override
     public boolean onSearchStart(String query) {
-        mAdapter.filter(query);
-        setUpFastScroller(mAdapter.getFilteredList());
+        mAdapter.filterAsYouType(query);
         return false;
     }
 
     @Override
     protected void initRecyclerView() {
         mAdapter = new PhysicalInventoryAdapter(presenter.getInventoryViewModelList(), getSaveOnClickListener(), completeClickListener, getRefreshCompleteCountListener());
+        mAdapter.setOnFilteredAsYouTypeListener(new InventoryListAdapter.OnFilteredAsYouTypeListener() {
+            @Override
+            public void onFiltered(List<InventoryViewModel> filteredList) {
+                setUpFastScroller(filteredList);
+            }
+        });
         productListRecycleView.setAdapter(mAdapter);
     }
 
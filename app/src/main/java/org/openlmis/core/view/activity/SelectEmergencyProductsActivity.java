@@ -28,6 +28,7 @@ import roboguice.inject.ContentView;
 import roboguice.inject.InjectView;
 import rx.Subscriber;
 import rx.Subscription;
+import rx.functions.Action1;
 
 import static org.roboguice.shaded.goole.common.collect.FluentIterable.from;
 
@@ -44,6 +45,8 @@ public class SelectEmergencyProductsActivity extends SearchBarActivity {
     ProductPresenter presenter;
 
     protected SelectEmergencyProductAdapter mAdapter;
+    private String searchKeyword;
+    private Subscription searchSubscription;
 
     @Override
     protected ScreenName getScreenName() {
@@ -63,8 +66,8 @@ public class SelectEmergencyProductsActivity extends SearchBarActivity {
         mAdapter = new SelectEmergencyProductAdapter(new ArrayList<InventoryViewModel>());
         productListRecycleView.setAdapter(mAdapter);
         loading();
-        Subscription subscription = presenter.loadEmergencyProducts().subscribe(subscriber);
-        subscriptions.add(subscription);
+        searchSubscription = presenter.searchEmergencyProducts(null).subscribe(subscriber);
+        subscriptions.add(searchSubscription);
 
         btnNext.setOnClickListener(new SingleClickButtonListener() {
             @Override
@@ -97,7 +100,6 @@ public class SelectEmergencyProductsActivity extends SearchBarActivity {
         @Override
         public void onCompleted() {
             loaded();
-            mAdapter.notifyDataSetChanged();
         }
 
         @Override
@@ -108,7 +110,7 @@ public class SelectEmergencyProductsActivity extends SearchBarActivity {
 
         @Override
         public void onNext(List<InventoryViewModel> data) {
-            mAdapter.refreshList(data);
+            mAdapter.showSearchResults(searchKeyword, data);
         }
     };
 
@@ -126,8 +128,24 @@ public class SelectEmergencyProductsActivity extends SearchBarActivity {
     }
 
     @Override
-    public boolean onSearchStart(String query) {
-        mAdapter.filter(query);
+    public boolean onSearchStart(final String query) {
+        if (searchSubscription != null) {
+            searchSubscription.unsubscribe();
+            subscriptions.remove(searchSubscription);
+        }
+        searchSubscription = presenter.searchEmergencyProducts(query).subscribe(new Action1<List<InventoryViewModel>>() {
+            @Override
+            public void call(List<InventoryViewModel> inventoryViewModels) {
+                searchKeyword = query;
+                mAdapter.showSearchResults(query, inventoryViewModels);
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                ToastUtil.show(throwable.getMessage());
+            }
+        });
+        subscriptions.add(searchSubscription);
         return false;
     }
 }
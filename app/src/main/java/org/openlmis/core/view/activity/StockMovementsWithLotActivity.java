@@ -201,7 +201,7 @@ public class StockMovementsWithLotActivity extends BaseActivity implements Stock
 
     @Override
     public void refreshStockMovement() {
-        stockMovementAdapter.notifyDataSetChanged();
+        stockMovementAdapter.refresh(stockMovementList);
     }
 
     @Override
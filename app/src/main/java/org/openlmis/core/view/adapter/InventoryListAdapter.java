@@ -22,17 +22,26 @@ import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 
 import org.openlmis.core.view.viewmodel.InventoryViewModel;
-import org.roboguice.shaded.goole.common.base.Predicate;
+import org.openlmis.core.view.viewmodel.LotMovementViewModel;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
-
-import static org.roboguice.shaded.goole.common.collect.FluentIterable.from;
+import lombok.Setter;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.subjects.PublishSubject;
 
 public abstract class InventoryListAdapter<VH extends RecyclerView.ViewHolder> extends RecyclerView.Adapter<VH> implements FilterableAdapter {
 
+    static final int SEARCH_DEBOUNCE_MILLIS = 300;
+
     @Getter
     List<InventoryViewModel> data;
 
@@ -40,6 +49,37 @@ public abstract class InventoryListAdapter<VH extends RecyclerView.ViewHolder> e
     List<InventoryViewModel> filteredList = new ArrayList<>();
     String queryKeyWord;
 
+    //rows are the view models themselves, filtering only adds and removes them
+    static final ListDiff.ItemKeys<InventoryViewModel> ROW_KEYS = new ListDiff.ItemKeys<InventoryViewModel>() {
+        @Override
+        public Object idOf(InventoryViewModel inventoryViewModel) {
+            return ListDiff.identityOf(inventoryViewModel);
+        }
+
+        @Override
+        public Object contentOf(InventoryViewModel inventoryViewModel) {
+            return null;
+        }
+    };
+
+    final InventorySearchIndex searchIndex = new InventorySearchIndex();
+    final ListDiff.ItemKeys<InventoryViewModel> validationKeys = new ListDiff.ItemKeys<InventoryViewModel>() {
+        @Override
+        public Object idOf(InventoryViewModel inventoryViewModel) {
+            return ListDiff.identityOf(inventoryViewModel);
+        }
+
+        @Override
+        public Object contentOf(InventoryViewModel inventoryViewModel) {
+            return validationStateOf(inventoryViewModel);
+        }
+    };
+    private int shownVersion;
+    private PublishSubject<SearchRequest> searchRequests;
+    private Subscription searchSubscription;
+    @Setter
+    private OnFilteredAsYouTypeListener onFilteredAsYouTypeListener;
+
     public InventoryListAdapter(List<InventoryViewModel> data) {
         this.data = data;
     }
@@ -51,33 +91,114 @@ public abstract class InventoryListAdapter<VH extends RecyclerView.ViewHolder> e
 
     @Override
     public void filter(final String keyword) {
-        this.queryKeyWord = keyword;
+        showFilteredList(keyword, searchIndex.search(data, keyword));
+    }
 
-        List<InventoryViewModel> filteredViewModels;
-
-        if (TextUtils.isEmpty(keyword)) {
-            filteredViewModels = data;
-        } else {
-            filteredViewModels = from(data).filter(new Predicate<InventoryViewModel>() {
-                @Override
-                public boolean apply(InventoryViewModel inventoryViewModel) {
-                    return inventoryViewModel.getProduct().getProductFullName().toLowerCase().contains(keyword.toLowerCase());
-                }
-            }).toList();
+    //for search boxes: typing is debounced and searched off the UI thread, the list shows only the latest query
+    public void filterAsYouType(String keyword) {
+        if (searchRequests == null) {
+            searchRequests = PublishSubject.create();
+            searchSubscription = searchRequests.debounce(SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                    .map(new Func1<SearchRequest, SearchRequest>() {
+                        @Override
+                        public SearchRequest call(SearchRequest searchRequest) {
+                            searchRequest.result = searchIndex.search(searchRequest.source, searchRequest.keyword, searchRequest.sourceVersion);
+                            if (!searchRequest.shown.isEmpty() && !searchRequest.result.isEmpty()) {
+                                searchRequest.diff = ListDiff.diff(ListDiff.snapshot(searchRequest.shown, ROW_KEYS), ListDiff.snapshot(searchRequest.result, ROW_KEYS));
+                            }
+                            return searchRequest;
+                        }
+                    })
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(new Action1<SearchRequest>() {
+                        @Override
+                        public void call(SearchRequest searchRequest) {
+                            if (searchRequest.sourceVersion == searchIndex.getVersion() && searchRequest.shownVersion == shownVersion) {
+                                showFilteredList(searchRequest.keyword, searchRequest.result, searchRequest.diff);
+                            } else {
+                                filter(searchRequest.keyword);
+                            }
+                            if (onFilteredAsYouTypeListener != null) {
+                                onFilteredAsYouTypeListener.onFiltered(filteredList);
+                            }
+                        }
+                    });
         }
+        searchRequests.onNext(new SearchRequest(keyword, new ArrayList<>(data), searchIndex.getVersion(), new ArrayList<>(filteredList), shownVersion));
+    }
+
+    public void stopFilteringAsYouType() {
+        if (searchSubscription != null) {
+            searchSubscription.unsubscribe();
+            searchSubscription = null;
+            searchRequests = null;
+        }
+    }
+
+    private void showFilteredList(String keyword, List<InventoryViewModel> filteredViewModels) {
+        showFilteredList(keyword, filteredViewModels, null);
+    }
 
+    //diff is null when it wasn't worked out off the UI thread
+    private void showFilteredList(String keyword, List<InventoryViewModel> filteredViewModels, ListDiff.Result diff) {
+        boolean isKeywordChanged = !TextUtils.equals(queryKeyWord, keyword);
+        this.queryKeyWord = keyword;
+
+        boolean isAnyListEmpty = filteredList.isEmpty() || filteredViewModels.isEmpty();
+        if (diff == null && !isAnyListEmpty) {
+            diff = ListDiff.diff(ListDiff.snapshot(filteredList, ROW_KEYS), ListDiff.snapshot(filteredViewModels, ROW_KEYS));
+        }
         filteredList.clear();
         filteredList.addAll(filteredViewModels);
-        this.notifyDataSetChanged();
+        shownVersion++;
+
+        if (isAnyListEmpty || diff.isFullRefresh()) {
+            this.notifyDataSetChanged();
+            return;
+        }
+        diff.dispatchTo(this);
+        if (isKeywordChanged) {
+            //rows still shown are rebound for the new highlight
+            this.notifyItemRangeChanged(0, filteredList.size());
+        }
+    }
+
+    //for lists searched in the database: the results are shown as they are, after the products checked in earlier searches,
+    //and data is updated in place so a presenter sharing it keeps the selection
+    public void showSearchResults(String keyword, List<InventoryViewModel> results) {
+        List<InventoryViewModel> rows = new ArrayList<>();
+        Set<String> checkedCodes = new HashSet<>();
+        for (InventoryViewModel inventoryViewModel : data) {
+            if (inventoryViewModel.isChecked()) {
+                rows.add(inventoryViewModel);
+                checkedCodes.add(inventoryViewModel.getProduct().getCode());
+            }
+        }
+        for (InventoryViewModel inventoryViewModel : results) {
+            if (!checkedCodes.contains(inventoryViewModel.getProduct().getCode())) {
+                rows.add(inventoryViewModel);
+            }
+        }
+
+        data.clear();
+        data.addAll(rows);
+        searchIndex.clear();
+        showFilteredList(keyword, rows);
+    }
+
+    public boolean isFiltered() {
+        return !TextUtils.isEmpty(queryKeyWord);
     }
 
     public void refreshList(List<InventoryViewModel> data) {
         this.data = data;
+        searchIndex.clear();
         filter(queryKeyWord);
     }
 
     @Override
     public int validateAll() {
+        ListDiff.Snapshot shownBefore = ListDiff.snapshot(filteredList, validationKeys);
         int position = -1;
         for (int i = 0; i < data.size(); i++) {
             if (!data.get(i).validate()) {
@@ -86,11 +207,52 @@ public abstract class InventoryListAdapter<VH extends RecyclerView.ViewHolder> e
             }
         }
 
-        this.notifyDataSetChanged();
+        notifyValidationChanges(shownBefore);
         return position;
     }
 
+    //only the rows whose validation state changed are bound again
+    protected void notifyValidationChanges(ListDiff.Snapshot shownBefore) {
+        ListDiff.diff(shownBefore, ListDiff.snapshot(filteredList, validationKeys)).dispatchTo(this);
+    }
+
+    //what validating a row changes on screen: its own flag and those of its lots
+    protected List<Object> validationStateOf(InventoryViewModel inventoryViewModel) {
+        List<Object> validationState = new ArrayList<>();
+        validationState.add(inventoryViewModel.isValid());
+        for (LotMovementViewModel lotMovementViewModel : inventoryViewModel.getNewLotMovementViewModelList()) {
+            validationState.add(lotMovementViewModel.isValid());
+        }
+        for (LotMovementViewModel lotMovementViewModel : inventoryViewModel.getExistingLotMovementViewModelList()) {
+            validationState.add(lotMovementViewModel.isValid());
+        }
+        return validationState;
+    }
+
     public void refresh() {
+        searchIndex.invalidate();
         filter(queryKeyWord);
     }
+
+    public interface OnFilteredAsYouTypeListener {
+        void onFiltered(List<InventoryViewModel> filteredList);
+    }
+
+    private static class SearchRequest {
+        final String keyword;
+        final List<InventoryViewModel> source;
+        final int sourceVersion;
+        final List<InventoryViewModel> shown;
+        final int shownVersion;
+        List<InventoryViewModel> result;
+        ListDiff.Result diff;
+
+        SearchRequest(String keyword, List<InventoryViewModel> source, int sourceVersion, List<InventoryViewModel> shown, int shownVersion) {
+            this.keyword = keyword;
+            this.source = source;
+            this.sourceVersion = sourceVersion;
+            this.shown = shown;
+            this.shownVersion = shownVersion;
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package org.openlmis.core.view.adapter;
+
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//search keys are lower-cased once per view model, and a query extending the last one only scans what the last one matched
+public class InventorySearchIndex {
+
+    private final Map<InventoryViewModel, String> searchKeys = new IdentityHashMap<>();
+
+    private int version;
+    private int lastSourceSize;
+    private String lastKeyword;
+    private List<InventoryViewModel> lastResult;
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    //the searched list was reordered or changed in place, the last result can't be narrowed any more
+    public synchronized void invalidate() {
+        version++;
+        lastResult = null;
+    }
+
+    //the searched list was replaced, keys of view models no longer shown are dropped too
+    public synchronized void clear() {
+        invalidate();
+        searchKeys.clear();
+    }
+
+    public List<InventoryViewModel> search(List<InventoryViewModel> source, String keyword) {
+        return search(source, keyword, getVersion());
+    }
+
+    //a source taken before the last invalidate is searched in full and doesn't become the last result
+    public synchronized List<InventoryViewModel> search(List<InventoryViewModel> source, String keyword, int sourceVersion) {
+        if (keyword == null || keyword.isEmpty()) {
+            lastResult = null;
+            return source;
+        }
+        String normalizedKeyword = keyword.toLowerCase();
+        boolean isCurrentSource = sourceVersion == version;
+
+        List<InventoryViewModel> candidates = source;
+        if (isCurrentSource && lastResult != null && lastSourceSize == source.size() && normalizedKeyword.contains(lastKeyword)) {
+            candidates = lastResult;
+        }
+
+        List<InventoryViewModel> result = new ArrayList<>();
+        for (InventoryViewModel inventoryViewModel : candidates) {
+            if (searchKeyOf(inventoryViewModel).contains(normalizedKeyword)) {
+                result.add(inventoryViewModel);
+            }
+        }
+
+        if (isCurrentSource) {
+            lastSourceSize = source.size();
+            lastKeyword = normalizedKeyword;
+            lastResult = result;
+        }
+        return result;
+    }
+
+    private String searchKeyOf(InventoryViewModel inventoryViewModel) {
+        String searchKey = searchKeys.get(inventoryViewModel);
+        if (searchKey == null) {
+            searchKey = inventoryViewModel.getProduct().getProductFullName().toLowerCase();
+            searchKeys.put(inventoryViewModel, searchKey);
+        }
+        return searchKey;
+    }
+}
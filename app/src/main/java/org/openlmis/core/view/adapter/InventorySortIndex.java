@@ -0,0 +1,132 @@
+package org.openlmis.core.view.adapter;
+
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//sort keys are read once per view model, and every order sorted since the list last changed is kept for switching back to it
+public class InventorySortIndex {
+
+    public enum SortOrder {
+        NAME_ASC, NAME_DESC, SOH_DESC, SOH_ASC
+    }
+
+    private final Map<InventoryViewModel, SortKey> sortKeys = new IdentityHashMap<>();
+    private final Map<SortOrder, List<InventoryViewModel>> sortedLists = new EnumMap<>(SortOrder.class);
+
+    private int version;
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    //the sorted list was replaced or changed in place, orders and keys read so far are dropped
+    public synchronized void clear() {
+        version++;
+        sortedLists.clear();
+        sortKeys.clear();
+    }
+
+    //null until the order has been sorted for the current list
+    public synchronized List<InventoryViewModel> getSorted(SortOrder sortOrder) {
+        return sortedLists.get(sortOrder);
+    }
+
+    public List<InventoryViewModel> sort(List<InventoryViewModel> source, SortOrder sortOrder) {
+        return sort(source, sortOrder, getVersion());
+    }
+
+    //only the keys are read under the lock, the sort itself doesn't hold up getSorted on the UI thread;
+    //a source taken before the last clear is sorted but not kept
+    public List<InventoryViewModel> sort(List<InventoryViewModel> source, SortOrder sortOrder, int sourceVersion) {
+        List<SortKey> keys;
+        synchronized (this) {
+            if (sourceVersion == version && sortedLists.containsKey(sortOrder)) {
+                return sortedLists.get(sortOrder);
+            }
+            keys = new ArrayList<>(source.size());
+            for (InventoryViewModel inventoryViewModel : source) {
+                keys.add(sortKeyOf(inventoryViewModel));
+            }
+        }
+
+        Collections.sort(keys, comparatorOf(sortOrder));
+        List<InventoryViewModel> sortedList = new ArrayList<>(keys.size());
+        for (SortKey key : keys) {
+            sortedList.add(key.inventoryViewModel);
+        }
+
+        synchronized (this) {
+            if (sourceVersion == version) {
+                sortedLists.put(sortOrder, sortedList);
+            }
+        }
+        return sortedList;
+    }
+
+    private SortKey sortKeyOf(InventoryViewModel inventoryViewModel) {
+        SortKey sortKey = sortKeys.get(inventoryViewModel);
+        if (sortKey == null) {
+            sortKey = new SortKey(inventoryViewModel);
+            sortKeys.put(inventoryViewModel, sortKey);
+        }
+        return sortKey;
+    }
+
+    private static Comparator<SortKey> comparatorOf(SortOrder sortOrder) {
+        switch (sortOrder) {
+            case NAME_DESC:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey lhs, SortKey rhs) {
+                        return rhs.name.compareTo(lhs.name);
+                    }
+                };
+            case SOH_DESC:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey lhs, SortKey rhs) {
+                        return compareLong(rhs.stockOnHand, lhs.stockOnHand);
+                    }
+                };
+            case SOH_ASC:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey lhs, SortKey rhs) {
+                        return compareLong(lhs.stockOnHand, rhs.stockOnHand);
+                    }
+                };
+            default:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey lhs, SortKey rhs) {
+                        return lhs.name.compareTo(rhs.name);
+                    }
+                };
+        }
+    }
+
+    //Long.compare needs API 19
+    private static int compareLong(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    private static class SortKey {
+        final InventoryViewModel inventoryViewModel;
+        final String name;
+        final long stockOnHand;
+
+        SortKey(InventoryViewModel inventoryViewModel) {
+            this.inventoryViewModel = inventoryViewModel;
+            String primaryName = inventoryViewModel.getProduct().getPrimaryName();
+            this.name = primaryName == null ? "" : primaryName;
+            this.stockOnHand = inventoryViewModel.getStockOnHand();
+        }
+    }
+}
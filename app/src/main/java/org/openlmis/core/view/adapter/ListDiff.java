@@ -0,0 +1,234 @@
+package org.openlmis.core.view.adapter;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//item-level changes between two snapshots of a list: rows are matched by id, the rows kept are the longest run of ids
+//found in the same order in both lists, and a kept row is changed when what it shows differs.
+//Snapshots read the view models and are taken where they are safe to read, diffing them only reads the snapshots
+//and can run on any thread
+public final class ListDiff {
+
+    static final int REMOVE = 0;
+    static final int INSERT = 1;
+    static final int CHANGE = 2;
+
+    private ListDiff() {
+    }
+
+    public interface ItemKeys<T> {
+        //ids are compared with equals and expected to be unique in a list, see identityOf for view models with value equality
+        Object idOf(T item);
+
+        //what the row shows, compared with equals; null when only additions and removals matter
+        Object contentOf(T item);
+    }
+
+    public static <T> Snapshot snapshot(List<T> items, ItemKeys<T> itemKeys) {
+        Object[] ids = new Object[items.size()];
+        Object[] contents = new Object[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            T item = items.get(i);
+            ids[i] = itemKeys.idOf(item);
+            contents[i] = itemKeys.contentOf(item);
+        }
+        return new Snapshot(ids, contents);
+    }
+
+    public static Object identityOf(Object item) {
+        return new Identity(item);
+    }
+
+    public static Result diff(Snapshot oldSnapshot, Snapshot newSnapshot) {
+        Map<Object, Integer> oldPositions = new HashMap<>(oldSnapshot.size() * 2);
+        for (int i = 0; i < oldSnapshot.size(); i++) {
+            if (oldPositions.put(oldSnapshot.ids[i], i) != null) {
+                return Result.FULL_REFRESH;
+            }
+        }
+        int[] oldPositionOfNew = new int[newSnapshot.size()];
+        Map<Object, Integer> newPositions = new HashMap<>(newSnapshot.size() * 2);
+        for (int j = 0; j < newSnapshot.size(); j++) {
+            if (newPositions.put(newSnapshot.ids[j], j) != null) {
+                return Result.FULL_REFRESH;
+            }
+            Integer oldPosition = oldPositions.get(newSnapshot.ids[j]);
+            oldPositionOfNew[j] = oldPosition == null ? -1 : oldPosition;
+        }
+
+        boolean[] keptNew = new boolean[newSnapshot.size()];
+        boolean[] keptOld = new boolean[oldSnapshot.size()];
+        markLongestIncreasingRun(oldPositionOfNew, keptNew, keptOld);
+
+        Result result = new Result();
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldSnapshot.size() || j < newSnapshot.size()) {
+            if (i < oldSnapshot.size() && !keptOld[i]) {
+                result.add(REMOVE, position);
+                i++;
+            } else if (j < newSnapshot.size() && !keptNew[j]) {
+                result.add(INSERT, position);
+                position++;
+                j++;
+            } else {
+                Object oldContent = oldSnapshot.contents[i];
+                Object newContent = newSnapshot.contents[j];
+                if (oldContent == null ? newContent != null : !oldContent.equals(newContent)) {
+                    result.add(CHANGE, position);
+                    result.changedPositions.add(position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    //patience sorting over the old positions of the new rows, O(n log n)
+    private static void markLongestIncreasingRun(int[] oldPositionOfNew, boolean[] keptNew, boolean[] keptOld) {
+        int[] tails = new int[oldPositionOfNew.length];
+        int[] previous = new int[oldPositionOfNew.length];
+        int length = 0;
+        for (int j = 0; j < oldPositionOfNew.length; j++) {
+            if (oldPositionOfNew[j] < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (oldPositionOfNew[tails[middle]] < oldPositionOfNew[j]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[j] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = j;
+            if (low == length) {
+                length++;
+            }
+        }
+        for (int j = length > 0 ? tails[length - 1] : -1; j >= 0; j = previous[j]) {
+            keptNew[j] = true;
+            keptOld[oldPositionOfNew[j]] = true;
+        }
+    }
+
+    public static class Snapshot {
+        private final Object[] ids;
+        private final Object[] contents;
+
+        Snapshot(Object[] ids, Object[] contents) {
+            this.ids = ids;
+            this.contents = contents;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    public static class Result {
+        //ids repeat in one of the lists, rows can't be told apart
+        static final Result FULL_REFRESH = new Result();
+
+        //{type, position, count} in the order they apply, positions as the list is at that point
+        final List<int[]> updates = new ArrayList<>();
+        private final List<Integer> changedPositions = new ArrayList<>();
+        private boolean hasStructuralChanges;
+
+        public boolean isFullRefresh() {
+            return this == FULL_REFRESH;
+        }
+
+        public boolean isEmpty() {
+            return !isFullRefresh() && updates.isEmpty();
+        }
+
+        public boolean hasStructuralChanges() {
+            return isFullRefresh() || hasStructuralChanges;
+        }
+
+        //positions in the new list of the kept rows whose content changed
+        public List<Integer> getChangedPositions() {
+            return changedPositions;
+        }
+
+        public void dispatchTo(RecyclerView.Adapter<?> adapter) {
+            if (isFullRefresh()) {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+            for (int[] update : updates) {
+                switch (update[0]) {
+                    case REMOVE:
+                        adapter.notifyItemRangeRemoved(update[1], update[2]);
+                        break;
+                    case INSERT:
+                        adapter.notifyItemRangeInserted(update[1], update[2]);
+                        break;
+                    default:
+                        adapter.notifyItemRangeChanged(update[1], update[2]);
+                }
+            }
+        }
+
+        //a ListView can't be told which rows moved, so rows coming or going still refresh the list;
+        //otherwise only the changed rows on screen are bound again, the others are bound as they scroll in
+        public void dispatchTo(ListView listView, BaseAdapter adapter) {
+            if (hasStructuralChanges()) {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+            int firstRow = listView.getFirstVisiblePosition() - listView.getHeaderViewsCount();
+            for (int position : changedPositions) {
+                View row = listView.getChildAt(position - firstRow);
+                if (row != null) {
+                    adapter.getView(position, row, listView);
+                }
+            }
+        }
+
+        //consecutive removals stay at one position, consecutive insertions and changes follow each other
+        private void add(int type, int position) {
+            hasStructuralChanges |= type != CHANGE;
+            if (!updates.isEmpty()) {
+                int[] lastUpdate = updates.get(updates.size() - 1);
+                if (lastUpdate[0] == type && (type == REMOVE ? lastUpdate[1] == position : lastUpdate[1] + lastUpdate[2] == position)) {
+                    lastUpdate[2]++;
+                    return;
+                }
+            }
+            updates.add(new int[]{type, position, 1});
+        }
+    }
+
+    private static class Identity {
+        private final Object item;
+
+        Identity(Object item) {
+            this.item = item;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Identity && ((Identity) other).item == item;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(item);
+        }
+    }
+}
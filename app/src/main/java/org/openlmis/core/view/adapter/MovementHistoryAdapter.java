@@ -20,10 +20,16 @@ public class MovementHistoryAdapter extends RecyclerView.Adapter<StockHistoryVie
     }
 
     public void refresh(List<StockHistoryViewModel> stockHistoryViewModels) {
-        this.viewModels = stockHistoryViewModels;
+        this.viewModels = new ArrayList<>(stockHistoryViewModels);
         notifyDataSetChanged();
     }
 
+    public void append(List<StockHistoryViewModel> stockHistoryViewModels) {
+        int positionStart = viewModels.size();
+        viewModels.addAll(stockHistoryViewModels);
+        notifyItemRangeInserted(positionStart, stockHistoryViewModels.size());
+    }
+
     @Override
     public StockHistoryViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         return new StockHistoryViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.item_stock_history, parent, false));
@@ -91,6 +91,7 @@ public class PhysicalInventoryAdapter extends InventoryListAdapterWithBottomBtn
 
     @Override
     public int validateAll() {
+        ListDiff.Snapshot shownBefore = ListDiff.snapshot(filteredList, validationKeys);
         int position = -1;
         for (int i = 0; i < data.size(); i++) {
             if (!data.get(i).validate()) {
@@ -100,7 +101,14 @@ public class PhysicalInventoryAdapter extends InventoryListAdapterWithBottomBtn
             }
         }
 
-        this.notifyDataSetChanged();
+        notifyValidationChanges(shownBefore);
         return position;
     }
+
+    @Override
+    protected List<Object> validationStateOf(InventoryViewModel inventoryViewModel) {
+        List<Object> validationState = super.validationStateOf(inventoryViewModel);
+        validationState.add(((PhysicalInventoryViewModel) inventoryViewModel).isDone());
+        return validationState;
+    }
 }
@@ -24,23 +24,44 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
 
 import org.openlmis.core.R;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.presenter.VIARequisitionPresenter;
 import org.openlmis.core.view.holder.RequisitionFormViewHolder;
 import org.openlmis.core.view.viewmodel.RequisitionFormItemViewModel;
+import org.openlmis.core.view.viewmodel.RnRFormItemAdjustmentViewModel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class RequisitionFormAdapter extends BaseAdapter {
 
+    //a row is the product's line in the form, bound again when any amount it shows changes, the kit adjustments included
+    private static final ListDiff.ItemKeys<RequisitionFormItemViewModel> ROW_KEYS = new ListDiff.ItemKeys<RequisitionFormItemViewModel>() {
+        @Override
+        public Object idOf(RequisitionFormItemViewModel entry) {
+            return entry.getFmn();
+        }
+
+        @Override
+        public Object contentOf(RequisitionFormItemViewModel entry) {
+            return Arrays.asList(entry.getProductName(), entry.getInitAmount(), entry.getReceived(), entry.getIssued(),
+                    entry.getTheoretical(), entry.getTotal(), entry.getInventory(), entry.getDifferent(), entry.getAdjustedTotalRequest(),
+                    entry.getRequestAmount(), entry.getApprovedAmount(), adjustmentsOf(entry));
+        }
+    };
+
     private Context context;
 
     private VIARequisitionPresenter presenter;
 
     private RnRForm.STATUS status = RnRForm.STATUS.AUTHORIZED;
 
+    private ListDiff.Snapshot shownRows;
+
     public RequisitionFormAdapter(Context context, VIARequisitionPresenter presenter) {
         this.context = context;
         this.presenter = presenter;
@@ -87,6 +108,37 @@ public class RequisitionFormAdapter extends BaseAdapter {
     public void updateStatus(RnRForm.STATUS status) {
         this.status = status;
         this.notifyDataSetChanged();
+        shownRows = ListDiff.snapshot(rows(), ROW_KEYS);
+    }
+
+    //every row is bound again when the status changes, otherwise only the rows whose amounts changed since the last refresh;
+    //returns whether rows came or went, which the product list beside the form has to follow
+    public boolean refresh(ListView listView, RnRForm.STATUS status) {
+        ListDiff.Snapshot rows = ListDiff.snapshot(rows(), ROW_KEYS);
+        ListDiff.Result diff = shownRows == null ? null : ListDiff.diff(shownRows, rows);
+        if (diff == null || status != this.status) {
+            this.status = status;
+            this.notifyDataSetChanged();
+        } else {
+            diff.dispatchTo(listView, this);
+        }
+        shownRows = rows;
+        return diff == null || diff.hasStructuralChanges();
+    }
+
+    //copied out of the adjustment view models, which may be changed in place
+    private static List<Object> adjustmentsOf(RequisitionFormItemViewModel entry) {
+        List<Object> adjustments = new ArrayList<>();
+        if (entry.getAdjustmentViewModels() != null) {
+            for (RnRFormItemAdjustmentViewModel adjustmentViewModel : entry.getAdjustmentViewModels()) {
+                adjustments.add(Arrays.asList(adjustmentViewModel.getKitName(), adjustmentViewModel.getKitStockOnHand(), adjustmentViewModel.getQuantity()));
+            }
+        }
+        return adjustments;
+    }
+
+    private List<RequisitionFormItemViewModel> rows() {
+        return data() == null ? new ArrayList<RequisitionFormItemViewModel>() : data();
     }
 
     private List<RequisitionFormItemViewModel> data() {
@@ -24,17 +24,34 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import org.openlmis.core.R;
+import org.openlmis.core.view.adapter.InventorySortIndex.SortOrder;
 import org.openlmis.core.view.holder.StockCardViewHolder;
 import org.openlmis.core.view.viewmodel.InventoryViewModel;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+
+import lombok.Setter;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
 
 public class StockCardListAdapter extends InventoryListAdapter<StockCardViewHolder> {
 
     protected StockCardViewHolder.OnItemViewClickListener listener;
 
+    private final InventorySortIndex sortIndex = new InventorySortIndex();
+    private Subscription sortSubscription;
+    @Setter
+    private Scheduler sortScheduler = Schedulers.computation();
+
     public StockCardListAdapter(List<InventoryViewModel> inventoryViewModel, StockCardViewHolder.OnItemViewClickListener listener) {
         super(inventoryViewModel);
         this.listener = listener;
@@ -55,43 +72,86 @@ public class StockCardListAdapter extends InventoryListAdapter<StockCardViewHold
     }
 
     public void sortBySOH(final boolean asc) {
+        sort(asc ? SortOrder.SOH_ASC : SortOrder.SOH_DESC);
+    }
+
+    public void sortByName(final boolean asc) {
+        sort(asc ? SortOrder.NAME_ASC : SortOrder.NAME_DESC);
+    }
 
-        Comparator<InventoryViewModel> stockCardComparator = new Comparator<InventoryViewModel>() {
+    //an order sorted before for this list is shown at once, a new one is sorted off the UI thread
+    private void sort(final SortOrder sortOrder) {
+        cancelSort();
+        List<InventoryViewModel> sortedList = sortIndex.getSorted(sortOrder);
+        if (sortedList != null) {
+            showSortedList(sortedList);
+            return;
+        }
+
+        final List<InventoryViewModel> source = new ArrayList<>(data);
+        final int sourceVersion = sortIndex.getVersion();
+        sortSubscription = Observable.create(new Observable.OnSubscribe<List<InventoryViewModel>>() {
             @Override
-            public int compare(InventoryViewModel lhs, InventoryViewModel rhs) {
-                if (asc) {
-                    return (int) (lhs.getStockOnHand() - rhs.getStockOnHand());
-                } else {
-                    return (int) (rhs.getStockOnHand() - lhs.getStockOnHand());
-                }
+            public void call(Subscriber<? super List<InventoryViewModel>> subscriber) {
+                subscriber.onNext(sortIndex.sort(source, sortOrder, sourceVersion));
+                subscriber.onCompleted();
             }
-        };
-
-        Collections.sort(filteredList, stockCardComparator);
-        Collections.sort(data, stockCardComparator);
+        }).subscribeOn(sortScheduler).observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Action1<List<InventoryViewModel>>() {
+                    @Override
+                    public void call(List<InventoryViewModel> sortedList) {
+                        if (sourceVersion == sortIndex.getVersion()) {
+                            showSortedList(sortedList);
+                        } else {
+                            sort(sortOrder);
+                        }
+                    }
+                });
+    }
 
-        this.notifyDataSetChanged();
+    public boolean isSorting() {
+        return sortSubscription != null && !sortSubscription.isUnsubscribed();
     }
 
-    public void sortByName(final boolean asc) {
+    private void cancelSort() {
+        if (sortSubscription != null) {
+            sortSubscription.unsubscribe();
+            sortSubscription = null;
+        }
+    }
 
-        Comparator<InventoryViewModel> stockCardComparator = new Comparator<InventoryViewModel>() {
-            @Override
-            public int compare(InventoryViewModel lhs, InventoryViewModel rhs) {
-                if (asc) {
-                    return lhs.getProduct().getPrimaryName().compareTo(rhs.getProduct().getPrimaryName());
-                } else {
-                    return rhs.getProduct().getPrimaryName().compareTo(lhs.getProduct().getPrimaryName());
-                }
+    //rows shown keep being shown, in the new order
+    private void showSortedList(List<InventoryViewModel> sortedList) {
+        Set<InventoryViewModel> shownViewModels = Collections.newSetFromMap(new IdentityHashMap<InventoryViewModel, Boolean>());
+        shownViewModels.addAll(filteredList);
+
+        data.clear();
+        data.addAll(sortedList);
+        filteredList.clear();
+        for (InventoryViewModel inventoryViewModel : sortedList) {
+            if (shownViewModels.contains(inventoryViewModel)) {
+                filteredList.add(inventoryViewModel);
             }
-        };
-
-        Collections.sort(filteredList, stockCardComparator);
-        Collections.sort(data, stockCardComparator);
+        }
+        searchIndex.invalidate();
 
         this.notifyDataSetChanged();
     }
 
+    @Override
+    public void refreshList(List<InventoryViewModel> data) {
+        cancelSort();
+        sortIndex.clear();
+        super.refreshList(data);
+    }
+
+    @Override
+    public void refresh() {
+        cancelSort();
+        sortIndex.clear();
+        super.refresh();
+    }
+
     protected StockCardViewHolder createViewHolder(View view) {
         return new StockCardViewHolder(view, listener);
     }
@@ -22,6 +22,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
 
 import org.openlmis.core.R;
 import org.openlmis.core.model.StockCard;
@@ -32,12 +33,34 @@ import java.util.List;
 
 public class StockMovementAdapter extends BaseAdapter {
 
+    //the view models are built again on every load, so a movement is matched by everything its row shows
+    private static final ListDiff.ItemKeys<StockMovementViewModel> MOVEMENT_KEYS = new ListDiff.ItemKeys<StockMovementViewModel>() {
+        @Override
+        public Object idOf(StockMovementViewModel stockMovementViewModel) {
+            return stockMovementViewModel;
+        }
+
+        @Override
+        public Object contentOf(StockMovementViewModel stockMovementViewModel) {
+            return null;
+        }
+    };
+
     private final StockCard stockCard;
     List<StockMovementViewModel> stockMovementViewModels;
+    private ListDiff.Snapshot shownMovements;
 
     public StockMovementAdapter(List<StockMovementViewModel> stockMovementViewModels, StockCard stockCard) {
         this.stockMovementViewModels = stockMovementViewModels;
         this.stockCard = stockCard;
+        this.shownMovements = ListDiff.snapshot(stockMovementViewModels, MOVEMENT_KEYS);
+    }
+
+    //the list is left as it is when the movements loaded again are the ones already shown
+    public void refresh(ListView listView) {
+        ListDiff.Snapshot movements = ListDiff.snapshot(stockMovementViewModels, MOVEMENT_KEYS);
+        ListDiff.diff(shownMovements, movements).dispatchTo(listView, this);
+        shownMovements = movements;
     }
 
     @Override
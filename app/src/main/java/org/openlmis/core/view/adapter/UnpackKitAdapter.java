@@ -53,6 +53,7 @@ public class UnpackKitAdapter extends InventoryListAdapterWithBottomBtn implemen
 
     @Override
     public int validateAll() {
+        ListDiff.Snapshot shownBefore = ListDiff.snapshot(filteredList, validationKeys);
         int position = -1;
         for (int i = 0; i < data.size(); i++) {
             if (!data.get(i).validate()) {
@@ -62,7 +63,14 @@ public class UnpackKitAdapter extends InventoryListAdapterWithBottomBtn implemen
             }
         }
 
-        this.notifyDataSetChanged();
+        notifyValidationChanges(shownBefore);
         return position;
     }
+
+    @Override
+    protected List<Object> validationStateOf(InventoryViewModel inventoryViewModel) {
+        List<Object> validationState = super.validationStateOf(inventoryViewModel);
+        validationState.add(((UnpackKitInventoryViewModel) inventoryViewModel).shouldShowEmptyLotWarning());
+        return validationState;
+    }
 }
@@ -43,6 +43,7 @@ public class AllDrugsMovementHistoryFragment extends BaseFragment implements All
     private MovementHistoryAdapter adapter;
 
     private static List<Integer> DATE_ITEMS = Arrays.asList(7, 14, 30, 90, 180, 365);
+    private static final int PAGE_PREFETCH_DISTANCE = 5;
 
     @Override
     public Presenter initPresenter() {
@@ -66,6 +67,15 @@ public class AllDrugsMovementHistoryFragment extends BaseFragment implements All
         movementHistoryListView.setLayoutManager(new LinearLayoutManager(getActivity()));
         adapter = new MovementHistoryAdapter();
         movementHistoryListView.setAdapter(adapter);
+        movementHistoryListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    presenter.loadNextPage();
+                }
+            }
+        });
     }
 
     private void innitSpinner() {
@@ -91,6 +101,11 @@ public class AllDrugsMovementHistoryFragment extends BaseFragment implements All
         adapter.refresh(stockHistoryViewModels);
     }
 
+    @Override
+    public void appendToRecyclerView(List<StockHistoryViewModel> stockHistoryViewModels) {
+        adapter.append(stockHistoryViewModels);
+    }
+
     @Override
     public void updateHistoryCount(int productCount, int movementCount) {
         tvProductCount.setText(getResources().getString(R.string.msg_products_with_movement_count, productCount));
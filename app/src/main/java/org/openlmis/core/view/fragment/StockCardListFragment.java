@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -50,10 +51,10 @@ import java.util.List;
 
 import roboguice.inject.InjectView;
 
-import static org.openlmis.core.presenter.StockCardPresenter.ArchiveStatus.Active;
-
 public class StockCardListFragment extends BaseFragment implements StockCardPresenter.StockCardListView, AdapterView.OnItemSelectedListener {
 
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
     @InjectView(R.id.sort_spinner)
     Spinner sortSpinner;
 
@@ -105,6 +106,9 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
     @Override
     public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
         currentPosition = position;
+        if (position != 0) {
+            presenter.loadRemainingOverviewPages();
+        }
         switch (position) {
             case 0:
                 mAdapter.sortByName(true);
@@ -130,7 +134,6 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (resultCode == Activity.RESULT_OK && requestCode == Constants.REQUEST_FROM_STOCK_LIST_PAGE) {
-            presenter.refreshStockCardViewModelsSOH();
             productsUpdateBanner.refreshBannerText();
 
             loadStockCards();
@@ -139,7 +142,10 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
 
     public void onSearch(String query) {
         mAdapter.filter(query);
-        tvTotal.setText(getString(R.string.label_total, mAdapter.getItemCount()));
+        if (!TextUtils.isEmpty(query)) {
+            presenter.loadRemainingOverviewPages();
+        }
+        refreshTotal();
     }
 
     protected void createAdapter() {
@@ -147,7 +153,7 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
     }
 
     protected void loadStockCards() {
-        presenter.loadStockCards(Active);
+        presenter.loadOverviewStockCards();
     }
 
     private void initRecycleView() {
@@ -156,6 +162,15 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
         stockCardRecycleView.setHasFixedSize(true);
         stockCardRecycleView.setLayoutManager(new LinearLayoutManager(getActivity()));
         stockCardRecycleView.setAdapter(mAdapter);
+        stockCardRecycleView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    presenter.loadNextOverviewPage();
+                }
+            }
+        });
     }
 
     protected StockCardViewHolder.OnItemViewClickListener onItemViewClickListener = new StockCardViewHolder.OnItemViewClickListener() {
@@ -182,8 +197,22 @@ public class StockCardListFragment extends BaseFragment implements StockCardPres
     public void refresh(List<InventoryViewModel> data) {
         mAdapter.refreshList(data);
 
-        tvTotal.setText(getString(R.string.label_total, mAdapter.getItemCount()));
+        refreshTotal();
         onItemSelected(sortSpinner, null, currentPosition, 0L);
     }
 
+    @Override
+    public void refreshStockStatus() {
+        mAdapter.notifyItemRangeChanged(0, mAdapter.getItemCount());
+    }
+
+    //until every page is in, the overview total comes from the presenter
+    private void refreshTotal() {
+        long total = mAdapter.getItemCount();
+        if (!mAdapter.isFiltered()) {
+            total = Math.max(total, presenter.getOverviewTotal());
+        }
+        tvTotal.setText(getString(R.string.label_total, total));
+    }
+
 }
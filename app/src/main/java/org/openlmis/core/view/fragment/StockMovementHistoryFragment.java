@@ -58,7 +58,6 @@ public class StockMovementHistoryFragment extends BaseFragment implements StockM
     TextView tvArchivedOldData;
 
     private long stockCardID;
-    private long startIndex = 0;
     private boolean isLoading;
     private boolean isFirstLoading;
 
@@ -140,8 +139,7 @@ public class StockMovementHistoryFragment extends BaseFragment implements StockM
 
     private void loadData() {
         isLoading = true;
-        presenter.loadStockMovementViewModels(startIndex);
-        startIndex += StockMovementHistoryPresenter.MAXROWS;
+        presenter.loadStockMovementViewModels();
     }
 
     @Override
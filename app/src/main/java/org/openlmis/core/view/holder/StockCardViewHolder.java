@@ -72,7 +72,7 @@ public class StockCardViewHolder extends BaseViewHolder {
     }
 
     private void initExpiryDateWarning(InventoryViewModel inventoryViewModel) {
-        Date earliestLotExpiryDate = inventoryViewModel.getStockCard().getEarliestLotExpiryDate();
+        Date earliestLotExpiryDate = inventoryViewModel.getEarliestLotExpiryDate();
 
         if (earliestLotExpiryDate != null) {
             if (earliestLotExpiryDate.before(new Date(LMISApp.getInstance().getCurrentTimeMillis()))) {
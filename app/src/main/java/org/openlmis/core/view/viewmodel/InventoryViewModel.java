@@ -23,9 +23,12 @@ import android.text.SpannableStringBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockCardSummary;
 import org.openlmis.core.utils.TextStyleUtil;
 import org.openlmis.core.view.holder.StockCardViewHolder;
 
+import java.util.Date;
+
 import lombok.Data;
 
 @Data
@@ -56,6 +59,8 @@ public class InventoryViewModel extends BaseStockMovementViewModel {
     private String signature;
     StockCard stockCard;
 
+    Date earliestLotExpiryDate;
+
     public InventoryViewModel(StockCard stockCard) {
         this(stockCard.getProduct());
 
@@ -115,6 +120,19 @@ public class InventoryViewModel extends BaseStockMovementViewModel {
         return true;
     }
 
+    public static InventoryViewModel buildFromSummary(StockCardSummary stockCardSummary) {
+        InventoryViewModel viewModel = new InventoryViewModel(stockCardSummary.getStockCard());
+        viewModel.earliestLotExpiryDate = stockCardSummary.getEarliestLotExpiryDate();
+        return viewModel;
+    }
+
+    public Date getEarliestLotExpiryDate() {
+        if (earliestLotExpiryDate == null) {
+            return stockCard.getEarliestLotExpiryDate();
+        }
+        return earliestLotExpiryDate;
+    }
+
     public static InventoryViewModel buildEmergencyModel(StockCard stockCard) {
         InventoryViewModel viewModel = new InventoryViewModel(stockCard.getProduct());
         viewModel.stockCard = stockCard;
@@ -122,21 +140,15 @@ public class InventoryViewModel extends BaseStockMovementViewModel {
     }
 
     public int getStockOnHandLevel() {
-
-        if (stockOnHand == 0) {
-            return StockCardViewHolder.STOCK_ON_HAND_STOCK_OUT;
-        }
-
-        if (stockCard.getCMM() < 0) {
-            return StockCardViewHolder.STOCK_ON_HAND_NORMAL;
-        } else {
-            if (stockCard.isOverStock()) {
-                return StockCardViewHolder.STOCK_ON_HAND_OVER_STOCK;
-            }
-            if (stockCard.isLowStock()) {
+        switch (stockCard.getStockStatus()) {
+            case STOCK_OUT:
+                return StockCardViewHolder.STOCK_ON_HAND_STOCK_OUT;
+            case LOW_STOCK:
                 return StockCardViewHolder.STOCK_ON_HAND_LOW_STOCK;
-            }
-            return StockCardViewHolder.STOCK_ON_HAND_NORMAL;
+            case OVER_STOCK:
+                return StockCardViewHolder.STOCK_ON_HAND_OVER_STOCK;
+            default:
+                return StockCardViewHolder.STOCK_ON_HAND_NORMAL;
         }
     }
 
@@ -2,18 +2,13 @@ package org.openlmis.core.view.viewmodel;
 
 import android.text.SpannableStringBuilder;
 
-import org.openlmis.core.LMISApp;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
-import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.utils.TextStyleUtil;
 import org.roboguice.shaded.goole.common.base.Function;
-import org.roboguice.shaded.goole.common.base.Predicate;
 import org.roboguice.shaded.goole.common.collect.FluentIterable;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.List;
 
 import lombok.Data;
@@ -29,34 +24,16 @@ public class StockHistoryViewModel {
     private SpannableStringBuilder styledProductUnit;
 
 
-    public StockHistoryViewModel(StockCard stockCard) {
+    //movements already limited to the shown window and in the order of the card's history
+    public StockHistoryViewModel(StockCard stockCard, List<StockMovementItem> stockMovementItems) {
         this.stockCard = stockCard;
-        allMovementItemViewModelList.addAll(FluentIterable.from(stockCard.getStockMovementItemsWrapper()).transform(new Function<StockMovementItem, StockHistoryMovementItemViewModel>() {
+        allMovementItemViewModelList.addAll(FluentIterable.from(stockMovementItems).transform(new Function<StockMovementItem, StockHistoryMovementItemViewModel>() {
             @Override
             public StockHistoryMovementItemViewModel apply(StockMovementItem stockMovementItem) {
                 return new StockHistoryMovementItemViewModel(stockMovementItem);
             }
-        }).toSortedList(new Comparator<StockHistoryMovementItemViewModel>() {
-            @Override
-            public int compare(StockHistoryMovementItemViewModel lhs, StockHistoryMovementItemViewModel rhs) {
-                int compareResult = lhs.getStockMovementItem().getMovementDate().compareTo(rhs.getStockMovementItem().getMovementDate());
-                if (compareResult == 0) {
-                    return lhs.getStockMovementItem().getId() < rhs.getStockMovementItem().getId() ? -1 : 1;
-                }
-                return compareResult;
-            }
-        }).asList());
-    }
-
-    public List<StockHistoryMovementItemViewModel> filter(final int days) {
-        filteredMovementItemViewModelList.clear();
-        filteredMovementItemViewModelList.addAll(FluentIterable.from(allMovementItemViewModelList).filter(new Predicate<StockHistoryMovementItemViewModel>() {
-            @Override
-            public boolean apply(StockHistoryMovementItemViewModel stockHistoryMovementItemViewModel) {
-                return !(stockHistoryMovementItemViewModel.getStockMovementItem().getMovementDate()).before(DateUtil.minusDayOfMonth(new Date(LMISApp.getInstance().getCurrentTimeMillis()), days));
-            }
         }).toList());
-        return filteredMovementItemViewModelList;
+        filteredMovementItemViewModelList.addAll(allMovementItemViewModelList);
     }
 
     public SpannableStringBuilder getStyledProductName() {
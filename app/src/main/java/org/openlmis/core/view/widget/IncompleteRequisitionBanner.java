@@ -21,6 +21,10 @@ import org.openlmis.core.utils.Constants;
 
 import roboguice.RoboGuice;
 import roboguice.inject.InjectView;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
 
 
 public class IncompleteRequisitionBanner extends LinearLayout {
@@ -32,6 +36,8 @@ public class IncompleteRequisitionBanner extends LinearLayout {
 
     protected Context context;
 
+    private Subscription loadTimelinesSubscription;
+
     public IncompleteRequisitionBanner(Context context) {
         super(context);
         init(context);
@@ -51,6 +57,44 @@ public class IncompleteRequisitionBanner extends LinearLayout {
     }
 
     public void setIncompleteRequisitionBanner() {
+        if (requisitionPeriodService.isTimelineLoaded(Constants.MMIA_PROGRAM_CODE)
+                && requisitionPeriodService.isTimelineLoaded(Constants.VIA_PROGRAM_CODE)) {
+            showIncompleteRequisitions();
+            return;
+        }
+        if (loadTimelinesSubscription != null && !loadTimelinesSubscription.isUnsubscribed()) {
+            return;
+        }
+        loadTimelinesSubscription = requisitionPeriodService.loadTimelines(Constants.MMIA_PROGRAM_CODE, Constants.VIA_PROGRAM_CODE)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Subscriber<Void>() {
+                    @Override
+                    public void onCompleted() {
+                        showIncompleteRequisitions();
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        e.printStackTrace();
+                    }
+
+                    @Override
+                    public void onNext(Void aVoid) {
+                    }
+                });
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (loadTimelinesSubscription != null) {
+            loadTimelinesSubscription.unsubscribe();
+        }
+    }
+
+    //answered from the timelines in memory, without touching the database
+    private void showIncompleteRequisitions() {
         try {
             int periodOffsetMonthMmia = requisitionPeriodService.getIncompletePeriodOffsetMonth(Constants.MMIA_PROGRAM_CODE);
             int periodOffsetMonthVia = requisitionPeriodService.getIncompletePeriodOffsetMonth(Constants.VIA_PROGRAM_CODE);
@@ -18,10 +18,14 @@ import com.google.inject.Inject;
 import org.apache.commons.lang.StringUtils;
 import org.openlmis.core.LMISApp;
 import org.openlmis.core.R;
+import org.openlmis.core.model.SyncStepSummary;
 import org.openlmis.core.presenter.SyncErrorsPresenter;
 import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.view.fragment.BaseDialogFragment;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import roboguice.inject.InjectView;
 
 public class SyncDateBottomSheet extends BaseDialogFragment {
@@ -38,11 +42,15 @@ public class SyncDateBottomSheet extends BaseDialogFragment {
     @InjectView(R.id.iv_stockcard_error)
     ImageView ivStockcardError;
 
+    @InjectView(R.id.tx_sync_performance)
+    TextView txSyncPerformance;
+
     @Inject
     private SyncErrorsPresenter presenter;
 
     public static final String RNR_SYNC_TIME = "rnrFormSyncTime";
     public static final String STOCK_SYNC_TIME = "stockCardSyncTime";
+    private static final int MAX_SHOWN_SYNC_STEPS = 3;
 
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
@@ -73,7 +81,7 @@ public class SyncDateBottomSheet extends BaseDialogFragment {
         WindowManager.LayoutParams params = new WindowManager.LayoutParams();
         params.copyFrom(getDialog().getWindow().getAttributes());
         params.width = (int) (getDialog().getContext().getResources().getDisplayMetrics().widthPixels * 0.95);
-        params.height = (int) (getDialog().getContext().getResources().getDisplayMetrics().heightPixels * 0.15);
+        params.height = WindowManager.LayoutParams.WRAP_CONTENT;
         getDialog().getWindow().setAttributes(params);
         getDialog().getWindow().setGravity(Gravity.BOTTOM);
     }
@@ -93,6 +101,27 @@ public class SyncDateBottomSheet extends BaseDialogFragment {
         if (presenter.hasStockCardSyncError()) {
             ivStockcardError.setVisibility(View.VISIBLE);
         }
+
+        String syncPerformance = formatSyncPerformance(presenter.getRecentSyncStepSummaries());
+        if (!syncPerformance.isEmpty()) {
+            txSyncPerformance.setText(syncPerformance);
+            txSyncPerformance.setVisibility(View.VISIBLE);
+        }
+    }
+
+    //slowest steps of the last days, so network slowness can be told apart from slow writes on the device
+    protected String formatSyncPerformance(List<SyncStepSummary> summaries) {
+        List<String> lines = new ArrayList<>();
+        for (SyncStepSummary summary : summaries.subList(0, Math.min(summaries.size(), MAX_SHOWN_SYNC_STEPS))) {
+            lines.add(LMISApp.getContext().getString(R.string.label_sync_step_performance,
+                    summary.getStep(),
+                    summary.getAverageTotalMillis() / 1000f,
+                    summary.getAverageNetworkMillis() / 1000f,
+                    summary.getAveragePersistenceMillis() / 1000f,
+                    summary.getFailures(),
+                    summary.getRuns()));
+        }
+        return StringUtils.join(lines, "\n");
     }
 
     public void show(FragmentManager fragmentManager) {
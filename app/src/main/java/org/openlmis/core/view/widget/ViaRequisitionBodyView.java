@@ -120,8 +120,9 @@ public class ViaRequisitionBodyView extends FrameLayout {
     }
 
     public void refresh(RnRForm rnRForm) {
-        refreshProductNameList();
-        refreshFormList(rnRForm.getStatus());
+        if (requisitionFormAdapter.refresh(requisitionFormList, rnRForm.getStatus())) {
+            refreshProductNameList();
+        }
     }
 
     public void setEditable(boolean isRnrFormMissed) {
@@ -1,11 +1,13 @@
 package org.openlmis.core;
 
+import android.database.sqlite.SQLiteDatabase;
 
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.googleAnalytics.ScreenName;
 import org.openlmis.core.googleAnalytics.TrackerActions;
 import org.openlmis.core.googleAnalytics.TrackerCategories;
 import org.openlmis.core.network.LMISRestApi;
+import org.openlmis.core.persistence.QueryCountingCursorFactory;
 
 import java.util.HashMap;
 
@@ -58,6 +60,11 @@ public class LMISTestApp extends LMISApp {
         return featureToggles.get(id) == null ? false : featureToggles.get(id);
     }
 
+    @Override
+    public SQLiteDatabase.CursorFactory getCursorFactory() {
+        return new QueryCountingCursorFactory();
+    }
+
     @Override
     public LMISRestApi getRestApi() {
         return restApi;
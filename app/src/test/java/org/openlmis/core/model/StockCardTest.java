@@ -102,6 +102,23 @@ public class StockCardTest {
         assertTrue(stockCard.isOverStock());
     }
 
+    @Test
+    public void shouldRankStockStatusFromStockOnHandAndCMM() throws Exception {
+        stockCard.setAvgMonthlyConsumption(100.5f);
+        stockCard.setStockOnHand(0);
+        assertThat(stockCard.getStockStatus(), is(StockCard.StockStatus.STOCK_OUT));
+        stockCard.setStockOnHand(1);
+        assertThat(stockCard.getStockStatus(), is(StockCard.StockStatus.LOW_STOCK));
+        stockCard.setStockOnHand(220);
+        assertThat(stockCard.getStockStatus(), is(StockCard.StockStatus.OVER_STOCK));
+        stockCard.setStockOnHand(100);
+        assertThat(stockCard.getStockStatus(), is(StockCard.StockStatus.NORMAL));
+
+        stockCard.setAvgMonthlyConsumption(-1);
+        stockCard.setStockOnHand(220);
+        assertThat(stockCard.getStockStatus(), is(StockCard.StockStatus.NORMAL));
+    }
+
     @Test
     public void shouldGetNonEmptyLotOnHandList() throws Exception {
         Lot lot1 = new Lot();
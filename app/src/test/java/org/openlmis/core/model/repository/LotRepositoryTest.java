@@ -21,9 +21,11 @@ import org.openlmis.core.utils.DateUtil;
 import org.robolectric.RuntimeEnvironment;
 
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 
@@ -219,4 +221,102 @@ public class LotRepositoryTest extends LMISRepositoryUnitTest {
         assertEquals(lowerCaseLot, upperCaseLot);
 
     }
+
+    @Test
+    public void shouldResolveLotsWithoutLotOnHandAndAnyLotNumberCaseWithoutCreatingThemAgain() throws Exception {
+        Lot savedLot = new Lot();
+        savedLot.setLotNumber("ABC");
+        savedLot.setExpirationDate(new Date());
+        savedLot.setProduct(product);
+        lotRepository.createOrUpdateLot(savedLot);
+
+        StockMovementItem stockMovementItem = new StockMovementItemBuilder()
+                .withStockOnHand(100)
+                .withMovementDate("2016-12-31")
+                .withQuantity(10)
+                .build();
+        stockMovementItem.setStockCard(stockCard);
+        stockRepository.addStockMovementAndUpdateStockCard(stockMovementItem);
+
+        Map<Long, Map<String, LotOnHand>> lotsOnHand = lotRepository.queryLotsOnHandGroupByProductId(newArrayList(product.getId()));
+        lotRepository.batchCreateLotMovementsWithResolvedLots(newArrayList(
+                lotMovementItem(stockMovementItem, "abc", 2L),
+                lotMovementItem(stockMovementItem, "def", 3L),
+                lotMovementItem(stockMovementItem, "Def", 1L)), lotsOnHand);
+
+        assertThat(lotRepository.queryAllLot().size(), is(2));
+        assertThat(lotRepository.getLotOnHandByLot(lotRepository.getLotByLotNumberAndProductId("ABC", product.getId())).getQuantityOnHand(), is(2L));
+        assertThat(lotRepository.getLotOnHandByLot(lotRepository.getLotByLotNumberAndProductId("DEF", product.getId())).getQuantityOnHand(), is(4L));
+    }
+
+    @Test
+    public void shouldRangeQueryExpiredAndExpiringLotsAcrossTheFullCatalog() throws Exception {
+        Date today = DateUtil.parseString("2026-06-15", DateUtil.DB_DATE_FORMAT);
+        List<Product> catalog = new ArrayList<>();
+        for (int i = 0; i < 1264; i++) {
+            catalog.add(ProductBuilder.create().setCode(String.format("C%05d", i)).setPrimaryName("product " + i).setIsActive(true).build());
+        }
+        productRepository.batchCreateOrUpdateProducts(catalog);
+
+        int expectedExpired = 0;
+        int expectedExpiringIn30Days = 0;
+        int earliestExpired = 0;
+        int earliestExpiring = Integer.MAX_VALUE;
+        int latestExpiring = Integer.MIN_VALUE;
+        List<StockCard> stockCards = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            int expiresInDays = i % 400 - 100;
+            long quantityOnHand = i % 5;
+            StockCard stockCard = new StockCardBuilder().setProduct(catalog.get(i)).setStockOnHand(quantityOnHand + 10).build();
+            stockCard.setLotOnHandListWrapper(Arrays.asList(
+                    lotOnHand(stockCard, "A" + i, DateUtil.addDayOfMonth(today, expiresInDays), quantityOnHand),
+                    lotOnHand(stockCard, "B" + i, DateUtil.addDayOfMonth(today, 1000), 10L)));
+            stockCards.add(stockCard);
+
+            if (quantityOnHand > 0 && expiresInDays < 0) {
+                expectedExpired++;
+                earliestExpired = Math.min(earliestExpired, expiresInDays);
+            }
+            if (quantityOnHand > 0 && expiresInDays >= 0 && expiresInDays <= 30) {
+                expectedExpiringIn30Days++;
+                earliestExpiring = Math.min(earliestExpiring, expiresInDays);
+                latestExpiring = Math.max(latestExpiring, expiresInDays);
+            }
+        }
+        stockRepository.batchCreateSyncDownStockCardsAndMovements(stockCards);
+
+        List<LotOnHand> expired = lotRepository.queryExpiredLotsOnHand(today);
+        List<LotOnHand> expiringSoon = lotRepository.queryLotsOnHandExpiringWithin(today, 30);
+
+        assertThat(expired.size(), is(expectedExpired));
+        assertThat(expiringSoon.size(), is(expectedExpiringIn30Days));
+        assertThat(expired.get(0).getLot().getExpirationDate(), is(DateUtil.addDayOfMonth(today, earliestExpired)));
+        assertThat(expiringSoon.get(0).getLot().getExpirationDate(), is(DateUtil.addDayOfMonth(today, earliestExpiring)));
+        assertThat(expiringSoon.get(expiringSoon.size() - 1).getLot().getExpirationDate(), is(DateUtil.addDayOfMonth(today, latestExpiring)));
+        for (LotOnHand lotOnHand : expiringSoon) {
+            int index = Integer.parseInt(lotOnHand.getLot().getProduct().getCode().substring(1));
+            assertThat(lotOnHand.getQuantityOnHand(), is((long) index % 5));
+            assertThat(lotOnHand.getLot().getLotNumber(), is("A" + index));
+            assertThat(lotOnHand.getStockCard().getId(), is(stockCards.get(index).getId()));
+        }
+    }
+
+    private LotMovementItem lotMovementItem(StockMovementItem stockMovementItem, String lotNumber, long movementQuantity) {
+        Lot lot = new Lot();
+        lot.setProduct(product);
+        lot.setLotNumber(lotNumber);
+        lot.setExpirationDate(new Date());
+        return new LotMovementItemBuilder()
+                .setStockMovementItem(stockMovementItem)
+                .setLot(lot)
+                .setMovementQuantity(movementQuantity).build();
+    }
+
+    private LotOnHand lotOnHand(StockCard stockCard, String lotNumber, Date expirationDate, long quantityOnHand) {
+        Lot lot = new Lot();
+        lot.setProduct(stockCard.getProduct());
+        lot.setLotNumber(lotNumber);
+        lot.setExpirationDate(expirationDate);
+        return new LotOnHand(lot, stockCard, quantityOnHand);
+    }
 }
\ No newline at end of file
@@ -51,7 +51,9 @@ import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 
@@ -118,8 +120,9 @@ public class MMIARepositoryTest extends LMISRepositoryUnitTest {
         StockMovementItem stockMovementItem3 = createMovementItem(MovementReasonManager.MovementType.POSITIVE_ADJUST, 30, stockCard, mockDay3, mockDay3);
 
         when(mockRequisitionPeriodService.generateNextPeriod(anyString(), any(Date.class))).thenReturn(new Period(new DateTime("2016-12-27"), new DateTime("2017-01-20")));
-        when(mockStockMovementRepository.queryStockItemsByCreatedDate(anyLong(), any(Date.class), any(Date.class)))
-                .thenReturn(newArrayList(stockMovementItem1, stockMovementItem2, stockMovementItem3));
+        Map<Long, List<StockMovementItem>> periodMovements = new HashMap<>();
+        periodMovements.put(stockCard.getId(), newArrayList(stockMovementItem1, stockMovementItem2, stockMovementItem3));
+        when(mockStockMovementRepository.queryStockItemsByCreatedDate(any(Date.class), any(Date.class))).thenReturn(periodMovements);
         when(mockStockRepository.getStockCardsBeforePeriodEnd(any(RnRForm.class))).thenReturn(stockCards);
 
         ProductProgram productProgram = new ProductProgram();
@@ -221,7 +224,7 @@ public class MMIARepositoryTest extends LMISRepositoryUnitTest {
         stockCard.setLotOnHandListWrapper(newArrayList(new LotOnHand(lot, stockCard, 10L)));
         when(mockStockMovementRepository.queryStockMovementsByMovementDate(anyLong(), any(Date.class), any(Date.class))).thenReturn(new ArrayList<StockMovementItem>());
 
-        RnrFormItem rnrFormItemByPeriod = mmiaRepository.createRnrFormItemByPeriod(stockCard, new Date(), new Date());
+        RnrFormItem rnrFormItemByPeriod = mmiaRepository.createRnrFormItemByPeriod(stockCard, new ArrayList<StockMovementItem>(), mmiaRepository.lastRnrInventories());
 
         assertThat(rnrFormItemByPeriod.getValidate(), is("01/02/2015"));
         assertThat(rnrFormItemByPeriod.getReceived(), is(0L));
@@ -230,7 +233,7 @@ public class MMIARepositoryTest extends LMISRepositoryUnitTest {
         assertThat(rnrFormItemByPeriod.getInitialAmount(), is(100L));
 
         stockCard.setLotOnHandListWrapper(Lists.<LotOnHand>newArrayList());
-        rnrFormItemByPeriod = mmiaRepository.createRnrFormItemByPeriod(stockCard, new Date(), new Date());
+        rnrFormItemByPeriod = mmiaRepository.createRnrFormItemByPeriod(stockCard, new ArrayList<StockMovementItem>(), mmiaRepository.lastRnrInventories());
         assertNull(rnrFormItemByPeriod.getValidate());
     }
 
@@ -24,6 +24,7 @@ import org.junit.runner.RunWith;
 import org.openlmis.core.LMISRepositoryUnitTest;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.KitGraph;
 import org.openlmis.core.model.KitProduct;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.Product.IsKit;
@@ -38,18 +39,27 @@ import org.openlmis.core.model.builder.ProductProgramBuilder;
 import org.openlmis.core.model.builder.ProgramBuilder;
 import org.openlmis.core.model.builder.RnRFormBuilder;
 import org.openlmis.core.model.builder.RnrFormItemBuilder;
+import org.openlmis.core.persistence.DbUtil;
+import org.openlmis.core.persistence.QueryCountingCursorFactory;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import roboguice.RoboGuice;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
 
 @RunWith(LMISTestRunner.class)
@@ -316,6 +326,178 @@ public class ProductRepositoryTest extends LMISRepositoryUnitTest {
 
     }
 
+    @Test
+    public void shouldSearchVIAProductsByWordPrefixesOfCodeNameStrengthAndType() throws Exception {
+        Program program = new ProgramBuilder().setProgramCode("VIA").setParentCode(null).build();
+        programRepository.createOrUpdate(program);
+        createVIAProduct("08S01", "Lamivudina", "150mg", "Comprimido");
+        createVIAProduct("08S02", "Lamivudina xarope", "10mg", "Xarope");
+        createVIAProduct("08S03", "Paracetamol", "500mg", "Comprimido");
+        createVIAProduct("08S04", "Nevirapina", "200mg", "Comprimido");
+
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("lami", new ArrayList<String>(), 10)), is(newArrayList("08S01", "08S02")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("Lami 10", new ArrayList<String>(), 10)), is(newArrayList("08S02")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("comp", newArrayList("08S01"), 10)), is(newArrayList("08S04", "08S03")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("08s03", new ArrayList<String>(), 10)), is(newArrayList("08S03")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("cetamol", new ArrayList<String>(), 10)).size(), is(0));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm(" ", new ArrayList<String>(), 3)), is(newArrayList("08S01", "08S02", "08S04")));
+    }
+
+    @Test
+    public void shouldKeepSearchInSyncWithProductWrites() throws Exception {
+        Program program = new ProgramBuilder().setProgramCode("VIA").setParentCode(null).build();
+        programRepository.createOrUpdate(program);
+        Product product = createVIAProduct("08S01", "Lamivudina", "150mg", "Comprimido");
+
+        product.setPrimaryName("Zidovudina");
+        productRepository.updateProduct(product);
+        assertThat(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("lami", new ArrayList<String>(), 10).size(), is(0));
+        assertThat(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("zido", new ArrayList<String>(), 10).size(), is(1));
+
+        Product syncedProduct = ProductBuilder.create().setCode("08S01").setPrimaryName("Zidovudina xarope")
+                .setStrength("150mg").setType("Comprimido").setIsActive(true).build();
+        productRepository.batchCreateOrUpdateProducts(newArrayList(syncedProduct));
+        assertThat(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("zido xar", new ArrayList<String>(), 10).size(), is(1));
+    }
+
+    @Test
+    public void shouldSearchVIAProductsRegardlessOfAccentsAndCase() throws Exception {
+        Program program = new ProgramBuilder().setProgramCode("VIA").setParentCode(null).build();
+        programRepository.createOrUpdate(program);
+        createVIAProduct("08S01", "Ácido Fólico", "5mg", "Comprimido");
+        createVIAProduct("08S02", "ÉTER", "100ml", "Solução");
+
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("acido", new ArrayList<String>(), 10)), is(newArrayList("08S01")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("ÁCIDO fol", new ArrayList<String>(), 10)), is(newArrayList("08S01")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("éter", new ArrayList<String>(), 10)), is(newArrayList("08S02")));
+        assertThat(codesOf(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("solucao", new ArrayList<String>(), 10)), is(newArrayList("08S02")));
+    }
+
+    @Test
+    public void shouldMatchEveryWordOfTheKeywordAsAPrefix() throws Exception {
+        assertThat(ProductRepository.toSearchMatch("Lami 150mg"), is("lami* 150mg*"));
+        assertThat(ProductRepository.toSearchMatch(" [08S01] \"or\" "), is("08s01* or*"));
+        assertThat(ProductRepository.toSearchMatch("Ácido FÓLICO"), is("acido* folico*"));
+        assertThat(ProductRepository.toSearchMatch(" - "), is((String) null));
+        assertThat(ProductRepository.toSearchMatch(null), is((String) null));
+    }
+
+    @Test
+    public void shouldBatchUpdateExistingProductsAndCreateNewProductsAndKitItems() throws Exception {
+        createProduct("P1", true, false, true);
+
+        Product updatedProduct = ProductBuilder.create().setCode("P1").setPrimaryName("updated").setIsActive(false).setIsArchived(false).build();
+        Product kit = ProductBuilder.create().setCode("KIT").setIsKit(true).setIsActive(true).build();
+        kit.setKitProductList(newArrayList(
+                KitProductBuilder.create().setKitCode("KIT").setProductCode("P1").setQuantity(10).build(),
+                KitProductBuilder.create().setKitCode("KIT").setProductCode("P2").setQuantity(20).build()));
+
+        productRepository.batchCreateOrUpdateProducts(newArrayList(updatedProduct, kit));
+        productRepository.batchCreateOrUpdateProducts(newArrayList(kit));
+
+        Product p1 = productRepository.getByCode("P1");
+        assertThat(p1.getPrimaryName(), is("updated"));
+        assertTrue(p1.isArchived());
+        assertNotNull(productRepository.getByCode("P2"));
+        assertThat(productRepository.queryKitProductByKitCode("KIT").size(), is(2));
+        assertThat(productRepository.queryProductsGroupByCode().size(), is(3));
+    }
+
+    @Test
+    public void shouldReuseKitGraphUntilProductsSync() throws Exception {
+        Product kit = ProductBuilder.create().setCode("KIT").setIsKit(true).setIsActive(true).build();
+        kit.setKitProductList(newArrayList(KitProductBuilder.create().setKitCode("KIT").setProductCode("P1").setQuantity(10).build()));
+        productRepository.batchCreateOrUpdateProducts(newArrayList(kit));
+
+        KitGraph kitGraph = productRepository.getKitGraph();
+        assertThat(productRepository.getKitGraph(), sameInstance(kitGraph));
+        assertThat(kitGraph.itemsOf("KIT").size(), is(1));
+        assertThat(kitGraph.kitsOf("P1").get(0).getQuantity(), is(10));
+
+        kit.setKitProductList(newArrayList(KitProductBuilder.create().setKitCode("KIT").setProductCode("P2").setQuantity(5).build()));
+        productRepository.batchCreateOrUpdateProducts(newArrayList(kit));
+
+        assertThat(productRepository.getKitGraph().itemsOf("KIT").size(), is(2));
+        assertThat(productRepository.getKitGraph().kitsOf("P2").get(0).getKitCode(), is("KIT"));
+        assertTrue(productRepository.getKitGraph().kitsOf("P3").isEmpty());
+    }
+
+    @Test
+    public void shouldIngestFullCatalogInBatches() throws Exception {
+        DbUtil dbUtil = spy(productRepository.dbUtil);
+        productRepository.dbUtil = dbUtil;
+        productProgramRepository.dbUtil = dbUtil;
+        List<Product> catalog = generateCatalog(1264);
+        List<ProductProgram> productPrograms = generateProductPrograms(catalog);
+
+        long queries = QueryCountingCursorFactory.getQueryCount();
+        productProgramRepository.batchSave(productPrograms);
+        productRepository.batchCreateOrUpdateProducts(catalog);
+
+        //existing product programs, products and kit products are read once each, whatever the size of the catalog
+        assertThat(QueryCountingCursorFactory.getQueryCount() - queries, is(3L));
+        //1264 products and 10 kit items, 130 kit products and 1264 product programs, in batches of 500
+        verify(dbUtil, times(3)).withDaoAsBatch(eq(Product.class), any(DbUtil.Operation.class));
+        verify(dbUtil, times(1)).withDaoAsBatch(eq(KitProduct.class), any(DbUtil.Operation.class));
+        verify(dbUtil, times(3)).withDaoAsBatch(eq(ProductProgram.class), any(DbUtil.Operation.class));
+
+        List<Product> updatedCatalog = generateCatalog(1264);
+        queries = QueryCountingCursorFactory.getQueryCount();
+        productProgramRepository.batchSave(generateProductPrograms(updatedCatalog));
+        productRepository.batchCreateOrUpdateProducts(updatedCatalog);
+
+        assertThat(QueryCountingCursorFactory.getQueryCount() - queries, is(3L));
+        //the update adds no kit product, so only products and product programs are written again
+        verify(dbUtil, times(6)).withDaoAsBatch(eq(Product.class), any(DbUtil.Operation.class));
+        verify(dbUtil, times(1)).withDaoAsBatch(eq(KitProduct.class), any(DbUtil.Operation.class));
+        verify(dbUtil, times(6)).withDaoAsBatch(eq(ProductProgram.class), any(DbUtil.Operation.class));
+
+        assertThat(productRepository.queryProductsGroupByCode().size(), is(1264 + 10));
+        assertThat(productProgramRepository.listAll().size(), is(1264));
+        assertThat(productRepository.queryKitProductByKitCode("P0").size(), is(10));
+    }
+
+    private List<Product> generateCatalog(int size) {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Product product = ProductBuilder.create().setCode("P" + i).setPrimaryName("product " + i)
+                    .setStrength("100").setType("type").setIsActive(true).setIsKit(i % 100 == 0).build();
+            if (product.isKit()) {
+                List<KitProduct> kitProducts = new ArrayList<>();
+                for (int j = 0; j < 10; j++) {
+                    kitProducts.add(KitProductBuilder.create().setKitCode(product.getCode()).setProductCode("KIT_ITEM" + j).setQuantity(j).build());
+                }
+                product.setKitProductList(kitProducts);
+            }
+            products.add(product);
+        }
+        return products;
+    }
+
+    private List<ProductProgram> generateProductPrograms(List<Product> products) {
+        List<ProductProgram> productPrograms = new ArrayList<>();
+        for (Product product : products) {
+            productPrograms.add(new ProductProgramBuilder().setProductCode(product.getCode()).setProgramCode("VIA").setActive(true).build());
+        }
+        return productPrograms;
+    }
+
+    private Product createVIAProduct(String code, String primaryName, String strength, String type) throws LMISException {
+        Product product = ProductBuilder.create().setCode(code).setPrimaryName(primaryName)
+                .setStrength(strength).setType(type).setIsActive(true).setIsKit(false).build();
+        productRepository.createOrUpdate(product);
+        productProgramRepository.createOrUpdate(new ProductProgramBuilder().setProductCode(code).setProgramCode("VIA").setActive(true).build());
+        return product;
+    }
+
+    private List<String> codesOf(List<Product> products) {
+        List<String> codes = new ArrayList<>();
+        for (Product product : products) {
+            codes.add(product.getCode());
+        }
+        return codes;
+    }
+
     private Product createProduct(String code, boolean archived, boolean isKit, boolean active) throws LMISException {
         Product productInVIA = new ProductBuilder().setCode(code)
                 .setPrimaryName("product 1").setIsArchived(archived).setIsKit(isKit)
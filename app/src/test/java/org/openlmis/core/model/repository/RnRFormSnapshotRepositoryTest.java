@@ -0,0 +1,88 @@
+package org.openlmis.core.model.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISRepositoryUnitTest;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.manager.UserInfoMgr;
+import org.openlmis.core.model.Program;
+import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnRFormSnapshot;
+import org.openlmis.core.model.User;
+import org.openlmis.core.model.builder.ProgramBuilder;
+import org.openlmis.core.model.builder.RnRFormBuilder;
+import org.robolectric.RuntimeEnvironment;
+
+import roboguice.RoboGuice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class RnRFormSnapshotRepositoryTest extends LMISRepositoryUnitTest {
+
+    private RnrFormRepository rnrFormRepository;
+    private RnRFormSnapshotRepository rnRFormSnapshotRepository;
+    private RnRForm form;
+
+    @Before
+    public void setUp() throws Exception {
+        rnrFormRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(RnrFormRepository.class);
+        rnRFormSnapshotRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(RnRFormSnapshotRepository.class);
+        ProgramRepository programRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProgramRepository.class);
+
+        User user = new User("user", "123");
+        user.setFacilityCode("FC1");
+        UserInfoMgr.getInstance().setUser(user);
+
+        Program program = new ProgramBuilder().setProgramCode("MMIA").setProgramName("MMIA name").build();
+        programRepository.createOrUpdate(program);
+        form = new RnRFormBuilder().setComments("comments").setProgram(program).setStatus(RnRForm.STATUS.DRAFT).build();
+    }
+
+    @Test
+    public void shouldSnapshotPayloadOnceFormIsAuthorized() throws Exception {
+        rnrFormRepository.createOrUpdateWithItems(form);
+        assertThat(rnRFormSnapshotRepository.queryByFormId(form.getId()), nullValue());
+
+        form.setStatus(RnRForm.STATUS.AUTHORIZED);
+        rnrFormRepository.createOrUpdateWithItems(form);
+
+        RnRFormSnapshot snapshot = rnRFormSnapshotRepository.queryByFormId(form.getId());
+        assertThat(snapshot, notNullValue());
+        String payload = new String(snapshot.getPayload(), "UTF-8");
+        assertTrue(payload.contains("\"programCode\":\"MMIA\""));
+        assertTrue(payload.contains("\"agentCode\":\"FC1\""));
+    }
+
+    @Test
+    public void shouldKeepIdempotencyKeyUntilPayloadChanges() throws LMISException {
+        form.setStatus(RnRForm.STATUS.AUTHORIZED);
+        rnrFormRepository.createOrUpdateWithItems(form);
+        String firstKey = rnRFormSnapshotRepository.queryByFormId(form.getId()).getIdempotencyKey();
+
+        rnrFormRepository.createOrUpdateWithItems(form);
+        assertThat(rnRFormSnapshotRepository.queryByFormId(form.getId()).getIdempotencyKey(), is(firstKey));
+
+        form.setComments("changed comments");
+        rnrFormRepository.createOrUpdateWithItems(form);
+        assertThat(rnRFormSnapshotRepository.queryByFormId(form.getId()).getIdempotencyKey(), not(firstKey));
+    }
+
+    @Test
+    public void shouldDropSnapshotWhenFormIsSynced() throws LMISException {
+        form.setStatus(RnRForm.STATUS.AUTHORIZED);
+        rnrFormRepository.createOrUpdateWithItems(form);
+
+        form.setSynced(true);
+        rnrFormRepository.createOrUpdateWithItems(form);
+
+        assertThat(rnRFormSnapshotRepository.queryByFormId(form.getId()), nullValue());
+    }
+}
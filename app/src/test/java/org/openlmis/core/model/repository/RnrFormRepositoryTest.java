@@ -58,7 +58,9 @@ import org.robolectric.RuntimeEnvironment;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 
@@ -294,7 +296,9 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         stockMovementItem.setMovementDate(dateTime.toDate());
         stockMovementItem.setCreatedTime(new Date());
         when(mockStockMovementRepository.queryFirstStockMovementByStockCardId(anyLong())).thenReturn(stockMovementItem);
-        when(mockStockMovementRepository.queryStockItemsByCreatedDate(stockCard.getId(), form.getPeriodBegin(), form.getPeriodEnd())).thenReturn(stockMovementItems);
+        Map<Long, List<StockMovementItem>> periodMovements = new HashMap<>();
+        periodMovements.put(stockCard.getId(), stockMovementItems);
+        when(mockStockMovementRepository.queryStockItemsByCreatedDate(form.getPeriodBegin(), form.getPeriodEnd())).thenReturn(periodMovements);
 
         ProductProgram productProgram = new ProductProgram();
         productProgram.setCategory("Adult");
@@ -358,10 +362,7 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
     public void shouldCreateSuccess() throws Exception {
         Program program = new Program();
         RnRForm form = RnRForm.init(program, DateUtil.parseString("01/01/2015", DateUtil.SIMPLE_DATE_FORMAT));
-        ArrayList<RnRForm> rnRForms = new ArrayList<>();
-        rnRForms.add(form);
-
-        rnrFormRepository.createRnRsWithItems(rnRForms);
+        rnrFormRepository.createOrUpdateWithItems(form);
 
         RnRForm form2 = RnRForm.init(program, DateUtil.parseString("01/01/2015", DateUtil.SIMPLE_DATE_FORMAT));
         ArrayList<BaseInfoItem> baseInfoItems = new ArrayList<>();
@@ -372,9 +373,7 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         form2.setBaseInfoItemListWrapper(baseInfoItems);
         form2.setComments("Comments");
         RnRForm.fillFormId(form2);
-        ArrayList<RnRForm> rnRForms2 = new ArrayList<>();
-        rnRForms2.add(form2);
-        rnrFormRepository.createRnRsWithItems(rnRForms2);
+        rnrFormRepository.createOrUpdateWithItems(form2);
         assertThat(form.getId(), is(1L));
         assertThat(form2.getId(), is(2L));
         RnRForm rnRForm = rnrFormRepository.queryRnRForm(2L);
@@ -382,6 +381,34 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         assertThat(rnRForm.getComments(), is("Comments"));
     }
 
+    @Test
+    public void shouldReplaceSyncedFormsAndKeepUnsyncedLocalFormsWhenUpsertingSyncedForms() throws Exception {
+        Program program = new ProgramBuilder().setProgramId(1L).build();
+        RnRForm syncedForm = RnRForm.init(program, DateUtil.parseString("01/01/2015", DateUtil.SIMPLE_DATE_FORMAT));
+        syncedForm.setSynced(true);
+        syncedForm.setComments("old");
+        RnRForm unsyncedForm = RnRForm.init(program, DateUtil.parseString("01/02/2015", DateUtil.SIMPLE_DATE_FORMAT));
+        unsyncedForm.setComments("local");
+        rnrFormRepository.createOrUpdateWithItems(syncedForm);
+        rnrFormRepository.createOrUpdateWithItems(unsyncedForm);
+
+        RnRForm updatedForm = RnRForm.init(program, DateUtil.parseString("01/01/2015", DateUtil.SIMPLE_DATE_FORMAT));
+        updatedForm.setSynced(true);
+        updatedForm.setComments("updated");
+        RnRForm serverCopyOfUnsyncedForm = RnRForm.init(program, DateUtil.parseString("01/02/2015", DateUtil.SIMPLE_DATE_FORMAT));
+        serverCopyOfUnsyncedForm.setSynced(true);
+        serverCopyOfUnsyncedForm.setComments("server");
+        RnRForm newForm = RnRForm.init(program, DateUtil.parseString("01/03/2015", DateUtil.SIMPLE_DATE_FORMAT));
+        newForm.setSynced(true);
+        rnrFormRepository.createOrUpdateSyncedRnRsWithItems(newArrayList(updatedForm, serverCopyOfUnsyncedForm, newForm));
+
+        List<RnRForm> forms = rnrFormRepository.list();
+        assertThat(forms.size(), is(3));
+        assertNull(rnrFormRepository.queryRnRForm(syncedForm.getId()));
+        assertThat(rnrFormRepository.queryRnRForm(updatedForm.getId()).getComments(), is("updated"));
+        assertThat(rnrFormRepository.queryRnRForm(unsyncedForm.getId()).getComments(), is("local"));
+    }
+
     @Test
     public void shouldInitRnrFormItemWithoutMovement() throws Exception {
         rnrFormRepository = spy(rnrFormRepository);
@@ -402,7 +429,7 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         stockCard.setLotOnHandListWrapper(newArrayList(new LotOnHand(lot, stockCard, 10L)));
         when(mockStockMovementRepository.queryStockMovementsByMovementDate(anyLong(), any(Date.class), any(Date.class))).thenReturn(new ArrayList<StockMovementItem>());
 
-        RnrFormItem rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new Date(), new Date());
+        RnrFormItem rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new ArrayList<StockMovementItem>(), rnrFormRepository.lastRnrInventories());
 
         assertThat(rnrFormItemByPeriod.getReceived(), is(0L));
         assertThat(rnrFormItemByPeriod.getCalculatedOrderQuantity(), is(0L));
@@ -410,7 +437,7 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         assertThat(rnrFormItemByPeriod.getInitialAmount(), is(100L));
 
         stockCard.setLotOnHandListWrapper(Lists.<LotOnHand>newArrayList());
-        rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new Date(), new Date());
+        rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new ArrayList<StockMovementItem>(), rnrFormRepository.lastRnrInventories());
         assertNull(rnrFormItemByPeriod.getValidate());
     }
 
@@ -421,7 +448,7 @@ public class RnrFormRepositoryTest extends LMISRepositoryUnitTest {
         when(mockStockMovementRepository.queryStockMovementsByMovementDate(anyLong(), any(Date.class), any(Date.class))).thenReturn(new ArrayList<StockMovementItem>());
         doReturn(new ArrayList<>()).when(rnrFormRepository).listInclude(any(RnRForm.Emergency.class), anyString());
 
-        RnrFormItem rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new Date(), new Date());
+        RnrFormItem rnrFormItemByPeriod = rnrFormRepository.createRnrFormItemByPeriod(stockCard, new ArrayList<StockMovementItem>(), rnrFormRepository.lastRnrInventories());
 
         assertThat(rnrFormItemByPeriod.getReceived(), is(0L));
         assertThat(rnrFormItemByPeriod.getCalculatedOrderQuantity(), is(0L));
@@ -0,0 +1,137 @@
+package org.openlmis.core.model.repository;
+
+import android.database.Cursor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.manager.MovementReasonManager;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.persistence.LmisSqliteOpenHelper;
+import org.openlmis.core.persistence.QueryCountingCursorFactory;
+import org.openlmis.core.presenter.StockMovementHistoryPresenter;
+import org.openlmis.core.utils.DateUtil;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import roboguice.RoboGuice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class StockMovementHistoryPagingBenchmarkTest {
+
+    private static final int MOVEMENTS = 3000;
+    private static final int MOVEMENTS_PER_DAY = 5;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+
+    private StockRepository stockRepository;
+    private StockMovementRepository stockMovementRepository;
+    private StockCard stockCard;
+    private List<StockMovementItem> history;
+
+    @Before
+    public void setUp() throws Exception {
+        stockRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockRepository.class);
+        stockMovementRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockMovementRepository.class);
+
+        stockCard = new StockCard();
+        stockCard.setStockOnHand(MOVEMENTS);
+        stockRepository.createOrUpdate(stockCard);
+
+        //several movements a day, some of them created at the same time, saved out of order
+        Date firstDay = DateUtil.parseString("2010-01-01", DateUtil.DB_DATE_FORMAT);
+        history = new ArrayList<>();
+        for (int i = 0; i < MOVEMENTS; i++) {
+            StockMovementItem stockMovementItem = new StockMovementItem();
+            stockMovementItem.setStockCard(stockCard);
+            stockMovementItem.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+            stockMovementItem.setMovementQuantity(1);
+            stockMovementItem.setStockOnHand(i + 1);
+            stockMovementItem.setMovementDate(new Date(firstDay.getTime() + i / MOVEMENTS_PER_DAY * DAY));
+            stockMovementItem.setCreatedTime(new Date(firstDay.getTime() + i / MOVEMENTS_PER_DAY * DAY + i % MOVEMENTS_PER_DAY / 2 * HOUR));
+            stockMovementItem.setSynced(true);
+            history.add(stockMovementItem);
+        }
+        Collections.shuffle(history, new Random(49));
+        stockMovementRepository.batchCreateOrUpdateStockMovementsAndLotMovements(history);
+
+        Collections.sort(history, new Comparator<StockMovementItem>() {
+            @Override
+            public int compare(StockMovementItem lhs, StockMovementItem rhs) {
+                int result = lhs.getMovementDate().compareTo(rhs.getMovementDate());
+                if (result == 0) {
+                    result = lhs.getCreatedTime().compareTo(rhs.getCreatedTime());
+                }
+                if (result == 0) {
+                    result = lhs.getId() < rhs.getId() ? -1 : (lhs.getId() == rhs.getId() ? 0 : 1);
+                }
+                return result;
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkPagingBackThroughALongHistory() throws Exception {
+        int pages = (int) (MOVEMENTS / StockMovementHistoryPresenter.MAXROWS);
+        long[] pageQueries = new long[pages];
+
+        StockMovementItem oldestLoaded = null;
+        int end = MOVEMENTS;
+        for (int page = 0; page < pages; page++) {
+            long queries = QueryCountingCursorFactory.getQueryCount();
+            List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), oldestLoaded, StockMovementHistoryPresenter.MAXROWS);
+            pageQueries[page] = QueryCountingCursorFactory.getQueryCount() - queries;
+
+            List<StockMovementItem> expected = history.subList(end - stockMovementItems.size(), end);
+            assertThat(stockMovementItems.size(), is((int) StockMovementHistoryPresenter.MAXROWS));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(stockMovementItems.get(i).getId(), is(expected.get(i).getId()));
+            }
+            end -= stockMovementItems.size();
+            oldestLoaded = stockMovementItems.get(0);
+        }
+        assertTrue(stockMovementRepository.queryStockMovementHistory(stockCard.getId(), oldestLoaded, StockMovementHistoryPresenter.MAXROWS).isEmpty());
+
+        //a page deep in the history costs the same queries as the first one
+        for (int page = 1; page < pages; page++) {
+            assertThat(pageQueries[page], is(pageQueries[0]));
+        }
+
+        //and seeks the history index instead of reading and sorting the rows newer than the page
+        String plan = queryPlan("SELECT * FROM `stock_items` WHERE `stockCard_id` = ? AND `movementDate` <= ?"
+                        + " AND (`movementDate` < ? OR `createdTime` < ? OR (`createdTime` = ? AND `id` < ?))"
+                        + " ORDER BY `movementDate` DESC, `createdTime` DESC, `id` DESC LIMIT " + StockMovementHistoryPresenter.MAXROWS,
+                String.valueOf(stockCard.getId()), "2010-06-01", "2010-06-01", "2010-06-01", "2010-06-01", "1");
+        assertTrue(plan, plan.contains("USING INDEX stock_items_stockCard_id_movementDate_createdTime_idx"));
+        assertTrue(plan, plan.contains("movementDate<?"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    private String queryPlan(String sql, String... args) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            if (cursor.moveToFirst()) {
+                do {
+                    plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+                } while (cursor.moveToNext());
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -9,16 +9,16 @@ import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.MovementReasonManager;
-import org.openlmis.core.model.Lot;
-import org.openlmis.core.model.LotMovementItem;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.ProductProgram;
 import org.openlmis.core.model.Program;
+import org.openlmis.core.model.RnrFormItem;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
-import org.openlmis.core.model.builder.LotMovementItemBuilder;
 import org.openlmis.core.model.builder.ProductBuilder;
 import org.openlmis.core.model.builder.ProgramBuilder;
+import org.openlmis.core.model.helper.RnrFormHelper;
+import org.openlmis.core.network.model.StockCardDigest;
 import org.openlmis.core.utils.DateUtil;
 import org.roboguice.shaded.goole.common.collect.Lists;
 import org.robolectric.RuntimeEnvironment;
@@ -27,12 +27,15 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import roboguice.RoboGuice;
 
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.openlmis.core.manager.MovementReasonManager.MovementType.ISSUE;
@@ -128,13 +131,18 @@ public class StockMovementRepositoryTest {
         createMovementItem(MovementReasonManager.MovementType.PHYSICAL_INVENTORY, 1001, stockCard, DateUtil.parseString("2015-12-13", DateUtil.DB_DATE_FORMAT), DateUtil.parseString("2015-12-12", DateUtil.DB_DATE_FORMAT), false);
         createMovementItem(MovementReasonManager.MovementType.PHYSICAL_INVENTORY, 1002, stockCard, DateUtil.parseString("2015-12-14", DateUtil.DB_DATE_FORMAT), DateUtil.parseString("2015-12-13", DateUtil.DB_DATE_FORMAT), false);
 
-        List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), 1, 1);
+        List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), null, 1);
         assertEquals(1, stockMovementItems.size());
-        assertEquals(stockCard.getStockMovementItemsWrapper().get(1), stockMovementItems.get(0));
+        assertEquals(stockCard.getStockMovementItemsWrapper().get(3), stockMovementItems.get(0));
+
+        List<StockMovementItem> stockMovementItems1 = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), stockMovementItems.get(0), 2);
+        assertEquals(2, stockMovementItems1.size());
+        assertEquals(stockCard.getStockMovementItemsWrapper().get(1), stockMovementItems1.get(0));
+        assertEquals(stockCard.getStockMovementItemsWrapper().get(2), stockMovementItems1.get(1));
 
-        List<StockMovementItem> stockMovementItems1 = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), 1, 3);
-        assertEquals(3, stockMovementItems1.size());
-        assertEquals(stockCard.getStockMovementItemsWrapper().get(3), stockMovementItems1.get(2));
+        List<StockMovementItem> stockMovementItems2 = stockMovementRepository.queryStockMovementHistory(stockCard.getId(), stockMovementItems1.get(0), 2);
+        assertEquals(1, stockMovementItems2.size());
+        assertEquals(stockCard.getStockMovementItemsWrapper().get(0), stockMovementItems2.get(0));
     }
 
     @Test
@@ -149,6 +157,88 @@ public class StockMovementRepositoryTest {
         assertEquals(stockCard.getStockMovementItemsWrapper().get(0), stockMovementItem);
     }
 
+    @Test
+    public void shouldGroupPeriodMovementsTheSameWayAsQueryingEachStockCard() throws Exception {
+        Random random = new Random(38);
+        Date periodBegin = DateUtil.parseString("2016-01-21 00:00:00", DateUtil.DATE_TIME_FORMAT);
+        Date periodEnd = DateUtil.parseString("2016-02-20 23:59:59", DateUtil.DATE_TIME_FORMAT);
+        MovementReasonManager.MovementType[] types = MovementReasonManager.MovementType.values();
+
+        List<StockCard> stockCards = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            StockCard stockCard = new StockCard();
+            stockCard.setStockOnHand(500);
+            stockRepository.createOrUpdate(stockCard);
+            stockCards.add(stockCard);
+        }
+        for (int i = 0; i < 120; i++) {
+            StockCard stockCard = stockCards.get(random.nextInt(stockCards.size() - 1));
+            Date createdTime = new DateTime(periodBegin).plusDays(random.nextInt(60) - 15).plusMinutes(random.nextInt(1440)).toDate();
+            createMovementItem(types[random.nextInt(types.length)], random.nextInt(50), stockCard, createdTime, DateUtil.truncateTimeStampInDate(createdTime), false);
+        }
+
+        Map<Long, List<StockMovementItem>> periodMovements = stockMovementRepository.queryStockItemsByCreatedDate(periodBegin, periodEnd);
+
+        RnrFormHelper rnrFormHelper = new RnrFormHelper();
+        for (StockCard stockCard : stockCards) {
+            List<StockMovementItem> expected = stockMovementRepository.queryStockItemsByCreatedDate(stockCard.getId(), periodBegin, periodEnd);
+            List<StockMovementItem> actual = periodMovements.containsKey(stockCard.getId()) ? periodMovements.get(stockCard.getId()) : new ArrayList<StockMovementItem>();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                assertEquals(expected.get(i).getMovementType(), actual.get(i).getMovementType());
+                assertEquals(expected.get(i).getMovementQuantity(), actual.get(i).getMovementQuantity());
+                assertEquals(expected.get(i).getStockOnHand(), actual.get(i).getStockOnHand());
+            }
+            if (!expected.isEmpty()) {
+                RnrFormItem expectedItem = new RnrFormItem();
+                rnrFormHelper.assignTotalValues(expectedItem, expected);
+                RnrFormItem actualItem = new RnrFormItem();
+                rnrFormHelper.assignTotalValues(actualItem, actual);
+                assertEquals(expected.get(0).calculatePreviousSOH(), actual.get(0).calculatePreviousSOH());
+                assertEquals(expectedItem.getReceived(), actualItem.getReceived());
+                assertEquals(expectedItem.getIssued(), actualItem.getIssued());
+                assertEquals(expectedItem.getAdjustment(), actualItem.getAdjustment());
+                assertEquals(expectedItem.getInventory(), actualItem.getInventory());
+                assertEquals(expectedItem.getCalculatedOrderQuantity(), actualItem.getCalculatedOrderQuantity());
+            }
+        }
+        assertTrue(periodMovements.containsKey(stockCards.get(0).getId()));
+        assertFalse(periodMovements.containsKey(stockCards.get(stockCards.size() - 1).getId()));
+    }
+
+    @Test
+    public void shouldQueryMovementsOnOrAfterTheWindowStartGroupedByStockCard() throws Exception {
+        StockCard stockCard1 = new StockCard();
+        stockCard1.setStockOnHand(100);
+        stockRepository.createOrUpdate(stockCard1);
+        StockCard stockCard2 = new StockCard();
+        stockCard2.setStockOnHand(100);
+        stockRepository.createOrUpdate(stockCard2);
+
+        Date createdTime = DateUtil.parseString("2016-09-01 10:00:00", DateUtil.DATE_TIME_FORMAT);
+        createMovementItem(RECEIVE, 10, stockCard1, createdTime, DateUtil.parseString("2016-08-20", DateUtil.DB_DATE_FORMAT), false);
+        createMovementItem(ISSUE, 20, stockCard1, createdTime, DateUtil.parseString("2016-08-25", DateUtil.DB_DATE_FORMAT), false);
+        createMovementItem(ISSUE, 30, stockCard1, createdTime, DateUtil.parseString("2016-08-30", DateUtil.DB_DATE_FORMAT), false);
+        createMovementItem(RECEIVE, 40, stockCard2, createdTime, DateUtil.parseString("2016-08-24", DateUtil.DB_DATE_FORMAT), false);
+
+        Date since = DateUtil.parseString("2016-08-25", DateUtil.DB_DATE_FORMAT);
+        Map<Long, List<StockMovementItem>> movements = stockMovementRepository.queryStockMovementsSinceGroupByStockCardId(
+                Lists.newArrayList(stockCard1.getId(), stockCard2.getId()), since);
+
+        assertEquals(1, movements.size());
+        List<StockMovementItem> movementsOfStockCard1 = movements.get(stockCard1.getId());
+        assertEquals(2, movementsOfStockCard1.size());
+        assertEquals(20, movementsOfStockCard1.get(0).getMovementQuantity());
+        assertEquals(ISSUE, movementsOfStockCard1.get(0).getMovementType());
+        assertEquals(30, movementsOfStockCard1.get(1).getMovementQuantity());
+        assertEquals(60, movementsOfStockCard1.get(1).getStockOnHand());
+
+        assertEquals(1, stockMovementRepository.countStockCardsWithMovementsSince(since));
+        assertEquals(2, stockMovementRepository.countStockMovementsSince(since));
+        assertEquals(2, stockMovementRepository.countStockCardsWithMovementsSince(DateUtil.parseString("2016-08-24", DateUtil.DB_DATE_FORMAT)));
+    }
+
     private StockMovementItem createMovementItem(MovementReasonManager.MovementType type, long quantity, StockCard stockCard, Date createdTime, Date movementDate, boolean synced) throws LMISException {
         StockMovementItem stockMovementItem = new StockMovementItem();
         stockMovementItem.setMovementQuantity(quantity);
@@ -214,6 +304,35 @@ public class StockMovementRepositoryTest {
         Assert.assertThat(DateUtil.cutTimeStamp(new DateTime(earliestDate)), is(DateUtil.cutTimeStamp(new DateTime(expectedDate))));
     }
 
+    @Test
+    public void shouldDigestMovementsOfEachStockCardWithinWindow() throws Exception {
+        Product productA = new ProductBuilder().setCode("A1").build();
+        productRepository.createOrUpdate(productA);
+        Product productB = new ProductBuilder().setCode("B1").build();
+        productRepository.createOrUpdate(productB);
+        StockCard stockCardA = new StockCard();
+        stockCardA.setProduct(productA);
+        stockRepository.createOrUpdate(stockCardA);
+        StockCard stockCardB = new StockCard();
+        stockCardB.setProduct(productB);
+        stockRepository.createOrUpdate(stockCardB);
+
+        createMovementItem(RECEIVE, 100, stockCardA, new Date(), DateUtil.parseString("2016-01-10", DateUtil.DB_DATE_FORMAT), true);
+        createMovementItem(ISSUE, 30, stockCardA, new Date(), DateUtil.parseString("2016-01-05", DateUtil.DB_DATE_FORMAT), true);
+        createMovementItem(ISSUE, 10, stockCardB, new Date(), DateUtil.parseString("2016-02-01", DateUtil.DB_DATE_FORMAT), true);
+
+        List<StockCardDigest> digests = stockMovementRepository.queryStockCardDigests("2016-01-01", "2016-02-01");
+
+        assertThat(digests.size(), is(1));
+        StockCardDigest expected = new StockCardDigest.Builder("A1")
+                .addMovement("2016-01-05", null, 30, null, 70)
+                .addMovement("2016-01-10", null, 100, null, 100)
+                .build();
+        assertThat(digests.get(0).getProductCode(), is("A1"));
+        assertThat(digests.get(0).getMovementCount(), is(2));
+        assertTrue(digests.get(0).matches(expected));
+    }
+
     @Test
     public void shouldGetFirstMovement() throws Exception {
         StockCard stockCard = new StockCard();
@@ -228,70 +347,4 @@ public class StockMovementRepositoryTest {
         StockMovementItem stockMovementItem = stockMovementRepository.getFirstStockMovement();
         assertEquals(stockCard2.getStockMovementItemsWrapper().get(0), stockMovementItem);
     }
-
-    @Test
-    public void shouldBatchUpdateStockMovements() throws LMISException, ParseException {
-        StockCard stockCard = saveStockCardWithOneMovement(stockRepository);
-
-        StockMovementItem stockMovementItem = new StockMovementItem();
-        stockMovementItem.setMovementQuantity(100);
-        stockMovementItem.setMovementType(MovementReasonManager.MovementType.POSITIVE_ADJUST);
-        stockMovementItem.setMovementDate(DateUtil.parseString("2016-03-11", DateUtil.DB_DATE_FORMAT));
-        stockMovementItem.setStockCard(stockCard);
-        stockMovementItem.setSynced(false);
-
-        Lot lot1 = new Lot();
-        lot1.setProduct(product);
-        lot1.setExpirationDate(DateUtil.parseString("2017-12-31", DateUtil.DB_DATE_FORMAT));
-        lot1.setLotNumber("AAA");
-
-        Lot lot2 = new Lot();
-        lot2.setProduct(product);
-        lot2.setExpirationDate(DateUtil.parseString("2017-12-31", DateUtil.DB_DATE_FORMAT));
-        lot2.setLotNumber("BBB");
-
-
-        Lot lot3 = new Lot();
-        lot3.setProduct(product);
-        lot3.setExpirationDate(DateUtil.parseString("2017-12-31", DateUtil.DB_DATE_FORMAT));
-        lot3.setLotNumber("CCC");
-
-
-        LotMovementItem lotMovementItem = new LotMovementItemBuilder()
-                .setStockMovementItem(stockMovementItem)
-                .setLot(lot1)
-                .setMovementQuantity(2L).build();
-
-        LotMovementItem lotMovementItem2 = new LotMovementItemBuilder()
-                .setStockMovementItem(stockMovementItem)
-                .setLot(lot2)
-                .setMovementQuantity(3L).build();
-
-        LotMovementItem lotMovementItem3 = new LotMovementItemBuilder()
-                .setStockMovementItem(stockMovementItem)
-                .setLot(lot3)
-                .setMovementQuantity(5L).build();
-
-        stockMovementItem.setLotMovementItemListWrapper(Lists.newArrayList(lotMovementItem, lotMovementItem2, lotMovementItem3));
-        stockMovementItem.setStockOnHand(stockCard.getStockOnHand() + 100);
-        stockCard.setStockOnHand(stockMovementItem.getStockOnHand());
-
-        stockMovementRepository.batchCreateOrUpdateStockMovementsAndLotInfo(Lists.newArrayList(stockMovementItem));
-
-        stockRepository.refresh(stockCard);
-
-        StockMovementItem stockMovementItem1 = stockCard.getStockMovementItemsWrapper().get(1);
-        stockMovementItem1.getLotMovementItemListWrapper();
-        stockMovementItem1.setForeignLotMovementItems(null);
-        assertEquals(3, stockMovementItem.getLotMovementItemListWrapper().size());
-        assertEquals(stockMovementItem.getStockOnHand(), stockMovementItem1.getStockOnHand());
-        assertEquals(stockMovementItem.getMovementDate(), stockMovementItem1.getMovementDate());
-
-        stockMovementItem.setSynced(true);
-        stockMovementRepository.batchCreateOrUpdateStockMovementsAndLotInfo(Lists.newArrayList(stockMovementItem));
-
-        stockRepository.refresh(stockCard);
-        stockCard.setStockMovementItemsWrapper(null);
-        assertTrue(stockCard.getStockMovementItemsWrapper().get(1).isSynced());
-    }
 }
\ No newline at end of file
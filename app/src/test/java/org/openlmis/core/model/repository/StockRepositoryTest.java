@@ -39,7 +39,9 @@ import org.openlmis.core.model.ProductProgram;
 import org.openlmis.core.model.Program;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockCardSummary;
 import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.SyncType;
 import org.openlmis.core.model.builder.LotMovementItemBuilder;
 import org.openlmis.core.model.builder.ProductBuilder;
 import org.openlmis.core.model.builder.ProductProgramBuilder;
@@ -49,15 +51,20 @@ import org.openlmis.core.model.builder.StockMovementItemBuilder;
 import org.openlmis.core.utils.DateUtil;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.openlmis.core.model.builder.StockCardBuilder.saveStockCardWithOneMovement;
 
 @RunWith(LMISTestRunner.class)
@@ -71,6 +78,7 @@ public class StockRepositoryTest extends LMISRepositoryUnitTest {
     private ProductProgramRepository productProgramRepository;
     private StockCard stockCard;
     private StockMovementRepository stockMovementRepository;
+    private SyncOutboxRepository syncOutboxRepository;
 
     @Before
     public void setup() throws LMISException {
@@ -81,6 +89,7 @@ public class StockRepositoryTest extends LMISRepositoryUnitTest {
         productProgramRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProductProgramRepository.class);
         lotRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(LotRepository.class);
         stockMovementRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockMovementRepository.class);
+        syncOutboxRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncOutboxRepository.class);
 
         saveTestProduct();
 
@@ -238,6 +247,35 @@ public class StockRepositoryTest extends LMISRepositoryUnitTest {
         assertThat(stockCardsBeforeTimeLine.size(), is(1));
     }
 
+    @Test
+    public void shouldSearchEmergencyStockCardsByProductWordPrefixes() throws Exception {
+        createNewStockCard("EM", null, ProductBuilder.create().setCode("08S01").setPrimaryName("Lamivudina").setStrength("150mg").setIsActive(true).setIsKit(false).build(), true);
+        createEmergencyStockCard("EM", ProductBuilder.create().setCode("08S02").setPrimaryName("Paracetamol").setStrength("500mg").setIsActive(true).setIsKit(false).build());
+        createEmergencyStockCard("EM", ProductBuilder.create().setCode("08S03").setPrimaryName("Lamivudina xarope").setStrength("10mg").setIsActive(true).setIsKit(false).build());
+        Product productWithoutStockCard = ProductBuilder.create().setCode("08S04").setPrimaryName("Lamivudina gotas").setIsActive(true).setIsKit(false).build();
+        productRepository.createOrUpdate(productWithoutStockCard);
+        createNewProductProgram("EM", productWithoutStockCard.getCode());
+
+        List<StockCard> stockCards = stockRepository.searchEmergencyStockCards("LAMI", 10);
+        assertThat(stockCards.size(), is(2));
+        assertThat(stockCards.get(0).getProduct().getCode(), is("08S01"));
+        assertThat(stockCards.get(1).getProduct().getCode(), is("08S03"));
+
+        assertThat(stockRepository.searchEmergencyStockCards("lami 10", 10).get(0).getProduct().getCode(), is("08S03"));
+        assertThat(stockRepository.searchEmergencyStockCards("08s02", 10).get(0).getProduct().getPrimaryName(), is("Paracetamol"));
+        assertThat(stockRepository.searchEmergencyStockCards("mivudina", 10).size(), is(0));
+        assertThat(stockRepository.searchEmergencyStockCards(null, 2).size(), is(2));
+    }
+
+    private void createEmergencyStockCard(String programCode, Product product) throws LMISException {
+        productRepository.createOrUpdate(product);
+        createNewProductProgram(programCode, product.getCode());
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setCreatedAt(new Date());
+        stockRepository.createOrUpdate(stockCard);
+    }
+
     private void saveTestProduct() throws LMISException {
         product = new Product();
         product.setPrimaryName("Test Product");
@@ -345,4 +383,249 @@ public class StockRepositoryTest extends LMISRepositoryUnitTest {
         assertEquals(MovementReasonManager.MovementType.POSITIVE_ADJUST, stockCardQueried.getStockMovementItemsWrapper().get(0).getMovementType());
         assertEquals(1, stockCardQueried.getStockMovementItemsWrapper().get(0).getLotMovementItemListWrapper().size());
     }
+
+    @Test
+    public void shouldKeepStockStatusIndexedAsStockOnHandAndCMMChange() throws Exception {
+        StockCard lowStockCard = createStockCardWithStatus(ProductBuilder.create().setCode("p1").setIsActive(true).build(), 1, 100.5f);
+        StockCard overStockCard = createStockCardWithStatus(ProductBuilder.create().setCode("p2").setIsActive(true).build(), 220, 100.5f);
+        StockCard stockOutCard = createStockCardWithStatus(ProductBuilder.create().setCode("p3").setIsActive(true).build(), 0, 100.5f);
+        createStockCardWithStatus(ProductBuilder.create().setCode("p4").setIsActive(true).build(), 100, 100.5f);
+        createStockCardWithStatus(ProductBuilder.create().setCode("archived").setIsActive(true).setIsArchived(true).build(), 0, 100.5f);
+        createStockCardWithStatus(ProductBuilder.create().setCode("kit").setIsActive(true).setIsKit(true).build(), 0, -1);
+
+        assertThat(stockRepository.listOverviewStockCardsByStatus(StockCard.StockStatus.LOW_STOCK).get(0).getId(), is(lowStockCard.getId()));
+        assertThat(stockRepository.listOverviewStockCardsByStatus(StockCard.StockStatus.STOCK_OUT).size(), is(1));
+
+        Map<StockCard.StockStatus, Long> counts = stockRepository.countOverviewStockCardsGroupByStatus();
+        assertThat(counts.get(StockCard.StockStatus.STOCK_OUT), is(1L));
+        assertThat(counts.get(StockCard.StockStatus.LOW_STOCK), is(1L));
+        assertThat(counts.get(StockCard.StockStatus.OVER_STOCK), is(1L));
+        assertThat(counts.get(StockCard.StockStatus.NORMAL), is(1L));
+
+        List<StockCard> bySeverity = stockRepository.listOverviewStockCardsOrderByStatus();
+        assertThat(bySeverity.size(), is(4));
+        assertThat(bySeverity.get(0).getId(), is(stockOutCard.getId()));
+        assertThat(bySeverity.get(1).getId(), is(lowStockCard.getId()));
+        assertThat(bySeverity.get(2).getId(), is(overStockCard.getId()));
+
+        stockOutCard.setStockOnHand(300);
+        stockRepository.createOrUpdate(stockOutCard);
+        lowStockCard.setAvgMonthlyConsumption(-1);
+        stockRepository.createOrUpdate(lowStockCard);
+
+        counts = stockRepository.countOverviewStockCardsGroupByStatus();
+        assertThat(counts.get(StockCard.StockStatus.STOCK_OUT), is(0L));
+        assertThat(counts.get(StockCard.StockStatus.LOW_STOCK), is(0L));
+        assertThat(counts.get(StockCard.StockStatus.OVER_STOCK), is(2L));
+        assertThat(counts.get(StockCard.StockStatus.NORMAL), is(2L));
+        assertThat(stockRepository.queryStockCardById(stockOutCard.getId()).getStockStatus(), is(StockCard.StockStatus.OVER_STOCK));
+        assertThat(stockRepository.listOverviewStockCardsByStatus(StockCard.StockStatus.LOW_STOCK).size(), is(0));
+    }
+
+    @Test
+    public void shouldPageOverviewSummariesByProductNameWithEarliestNonEmptyLotExpiry() throws Exception {
+        StockCard stockCardB = createStockCardWithStatus(ProductBuilder.create().setCode("p1").setPrimaryName("B product").setStrength("10mg").setIsActive(true).build(), 5, 100.5f);
+        createStockCardWithStatus(ProductBuilder.create().setCode("p2").setPrimaryName("C product").setIsActive(true).build(), 0, -1);
+        StockCard stockCardA = createStockCardWithStatus(ProductBuilder.create().setCode("p3").setPrimaryName("A product").setIsActive(true).build(), 5, -1);
+        createStockCardWithStatus(ProductBuilder.create().setCode("archived").setPrimaryName("0 archived").setIsActive(true).setIsArchived(true).build(), 0, -1);
+        createStockCardWithStatus(ProductBuilder.create().setCode("kit").setPrimaryName("0 kit").setIsActive(true).setIsKit(true).build(), 3, -1);
+
+        Lot emptyLot = lotMovement(stockCardB.getProduct(), "EMPTY", 0).getLot();
+        emptyLot.setExpirationDate(DateUtil.parseString("2017-01-31", DateUtil.DB_DATE_FORMAT));
+        lotRepository.createOrUpdateLotsInformation(Arrays.asList(new LotOnHand(emptyLot, stockCardB, 0L),
+                new LotOnHand(lotMovement(stockCardB.getProduct(), "LOT", 10).getLot(), stockCardB, 10L)));
+
+        List<StockCardSummary> firstPage = stockRepository.listOverviewStockCardSummaries(0, 2);
+        assertThat(firstPage.size(), is(2));
+        assertThat(firstPage.get(0).getStockCard().getId(), is(stockCardA.getId()));
+        assertNull(firstPage.get(0).getEarliestLotExpiryDate());
+
+        StockCard summaryB = firstPage.get(1).getStockCard();
+        assertThat(summaryB.getId(), is(stockCardB.getId()));
+        assertThat(summaryB.getStockOnHand(), is(5L));
+        assertThat(summaryB.getCMM(), is(100.5f));
+        assertThat(summaryB.getStockStatus(), is(StockCard.StockStatus.LOW_STOCK));
+        assertThat(summaryB.getProduct().getStrength(), is("10mg"));
+        assertThat(firstPage.get(1).getEarliestLotExpiryDate(), is(DateUtil.parseString("2027-12-31", DateUtil.DB_DATE_FORMAT)));
+
+        List<StockCardSummary> lastPage = stockRepository.listOverviewStockCardSummaries(2, 2);
+        assertThat(lastPage.size(), is(1));
+        assertThat(lastPage.get(0).getStockCard().getProduct().getPrimaryName(), is("C product"));
+    }
+
+    @Test
+    public void shouldPageStockCardsWithMovementsInTheWindowByProductName() throws Exception {
+        StockCard stockCardB = createStockCardWithStatus(ProductBuilder.create().setCode("p1").setPrimaryName("B product").setIsActive(true).build(), 10, -1);
+        StockCard stockCardC = createStockCardWithStatus(ProductBuilder.create().setCode("p2").setPrimaryName("C product").setIsActive(true).build(), 10, -1);
+        StockCard stockCardA = createStockCardWithStatus(ProductBuilder.create().setCode("p3").setPrimaryName("A product").setIsActive(true).build(), 10, -1);
+        StockCard stockCardOld = createStockCardWithStatus(ProductBuilder.create().setCode("p4").setPrimaryName("0 product").setIsActive(true).build(), 10, -1);
+        addMovementOn(stockCardB, "2016-08-26");
+        addMovementOn(stockCardB, "2016-08-28");
+        addMovementOn(stockCardC, "2016-08-25");
+        addMovementOn(stockCardA, "2016-08-31");
+        addMovementOn(stockCardOld, "2016-08-24");
+
+        Date since = DateUtil.parseString("2016-08-25", DateUtil.DB_DATE_FORMAT);
+        List<StockCard> firstPage = stockRepository.listStockCardsWithMovementsSince(since, 0, 2);
+        assertThat(firstPage.size(), is(2));
+        assertThat(firstPage.get(0).getId(), is(stockCardA.getId()));
+        assertThat(firstPage.get(1).getId(), is(stockCardB.getId()));
+        assertThat(firstPage.get(1).getStockOnHand(), is(12L));
+        assertThat(firstPage.get(1).getProduct().getCode(), is("p1"));
+
+        List<StockCard> lastPage = stockRepository.listStockCardsWithMovementsSince(since, 2, 2);
+        assertThat(lastPage.size(), is(1));
+        assertThat(lastPage.get(0).getProduct().getPrimaryName(), is("C product"));
+    }
+
+    private void addMovementOn(StockCard stockCard, String movementDate) throws Exception {
+        StockMovementItem stockMovementItem = new StockMovementItem(stockCard);
+        stockMovementItem.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+        stockMovementItem.setMovementQuantity(1);
+        stockMovementItem.setStockOnHand(stockCard.getStockOnHand() + 1);
+        stockMovementItem.setMovementDate(DateUtil.parseString(movementDate, DateUtil.DB_DATE_FORMAT));
+        stockCard.setStockOnHand(stockMovementItem.getStockOnHand());
+        stockRepository.addStockMovementAndUpdateStockCard(stockMovementItem);
+    }
+
+    private StockCard createStockCardWithStatus(Product product, long stockOnHand, float avgMonthlyConsumption) throws LMISException {
+        productRepository.createOrUpdate(product);
+
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setStockOnHand(stockOnHand);
+        stockCard.setAvgMonthlyConsumption(avgMonthlyConsumption);
+        stockRepository.createOrUpdate(stockCard);
+        return stockCard;
+    }
+
+    @Test
+    public void shouldBulkSaveUnpackedStockCardsAgainstLotsResolvedUpFront() throws Exception {
+        Product product1 = createProductWithStockCardAndLot("p1", "AAA", 10L);
+        Product product2 = ProductBuilder.create().setCode("p2").setIsActive(true).setIsArchived(true).build();
+        productRepository.createOrUpdate(product2);
+        Product kit = createProductWithStockCardAndLot("kit", "KIT LOT", 5L);
+
+        Map<Long, StockCard> existingStockCards = stockRepository.queryStockCardsGroupByProductId(Arrays.asList(product1, product2, kit));
+        assertThat(existingStockCards.size(), is(2));
+
+        StockCard stockCard1 = existingStockCards.get(product1.getId());
+        LotMovementItem existingLotMovement = lotMovement(product1, "aaa", 20L);
+        addUnpackMovement(stockCard1, existingLotMovement, lotMovement(product1, "BBB", 10L));
+        StockCard stockCard2 = newUnpackStockCard(product2, lotMovement(product2, "AAA", 15L));
+        StockCard kitStockCard = existingStockCards.get(kit.getId());
+        addKitIssueMovement(kitStockCard);
+
+        stockRepository.batchSaveUnpackStockCards(Arrays.asList(stockCard1, stockCard2, kitStockCard));
+
+        assertThat(stockRepository.queryStockCardById(stockCard1.getId()).getStockOnHand(), is(40L));
+        assertThat(stockRepository.queryStockCardById(stockCard1.getId()).getStockMovementItemsWrapper().size(), is(1));
+        assertThat(lotOnHandOf("AAA", product1), is(30L));
+        assertThat(lotOnHandOf("BBB", product1), is(10L));
+        assertThat(existingLotMovement.getStockOnHand(), is(30L));
+
+        StockCard queriedStockCard2 = stockRepository.queryStockCardByProductId(product2.getId());
+        assertThat(queriedStockCard2.getStockOnHand(), is(15L));
+        assertThat(queriedStockCard2.getStockMovementItemsWrapper().size(), is(2));
+        assertThat(productRepository.getByCode("p2").isArchived(), is(false));
+        assertThat(lotOnHandOf("AAA", product2), is(15L));
+
+        assertThat(stockRepository.queryStockCardById(kitStockCard.getId()).getStockOnHand(), is(4L));
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, Long.MAX_VALUE, 10).size(), is(4));
+    }
+
+    @Test
+    public void shouldRollBackTheWholeUnpackWhenAnyWriteFails() throws Exception {
+        Product product1 = createProductWithStockCardAndLot("p1", "AAA", 10L);
+        Product product2 = ProductBuilder.create().setCode("p2").setIsActive(true).setIsArchived(true).build();
+        productRepository.createOrUpdate(product2);
+        Product kit = createProductWithStockCardAndLot("kit", "KIT LOT", 5L);
+
+        Map<Long, StockCard> existingStockCards = stockRepository.queryStockCardsGroupByProductId(Arrays.asList(product1, product2, kit));
+        StockCard stockCard1 = existingStockCards.get(product1.getId());
+        addUnpackMovement(stockCard1, lotMovement(product1, "AAA", 20L), lotMovement(product1, "BBB", 10L));
+        LotMovementItem lotWithoutExpiryDate = lotMovement(product2, "CCC", 15L);
+        lotWithoutExpiryDate.getLot().setExpirationDate(null);
+        StockCard stockCard2 = newUnpackStockCard(product2, lotWithoutExpiryDate);
+        StockCard kitStockCard = existingStockCards.get(kit.getId());
+        addKitIssueMovement(kitStockCard);
+
+        try {
+            stockRepository.batchSaveUnpackStockCards(Arrays.asList(stockCard1, stockCard2, kitStockCard));
+            fail("the lot without expiry date should fail the unpack");
+        } catch (LMISException e) {
+            //expected
+        }
+
+        assertThat(stockRepository.queryStockCardById(stockCard1.getId()).getStockOnHand(), is(10L));
+        assertTrue(stockRepository.queryStockCardById(stockCard1.getId()).getStockMovementItemsWrapper().isEmpty());
+        assertThat(lotOnHandOf("AAA", product1), is(10L));
+        assertNull(lotRepository.getLotByLotNumberAndProductId("BBB", product1.getId()));
+        assertNull(stockRepository.queryStockCardByProductId(product2.getId()));
+        assertThat(productRepository.getByCode("p2").isArchived(), is(true));
+        assertThat(stockRepository.queryStockCardById(kitStockCard.getId()).getStockOnHand(), is(5L));
+        assertTrue(syncOutboxRepository.listDue(SyncType.StockCards, Long.MAX_VALUE, 10).isEmpty());
+    }
+
+    private Product createProductWithStockCardAndLot(String code, String lotNumber, long quantity) throws LMISException {
+        Product product = ProductBuilder.create().setCode(code).setIsActive(true).build();
+        productRepository.createOrUpdate(product);
+
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setStockOnHand(quantity);
+        stockRepository.createOrUpdate(stockCard);
+
+        lotRepository.createOrUpdateLotsInformation(Arrays.asList(new LotOnHand(lotMovement(product, lotNumber, quantity).getLot(), stockCard, quantity)));
+        return product;
+    }
+
+    private LotMovementItem lotMovement(Product product, String lotNumber, long quantity) {
+        Lot lot = new Lot();
+        lot.setProduct(product);
+        lot.setLotNumber(lotNumber);
+        lot.setExpirationDate(DateUtil.parseString("2027-12-31", DateUtil.DB_DATE_FORMAT));
+        return new LotMovementItemBuilder().setLot(lot).setMovementQuantity(quantity).build();
+    }
+
+    private StockCard newUnpackStockCard(Product product, LotMovementItem... lotMovementItems) {
+        product.setArchived(false);
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setStockMovementItemsWrapper(new ArrayList<>(Arrays.asList(stockCard.generateInitialStockMovementItem())));
+        addUnpackMovement(stockCard, lotMovementItems);
+        return stockCard;
+    }
+
+    private void addUnpackMovement(StockCard stockCard, LotMovementItem... lotMovementItems) {
+        StockMovementItem unpackMovementItem = new StockMovementItem(stockCard);
+        unpackMovementItem.setReason(MovementReasonManager.DDM);
+        unpackMovementItem.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+        long quantity = 0;
+        for (LotMovementItem lotMovementItem : lotMovementItems) {
+            lotMovementItem.setStockMovementItem(unpackMovementItem);
+            quantity += lotMovementItem.getMovementQuantity();
+        }
+        unpackMovementItem.setLotMovementItemListWrapper(Arrays.asList(lotMovementItems));
+        unpackMovementItem.setMovementQuantity(quantity);
+        unpackMovementItem.setStockOnHand(stockCard.getStockOnHand() + quantity);
+        stockCard.setStockOnHand(unpackMovementItem.getStockOnHand());
+
+        List<StockMovementItem> stockMovementItems = new ArrayList<>(stockCard.getStockMovementItemsWrapper());
+        stockMovementItems.add(unpackMovementItem);
+        stockCard.setStockMovementItemsWrapper(stockMovementItems);
+    }
+
+    private void addKitIssueMovement(StockCard kitStockCard) {
+        kitStockCard.setStockOnHand(kitStockCard.getStockOnHand() - 1);
+        StockMovementItem kitMovementItem = new StockMovementItem(kitStockCard);
+        kitMovementItem.setReason(MovementReasonManager.UNPACK_KIT);
+        kitMovementItem.setMovementType(MovementReasonManager.MovementType.ISSUE);
+        kitMovementItem.setMovementQuantity(1);
+        kitStockCard.setStockMovementItemsWrapper(Arrays.asList(kitMovementItem));
+    }
+
+    private long lotOnHandOf(String lotNumber, Product product) throws LMISException {
+        return lotRepository.getLotOnHandByLot(lotRepository.getLotByLotNumberAndProductId(lotNumber, product.getId())).getQuantityOnHand();
+    }
 }
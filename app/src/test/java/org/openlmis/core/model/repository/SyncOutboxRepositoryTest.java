@@ -0,0 +1,144 @@
+package org.openlmis.core.model.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISRepositoryUnitTest;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.manager.MovementReasonManager;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.SyncOutboxItem;
+import org.openlmis.core.model.SyncType;
+import org.openlmis.core.model.builder.StockCardBuilder;
+import org.openlmis.core.utils.DateUtil;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+import roboguice.RoboGuice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class SyncOutboxRepositoryTest extends LMISRepositoryUnitTest {
+
+    private SyncOutboxRepository syncOutboxRepository;
+    private StockRepository stockRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        syncOutboxRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncOutboxRepository.class);
+        stockRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockRepository.class);
+    }
+
+    @Test
+    public void shouldDeduplicateEnqueuedObjectAndRenewItsKey() throws LMISException {
+        syncOutboxRepository.enqueue(SyncType.Cmm, 1L);
+        String firstKey = syncOutboxRepository.listDue(SyncType.Cmm, 0, 10).get(0).getIdempotencyKey();
+
+        syncOutboxRepository.enqueue(SyncType.Cmm, 1L);
+        syncOutboxRepository.enqueue(SyncType.StockCards, 1L);
+
+        List<SyncOutboxItem> cmmItems = syncOutboxRepository.listDue(SyncType.Cmm, 0, 10);
+        assertThat(cmmItems.size(), is(1));
+        assertThat(cmmItems.get(0).getIdempotencyKey(), not(firstKey));
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, 0, 10).size(), is(1));
+    }
+
+    @Test
+    public void shouldListDueItemsInBatchesInEnqueueOrder() throws LMISException {
+        for (long id = 1; id <= 5; id++) {
+            syncOutboxRepository.enqueue(SyncType.StockCards, id);
+        }
+
+        List<SyncOutboxItem> batch = syncOutboxRepository.listDue(SyncType.StockCards, 0, 3);
+        assertThat(batch.size(), is(3));
+        assertThat(batch.get(0).getSyncObjectId(), is(1L));
+
+        syncOutboxRepository.remove(batch);
+        batch = syncOutboxRepository.listDue(SyncType.StockCards, 0, 3);
+        assertThat(batch.size(), is(2));
+        assertThat(batch.get(0).getSyncObjectId(), is(4L));
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyAndDeadLetterItemRejectedTooOften() throws LMISException {
+        syncOutboxRepository.enqueue(SyncType.StockCards, 1L);
+        SyncOutboxItem item = syncOutboxRepository.listDue(SyncType.StockCards, 0, 10).get(0);
+
+        syncOutboxRepository.markFailed(item, "error", 0);
+        assertThat(item.getNextAttemptTime(), is(SyncOutboxRepository.BASE_BACKOFF_MILLIS));
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, SyncOutboxRepository.BASE_BACKOFF_MILLIS - 1, 10).size(), is(0));
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, SyncOutboxRepository.BASE_BACKOFF_MILLIS, 10).size(), is(1));
+
+        syncOutboxRepository.markFailed(item, "error", 0);
+        assertThat(item.getNextAttemptTime(), is(2 * SyncOutboxRepository.BASE_BACKOFF_MILLIS));
+        assertFalse(syncOutboxRepository.hasDeadLetters());
+
+        for (int attempt = 3; attempt <= SyncOutboxRepository.MAX_ATTEMPTS; attempt++) {
+            syncOutboxRepository.markFailed(item, "error " + attempt, 0);
+        }
+        assertThat(item.getStatus(), is(SyncOutboxItem.Status.DEAD));
+        assertThat(item.getLastError(), is("error " + SyncOutboxRepository.MAX_ATTEMPTS));
+        assertTrue(syncOutboxRepository.hasDeadLetters());
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, Long.MAX_VALUE, 10).size(), is(0));
+
+        syncOutboxRepository.enqueue(SyncType.StockCards, 1L);
+        assertFalse(syncOutboxRepository.hasDeadLetters());
+        assertThat(syncOutboxRepository.listDue(SyncType.StockCards, 0, 10).size(), is(1));
+    }
+
+    @Test
+    public void shouldHoldBackLaterMovementsOfStockCardWhileEarlierOneBacksOff() throws Exception {
+        StockCard stockCard = StockCardBuilder.saveStockCardWithOneMovement(stockRepository);
+        StockMovementItem laterMovement = new StockMovementItem();
+        laterMovement.setStockCard(stockCard);
+        laterMovement.setMovementQuantity(10L);
+        laterMovement.setStockOnHand(110L);
+        laterMovement.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+        laterMovement.setMovementDate(DateUtil.today());
+        stockRepository.addStockMovementAndUpdateStockCard(laterMovement);
+        StockCard otherStockCard = StockCardBuilder.saveStockCardWithOneMovement(stockRepository);
+
+        List<SyncOutboxItem> due = syncOutboxRepository.listDueStockMovements(0, 10);
+        assertThat(due.size(), is(3));
+        syncOutboxRepository.markFailed(due.get(0), "rejected", 0);
+
+        due = syncOutboxRepository.listDueStockMovements(0, 10);
+        assertThat(due.size(), is(1));
+        assertThat(due.get(0).getSyncObjectId(), is(otherStockCard.getForeignStockMovementItems().iterator().next().getId()));
+
+        due = syncOutboxRepository.listDueStockMovements(SyncOutboxRepository.BASE_BACKOFF_MILLIS, 10);
+        assertThat(due.size(), is(3));
+        assertThat(due.get(1).getSyncObjectId(), is(laterMovement.getId()));
+    }
+
+    @Test
+    public void shouldNotHoldBackLaterMovementsOfStockCardBehindDeadLetteredOne() throws Exception {
+        StockCard stockCard = StockCardBuilder.saveStockCardWithOneMovement(stockRepository);
+        StockMovementItem laterMovement = new StockMovementItem();
+        laterMovement.setStockCard(stockCard);
+        laterMovement.setMovementQuantity(10L);
+        laterMovement.setStockOnHand(110L);
+        laterMovement.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+        laterMovement.setMovementDate(DateUtil.today());
+        stockRepository.addStockMovementAndUpdateStockCard(laterMovement);
+
+        SyncOutboxItem earlierMovement = syncOutboxRepository.listDueStockMovements(0, 10).get(0);
+        for (int attempt = 1; attempt <= SyncOutboxRepository.MAX_ATTEMPTS; attempt++) {
+            syncOutboxRepository.markFailed(earlierMovement, "rejected", 0);
+        }
+
+        List<SyncOutboxItem> due = syncOutboxRepository.listDueStockMovements(0, 10);
+        assertThat(due.size(), is(1));
+        assertThat(due.get(0).getSyncObjectId(), is(laterMovement.getId()));
+        assertThat(syncOutboxRepository.queryUnsyncedStockCardProductCodes(), contains(stockCard.getProduct().getCode()));
+    }
+}
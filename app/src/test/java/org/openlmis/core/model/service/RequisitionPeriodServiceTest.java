@@ -11,6 +11,7 @@ import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Period;
 import org.openlmis.core.model.Program;
+import org.openlmis.core.model.RequisitionPeriodTimeline;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.repository.InventoryRepository;
 import org.openlmis.core.model.repository.ProgramRepository;
@@ -23,6 +24,7 @@ import org.robolectric.RuntimeEnvironment;
 import roboguice.RoboGuice;
 
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -30,6 +32,8 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
 
@@ -210,6 +214,40 @@ public class RequisitionPeriodServiceTest {
         assertTrue(requisitionPeriodService.hasMissedPeriod("P1"));
     }
 
+    @Test
+    public void shouldAnswerFromTimelineUntilRequisitionsOrMovementsChange() throws Exception {
+        LMISTestApp.getInstance().setCurrentTimeMillis(DateUtil.parseString("2015-06-18 17:30:00", DateUtil.DATE_TIME_FORMAT).getTime());
+        RnRForm rnRForm = new RnRForm();
+        rnRForm.setStatus(RnRForm.STATUS.AUTHORIZED);
+        rnRForm.setPeriodBegin(DateUtil.parseString("2015-04-21", DateUtil.DB_DATE_FORMAT));
+        rnRForm.setPeriodEnd(DateUtil.parseString("2015-05-20", DateUtil.DB_DATE_FORMAT));
+        when(mockRnrFormRepository.listInclude(RnRForm.Emergency.No, "P1")).thenReturn(newArrayList(rnRForm));
+
+        requisitionPeriodService.generateNextPeriod("P1", null);
+        requisitionPeriodService.hasMissedPeriod("P1");
+        requisitionPeriodService.getIncompletePeriodOffsetMonth("P1");
+        assertTrue(requisitionPeriodService.isTimelineLoaded("P1"));
+        verify(mockRnrFormRepository, times(1)).listInclude(RnRForm.Emergency.No, "P1");
+
+        RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(RequisitionPeriodTimelines.class).invalidate();
+        assertFalse(requisitionPeriodService.isTimelineLoaded("P1"));
+
+        Period period = requisitionPeriodService.generateNextPeriod("P1", null);
+        assertThat(period.getBegin().toDate(), is(rnRForm.getPeriodEnd()));
+        verify(mockRnrFormRepository, times(2)).listInclude(RnRForm.Emergency.No, "P1");
+    }
+
+    @Test
+    public void shouldNotKeepTimelineLoadedWhileDataChanged() throws Exception {
+        RequisitionPeriodTimelines timelines = new RequisitionPeriodTimelines();
+        long version = timelines.version();
+        timelines.invalidate();
+
+        timelines.put("P1", RequisitionPeriodTimeline.withoutForms(null), version);
+
+        assertNull(timelines.get("P1"));
+    }
+
     public class MyTestModule extends AbstractModule {
         @Override
         protected void configure() {
@@ -0,0 +1,180 @@
+package org.openlmis.core.model.service;
+
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISRepositoryUnitTest;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.Lot;
+import org.openlmis.core.model.LotMovementItem;
+import org.openlmis.core.model.LotOnHand;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.builder.ProductBuilder;
+import org.openlmis.core.model.builder.StockCardBuilder;
+import org.openlmis.core.model.repository.LotRepository;
+import org.openlmis.core.model.repository.ProductRepository;
+import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.network.adapter.StockCardAdapter;
+import org.openlmis.core.network.adapter.StockCardDecodeAdapter;
+import org.openlmis.core.utils.DateUtil;
+import org.openlmis.core.utils.JsonFileReader;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+import roboguice.RoboGuice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
+
+@RunWith(LMISTestRunner.class)
+public class StockCardResolverTest extends LMISRepositoryUnitTest {
+
+    private StockCardResolver stockCardResolver;
+    private StockCardAdapter stockCardAdapter;
+    private StockCardDecodeAdapter stockCardDecodeAdapter;
+
+    private ProductRepository productRepository;
+    private StockRepository stockRepository;
+    private LotRepository lotRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        stockCardResolver = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockCardResolver.class);
+        stockCardAdapter = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockCardAdapter.class);
+        stockCardDecodeAdapter = new StockCardDecodeAdapter();
+        productRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProductRepository.class);
+        stockRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockRepository.class);
+        lotRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(LotRepository.class);
+    }
+
+    @Test
+    public void shouldResolveProductsStockCardsAndLotsOfSyncedStockCards() throws Exception {
+        Product productWithLots = ProductBuilder.create().setCode("08R01").setPrimaryName("lot product").build();
+        productRepository.createOrUpdate(productWithLots);
+        Product productWithoutLots = ProductBuilder.create().setCode("08S42").setPrimaryName("movement product").build();
+        productRepository.createOrUpdate(productWithoutLots);
+
+        StockCard existingStockCard = new StockCardBuilder().setProduct(productWithLots).setStockOnHand(300L).build();
+        stockRepository.createOrUpdate(existingStockCard);
+
+        Lot existingLot = new Lot();
+        existingLot.setProduct(productWithLots);
+        existingLot.setLotNumber("TEST3");
+        existingLot.setExpirationDate(DateUtil.parseString("2016-07-31", DateUtil.DB_DATE_FORMAT));
+        lotRepository.createOrUpdateLotsInformation(newArrayList(new LotOnHand(existingLot, existingStockCard, 300L)));
+        long existingLotOnHandId = lotRepository.getLotOnHandByLot(existingLot).getId();
+
+        StockCard stockCardWithLots = decode("StockCardResponseWithLots.json");
+        StockCard stockCardWithoutLots = decode("StockCardWithMovement.json");
+        stockCardResolver.resolve(newArrayList(stockCardWithLots, stockCardWithoutLots));
+
+        assertEquals(existingStockCard.getId(), stockCardWithLots.getId());
+        assertEquals(productWithLots.getId(), stockCardWithLots.getProduct().getId());
+        List<LotOnHand> lotsOnHand = stockCardWithLots.getLotOnHandListWrapper();
+        assertEquals(2, lotsOnHand.size());
+        assertEquals(existingLotOnHandId, lotsOnHand.get(0).getId());
+        assertEquals(existingLot.getId(), lotsOnHand.get(0).getLot().getId());
+        assertEquals(0, lotsOnHand.get(1).getId());
+        assertEquals(0, lotsOnHand.get(1).getLot().getId());
+        assertSame(stockCardWithLots.getProduct(), lotsOnHand.get(1).getLot().getProduct());
+        for (LotMovementItem lotMovementItem : stockCardWithLots.getStockMovementItemsWrapper().get(0).getLotMovementItemListWrapper()) {
+            assertSame(stockCardWithLots.getProduct(), lotMovementItem.getLot().getProduct());
+        }
+
+        assertEquals(0, stockCardWithoutLots.getId());
+        assertEquals(productWithoutLots.getId(), stockCardWithoutLots.getProduct().getId());
+        assertEquals(3, stockCardWithoutLots.getStockMovementItemsWrapper().size());
+        for (StockMovementItem stockMovementItem : stockCardWithoutLots.getStockMovementItemsWrapper()) {
+            assertSame(stockCardWithoutLots, stockMovementItem.getStockCard());
+        }
+    }
+
+    @Test
+    public void shouldResolveStockCardsIdenticallyToPerElementAdapter() throws Exception {
+        Product productWithLots = ProductBuilder.create().setCode("08R01").setPrimaryName("lot product").build();
+        productRepository.createOrUpdate(productWithLots);
+        Product productWithoutLots = ProductBuilder.create().setCode("08S42").setPrimaryName("movement product").build();
+        productRepository.createOrUpdate(productWithoutLots);
+
+        StockCard existingStockCard = new StockCardBuilder().setProduct(productWithLots).setStockOnHand(300L).build();
+        stockRepository.createOrUpdate(existingStockCard);
+
+        Lot existingLot = new Lot();
+        existingLot.setProduct(productWithLots);
+        existingLot.setLotNumber("TEST3");
+        existingLot.setExpirationDate(DateUtil.parseString("2016-07-31", DateUtil.DB_DATE_FORMAT));
+        lotRepository.createOrUpdateLotsInformation(newArrayList(new LotOnHand(existingLot, existingStockCard, 300L)));
+
+        for (String fixture : newArrayList("StockCardResponseWithLots.json", "StockCardWithMovement.json")) {
+            String json = JsonFileReader.readJson(getClass(), fixture);
+
+            StockCard expected = stockCardAdapter.deserialize(new JsonParser().parse(json), null, null);
+
+            StockCard actual = stockCardDecodeAdapter.deserialize(new JsonParser().parse(json), null, null);
+            stockCardResolver.resolve(newArrayList(actual));
+
+            assertSameStockCard(expected, actual);
+        }
+    }
+
+    @Test(expected = LMISException.class)
+    public void shouldFailWhenProductOfStockCardIsUnknown() throws Exception {
+        String json = JsonFileReader.readJson(getClass(), "StockCardWithMovement.json");
+        StockCard stockCard = stockCardDecodeAdapter.deserialize(new JsonParser().parse(json), null, null);
+
+        stockCardResolver.resolve(newArrayList(stockCard));
+    }
+
+    private void assertSameStockCard(StockCard expected, StockCard actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getProduct().getId(), actual.getProduct().getId());
+        assertEquals(expected.getProduct().getCode(), actual.getProduct().getCode());
+        assertEquals(expected.getStockOnHand(), actual.getStockOnHand());
+        assertEquals(expected.getExpireDates(), actual.getExpireDates());
+
+        List<LotOnHand> expectedLotsOnHand = expected.getLotOnHandListWrapper();
+        List<LotOnHand> actualLotsOnHand = actual.getLotOnHandListWrapper();
+        assertEquals(expectedLotsOnHand.size(), actualLotsOnHand.size());
+        for (int i = 0; i < expectedLotsOnHand.size(); i++) {
+            LotOnHand expectedLotOnHand = expectedLotsOnHand.get(i);
+            LotOnHand actualLotOnHand = actualLotsOnHand.get(i);
+            assertEquals(expectedLotOnHand.getId(), actualLotOnHand.getId());
+            assertEquals(expectedLotOnHand.getQuantityOnHand(), actualLotOnHand.getQuantityOnHand());
+            assertSame(actual, actualLotOnHand.getStockCard());
+            assertEquals(expectedLotOnHand.getLot().getId(), actualLotOnHand.getLot().getId());
+            assertEquals(expectedLotOnHand.getLot().getLotNumber(), actualLotOnHand.getLot().getLotNumber());
+            assertEquals(expectedLotOnHand.getLot().getExpirationDate(), actualLotOnHand.getLot().getExpirationDate());
+            assertEquals(expectedLotOnHand.getLot().getProduct().getId(), actualLotOnHand.getLot().getProduct().getId());
+        }
+
+        List<StockMovementItem> expectedMovements = expected.getStockMovementItemsWrapper();
+        List<StockMovementItem> actualMovements = actual.getStockMovementItemsWrapper();
+        assertEquals(expectedMovements.size(), actualMovements.size());
+        for (int i = 0; i < expectedMovements.size(); i++) {
+            assertEquals(expectedMovements.get(i).getMovementQuantity(), actualMovements.get(i).getMovementQuantity());
+            assertEquals(expectedMovements.get(i).getStockOnHand(), actualMovements.get(i).getStockOnHand());
+            assertSame(actual, actualMovements.get(i).getStockCard());
+
+            List<LotMovementItem> expectedLotMovements = expectedMovements.get(i).getLotMovementItemListWrapper();
+            List<LotMovementItem> actualLotMovements = actualMovements.get(i).getLotMovementItemListWrapper();
+            assertEquals(expectedLotMovements.size(), actualLotMovements.size());
+            for (int j = 0; j < expectedLotMovements.size(); j++) {
+                assertEquals(expectedLotMovements.get(j).getLot().getLotNumber(), actualLotMovements.get(j).getLot().getLotNumber());
+                assertEquals(expectedLotMovements.get(j).getLot().getProduct().getId(), actualLotMovements.get(j).getLot().getProduct().getId());
+                assertEquals(expectedLotMovements.get(j).getMovementQuantity(), actualLotMovements.get(j).getMovementQuantity());
+            }
+        }
+    }
+
+    private StockCard decode(String fixture) {
+        String json = JsonFileReader.readJson(getClass(), fixture);
+        return stockCardDecodeAdapter.deserialize(new JsonParser().parse(json), null, null);
+    }
+}
@@ -6,6 +6,7 @@ import android.support.annotation.NonNull;
 import com.squareup.okhttp.OkHttpClient;
 
 import java.util.Collections;
+import java.util.List;
 
 import retrofit.client.Client;
 import retrofit.client.Response;
@@ -32,10 +33,24 @@ public class LMISRestManagerMock extends LMISRestManager {
         return new LMISRestManagerMock(context);
     }
 
+    @NonNull
+    public static LMISRestManagerMock getRestManagerWithClient(Client client, Context context) {
+        mockClient = client;
+        return new LMISRestManagerMock(context);
+    }
+
     public void addNewMockedResponse(String url, int status, String reason, String json) {
         ((MockClient) mockClient).addMockedResponse(url, status, reason, json.getBytes());
     }
 
+    public void addNewMockedLatency(String url, long latencyMillis) {
+        ((MockClient) mockClient).addMockedLatency(url, latencyMillis);
+    }
+
+    public List<String> getRequestedUrls() {
+        return ((MockClient) mockClient).getRequestedUrls();
+    }
+
     public static Response createDummyJsonResponse(String url, int responseCode, String reason, String json) {
         return new Response(url, responseCode, reason, Collections.EMPTY_LIST,
                 new TypedByteArray("application/json", json.getBytes()));
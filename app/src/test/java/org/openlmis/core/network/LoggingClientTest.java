@@ -0,0 +1,208 @@
+package org.openlmis.core.network;
+
+import com.google.gson.JsonObject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.RestAdapter;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.http.GET;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedString;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class LoggingClientTest {
+
+    private static final String URL = "http://localhost:9091/rest-api/facilities/1/stockCards";
+
+    private CapturingLog log;
+    private MockClient mockClient;
+
+    @Before
+    public void setUp() throws Exception {
+        log = new CapturingLog();
+        mockClient = MockClient.MockClientBuilder().addMockedResponse("/rest-api/facilities/1/stockCards", 200, "OK", largeStockCardsJson(1000).getBytes());
+    }
+
+    @Test
+    public void shouldLogHeadersAndTimingWithoutBodyWhenBodyLoggingIsOff() throws Exception {
+        LoggingClient client = new LoggingClient(mockClient, policy(false, 64, 1), log);
+
+        Response response = client.execute(new Request("GET", URL, Collections.singletonList(new Header("Authorization", "Basic secret")), null));
+
+        assertThat(response.getStatus(), is(200));
+        assertTrue(log.contains("---> HTTP GET " + URL));
+        assertTrue(log.contains("Authorization: <redacted>"));
+        assertFalse(log.contains("secret"));
+        assertTrue(log.contains("<--- HTTP 200 " + URL));
+        assertFalse(log.contains("stockMovementItems"));
+    }
+
+    @Test
+    public void shouldTruncateLoggedBodiesAndPassFullResponseOn() throws Exception {
+        LoggingClient client = new LoggingClient(new StreamingClient(mockClient), policy(true, 64, 1), log);
+        String json = largeStockCardsJson(1000);
+
+        Response response = client.execute(new Request("POST", URL, new ArrayList<Header>(), new TypedString(json)));
+
+        assertThat(log.longestMessage(), is(64));
+        assertTrue(log.contains("... body truncated at 64 bytes of " + json.length()));
+        assertThat(readFully(response.getBody().in()), is(json));
+    }
+
+    @Test
+    public void shouldLogBodiesOfSampledCallsOnly() throws Exception {
+        LoggingClient client = new LoggingClient(mockClient, policy(true, 64, 3), log);
+
+        for (int i = 0; i < 6; i++) {
+            client.execute(new Request("GET", URL, new ArrayList<Header>(), null));
+        }
+
+        assertThat(log.count("... body truncated"), is(2));
+    }
+
+    @Test
+    public void shouldLogFarLessOfALargeSyncThanFullLogging() throws Exception {
+        String json = largeStockCardsJson(20000);
+        mockClient.addMockedResponse("/rest-api/facilities/1/stockCards", 200, "OK", json.getBytes());
+
+        CapturingLog fullLog = new CapturingLog();
+        fetch(new RestAdapter.Builder().setLogLevel(RestAdapter.LogLevel.FULL).setLog(fullLog).setClient(mockClient));
+
+        CapturingLog headersLog = new CapturingLog();
+        fetch(new RestAdapter.Builder().setClient(new LoggingClient(mockClient, policy(false, 4096, 1), headersLog)));
+
+        CapturingLog bodyLog = new CapturingLog();
+        fetch(new RestAdapter.Builder().setClient(new LoggingClient(mockClient, policy(true, 4096, 1), bodyLog)));
+
+        assertTrue(fullLog.totalChars > json.length());
+        assertTrue(headersLog.totalChars < 1024);
+        assertTrue(bodyLog.totalChars < 4096 + 1024);
+    }
+
+    private void fetch(RestAdapter.Builder builder) {
+        StockCardsApi api = builder.setEndpoint("http://localhost:9091").build().create(StockCardsApi.class);
+        for (int i = 0; i < 5; i++) {
+            api.fetchStockCards();
+        }
+    }
+
+    private HttpLogPolicy policy(final boolean bodyLoggingEnabled, int maxBodyBytes, int bodySampleRate) {
+        return new HttpLogPolicy(maxBodyBytes, bodySampleRate) {
+            @Override
+            public boolean isBodyLoggingEnabled() {
+                return bodyLoggingEnabled;
+            }
+        };
+    }
+
+    private static String largeStockCardsJson(int movements) {
+        StringBuilder json = new StringBuilder("{\"stockCards\":[{\"product\":{\"code\":\"01A01\"},\"stockMovementItems\":[");
+        for (int i = 0; i < movements; i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("{\"documentNumber\":\"DOC").append(i).append("\",\"movementQuantity\":").append(i)
+                    .append(",\"reason\":\"DISTRICT_DDM\",\"movementDate\":\"2016-01-21\"}");
+        }
+        return json.append("]}]}").toString();
+    }
+
+    private static String readFully(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    interface StockCardsApi {
+        @GET("/rest-api/facilities/1/stockCards")
+        JsonObject fetchStockCards();
+    }
+
+    //responds with an unbuffered body, like OkClient does
+    private static class StreamingClient implements Client {
+        private final Client delegate;
+
+        StreamingClient(Client delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response execute(Request request) throws IOException {
+            final Response response = delegate.execute(request);
+            return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(), new TypedInput() {
+                @Override
+                public String mimeType() {
+                    return response.getBody().mimeType();
+                }
+
+                @Override
+                public long length() {
+                    return response.getBody().length();
+                }
+
+                @Override
+                public InputStream in() throws IOException {
+                    return response.getBody().in();
+                }
+            });
+        }
+    }
+
+    private static class CapturingLog implements RestAdapter.Log {
+        private final List<String> messages = new ArrayList<>();
+        private long totalChars;
+
+        @Override
+        public void log(String message) {
+            messages.add(message);
+            totalChars += message.length();
+        }
+
+        boolean contains(String text) {
+            return count(text) > 0;
+        }
+
+        int count(String text) {
+            int count = 0;
+            for (String message : messages) {
+                if (message.contains(text)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int longestMessage() {
+            int longest = 0;
+            for (String message : messages) {
+                if (message.startsWith("{")) {
+                    longest = Math.max(longest, message.length());
+                }
+            }
+            return longest;
+        }
+    }
+}
@@ -4,7 +4,9 @@ import org.mockito.Mock;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import retrofit.client.Client;
@@ -16,11 +18,21 @@ import retrofit.mime.TypedByteArray;
 public class MockClient implements Client {
 
     Map<String, Response> urlToResponseMap = new HashMap<>();
+    Map<String, Long> urlToLatencyMap = new HashMap<>();
+    List<String> requestedUrls = Collections.synchronizedList(new ArrayList<String>());
 
     @Override
     public Response execute(Request request) throws IOException {
         String requestUrl = request.getUrl();
         requestUrl = requestUrl.split("9091")[1];
+        requestedUrls.add(requestUrl);
+        if (urlToLatencyMap.containsKey(requestUrl)) {
+            try {
+                Thread.sleep(urlToLatencyMap.get(requestUrl));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
         if (urlToResponseMap.keySet().contains(requestUrl)) {
             return urlToResponseMap.get(requestUrl);
         }
@@ -37,4 +49,13 @@ public class MockClient implements Client {
         urlToResponseMap.put(requestUrl, response);
         return this;
     }
+
+    public MockClient addMockedLatency(String requestUrl, long latencyMillis) {
+        urlToLatencyMap.put(requestUrl, latencyMillis);
+        return this;
+    }
+
+    public List<String> getRequestedUrls() {
+        return requestedUrls;
+    }
 }
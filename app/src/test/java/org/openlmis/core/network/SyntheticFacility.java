@@ -0,0 +1,210 @@
+package org.openlmis.core.network;
+
+import org.openlmis.core.network.model.StockCardDigest;
+import org.openlmis.core.utils.DateUtil;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import lombok.Getter;
+
+//generates the server side data of a facility: products, a year of stock movements and monthly requisitions
+@Getter
+public class SyntheticFacility {
+
+    public static final String PROGRAM_CODE = "VIA";
+    public static final int REQUISITION_MONTHS = 12;
+
+    private static final int DAYS_OF_MONTH = 30;
+
+    public enum Size {
+        SMALL(40, 2, 20, 1),
+        MEDIUM(300, 4, 150, 2),
+        LARGE(1264, 8, 1264, 3);
+
+        private final int products;
+        private final int movementsPerMonth;
+        private final int unsyncedMovements;
+        private final int unsyncedRequisitions;
+
+        Size(int products, int movementsPerMonth, int unsyncedMovements, int unsyncedRequisitions) {
+            this.products = products;
+            this.movementsPerMonth = movementsPerMonth;
+            this.unsyncedMovements = unsyncedMovements;
+            this.unsyncedRequisitions = unsyncedRequisitions;
+        }
+    }
+
+    private final int products;
+    private final int movementsPerMonth;
+    private final int unsyncedMovements;
+    private final int unsyncedRequisitions;
+
+    public SyntheticFacility(Size size) {
+        this(size.products, size.movementsPerMonth, size.unsyncedMovements, size.unsyncedRequisitions);
+    }
+
+    public SyntheticFacility(int products, int movementsPerMonth, int unsyncedMovements, int unsyncedRequisitions) {
+        this.products = products;
+        this.movementsPerMonth = movementsPerMonth;
+        this.unsyncedMovements = unsyncedMovements;
+        this.unsyncedRequisitions = unsyncedRequisitions;
+    }
+
+    //run a bigger facility with -Dbenchmark.facility=MEDIUM or LARGE
+    public static SyntheticFacility fromSystemProperties() {
+        return new SyntheticFacility(Size.valueOf(System.getProperty("benchmark.facility", Size.SMALL.name()).toUpperCase(Locale.US)));
+    }
+
+    public static String productCode(int index) {
+        return String.format(Locale.US, "SYN%05d", index);
+    }
+
+    public String latestProductsJson() {
+        StringBuilder json = new StringBuilder("{\"latestProducts\":[");
+        for (int i = 0; i < products; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String code = productCode(i);
+            json.append("{\"product\":{\"code\":\"").append(code)
+                    .append("\",\"primaryName\":\"Synthetic product ").append(i)
+                    .append("\",\"strength\":\"").append(i % 10 * 50 + 50).append("mg\",\"form\":{\"code\":\"Embalagem\"}")
+                    .append(",\"dispensingUnit\":\"1\",\"packSize\":1,\"active\":true,\"archived\":false,\"fullSupply\":true}")
+                    .append(",\"supportedPrograms\":[\"").append(PROGRAM_CODE).append("\"]")
+                    .append(",\"productPrograms\":[{\"programCode\":\"").append(PROGRAM_CODE)
+                    .append("\",\"productCode\":\"").append(code).append("\",\"active\":true}]}");
+        }
+        return json.append("],\"latestUpdatedTime\":").append(System.currentTimeMillis()).append('}').toString();
+    }
+
+    public String stockCardsJson(Date start, Date end) {
+        return stockCardsJson(start, end, null);
+    }
+
+    //only the cards of productCodes when given, the way the digest handshake asks for them
+    public String stockCardsJson(Date start, Date end, Set<String> productCodes) {
+        List<Date> movementDays = movementDays(start, end);
+        StringBuilder json = new StringBuilder("{\"stockCards\":[");
+        boolean first = true;
+        for (int i = 0; i < products && !movementDays.isEmpty(); i++) {
+            String code = productCode(i);
+            if (productCodes != null && !productCodes.contains(code)) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendStockCard(json, code, movementDays);
+        }
+        return json.append("]}").toString();
+    }
+
+    public List<StockCardDigest> stockCardDigests(Date start, Date end) {
+        List<Date> movementDays = movementDays(start, end);
+        List<StockCardDigest> digests = new ArrayList<>();
+        for (int i = 0; i < products && !movementDays.isEmpty(); i++) {
+            String code = productCode(i);
+            StockCardDigest.Builder digest = new StockCardDigest.Builder(code);
+            for (Date movementDay : movementDays) {
+                boolean receive = isReceive(movementDay);
+                digest.addMovement(DateUtil.formatDate(movementDay, DateUtil.DB_DATE_FORMAT), documentNumber(code, movementDay),
+                        receive ? 100 : 50, receive ? "LOANS_RECEIVED" : "PUB_PHARMACY", 1000);
+            }
+            digests.add(digest.build());
+        }
+        return digests;
+    }
+
+    //movements fall on fixed days, so contiguous [start, end) windows never serve a movement twice
+    private List<Date> movementDays(Date start, Date end) {
+        List<Date> movementDays = new ArrayList<>();
+        int spacing = Math.max(1, DAYS_OF_MONTH / movementsPerMonth);
+        Calendar day = Calendar.getInstance();
+        day.setTime(start);
+        while (day.getTime().before(end)) {
+            if (dayNumber(day.getTime()) % spacing == 0) {
+                movementDays.add(day.getTime());
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return movementDays;
+    }
+
+    private void appendStockCard(StringBuilder json, String code, List<Date> movementDays) {
+        json.append("{\"product\":{\"code\":\"").append(code).append("\",\"isKit\":false},\"stockMovementItems\":[");
+        for (int i = 0; i < movementDays.size(); i++) {
+            Date movementDay = movementDays.get(i);
+            boolean receive = isReceive(movementDay);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"documentNumber\":\"").append(documentNumber(code, movementDay))
+                    .append("\",\"movementQuantity\":").append(receive ? 100 : 50)
+                    .append(",\"reason\":\"").append(receive ? "LOANS_RECEIVED" : "PUB_PHARMACY")
+                    .append("\",\"type\":\"ADJUSTMENT\",\"extensions\":{\"soh\":\"1000\",\"signature\":\"benchmark\"}")
+                    .append(",\"createdDate\":").append(movementDay.getTime())
+                    .append(",\"occurred\":\"").append(DateUtil.formatDate(movementDay, DateUtil.DB_DATE_FORMAT)).append("\"}");
+        }
+        json.append("],\"stockOnHand\":1000,\"lotsOnHand\":[]}");
+    }
+
+    private static String documentNumber(String productCode, Date movementDay) {
+        return productCode + "-" + dayNumber(movementDay);
+    }
+
+    private static boolean isReceive(Date movementDay) {
+        return dayNumber(movementDay) % 2 == 0;
+    }
+
+    private static int dayNumber(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar.get(Calendar.YEAR) * 366 + calendar.get(Calendar.DAY_OF_YEAR);
+    }
+
+    public String requisitionsJson() {
+        Calendar periodBegin = Calendar.getInstance();
+        periodBegin.setTime(DateUtil.truncateTimeStampInDate(new Date()));
+        periodBegin.set(Calendar.DAY_OF_MONTH, 21);
+        StringBuilder json = new StringBuilder("{\"requisitions\":[");
+        for (int month = REQUISITION_MONTHS; month >= 1; month--) {
+            Calendar begin = (Calendar) periodBegin.clone();
+            begin.add(Calendar.MONTH, -month - 1);
+            Calendar end = (Calendar) begin.clone();
+            end.add(Calendar.MONTH, 1);
+            if (month < REQUISITION_MONTHS) {
+                json.append(',');
+            }
+            appendRequisition(json, begin.getTimeInMillis(), end.getTimeInMillis());
+        }
+        return json.append("],\"latestUpdatedTime\":\"").append(System.currentTimeMillis()).append("\"}").toString();
+    }
+
+    private void appendRequisition(StringBuilder json, long periodBegin, long periodEnd) {
+        json.append("{\"products\":[");
+        for (int i = 0; i < products; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"productCode\":\"").append(productCode(i))
+                    .append("\",\"beginningBalance\":1000,\"quantityReceived\":200,\"quantityDispensed\":150")
+                    .append(",\"totalLossesAndAdjustments\":0,\"stockInHand\":1050,\"quantityRequested\":100")
+                    .append(",\"quantityApproved\":100,\"calculatedOrderQuantity\":100,\"expirationDate\":\"10/10/2026\"}");
+        }
+        json.append("],\"regimens\":[],\"patientQuantifications\":[],\"emergency\":false")
+                .append(",\"clientSubmittedTime\":").append(periodEnd)
+                .append(",\"actualPeriodStartDate\":").append(periodBegin)
+                .append(",\"actualPeriodEndDate\":").append(periodEnd)
+                .append(",\"clientSubmittedNotes\":\"synthetic\",\"programCode\":\"").append(PROGRAM_CODE).append("\"}");
+    }
+
+    public String programDataFormsJson() {
+        return "{\"programDataForms\":[]}";
+    }
+}
@@ -0,0 +1,179 @@
+package org.openlmis.core.network;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+
+import org.openlmis.core.network.model.StockCardDigest;
+import org.openlmis.core.network.model.StockCardDigestRequest;
+import org.openlmis.core.network.model.StockCardDigestResponse;
+import org.openlmis.core.utils.DateUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+//serves a synthetic facility in process, the way the OpenLMIS rest api would
+public class SyntheticFacilityServer implements Client {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SyntheticFacility facility;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong stockCardBytes = new AtomicLong();
+    private final AtomicInteger servedStockCards = new AtomicInteger();
+    private final AtomicInteger receivedMovements = new AtomicInteger();
+    private final AtomicInteger receivedRequisitions = new AtomicInteger();
+
+    public SyntheticFacilityServer(SyntheticFacility facility) {
+        this.facility = facility;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        requestCount.incrementAndGet();
+        URL url = new URL(request.getUrl());
+        String path = url.getPath();
+
+        String body;
+        if ("GET".equals(request.getMethod())) {
+            body = get(path, parseQuery(url.getQuery()));
+        } else {
+            body = post(path, readBody(request));
+        }
+        if (body == null) {
+            return new Response(request.getUrl(), 404, "Not Found", Collections.<Header>emptyList(), null);
+        }
+
+        byte[] bytes = body.getBytes(UTF_8);
+        responseBytes.addAndGet(bytes.length);
+        return new Response(request.getUrl(), 200, "OK", Collections.<Header>emptyList(), new TypedByteArray("application/json", bytes));
+    }
+
+    private String get(String path, Map<String, String> query) {
+        if (path.equals("/rest-api/latest-products")) {
+            return facility.latestProductsJson();
+        }
+        if (path.matches("/rest-api/facilities/[^/]+/stockCards")) {
+            Set<String> productCodes = query.containsKey("productCodes") ? new HashSet<>(Arrays.asList(query.get("productCodes").split(","))) : null;
+            String stockCards = facility.stockCardsJson(parseDate(query.get("startTime")), parseDate(query.get("endTime")), productCodes);
+            stockCardBytes.addAndGet(stockCards.length());
+            servedStockCards.addAndGet(productCodes == null ? facility.getProducts() : productCodes.size());
+            return stockCards;
+        }
+        if (path.equals("/rest-api/requisitions")) {
+            return facility.requisitionsJson();
+        }
+        if (path.startsWith("/rest-api/programData/facilities/")) {
+            return facility.programDataFormsJson();
+        }
+        return null;
+    }
+
+    private String post(String path, String body) {
+        if (path.matches("/rest-api/facilities/[^/]+/stockCardDigests")) {
+            stockCardBytes.addAndGet(body.length());
+            return compareStockCardDigests(new Gson().fromJson(body, StockCardDigestRequest.class));
+        }
+        if (path.matches("/rest-api/facilities/[^/]+/stockCards")) {
+            receivedMovements.addAndGet(new JsonParser().parse(body).getAsJsonArray().size());
+            return "{}";
+        }
+        if (path.equals("/rest-api/requisitions") || path.equals("/rest-api/sdp-requisitions")) {
+            return "{\"requisitionId\":\"" + receivedRequisitions.incrementAndGet() + "\"}";
+        }
+        return null;
+    }
+
+    private String compareStockCardDigests(StockCardDigestRequest digestRequest) {
+        Map<String, StockCardDigest> deviceDigests = new HashMap<>();
+        for (StockCardDigest digest : digestRequest.getStockCards()) {
+            deviceDigests.put(digest.getProductCode(), digest);
+        }
+        StockCardDigestResponse digestResponse = new StockCardDigestResponse();
+        digestResponse.setChangedProductCodes(new ArrayList<String>());
+        for (StockCardDigest digest : facility.stockCardDigests(parseDate(digestRequest.getStartTime()), parseDate(digestRequest.getEndTime()))) {
+            if (!digest.matches(deviceDigests.get(digest.getProductCode()))) {
+                digestResponse.getChangedProductCodes().add(digest.getProductCode());
+            }
+        }
+        String json = new Gson().toJson(digestResponse);
+        stockCardBytes.addAndGet(json.length());
+        return json;
+    }
+
+    private static Date parseDate(String date) {
+        return DateUtil.parseString(date, DateUtil.DB_DATE_FORMAT);
+    }
+
+    private String readBody(Request request) throws IOException {
+        if (request.getBody() == null) {
+            return "";
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.getBody().writeTo(out);
+        requestBytes.addAndGet(out.size());
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            parameters.put(pair[0], pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+        }
+        return parameters;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    //stock card downloads plus digest handshakes, both ways
+    public long getStockCardBytes() {
+        return stockCardBytes.get();
+    }
+
+    public int getServedStockCards() {
+        return servedStockCards.get();
+    }
+
+    public int getReceivedMovements() {
+        return receivedMovements.get();
+    }
+
+    public int getReceivedRequisitions() {
+        return receivedRequisitions.get();
+    }
+}
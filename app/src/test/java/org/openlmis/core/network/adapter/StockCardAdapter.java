@@ -24,6 +24,10 @@ import java.util.List;
 
 import roboguice.RoboGuice;
 
+/**
+ * The per-element stock card deserializer the app used before {@link StockCardDecodeAdapter}: it looks up the product,
+ * the card and each lot while decoding. Kept with the tests as the reference the decoder and resolver must match.
+ */
 public class StockCardAdapter implements JsonDeserializer<StockCard> {
 
     private final Gson gson;
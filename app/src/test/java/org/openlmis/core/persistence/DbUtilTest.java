@@ -0,0 +1,92 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.persistence;
+
+import com.j256.ormlite.dao.Dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.SyncError;
+import org.robolectric.RuntimeEnvironment;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import roboguice.RoboGuice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+@RunWith(LMISTestRunner.class)
+public class DbUtilTest {
+
+    private DbUtil dbUtil;
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        dbUtil = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(DbUtil.class);
+    }
+
+    @Test
+    public void shouldKeepOtherThreadsOutUntilTransactionEnds() throws Exception {
+        final CountDownLatch transactionStarted = new CountDownLatch(1);
+        Thread otherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transactionStarted.await(5, TimeUnit.SECONDS);
+                    dbUtil.withDao(SyncError.class, new DbUtil.Operation<SyncError, Void>() {
+                        @Override
+                        public Void operate(Dao<SyncError, String> dao) throws SQLException {
+                            events.add("other thread");
+                            return null;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (LMISException e) {
+                    events.add(e.getMessage());
+                }
+            }
+        });
+        otherThread.start();
+
+        dbUtil.callInTransaction(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                transactionStarted.countDown();
+                Thread.sleep(200);
+                events.add("transaction");
+                return null;
+            }
+        });
+        otherThread.join(5000);
+
+        assertThat(events, contains("transaction", "other thread"));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+package org.openlmis.core.persistence;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts every query that opens a cursor on the lmis database, ORMLite reads included,
+ * so sync benchmarks can report how many queries a sync run costs.
+ */
+public class QueryCountingCursorFactory implements SQLiteDatabase.CursorFactory {
+
+    private static final AtomicLong queryCount = new AtomicLong();
+
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        queryCount.incrementAndGet();
+        return new SQLiteCursor(masterQuery, editTable, query);
+    }
+
+    public static long getQueryCount() {
+        return queryCount.get();
+    }
+}
@@ -22,6 +22,7 @@ import org.openlmis.core.view.viewmodel.InventoryViewModel;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import roboguice.RoboGuice;
 import rx.Observable;
@@ -73,22 +74,38 @@ public class AddDrugsToVIAPresenterTest {
     public void loadActiveProductsNotInVIAForm() throws Exception {
         Product product1 = new ProductBuilder().setCode("P1").setPrimaryName("A1").build();
         Product product2 = new ProductBuilder().setCode("P2").setPrimaryName("A2").build();
-        Product product3 = new ProductBuilder().setCode("P3").setPrimaryName("A3").build();
-        Product product4 = new ProductBuilder().setCode("P4").setPrimaryName("A4").build();
 
+        when(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm(null, newArrayList("P3", "P4"), ProductRepository.SEARCH_LIMIT))
+                .thenReturn(newArrayList(product1, product2));
 
-        when(productRepository.queryActiveProductsInVIAProgramButNotInDraftVIAForm()).thenReturn(newArrayList(product1, product2, product3, product4));
-
-        TestSubscriber<Void> subscriber = new TestSubscriber<>();
+        TestSubscriber<List<InventoryViewModel>> subscriber = new TestSubscriber<>();
         presenter.loadActiveProductsNotInVIAForm(newArrayList("P3", "P4")).subscribe(subscriber);
 
         subscriber.awaitTerminalEvent();
 
         subscriber.assertNoErrors();
 
-        assertThat(presenter.getInventoryViewModelList().size(), is(2));
-        assertThat(presenter.getInventoryViewModelList().get(0).getProductName(), is("A1"));
-        assertThat(presenter.getInventoryViewModelList().get(1).getProductName(), is("A2"));
+        List<InventoryViewModel> inventoryViewModels = subscriber.getOnNextEvents().get(0);
+        assertThat(inventoryViewModels.size(), is(2));
+        assertThat(inventoryViewModels.get(0).getProductName(), is("A1"));
+        assertThat(inventoryViewModels.get(1).getProductName(), is("A2"));
+    }
+
+    @Test
+    public void shouldSearchProductsNotInVIAFormExcludingTheExistingOnes() throws Exception {
+        Product product = new ProductBuilder().setCode("P1").setPrimaryName("Lamivudina").build();
+        when(productRepository.searchActiveProductsInVIAProgramButNotInDraftVIAForm("lami", newArrayList("P3"), ProductRepository.SEARCH_LIMIT))
+                .thenReturn(newArrayList(product));
+
+        presenter.loadActiveProductsNotInVIAForm(newArrayList("P3"));
+        TestSubscriber<List<InventoryViewModel>> subscriber = new TestSubscriber<>();
+        presenter.searchActiveProductsNotInVIAForm("lami").subscribe(subscriber);
+
+        subscriber.awaitTerminalEvent();
+
+        subscriber.assertNoErrors();
+        assertThat(subscriber.getOnNextEvents().get(0).size(), is(1));
+        assertThat(subscriber.getOnNextEvents().get(0).get(0).getFnm(), is("P1"));
     }
 
     @Test
@@ -6,18 +6,21 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.openlmis.core.LMISApp;
-import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.builder.StockCardBuilder;
+import org.openlmis.core.model.repository.StockMovementRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.view.viewmodel.StockHistoryViewModel;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 
@@ -32,46 +35,48 @@ public class AllDrugsMovementPresenterTest {
 
     StockRepository mockStockRepository;
 
+    StockMovementRepository mockStockMovementRepository;
+
     @Before
     public void setUp() throws Exception {
         mockStockRepository = mock(StockRepository.class);
+        mockStockMovementRepository = mock(StockMovementRepository.class);
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new MyTestModule());
         mPresenter = RoboGuice.getInjector(LMISApp.getContext()).getInstance(AllDrugsMovementPresenter.class);
     }
 
     @Test
-    public void shouldLoadAllStockCardsWithMovement() throws Exception {
+    public void shouldLoadAPageOfStockCardsWithTheirMovementsInTheWindow() throws Exception {
+        Date since = DateUtil.parseString("2016-08-25", DateUtil.DB_DATE_FORMAT);
         StockCard stockcard1 = StockCardBuilder.buildStockCard();
-        StockMovementItem stockMovementItem = new StockMovementItem(stockcard1);
-        stockMovementItem.setReason("INVENTORY");
-        stockcard1.getStockMovementItemsWrapper().add(stockMovementItem);
-
+        stockcard1.setId(1L);
         StockCard stockcard2 = StockCardBuilder.buildStockCard();
-        List<StockCard> stockCards = Arrays.asList(stockcard1, stockcard2);
-        when(mockStockRepository.list()).thenReturn(stockCards);
-        mPresenter.loadAllMovementHistory();
-
-        assertEquals(2, mPresenter.viewModelList.size());
-    }
+        stockcard2.setId(2L);
+        when(mockStockRepository.listStockCardsWithMovementsSince(since, 0, AllDrugsMovementPresenter.PAGE_SIZE))
+                .thenReturn(Arrays.asList(stockcard1, stockcard2));
 
-    @Test
-    public void shouldFilterViewModels() throws Exception {
-        LMISTestApp.getInstance().setCurrentTimeMillis(DateUtil.parseString("2016-09-01", DateUtil.DB_DATE_FORMAT).getTime());
-        StockCard stockcard1 = StockCardBuilder.buildStockCard();
         StockMovementItem stockMovementItem1 = new StockMovementItem(stockcard1);
         stockMovementItem1.setMovementDate(DateUtil.parseString("2016-08-26", DateUtil.DB_DATE_FORMAT));
         stockMovementItem1.setReason("INVENTORY");
-        stockcard1.getStockMovementItemsWrapper().add(stockMovementItem1);
+        StockMovementItem stockMovementItem2 = new StockMovementItem(stockcard1);
+        stockMovementItem2.setMovementDate(DateUtil.parseString("2016-08-30", DateUtil.DB_DATE_FORMAT));
+        stockMovementItem2.setReason("INVENTORY");
+        Map<Long, List<StockMovementItem>> movements = new HashMap<>();
+        movements.put(1L, Arrays.asList(stockMovementItem1, stockMovementItem2));
+        when(mockStockMovementRepository.queryStockMovementsSinceGroupByStockCardId(Arrays.asList(1L, 2L), since)).thenReturn(movements);
+
+        List<StockHistoryViewModel> viewModels = mPresenter.loadMovementHistoryPage(since, 0);
 
-        mPresenter.viewModelList.add(new StockHistoryViewModel(stockcard1));
-        mPresenter.filterViewModels(7);
-        assertEquals(1, mPresenter.filteredViewModelList.size());
+        assertEquals(2, viewModels.size());
+        assertEquals(2, viewModels.get(0).getFilteredMovementItemViewModelList().size());
+        assertEquals(0, viewModels.get(1).getFilteredMovementItemViewModelList().size());
     }
 
     class MyTestModule extends AbstractModule {
         @Override
         protected void configure() {
             bind(StockRepository.class).toInstance(mockStockRepository);
+            bind(StockMovementRepository.class).toInstance(mockStockMovementRepository);
         }
     }
 }
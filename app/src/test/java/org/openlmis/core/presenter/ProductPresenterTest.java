@@ -87,13 +87,13 @@ public class ProductPresenterTest {
     }
 
     @Test
-    public void loadEmergencyProducts() throws Exception {
+    public void searchEmergencyProducts() throws Exception {
         StockCard stockCard = new StockCard();
         stockCard.setProduct(new ProductBuilder().setPrimaryName("Product name").setCode("011111").build());
-        when(stockRepository.listEmergencyStockCards()).thenReturn(newArrayList(stockCard));
+        when(stockRepository.searchEmergencyStockCards("prod", ProductRepository.SEARCH_LIMIT)).thenReturn(newArrayList(stockCard));
 
         TestSubscriber<List<InventoryViewModel>> subscriber = new TestSubscriber<>();
-        presenter.loadEmergencyProducts().subscribe(subscriber);
+        presenter.searchEmergencyProducts("prod").subscribe(subscriber);
 
         subscriber.awaitTerminalEvent();
 
@@ -10,14 +10,17 @@ import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.Product.IsKit;
 import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockCardSummary;
 import org.openlmis.core.model.builder.ProductBuilder;
 import org.openlmis.core.model.builder.StockCardBuilder;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.model.service.StockService;
 import org.openlmis.core.view.viewmodel.InventoryViewModel;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import roboguice.RoboGuice;
@@ -28,8 +31,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -43,6 +48,7 @@ public class StockCardPresenterTest {
     private StockCardPresenter presenter;
     private StockRepository stockRepository;
     private ProductRepository productRepository;
+    private StockService stockService;
     private StockCardPresenter.StockCardListView stockCardListView;
     private ArrayList<StockCard> stockCardList;
 
@@ -50,6 +56,7 @@ public class StockCardPresenterTest {
     public void setUp() throws Exception {
         stockRepository = mock(StockRepository.class);
         productRepository = mock(ProductRepository.class);
+        stockService = mock(StockService.class);
         stockCardListView = mock(StockCardPresenter.StockCardListView.class);
 
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new AbstractModule() {
@@ -57,6 +64,7 @@ public class StockCardPresenterTest {
             protected void configure() {
                 bind(StockRepository.class).toInstance(stockRepository);
                 bind(ProductRepository.class).toInstance(productRepository);
+                bind(StockService.class).toInstance(stockService);
             }
         });
 
@@ -71,11 +79,40 @@ public class StockCardPresenterTest {
     }
 
     @Test
-    public void testRefreshStockCardViewModelsSOH() throws Exception {
-
-        presenter.refreshStockCardViewModelsSOH();
+    public void shouldLoadOverviewPageByPageUntilTheLastPage() throws Exception {
+        presenter.getInventoryViewModels().clear();
+        when(stockRepository.listOverviewStockCardSummaries(0, StockCardPresenter.PAGE_SIZE)).thenReturn(summaries(StockCardPresenter.PAGE_SIZE));
+        when(stockRepository.listOverviewStockCardSummaries(StockCardPresenter.PAGE_SIZE, StockCardPresenter.PAGE_SIZE)).thenReturn(summaries(3));
+
+        presenter.loadOverviewStockCards();
+        verify(stockCardListView, timeout(1000)).loaded();
+        assertThat(presenter.getInventoryViewModels().size()).isEqualTo(StockCardPresenter.PAGE_SIZE);
+
+        presenter.loadNextOverviewPage();
+        verify(stockCardListView, timeout(1000).times(2)).loaded();
+        assertThat(presenter.getInventoryViewModels().size()).isEqualTo(StockCardPresenter.PAGE_SIZE + 3);
+
+        presenter.loadNextOverviewPage();
+        presenter.loadRemainingOverviewPages();
+        verify(stockRepository, times(2)).listOverviewStockCardSummaries(anyLong(), anyLong());
+    }
 
-        verify(stockRepository, times(2)).refresh(any(StockCard.class));
+    @Test
+    public void shouldPushRecalculatedCMMToLoadedRows() throws Exception {
+        presenter.getInventoryViewModels().clear();
+        List<StockCardSummary> summaries = summaries(2);
+        when(stockRepository.listOverviewStockCardSummaries(0, StockCardPresenter.PAGE_SIZE)).thenReturn(summaries);
+        when(stockService.monthlyUpdateAvgMonthlyConsumption()).thenReturn(true);
+        HashMap<Long, Float> avgMonthlyConsumptions = new HashMap<>();
+        avgMonthlyConsumptions.put(1L, 200f);
+        when(stockRepository.queryAvgMonthlyConsumptionGroupByStockCardId()).thenReturn(avgMonthlyConsumptions);
+
+        presenter.loadOverviewStockCards();
+
+        verify(stockCardListView, timeout(1000)).refreshStockStatus();
+        assertThat(summaries.get(0).getStockCard().getCMM()).isEqualTo(-1f);
+        assertThat(summaries.get(1).getStockCard().getCMM()).isEqualTo(200f);
+        assertThat(summaries.get(1).getStockCard().getStockStatus()).isEqualTo(StockCard.StockStatus.LOW_STOCK);
     }
 
     @Test
@@ -125,6 +162,19 @@ public class StockCardPresenterTest {
         assertEquals(2, afterLoadHandler.getOnNextEvents().get(0).size());
     }
 
+    @Test
+    public void shouldLoadStockCardsInStatusFromIndexedQuery() throws Exception {
+        when(stockRepository.listOverviewStockCardsByStatus(StockCard.StockStatus.LOW_STOCK)).thenReturn(stockCardList);
+        TestSubscriber<List<StockCard>> afterLoadHandler = new TestSubscriber<>();
+        presenter.afterLoadHandler = afterLoadHandler;
+
+        presenter.loadStockCardsInStatus(StockCard.StockStatus.LOW_STOCK);
+        afterLoadHandler.awaitTerminalEvent();
+
+        assertThat(afterLoadHandler.getOnNextEvents().get(0)).isEqualTo(stockCardList);
+        verify(stockRepository, never()).list();
+    }
+
     @Test
     public void shouldCreateStockCardsForKitsIfNotExist() throws Exception {
         //given
@@ -177,6 +227,16 @@ public class StockCardPresenterTest {
         assertThat(afterLoadHandler.getOnNextEvents().get(0).get(0).getProduct().isArchived()).isEqualTo(status.isArchived());
     }
 
+    private List<StockCardSummary> summaries(int count) {
+        List<StockCardSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StockCard stockCard = stockCard(false, true, false, 5);
+            stockCard.setId(i);
+            summaries.add(new StockCardSummary(stockCard, null));
+        }
+        return summaries;
+    }
+
     private StockCard stockCard(boolean isProductArchived, boolean isProductActive, boolean isKit, int soh) {
         Product product = ProductBuilder.create()
                 .setIsActive(isProductActive)
@@ -8,6 +8,7 @@ import org.junit.runner.RunWith;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.model.SyncType;
 import org.openlmis.core.model.repository.SyncErrorsRepository;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
 import org.robolectric.RuntimeEnvironment;
 
 import roboguice.RoboGuice;
@@ -22,10 +23,12 @@ public class SyncErrorsPresenterTest{
 
     protected SyncErrorsPresenter presenter;
     protected SyncErrorsRepository errorsRepository;
+    protected SyncOutboxRepository syncOutboxRepository;
 
     @Before
     public void setup() throws Exception {
         errorsRepository = mock(SyncErrorsRepository.class);
+        syncOutboxRepository = mock(SyncOutboxRepository.class);
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new MyTestModule());
 
         presenter = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncErrorsPresenter.class);
@@ -41,10 +44,19 @@ public class SyncErrorsPresenterTest{
         assertFalse(hasStockCardsSyncError);
     }
 
+    @Test
+    public void shouldShowStockCardSyncErrorWhileOutboxHasDeadLetters() throws Exception {
+        when(errorsRepository.hasSyncErrorOf(SyncType.StockCards)).thenReturn(false);
+        when(syncOutboxRepository.hasDeadLetters()).thenReturn(true);
+
+        assertTrue(presenter.hasStockCardSyncError());
+    }
+
     public class MyTestModule extends AbstractModule {
         @Override
         protected void configure() {
             bind(SyncErrorsRepository.class).toInstance(errorsRepository);
+            bind(SyncOutboxRepository.class).toInstance(syncOutboxRepository);
         }
     }
 }
\ No newline at end of file
@@ -11,15 +11,20 @@ import org.mockito.ArgumentCaptor;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.MovementReasonManager;
+import org.openlmis.core.model.KitGraph;
 import org.openlmis.core.model.KitProduct;
+import org.openlmis.core.model.Lot;
+import org.openlmis.core.model.LotOnHand;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.builder.KitProductBuilder;
 import org.openlmis.core.model.builder.ProductBuilder;
 import org.openlmis.core.model.builder.StockCardBuilder;
+import org.openlmis.core.model.repository.LotRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.utils.DateUtil;
 import org.openlmis.core.view.viewmodel.InventoryViewModel;
 import org.openlmis.core.view.viewmodel.InventoryViewModelBuilder;
 import org.openlmis.core.view.viewmodel.LotMovementViewModel;
@@ -29,7 +34,9 @@ import org.robolectric.RuntimeEnvironment;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 import rx.Subscription;
@@ -41,8 +48,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
@@ -52,6 +61,7 @@ public class UnpackKitPresenterTest {
     private UnpackKitPresenter presenter;
     private ProductRepository productRepository;
     private StockRepository stockRepository;
+    private LotRepository lotRepository;
     private Product product;
     private InventoryViewModel viewModel;
     private String signature;
@@ -61,6 +71,7 @@ public class UnpackKitPresenterTest {
     public void setup() throws Exception {
         productRepository = mock(ProductRepository.class);
         stockRepository = mock(StockRepository.class);
+        lotRepository = mock(LotRepository.class);
 
         List<String> expireDates = new ArrayList<>();
         expireDates.add("15/2/2026");
@@ -77,6 +88,7 @@ public class UnpackKitPresenterTest {
             protected void configure() {
                 bind(ProductRepository.class).toInstance(productRepository);
                 bind(StockRepository.class).toInstance(stockRepository);
+                bind(LotRepository.class).toInstance(lotRepository);
             }
         });
 
@@ -85,13 +97,15 @@ public class UnpackKitPresenterTest {
 
     @Test
     public void shouldLoadKitProductList() throws Exception {
-        Product kit = prepareKit();
+        prepareKit();
 
         TestSubscriber<List<InventoryViewModel>> subscriber = new TestSubscriber<>();
         presenter.subscriptions.add(presenter.getKitProductsObservable("KIT_Code", 3).subscribe(subscriber));
         subscriber.awaitTerminalEvent();
 
-        verify(productRepository).queryKitProductByKitCode(kit.getCode());
+        verify(productRepository).getKitGraph();
+        verify(productRepository, never()).getByCode(anyString());
+        verify(stockRepository, never()).queryStockCardByProductId(anyLong());
 
         List<InventoryViewModel> resultProducts = presenter.getInventoryViewModels();
         assertThat(resultProducts.size(), is(2));
@@ -105,6 +119,9 @@ public class UnpackKitPresenterTest {
         assertThat(viewModel2.getKitExpectQuantity(), is(600L));
         assertTrue(viewModel1.isChecked());
         assertTrue(viewModel2.isChecked());
+        assertThat(viewModel1.getExistingLotMovementViewModelList().size(), is(2));
+        assertThat(viewModel1.getExistingLotMovementViewModelList().get(0).getLotNumber(), is("earlier lot"));
+        assertTrue(viewModel2.getExistingLotMovementViewModelList().isEmpty());
     }
 
     @NonNull
@@ -119,28 +136,40 @@ public class UnpackKitPresenterTest {
         List<KitProduct> kitProducts = Arrays.asList(kitProduct1, kitProduct2);
         kit.setKitProductList(kitProducts);
 
-        when(productRepository.queryKitProductByKitCode(kit.getCode())).thenReturn(kitProducts);
-        when(productRepository.getByCode(product1.getCode())).thenReturn(product1);
-        when(productRepository.getByCode(product2.getCode())).thenReturn(product2);
+        when(productRepository.getKitGraph()).thenReturn(new KitGraph(kitProducts));
+        when(productRepository.queryProductsByCodes(Arrays.asList("P1_Code", "P2_Code"))).thenReturn(Arrays.asList(product1, product2));
+
+        Map<Long, List<LotOnHand>> lotsOnHand = new HashMap<>();
+        lotsOnHand.put(1L, Arrays.asList(lotOnHand("later lot", "2027-05-30", 20L), lotOnHand("earlier lot", "2026-02-15", 10L)));
+        when(lotRepository.queryNonEmptyLotsOnHandGroupByProductId(Arrays.asList(1L, 2L))).thenReturn(lotsOnHand);
         return kit;
     }
 
+    private LotOnHand lotOnHand(String lotNumber, String expirationDate, long quantityOnHand) {
+        Lot lot = new Lot();
+        lot.setLotNumber(lotNumber);
+        lot.setExpirationDate(DateUtil.parseString(expirationDate, DateUtil.DB_DATE_FORMAT));
+        return new LotOnHand(lot, null, quantityOnHand);
+    }
+
     @Test
     public void shouldSaveStockCardAndStockMovementAndUpdateProductAsNotArchived() throws Exception {
         //product without stock card
         Product product1 = new ProductBuilder().setIsKit(false).setCode("p1").setPrimaryName("name1").setProductId(1L).setIsArchived(false).build();
-        when(stockRepository.queryStockCardByProductId(1L)).thenReturn(null);
 
         //product with stock card but archived
         Product product2 = new ProductBuilder().setIsKit(false).setCode("p2").setPrimaryName("name2").setProductId(2L).setIsArchived(true).build();
         StockCard stockCard = new StockCardBuilder().setProduct(product2).setStockOnHand(10L).setCreateDate(new Date()).build();
-        when(stockRepository.queryStockCardByProductId(2L)).thenReturn(stockCard);
 
         //kit product
         Product kit = new ProductBuilder().setIsKit(true).setProductId(3L).setCode("SD1112").setPrimaryName("primary name").build();
         when(productRepository.getByCode(anyString())).thenReturn(kit);
         StockCard kitStockCard = new StockCardBuilder().setStockCardId(112).setStockOnHand(1000).setCreateDate(new Date()).setProduct(kit).build();
-        when(stockRepository.queryStockCardByProductId(3L)).thenReturn(kitStockCard);
+
+        Map<Long, StockCard> existingStockCards = new HashMap<>();
+        existingStockCards.put(2L, stockCard);
+        existingStockCards.put(3L, kitStockCard);
+        when(stockRepository.queryStockCardsGroupByProductId(Arrays.asList(product1, product2, kit))).thenReturn(existingStockCards);
 
         InventoryViewModel product1VM = new InventoryViewModelBuilder(product1).setChecked(true).setKitExpectQuantity(300).build();
         product1VM.getNewLotMovementViewModelList().add(new LotMovementViewModelBuilder().setLotNumber("some lot").setExpiryDate("Feb 2022").setQuantity("200").build());
@@ -157,7 +186,8 @@ public class UnpackKitPresenterTest {
         subscriber.awaitTerminalEvent();
 
         ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
-        verify(stockRepository).batchSaveUnpackStockCardsWithMovementItemsAndUpdateProduct(argument.capture());
+        verify(stockRepository).batchSaveUnpackStockCards(argument.capture());
+        verify(stockRepository, never()).queryStockCardByProductId(anyLong());
         List<List> stockCardsArguments = argument.getAllValues();
         assertEquals(200L, ((StockCard) stockCardsArguments.get(0).get(0)).getStockOnHand(), 0L);
         assertFalse(((StockCard) stockCardsArguments.get(0).get(0)).getStockMovementItemsWrapper().isEmpty());
@@ -169,7 +199,6 @@ public class UnpackKitPresenterTest {
 
     @Test
     public void shouldCreateStockCardForProductWithLot() throws Exception {
-        when(stockRepository.queryStockCardByProductId(200L)).thenReturn(null);
         LotMovementViewModel lot = new LotMovementViewModelBuilder()
                 .setLotNumber("test")
                 .setLotSOH("100")
@@ -180,7 +209,7 @@ public class UnpackKitPresenterTest {
 
         viewModel.setNewLotMovementViewModelList(newArrayList(lot, lot));
 
-        StockCard stockCard = presenter.createStockCardForProductWithLot(viewModel, documentNumber, signature);
+        StockCard stockCard = presenter.createStockCardForProductWithLot(viewModel, null, documentNumber, signature);
         List<StockMovementItem> movementItems = stockCard.getStockMovementItemsWrapper();
 
         assertThat(stockCard.getStockOnHand(), is(200L));
@@ -207,11 +236,7 @@ public class UnpackKitPresenterTest {
                 .setProduct(kit)
                 .build();
 
-        presenter.kitCode = "SD1112";
-        when(productRepository.getByCode("SD1112")).thenReturn(kit);
-        when(stockRepository.queryStockCardByProductId(888L)).thenReturn(kitStockCard);
-
-        StockCard stockCardWithMovementItems = presenter.getStockCardForKit(1, documentNumber, signature);
+        StockCard stockCardWithMovementItems = presenter.getStockCardForKit(kitStockCard, 1, documentNumber, signature);
 
         assertThat(stockCardWithMovementItems.getStockOnHand(), is(999L));
         assertThat(stockCardWithMovementItems.getStockMovementItemsWrapper().size(), is(1));
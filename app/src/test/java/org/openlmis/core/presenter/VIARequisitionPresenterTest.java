@@ -38,6 +38,7 @@ import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.exceptions.ViewNotMatchException;
 import org.openlmis.core.manager.MovementReasonManager;
 import org.openlmis.core.model.BaseInfoItem;
+import org.openlmis.core.model.KitGraph;
 import org.openlmis.core.model.KitProduct;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.RnRForm;
@@ -63,7 +64,9 @@ import org.robolectric.shadows.ShadowToast;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import roboguice.RoboGuice;
 import rx.observers.TestSubscriber;
@@ -428,16 +431,18 @@ public class VIARequisitionPresenterTest {
         KitProduct kitProduct = new KitProduct();
         kitProduct.setQuantity(2);
         kitProduct.setKitCode("kit");
+        kitProduct.setProductCode("code");
         kitProducts.add(kitProduct);
-        when(mockProductRepository.queryKitProductByProductCode("code")).thenReturn(kitProducts);
+        when(mockProductRepository.getKitGraph()).thenReturn(new KitGraph(kitProducts));
 
         Product product = new Product();
+        product.setCode("kit");
         product.setPrimaryName("KitName");
-        when(mockProductRepository.getByCode("kit")).thenReturn(product);
+        when(mockProductRepository.queryProductsByCodes(newArrayList("kit"))).thenReturn(newArrayList(product));
 
-        StockCard stockCard = new StockCard();
-        stockCard.setStockOnHand(100L);
-        when(mockStockRepository.queryStockCardByProductId(product.getId())).thenReturn(stockCard);
+        Map<Long, Long> kitStockOnHand = new HashMap<>();
+        kitStockOnHand.put(product.getId(), 100L);
+        when(mockStockRepository.queryStockOnHandGroupByProductId(newArrayList(product.getId()))).thenReturn(kitStockOnHand);
 
         List<RequisitionFormItemViewModel> viewModelsFromRnrForm = presenter.getViewModelsFromRnrForm(rnRForm);
 
@@ -467,16 +472,18 @@ public class VIARequisitionPresenterTest {
         KitProduct kitProduct = new KitProduct();
         kitProduct.setQuantity(2);
         kitProduct.setKitCode("kit");
+        kitProduct.setProductCode("code");
         kitProducts.add(kitProduct);
-        when(mockProductRepository.queryKitProductByProductCode("code")).thenReturn(kitProducts);
+        when(mockProductRepository.getKitGraph()).thenReturn(new KitGraph(kitProducts));
 
         Product product = new Product();
+        product.setCode("kit");
         product.setPrimaryName("KitName");
-        when(mockProductRepository.getByCode("kit")).thenReturn(product);
+        when(mockProductRepository.queryProductsByCodes(newArrayList("kit"))).thenReturn(newArrayList(product));
 
-        StockCard stockCard = new StockCard();
-        stockCard.setStockOnHand(100L);
-        when(mockStockRepository.queryStockCardByProductId(product.getId())).thenReturn(stockCard);
+        Map<Long, Long> kitStockOnHand = new HashMap<>();
+        kitStockOnHand.put(product.getId(), 100L);
+        when(mockStockRepository.queryStockOnHandGroupByProductId(newArrayList(product.getId()))).thenReturn(kitStockOnHand);
 
         List<RequisitionFormItemViewModel> viewModelsFromRnrForm = presenter.getViewModelsFromRnrForm(rnRForm);
 
@@ -502,14 +509,16 @@ public class VIARequisitionPresenterTest {
         KitProduct kitProduct = new KitProduct();
         kitProduct.setQuantity(2);
         kitProduct.setKitCode("kit");
+        kitProduct.setProductCode("code");
         kitProducts.add(kitProduct);
-        when(mockProductRepository.queryKitProductByProductCode("code")).thenReturn(kitProducts);
+        when(mockProductRepository.getKitGraph()).thenReturn(new KitGraph(kitProducts));
 
         Product product = new Product();
+        product.setCode("kit");
         product.setPrimaryName("KitName");
-        when(mockProductRepository.getByCode("kit")).thenReturn(product);
+        when(mockProductRepository.queryProductsByCodes(newArrayList("kit"))).thenReturn(newArrayList(product));
 
-        when(mockStockRepository.queryStockCardByProductId(product.getId())).thenReturn(null);
+        when(mockStockRepository.queryStockOnHandGroupByProductId(newArrayList(product.getId()))).thenReturn(new HashMap<Long, Long>());
 
         List<RequisitionFormItemViewModel> viewModelsFromRnrForm = presenter.getViewModelsFromRnrForm(rnRForm);
 
@@ -529,7 +538,6 @@ public class VIARequisitionPresenterTest {
         RnRForm rnRForm1 = presenter.initEmergencyRnr(stockCards, periodEndDate);
 
         org.junit.Assert.assertThat(rnRForm1.getRnrFormItemListWrapper(), Is.<List<RnrFormItem>>is(rnrFormItems));
-        verify(mockRnrFormRepository, never()).createRnRsWithItems(newArrayList(rnRForm));
     }
 
     @Test
@@ -36,6 +36,7 @@ import org.robolectric.RuntimeEnvironment;
 import roboguice.RoboGuice;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.robolectric.Shadows.shadowOf;
 
@@ -46,6 +47,8 @@ public class NetworkChangeReceiverTest {
     Intent intent;
 
     SyncService syncService;
+    SyncScheduler syncScheduler;
+    SyncDownManager syncDownManager;
 
 
     @Before
@@ -54,10 +57,14 @@ public class NetworkChangeReceiverTest {
         intent = mock(Intent.class);
 
         syncService = mock(SyncService.class);
+        syncScheduler = mock(SyncScheduler.class);
+        syncDownManager = mock(SyncDownManager.class);
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new Module() {
             @Override
             public void configure(Binder binder) {
                 binder.bind(SyncService.class).toInstance(syncService);
+                binder.bind(SyncScheduler.class).toInstance(syncScheduler);
+                binder.bind(SyncDownManager.class).toInstance(syncDownManager);
             }
         });
     }
@@ -67,6 +74,8 @@ public class NetworkChangeReceiverTest {
         shadowOf(getConnectivityManager().getActiveNetworkInfo()).setConnectionStatus(true);
         listener.onReceive(RuntimeEnvironment.application, intent);
         verify(syncService).kickOff();
+        verify(syncScheduler).requestSync();
+        verify(syncService, never()).requestSyncImmediately();
     }
 
     @Test
@@ -74,6 +83,8 @@ public class NetworkChangeReceiverTest {
         shadowOf(getConnectivityManager().getActiveNetworkInfo()).setConnectionStatus(false);
         listener.onReceive(RuntimeEnvironment.application, intent);
         verify(syncService).shutDown();
+        verify(syncScheduler).cancel();
+        verify(syncDownManager).cancelSyncDown();
     }
 
     private ConnectivityManager getConnectivityManager() {
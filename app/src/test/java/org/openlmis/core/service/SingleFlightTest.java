@@ -0,0 +1,289 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+
+package org.openlmis.core.service;
+
+import org.junit.Test;
+import org.openlmis.core.exceptions.LMISException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 32;
+
+    private final SingleFlight<String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger runs = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void shouldRunAsyncTaskOnceForCallersHammeringFromManyThreads() throws Exception {
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(CALLERS);
+        final List<TestSubscriber<String>> subscribers = new ArrayList<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final TestSubscriber<String> subscriber = new TestSubscriber<>();
+            subscribers.add(subscriber);
+            callers.add(startThread(new Runnable() {
+                @Override
+                public void run() {
+                    await(ready);
+                    singleFlight.join(blockingTask("synced").subscribeOn(Schedulers.io())).subscribe(subscriber);
+                    joined.countDown();
+                }
+            }));
+        }
+
+        ready.countDown();
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        joinAll(callers);
+
+        for (TestSubscriber<String> subscriber : subscribers) {
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            subscriber.assertNoErrors();
+            subscriber.assertValue("synced");
+        }
+        assertThat(runs.get(), is(1));
+        assertFalse(singleFlight.isInFlight());
+    }
+
+    @Test
+    public void shouldLetCallersJoinSynchronousTaskRunningOnAnotherThread() throws Exception {
+        final CountDownLatch joined = new CountDownLatch(CALLERS - 1);
+        final List<String> results = new ArrayList<>();
+        Thread starter = startThread(new Runnable() {
+            @Override
+            public void run() {
+                String result = singleFlight.join(blockingTask("synced")).toBlocking().single();
+                synchronized (results) {
+                    results.add(result);
+                }
+            }
+        });
+        while (!singleFlight.isInFlight()) {
+            Thread.sleep(1);
+        }
+
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 1; i < CALLERS; i++) {
+            callers.add(startThread(new Runnable() {
+                @Override
+                public void run() {
+                    Observable<String> flight = singleFlight.join(blockingTask("second run"));
+                    joined.countDown();
+                    String result = flight.toBlocking().single();
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            }));
+        }
+
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        starter.join();
+        joinAll(callers);
+
+        assertThat(runs.get(), is(1));
+        assertThat(results.size(), is(CALLERS));
+        for (String result : results) {
+            assertThat(result, is("synced"));
+        }
+    }
+
+    @Test
+    public void shouldStartNewFlightAfterPreviousOneLanded() throws Exception {
+        release.countDown();
+
+        assertThat(singleFlight.join(blockingTask("first")).toBlocking().single(), is("first"));
+        assertThat(singleFlight.join(blockingTask("second")).toBlocking().single(), is("second"));
+
+        assertThat(runs.get(), is(2));
+    }
+
+    @Test
+    public void shouldShareFailureWithEveryCallerAndLand() throws Exception {
+        Observable<String> failing = Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(Subscriber<? super String> subscriber) {
+                runs.incrementAndGet();
+                await(release);
+                subscriber.onError(new LMISException("server error"));
+            }
+        }).subscribeOn(Schedulers.io());
+
+        TestSubscriber<String> first = new TestSubscriber<>();
+        TestSubscriber<String> second = new TestSubscriber<>();
+        singleFlight.join(failing).subscribe(first);
+        singleFlight.join(failing).subscribe(second);
+        release.countDown();
+
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertThat(first.getOnErrorEvents().get(0).getMessage(), is("server error"));
+        assertThat(second.getOnErrorEvents().get(0).getMessage(), is("server error"));
+        assertThat(runs.get(), is(1));
+        assertFalse(singleFlight.isInFlight());
+    }
+
+    @Test
+    public void shouldKeepFlightRunningWhenOneCallerUnsubscribes() throws Exception {
+        TestSubscriber<String> leaving = new TestSubscriber<>();
+        TestSubscriber<String> staying = new TestSubscriber<>();
+        singleFlight.join(blockingTask("synced").subscribeOn(Schedulers.io())).subscribe(leaving);
+        singleFlight.join(blockingTask("synced").subscribeOn(Schedulers.io())).subscribe(staying);
+
+        leaving.unsubscribe();
+        release.countDown();
+
+        staying.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        staying.assertValue("synced");
+        assertTrue(leaving.getOnNextEvents().isEmpty());
+        assertThat(runs.get(), is(1));
+    }
+
+    @Test
+    public void shouldFailEveryCallerAndStopTaskWhenCancelled() throws Exception {
+        final AtomicInteger stepsAfterCancel = new AtomicInteger();
+        Observable<String> task = Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(Subscriber<? super String> subscriber) {
+                runs.incrementAndGet();
+                await(release);
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+                stepsAfterCancel.incrementAndGet();
+                subscriber.onNext("synced");
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io());
+
+        TestSubscriber<String> first = new TestSubscriber<>();
+        TestSubscriber<String> second = new TestSubscriber<>();
+        singleFlight.join(task).subscribe(first);
+        singleFlight.join(task).subscribe(second);
+
+        singleFlight.cancel(new LMISException("network lost"));
+        assertFalse(singleFlight.isInFlight());
+        release.countDown();
+
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertThat(first.getOnErrorEvents().get(0).getMessage(), is("network lost"));
+        assertThat(second.getOnErrorEvents().get(0).getMessage(), is("network lost"));
+        assertTrue(first.getOnNextEvents().isEmpty());
+
+        TestSubscriber<String> afterCancel = new TestSubscriber<>();
+        singleFlight.join(blockingTask("resynced")).subscribe(afterCancel);
+        afterCancel.assertValue("resynced");
+        assertThat(stepsAfterCancel.get(), is(0));
+    }
+
+    @Test
+    public void shouldStartFlightJoinedAfterCancelOnlyOnceCancelledTaskWoundDown() throws Exception {
+        final CountDownLatch stepStarted = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        Observable<String> task = Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(Subscriber<? super String> subscriber) {
+                overlapped.compareAndSet(false, running.incrementAndGet() > 1);
+                int run = runs.incrementAndGet();
+                stepStarted.countDown();
+                await(release);
+                running.decrementAndGet();
+                if (subscriber.isUnsubscribed()) {
+                    return;
+                }
+                subscriber.onNext("synced " + run);
+                subscriber.onCompleted();
+            }
+        });
+
+        TestSubscriber<String> cancelled = new TestSubscriber<>();
+        singleFlight.join(task, Schedulers.io()).subscribe(cancelled);
+        assertTrue(stepStarted.await(5, TimeUnit.SECONDS));
+
+        singleFlight.cancel(new LMISException("network lost"));
+        TestSubscriber<String> rejoined = new TestSubscriber<>();
+        singleFlight.join(task, Schedulers.io()).subscribe(rejoined);
+
+        cancelled.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertThat(cancelled.getOnErrorEvents().get(0).getMessage(), is("network lost"));
+        assertTrue(singleFlight.isInFlight());
+        assertThat(runs.get(), is(1));
+        assertTrue(rejoined.getOnNextEvents().isEmpty());
+
+        release.countDown();
+
+        rejoined.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        rejoined.assertValue("synced 2");
+        assertFalse(overlapped.get());
+    }
+
+    private Observable<String> blockingTask(final String result) {
+        return Observable.create(new Observable.OnSubscribe<String>() {
+            @Override
+            public void call(Subscriber<? super String> subscriber) {
+                runs.incrementAndGet();
+                await(release);
+                subscriber.onNext(result);
+                subscriber.onCompleted();
+            }
+        });
+    }
+
+    private static Thread startThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        return thread;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
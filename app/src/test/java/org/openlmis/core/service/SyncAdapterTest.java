@@ -1,5 +1,7 @@
 package org.openlmis.core.service;
 
+import android.content.Intent;
+
 import com.google.inject.AbstractModule;
 
 import org.junit.Before;
@@ -8,18 +10,35 @@ import org.junit.runner.RunWith;
 import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.R;
+import org.openlmis.core.exceptions.LMISException;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.manager.UserInfoMgr;
+import org.openlmis.core.model.SyncMetric;
 import org.openlmis.core.model.User;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+import org.openlmis.core.network.LMISRestManagerMock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openlmis.core.utils.Constants;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowApplication;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import roboguice.RoboGuice;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -31,12 +50,14 @@ public class SyncAdapterTest {
     private SharedPreferenceMgr sharedPreferenceMgr;
     private SyncDownManager mockSyncDownManager;
     private UpgradeManager mockupgradeManager;
+    private SyncScheduler mockSyncScheduler;
 
     @Before
     public void setUp() throws Exception {
         mockSyncUpManager = mock(SyncUpManager.class);
         mockSyncDownManager = mock(SyncDownManager.class);
         mockupgradeManager = mock(UpgradeManager.class);
+        mockSyncScheduler = mock(SyncScheduler.class);
         sharedPreferenceMgr = new SharedPreferenceMgr(RuntimeEnvironment.application);
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new MyTestModule());
         syncAdapter = new SyncAdapter(RuntimeEnvironment.application, true);
@@ -108,6 +129,47 @@ public class SyncAdapterTest {
         verify(mockSyncDownManager).syncDownServerData();
     }
 
+    @Test
+    public void shouldBroadcastSyncFinishedWhenSyncDownThrows() throws Exception {
+        doThrow(new RuntimeException("sync down failed")).when(mockSyncDownManager).syncDownServerData();
+
+        try {
+            syncAdapter.onPerformSync(null, null, null, null, null);
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("sync down failed"));
+        }
+
+        List<Intent> broadcastIntents = ShadowApplication.getInstance().getBroadcastIntents();
+        assertThat(broadcastIntents.get(broadcastIntents.size() - 1).getAction(), is(Constants.INTENT_FILTER_FINISH_SYNC_DATA));
+    }
+
+    @Test
+    public void shouldTellSchedulerWhetherSyncSucceeded() throws Exception {
+        when(mockSyncDownManager.syncDownServerData()).thenReturn(true);
+        syncAdapter.onPerformSync(null, null, null, null, null);
+        verify(mockSyncScheduler).onSyncFinished(true);
+
+        when(mockSyncDownManager.syncDownServerData()).thenReturn(false);
+        syncAdapter.onPerformSync(null, null, null, null, null);
+        verify(mockSyncScheduler).onSyncFinished(false);
+    }
+
+    @Test
+    public void shouldTellSchedulerSyncFailedWhenAStepRecoveredFromFailure() throws Exception {
+        when(mockSyncDownManager.syncDownServerData()).thenReturn(true);
+        when(mockSyncUpManager.syncRnr()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                SyncMetricsRecorder.recordFailure(new LMISException("rejected"));
+                return false;
+            }
+        });
+
+        syncAdapter.onPerformSync(null, null, null, null, null);
+
+        verify(mockSyncScheduler).onSyncFinished(false);
+    }
+
     @Test
     public void shouldOnlyRecordStockCardLastSyncTime() throws Exception {
         when(mockSyncUpManager.syncRnr()).thenReturn(false);
@@ -138,12 +200,67 @@ public class SyncAdapterTest {
         verify(mockSyncUpManager).syncUpCmms();
     }
 
+    @Test
+    public void shouldRunIndependentSyncUpStepsConcurrently() throws Exception {
+        //each step waits for the other two to start, which only happens when they run at the same time
+        final CountDownLatch stepsStarted = new CountDownLatch(3);
+        final List<Boolean> sawOtherStepsRunning = Collections.synchronizedList(new ArrayList<Boolean>());
+        Answer<Void> waitForOtherSteps = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                stepsStarted.countDown();
+                sawOtherStepsRunning.add(stepsStarted.await(5, TimeUnit.SECONDS));
+                return null;
+            }
+        };
+        doAnswer(waitForOtherSteps).when(mockSyncUpManager).syncAppVersion();
+        doAnswer(waitForOtherSteps).when(mockSyncUpManager).syncArchivedProducts();
+        doAnswer(waitForOtherSteps).when(mockSyncUpManager).syncRapidTestForms();
+
+        syncAdapter.onPerformSync(null, null, null, null, null);
+
+        assertThat(sawOtherStepsRunning, is(Arrays.asList(true, true, true)));
+    }
+
+    @Test
+    public void shouldRecordNetworkTimeOfEachSyncUpStep() throws Exception {
+        User user = new User("user", "123");
+        user.setFacilityId("123");
+        UserInfoMgr.getInstance().setUser(user);
+
+        LMISRestManagerMock lmisRestManager = LMISRestManagerMock.getRestManagerWithMockClient("/rest-api/update-app-info", 200, "OK", "", RuntimeEnvironment.application);
+        lmisRestManager.addNewMockedResponse("/rest-api/facilities/123/archivedProducts", 200, "OK", "");
+        lmisRestManager.addNewMockedResponse("/rest-api/facilities/123/unSyncedStockCards", 200, "OK", "");
+        lmisRestManager.addNewMockedLatency("/rest-api/facilities/123/archivedProducts", 300);
+
+        SyncUpManager syncUpManager = new SyncUpManager();
+        RoboGuice.getInjector(RuntimeEnvironment.application).injectMembers(syncUpManager);
+        syncUpManager.lmisRestApi = lmisRestManager.getLmisRestApi();
+        syncAdapter.syncUpManager = syncUpManager;
+
+        syncAdapter.onPerformSync(null, null, null, null, null);
+
+        SyncMetricRepository syncMetricRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncMetricRepository.class);
+        List<SyncMetric> metrics = syncMetricRepository.queryStartedSince(0);
+        SyncMetric archivedProducts = null;
+        for (SyncMetric metric : metrics) {
+            if (metric.getStep().equals("up.archivedProducts")) {
+                archivedProducts = metric;
+            }
+        }
+        assertThat(archivedProducts.getRequestCount(), is(1));
+        assertTrue(archivedProducts.getNetworkMillis() >= 300);
+        assertTrue(archivedProducts.getTotalMillis() >= archivedProducts.getNetworkMillis());
+        assertTrue(archivedProducts.isSucceeded());
+    }
+
     public class MyTestModule extends AbstractModule {
         @Override
         protected void configure() {
             bind(SyncUpManager.class).toInstance(mockSyncUpManager);
             bind(SyncDownManager.class).toInstance(mockSyncDownManager);
             bind(UpgradeManager.class).toInstance(mockupgradeManager);
+            bind(SyncScheduler.class).toInstance(mockSyncScheduler);
         }
     }
 }
\ No newline at end of file
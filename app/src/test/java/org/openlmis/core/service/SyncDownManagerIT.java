@@ -4,6 +4,7 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.manager.UserInfoMgr;
@@ -12,6 +13,7 @@ import org.openlmis.core.model.LotOnHand;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.ProductProgram;
 import org.openlmis.core.model.ProgramDataForm;
+import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.User;
@@ -19,6 +21,8 @@ import org.openlmis.core.model.repository.LotRepository;
 import org.openlmis.core.model.repository.ProductProgramRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.ProgramDataFormRepository;
+import org.openlmis.core.model.repository.ProgramRepository;
+import org.openlmis.core.model.repository.RnrFormRepository;
 import org.openlmis.core.model.repository.StockMovementRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.model.repository.UserRepository;
@@ -29,6 +33,7 @@ import org.openlmis.core.utils.JsonFileReader;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -36,6 +41,7 @@ import roboguice.RoboGuice;
 import rx.observers.TestSubscriber;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(LMISTestRunner.class)
@@ -50,6 +56,8 @@ public class SyncDownManagerIT {
     private SharedPreferenceMgr sharedPreferenceMgr;
     private ProgramDataFormRepository programDataFormRepository;
     private StockMovementRepository stockMovementRepository;
+    private RnrFormRepository rnrFormRepository;
+    private ProgramRepository programRepository;
 
     @Before
     public void setup() {
@@ -60,6 +68,8 @@ public class SyncDownManagerIT {
         lotRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(LotRepository.class);
         programDataFormRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProgramDataFormRepository.class);
         stockMovementRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockMovementRepository.class);
+        rnrFormRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(RnrFormRepository.class);
+        programRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProgramRepository.class);
         syncDownManager = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncDownManager.class);
         sharedPreferenceMgr = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SharedPreferenceMgr.class);
 
@@ -132,7 +142,7 @@ public class SyncDownManagerIT {
 
         List<StockCard> stockCards = stockRepository.list();
         assertEquals(1, stockCards.size());
-        List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCards.get(0).getId(), 0L, 1000L);
+        List<StockMovementItem> stockMovementItems = stockMovementRepository.queryStockMovementHistory(stockCards.get(0).getId(), null, 1000L);
         assertEquals(1, stockMovementItems.size());
 
         Product product = productRepository.getByCode("01A01");
@@ -176,4 +186,102 @@ public class SyncDownManagerIT {
         assertEquals("2016-03-20", DateUtil.formatDate(programDataForms.get(0).getPeriodEnd(), DateUtil.DB_DATE_FORMAT));
         assertEquals(8, programDataForms.get(0).getProgramDataFormItemListWrapper().size());
     }
+
+    @Test
+    public void shouldOnlyFetchAndUpsertRequisitionsChangedAfterStoredValidator() throws Exception {
+        //given
+        sharedPreferenceMgr.setLastMonthStockCardDataSynced(true);
+        sharedPreferenceMgr.setRapidTestsDataSynced(true);
+        sharedPreferenceMgr.setRequisitionDataSynced(true);
+        sharedPreferenceMgr.setLastSyncRequisitionTime("1475280000000");
+
+        RnRForm localForm = new RnRForm();
+        localForm.setProgram(programRepository.queryByCode("VIA"));
+        localForm.setPeriodBegin(new Date(1455937080000L));
+        localForm.setPeriodEnd(new Date(1465937080000L));
+        localForm.setStatus(RnRForm.STATUS.AUTHORIZED);
+        localForm.setComments("old");
+        localForm.setSynced(true);
+        rnrFormRepository.createOrUpdateWithItems(localForm);
+
+        String productJson = JsonFileReader.readJson(getClass(), "SyncDownLatestProductResponse.json");
+        LMISRestManagerMock lmisRestManager = LMISRestManagerMock.getRestManagerWithMockClient("/rest-api/latest-products", 200, "OK", productJson, RuntimeEnvironment.application);
+
+        String allRequisitions = "{\"requisitions\": [" + requisitionJson(1455937080000L, 1465937080000L, "old")
+                + ", " + requisitionJson(1465937080000L, 1475937080000L, "other") + "], \"latestUpdatedTime\": \"1476835200000\"}";
+        String updatedRequisitions = "{\"requisitions\": [" + requisitionJson(1455937080000L, 1465937080000L, "updated")
+                + "], \"latestUpdatedTime\": \"1476835200000\"}";
+        lmisRestManager.addNewMockedResponse("/rest-api/requisitions?facilityCode=" + defaultUser.getFacilityCode(), 200, "OK", allRequisitions);
+        lmisRestManager.addNewMockedResponse("/rest-api/requisitions?facilityCode=" + defaultUser.getFacilityCode() + "&afterUpdatedTime=1475280000000", 200, "OK", updatedRequisitions);
+
+        syncDownManager.lmisRestApi = lmisRestManager.getLmisRestApi();
+
+        //when
+        TestSubscriber<SyncDownManager.SyncProgress> subscriber = new TestSubscriber<>();
+        syncDownManager.syncDownServerData(subscriber);
+
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+
+        //then
+        assertTrue(lmisRestManager.getRequestedUrls().contains("/rest-api/requisitions?facilityCode=" + defaultUser.getFacilityCode() + "&afterUpdatedTime=1475280000000"));
+        assertFalse(lmisRestManager.getRequestedUrls().contains("/rest-api/requisitions?facilityCode=" + defaultUser.getFacilityCode()));
+
+        List<RnRForm> rnRForms = rnrFormRepository.list();
+        assertEquals(1, rnRForms.size());
+        assertEquals("updated", rnRForms.get(0).getComments());
+        assertEquals("1476835200000", sharedPreferenceMgr.getLastSyncRequisitionTime());
+    }
+
+    @Test
+    public void shouldDownloadAllRequisitionsOnlyOnceWhenServerOmitsLatestUpdatedTime() throws Exception {
+        //given
+        sharedPreferenceMgr.setLastMonthStockCardDataSynced(true);
+        sharedPreferenceMgr.setRapidTestsDataSynced(true);
+        sharedPreferenceMgr.setRequisitionDataSynced(true);
+        sharedPreferenceMgr.setLastSyncRequisitionTime(null);
+
+        String productJson = JsonFileReader.readJson(getClass(), "SyncDownLatestProductResponse.json");
+        LMISRestManagerMock lmisRestManager = LMISRestManagerMock.getRestManagerWithMockClient("/rest-api/latest-products", 200, "OK", productJson, RuntimeEnvironment.application);
+        String fullUrl = "/rest-api/requisitions?facilityCode=" + defaultUser.getFacilityCode();
+        lmisRestManager.addNewMockedResponse(fullUrl, 200, "OK", "{\"requisitions\": [" + requisitionJson(1455937080000L, 1465937080000L, "old") + "]}");
+        syncDownManager.lmisRestApi = lmisRestManager.getLmisRestApi();
+
+        //when
+        ((LMISTestApp) RuntimeEnvironment.application).setCurrentTimeMillis(1476835200000L);
+        syncDown();
+
+        //then the time the download was requested is kept as the validator
+        String validator = sharedPreferenceMgr.getLastSyncRequisitionTime();
+        assertEquals("1476835200000", validator);
+
+        //when
+        ((LMISTestApp) RuntimeEnvironment.application).setCurrentTimeMillis(1476921600000L);
+        String deltaUrl = fullUrl + "&afterUpdatedTime=" + validator;
+        lmisRestManager.addNewMockedResponse(deltaUrl, 200, "OK", "{\"requisitions\": [" + requisitionJson(1455937080000L, 1465937080000L, "updated") + "]}");
+        syncDown();
+        syncDown();
+
+        //then
+        assertEquals(1, Collections.frequency(lmisRestManager.getRequestedUrls(), fullUrl));
+        assertEquals(2, Collections.frequency(lmisRestManager.getRequestedUrls(), deltaUrl));
+        assertEquals(validator, sharedPreferenceMgr.getLastSyncRequisitionTime());
+
+        List<RnRForm> rnRForms = rnrFormRepository.list();
+        assertEquals(1, rnRForms.size());
+        assertEquals("updated", rnRForms.get(0).getComments());
+    }
+
+    private void syncDown() {
+        TestSubscriber<SyncDownManager.SyncProgress> subscriber = new TestSubscriber<>();
+        syncDownManager.syncDownServerData(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+    }
+
+    private String requisitionJson(long periodBegin, long periodEnd, String comments) {
+        return "{\"products\": [], \"regimens\": [], \"patientQuantifications\": [], \"emergency\": false, "
+                + "\"clientSubmittedTime\": " + periodEnd + ", \"actualPeriodStartDate\": " + periodBegin
+                + ", \"actualPeriodEndDate\": " + periodEnd + ", \"clientSubmittedNotes\": \"" + comments + "\", \"programCode\": \"VIA\"}";
+    }
 }
@@ -8,6 +8,8 @@ import com.google.inject.AbstractModule;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
@@ -20,6 +22,7 @@ import org.openlmis.core.model.ProgramDataForm;
 import org.openlmis.core.model.RnRForm;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.SyncMetric;
 import org.openlmis.core.model.User;
 import org.openlmis.core.model.builder.ProductBuilder;
 import org.openlmis.core.model.builder.ProductProgramBuilder;
@@ -30,6 +33,8 @@ import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.ProgramRepository;
 import org.openlmis.core.model.repository.RnrFormRepository;
 import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+import org.openlmis.core.model.service.StockCardResolver;
 import org.openlmis.core.model.service.StockService;
 import org.openlmis.core.network.LMISRestApi;
 import org.openlmis.core.network.model.ProductAndSupportedPrograms;
@@ -44,6 +49,7 @@ import org.robolectric.RuntimeEnvironment;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import roboguice.RoboGuice;
 import rx.Scheduler;
@@ -58,6 +64,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -92,6 +99,7 @@ public class SyncDownManagerTest {
     private ProductRepository productRepository;
     private Product productWithKits;
     private StockService stockService;
+    private StockCardResolver stockCardResolver;
 
     @Before
     public void setUp() throws Exception {
@@ -102,6 +110,7 @@ public class SyncDownManagerTest {
         productRepository = mock(ProductRepository.class);
         stockRepository = mock(StockRepository.class);
         stockService = mock(StockService.class);
+        stockCardResolver = mock(StockCardResolver.class);
 
         reset(rnrFormRepository);
         reset(lmisRestApi);
@@ -154,9 +163,9 @@ public class SyncDownManagerTest {
     }
 
     @Test
-    public void shouldOnlySyncOnceWhenInvokedTwice() throws Exception {
+    public void shouldLetLaterCallerJoinRunningSyncAndReceiveItsProgress() throws Exception {
         //given
-        mockSyncDownLatestProductResponse();
+        CountDownLatch release = blockFetchingProductsUntilReleased(mockSyncDownLatestProductResponse());
         mockRequisitionResponse();
         mockStockCardsResponse();
         mockRapidTestsResponse();
@@ -166,14 +175,93 @@ public class SyncDownManagerTest {
         CountOnNextSubscriber laterEnterSubscriber = new CountOnNextSubscriber();
         syncDownManager.syncDownServerData(firstEnterSubscriber);
         syncDownManager.syncDownServerData(laterEnterSubscriber);
+        release.countDown();
 
         firstEnterSubscriber.awaitTerminalEvent();
+        laterEnterSubscriber.awaitTerminalEvent();
         firstEnterSubscriber.assertNoErrors();
-        laterEnterSubscriber.assertNoTerminalEvent();
+        laterEnterSubscriber.assertNoErrors();
 
         //then
         assertThat(firstEnterSubscriber.syncProgresses.size(), is(10));
-        assertThat(laterEnterSubscriber.syncProgresses.size(), is(0));
+        assertThat(laterEnterSubscriber.syncProgresses, is(firstEnterSubscriber.syncProgresses));
+        verify(lmisRestApi, times(1)).fetchLatestProducts(anyString());
+    }
+
+    @Test
+    public void shouldSyncDownOnceWhenManyThreadsAskAtTheSameTime() throws Exception {
+        CountDownLatch release = blockFetchingProductsUntilReleased(mockSyncDownLatestProductResponse());
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+
+        final CountDownLatch ready = new CountDownLatch(1);
+        final List<CountOnNextSubscriber> subscribers = new ArrayList<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            final CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+            subscribers.add(subscriber);
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    syncDownManager.syncDownServerData(subscriber);
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        ready.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        release.countDown();
+
+        for (CountOnNextSubscriber subscriber : subscribers) {
+            subscriber.awaitTerminalEvent();
+            subscriber.assertNoErrors();
+            assertThat(subscriber.syncProgresses.size(), is(10));
+        }
+        verify(lmisRestApi, times(1)).fetchLatestProducts(anyString());
+        verify(lmisRestApi, times(1)).fetchRequisitions(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldStartNewSyncDownAfterPreviousOneFinished() throws Exception {
+        mockSyncDownLatestProductResponse();
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+
+        CountOnNextSubscriber first = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(first);
+        first.awaitTerminalEvent();
+        CountOnNextSubscriber second = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(second);
+        second.awaitTerminalEvent();
+
+        verify(lmisRestApi, times(2)).fetchLatestProducts(anyString());
+    }
+
+    @Test
+    public void shouldFailWaitingCallersWhenSyncDownIsCancelled() throws Exception {
+        CountDownLatch release = blockFetchingProductsUntilReleased(mockSyncDownLatestProductResponse());
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+
+        CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(subscriber);
+        syncDownManager.cancelSyncDown();
+        release.countDown();
+
+        subscriber.awaitTerminalEvent();
+        assertThat(subscriber.getOnErrorEvents().size(), is(1));
+        verify(lmisRestApi, never()).fetchRequisitions(anyString(), anyString());
     }
 
     @Test
@@ -275,6 +363,81 @@ public class SyncDownManagerTest {
         verify(stockRepository, times(0)).queryStockCardByProductId(anyLong());
     }
 
+    @Test
+    public void shouldOnlyFetchRequisitionsUpdatedAfterStoredValidatorWhenAlreadySynced() throws Exception {
+        mockSyncDownLatestProductResponse();
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+        when(sharedPreferenceMgr.isRequisitionDataSynced()).thenReturn(true);
+        when(sharedPreferenceMgr.getLastSyncRequisitionTime()).thenReturn("20161001");
+
+        CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+
+        verify(lmisRestApi).fetchRequisitions("HF XXX", "20161001");
+        verify(rnrFormRepository).createOrUpdateSyncedRnRsWithItems(any(ArrayList.class));
+        verify(sharedPreferenceMgr).setLastSyncRequisitionTime("20161019");
+        assertThat(subscriber.syncProgresses.contains(SyncingRequisition), is(false));
+    }
+
+    @Test
+    public void shouldFetchAllRequisitionsSilentlyWhenAlreadySyncedWithoutValidator() throws Exception {
+        mockSyncDownLatestProductResponse();
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+        when(sharedPreferenceMgr.isRequisitionDataSynced()).thenReturn(true);
+        when(sharedPreferenceMgr.getLastSyncRequisitionTime()).thenReturn(null);
+
+        CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+
+        verify(lmisRestApi).fetchRequisitions("HF XXX", null);
+        verify(rnrFormRepository).createOrUpdateSyncedRnRsWithItems(any(ArrayList.class));
+        verify(sharedPreferenceMgr).setLastSyncRequisitionTime("20161019");
+        assertThat(subscriber.syncProgresses.contains(SyncingRequisition), is(false));
+    }
+
+    @Test
+    public void shouldFallBackToFullResyncWhenSavingUpdatedRequisitionsFailed() throws Exception {
+        mockSyncDownLatestProductResponse();
+        mockRequisitionResponse();
+        mockStockCardsResponse();
+        mockRapidTestsResponse();
+        when(sharedPreferenceMgr.isRequisitionDataSynced()).thenReturn(true);
+        when(sharedPreferenceMgr.getLastSyncRequisitionTime()).thenReturn("20161001");
+        doThrow(new LMISException("failed")).when(rnrFormRepository).createOrUpdateSyncedRnRsWithItems(anyList());
+
+        CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(subscriber);
+        subscriber.awaitTerminalEvent();
+        subscriber.assertNoErrors();
+
+        verify(sharedPreferenceMgr).setRequisitionDataSynced(false);
+        verify(sharedPreferenceMgr).setLastSyncRequisitionTime(null);
+    }
+
+    @Test
+    public void shouldRecordFailedStepWhenItThrowsUnexpectedly() throws Exception {
+        when(lmisRestApi.fetchLatestProducts(anyString())).thenThrow(new RuntimeException("unexpected"));
+
+        CountOnNextSubscriber subscriber = new CountOnNextSubscriber();
+        syncDownManager.syncDownServerData(subscriber);
+        subscriber.awaitTerminalEvent();
+
+        assertThat(subscriber.getOnErrorEvents().size(), is(1));
+        List<SyncMetric> metrics = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncMetricRepository.class).queryStartedSince(0);
+        assertThat(metrics.size(), is(1));
+        assertThat(metrics.get(0).getStep(), is("down.products"));
+        assertThat(metrics.get(0).isSucceeded(), is(false));
+        assertThat(metrics.get(0).getFailureReason(), is("unexpected"));
+    }
+
     private void testSyncProgress(SyncProgress progress) {
         try {
             if (progress == StockCardsLastMonthSynced) {
@@ -282,8 +445,9 @@ public class SyncDownManagerTest {
                 verify(sharedPreferenceMgr).setLastMonthStockCardDataSynced(true);
             }
             if (progress == RequisitionSynced) {
-                verify(rnrFormRepository, times(1)).createRnRsWithItems(any(ArrayList.class));
+                verify(rnrFormRepository, times(1)).createOrUpdateSyncedRnRsWithItems(any(ArrayList.class));
                 verify(sharedPreferenceMgr).setRequisitionDataSynced(true);
+                verify(sharedPreferenceMgr).setLastSyncRequisitionTime("20161019");
             }
             if (progress == StockCardsLastYearSynced) {
                 verify(lmisRestApi, times(13)).fetchStockMovementData(anyString(), anyString(), anyString());
@@ -294,7 +458,19 @@ public class SyncDownManagerTest {
         }
     }
 
-    private void mockSyncDownLatestProductResponse() throws LMISException {
+    private CountDownLatch blockFetchingProductsUntilReleased(final SyncDownLatestProductsResponse response) throws LMISException {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(lmisRestApi.fetchLatestProducts(any(String.class))).thenAnswer(new Answer<SyncDownLatestProductsResponse>() {
+            @Override
+            public SyncDownLatestProductsResponse answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return response;
+            }
+        });
+        return release;
+    }
+
+    private SyncDownLatestProductsResponse mockSyncDownLatestProductResponse() throws LMISException {
         List<ProductAndSupportedPrograms> productsAndSupportedPrograms = new ArrayList<>();
         ProductAndSupportedPrograms productAndSupportedPrograms = new ProductAndSupportedPrograms();
         productWithKits = new Product();
@@ -308,6 +484,7 @@ public class SyncDownManagerTest {
         response.setLatestUpdatedTime("today");
         response.setLatestProducts(productsAndSupportedPrograms);
         when(lmisRestApi.fetchLatestProducts(any(String.class))).thenReturn(response);
+        return response;
     }
 
     private void mockRequisitionResponse() throws LMISException {
@@ -318,7 +495,8 @@ public class SyncDownManagerTest {
 
         SyncDownRequisitionsResponse syncDownRequisitionsResponse = new SyncDownRequisitionsResponse();
         syncDownRequisitionsResponse.setRequisitions(data);
-        when(lmisRestApi.fetchRequisitions(anyString())).thenReturn(syncDownRequisitionsResponse);
+        syncDownRequisitionsResponse.setLatestUpdatedTime("20161019");
+        when(lmisRestApi.fetchRequisitions(anyString(), anyString())).thenReturn(syncDownRequisitionsResponse);
     }
 
     private void mockStockCardsResponse() throws ParseException, LMISException {
@@ -360,6 +538,7 @@ public class SyncDownManagerTest {
         verify(lmisRestApi).fetchStockMovementData(anyString(), anyString(), anyString());
 
         verify(sharedPreferenceMgr).setIsNeedsInventory(false);
+        verify(stockCardResolver).resolve(any(List.class));
         verify(stockRepository).batchCreateSyncDownStockCardsAndMovements(any(List.class));
     }
 
@@ -408,6 +587,7 @@ public class SyncDownManagerTest {
             bind(ProgramRepository.class).toInstance(programRepository);
             bind(ProductRepository.class).toInstance(productRepository);
             bind(StockRepository.class).toInstance(stockRepository);
+            bind(StockCardResolver.class).toInstance(stockCardResolver);
         }
     }
 }
@@ -0,0 +1,105 @@
+package org.openlmis.core.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISRepositoryUnitTest;
+import org.openlmis.core.LMISTestApp;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.SyncMetric;
+import org.openlmis.core.model.SyncStepSummary;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+import roboguice.RoboGuice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
+
+@RunWith(LMISTestRunner.class)
+public class SyncMetricsRecorderTest extends LMISRepositoryUnitTest {
+
+    private SyncMetricsRecorder syncMetricsRecorder;
+    private SyncMetricRepository syncMetricRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        syncMetricsRecorder = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncMetricsRecorder.class);
+        syncMetricRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncMetricRepository.class);
+        LMISTestApp.getInstance().setCurrentTimeMillis(SyncMetricsRecorder.RETENTION_MILLIS * 2);
+    }
+
+    @Test
+    public void shouldRecordNetworkCallsAndRecordsOfActiveStep() throws Exception {
+        String runId = syncMetricsRecorder.startRun();
+        syncMetricsRecorder.begin(runId, "down.products");
+        SyncMetricsRecorder.recordNetworkCall(120, 10, 2048);
+        SyncMetricsRecorder.addRecordCount(newArrayList("01A01", "01A02"));
+        syncMetricsRecorder.end();
+
+        List<SyncMetric> metrics = syncMetricRepository.queryStartedSince(0);
+        assertThat(metrics.size(), is(1));
+        assertThat(metrics.get(0).getRunId(), is(runId));
+        assertThat(metrics.get(0).getNetworkMillis(), is(120L));
+        assertThat(metrics.get(0).getResponseBytes(), is(2048L));
+        assertThat(metrics.get(0).getRecordCount(), is(2));
+        assertFalse(SyncMetricsRecorder.isMeasuring());
+    }
+
+    @Test
+    public void shouldSkipStepWithNothingToSyncButKeepFailedOne() throws Exception {
+        String runId = syncMetricsRecorder.startRun();
+        syncMetricsRecorder.measure(runId, "up.rnr", new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).run();
+        try {
+            syncMetricsRecorder.measure(runId, "up.cmms", new Runnable() {
+                @Override
+                public void run() {
+                    throw new RuntimeException("database is locked");
+                }
+            }).run();
+        } catch (RuntimeException ignored) {
+        }
+
+        List<SyncMetric> metrics = syncMetricRepository.queryStartedSince(0);
+        assertThat(metrics.size(), is(1));
+        assertThat(metrics.get(0).getStep(), is("up.cmms"));
+        assertFalse(metrics.get(0).isSucceeded());
+        assertThat(metrics.get(0).getFailureReason(), is("database is locked"));
+    }
+
+    @Test
+    public void shouldSummarizeRecentStepsSlowestFirstAndPruneExpiredOnes() throws Exception {
+        saveMetric("up.stockCards", 0, 500, 400, true);
+        saveMetric("up.stockCards", SyncMetricsRecorder.RETENTION_MILLIS + 1, 1000, 800, true);
+        saveMetric("up.stockCards", SyncMetricsRecorder.RETENTION_MILLIS + 2, 3000, 200, false);
+        saveMetric("down.products", SyncMetricsRecorder.RETENTION_MILLIS + 3, 100, 100, true);
+
+        syncMetricsRecorder.startRun();
+        List<SyncStepSummary> summaries = syncMetricRepository.querySummariesSince(0);
+
+        assertThat(summaries.size(), is(2));
+        SyncStepSummary stockCards = summaries.get(0);
+        assertThat(stockCards.getStep(), is("up.stockCards"));
+        assertThat(stockCards.getRuns(), is(2));
+        assertThat(stockCards.getFailures(), is(1));
+        assertThat(stockCards.getAverageTotalMillis(), is(2000L));
+        assertThat(stockCards.getAverageNetworkMillis(), is(500L));
+        assertThat(stockCards.getAveragePersistenceMillis(), is(1500L));
+    }
+
+    private void saveMetric(String step, long startedAt, long totalMillis, long networkMillis, boolean succeeded) throws Exception {
+        SyncMetric metric = new SyncMetric("run", step, startedAt);
+        metric.setTotalMillis(totalMillis);
+        metric.setNetworkMillis(networkMillis);
+        metric.setSucceeded(succeeded);
+        syncMetricRepository.save(metric);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * This program is part of the OpenLMIS logistics management information
+ * system platform software.
+ *
+ * Copyright © 2015 ThoughtWorks, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version. This program is distributed in the
+ * hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details. You should
+ * have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see http://www.gnu.org/licenses. For additional
+ * information contact info@OpenLMIS.org
+ */
+
+
+package org.openlmis.core.service;
+
+import android.content.Intent;
+import android.os.BatteryManager;
+
+import com.google.inject.AbstractModule;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestApp;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.SyncOutboxItem;
+import org.openlmis.core.model.SyncType;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import roboguice.RoboGuice;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(LMISTestRunner.class)
+public class SyncSchedulerTest {
+
+    private static final long START = 1000000000000L;
+
+    private SyncScheduler syncScheduler;
+    private SyncService syncService;
+    private SyncOutboxRepository syncOutboxRepository;
+    private FakeTimer timer;
+
+    @Before
+    public void setUp() throws Exception {
+        syncService = mock(SyncService.class);
+        syncOutboxRepository = mock(SyncOutboxRepository.class);
+        when(syncOutboxRepository.listDue(any(SyncType.class), anyLong(), anyLong())).thenReturn(Collections.<SyncOutboxItem>emptyList());
+        RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(SyncService.class).toInstance(syncService);
+                bind(SyncOutboxRepository.class).toInstance(syncOutboxRepository);
+            }
+        });
+        syncScheduler = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncScheduler.class);
+        timer = new FakeTimer();
+        syncScheduler.timer = timer;
+        syncScheduler.pendingWorkScheduler = Schedulers.immediate();
+        LMISTestApp.getInstance().setCurrentTimeMillis(START);
+    }
+
+    @Test
+    public void shouldCoalesceFlappingConnectivityIntoOneSync() {
+        for (int flap = 0; flap < 10; flap++) {
+            syncScheduler.requestSync();
+            timer.advance(5 * 1000L);
+            syncScheduler.cancel();
+            timer.advance(1000L);
+            syncScheduler.requestSync();
+        }
+        verify(syncService, never()).requestSyncImmediately();
+
+        timer.advance(SyncScheduler.DEBOUNCE_MILLIS);
+
+        verify(syncService, times(1)).requestSyncImmediately();
+        assertThat(syncScheduler.isSyncScheduled(), is(false));
+    }
+
+    @Test
+    public void shouldNotPostponeSyncBeyondMaxDebounceWhileTriggersKeepComing() {
+        for (long elapsed = 0; elapsed < SyncScheduler.MAX_DEBOUNCE_MILLIS; elapsed += 10 * 1000L) {
+            syncScheduler.requestSync();
+            timer.advance(10 * 1000L);
+        }
+
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldWaitForMinIntervalAfterLastSync() {
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(true);
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.MIN_INTERVAL_MILLIS - 1);
+        verify(syncService, never()).requestSyncImmediately();
+
+        timer.advance(1);
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldStretchMinIntervalOnLowBatteryWhenNotCharging() {
+        setBattery(10, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(true);
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.MIN_INTERVAL_MILLIS);
+        verify(syncService, never()).requestSyncImmediately();
+
+        timer.advance(SyncScheduler.LOW_BATTERY_MIN_INTERVAL_MILLIS - SyncScheduler.MIN_INTERVAL_MILLIS);
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldKeepNormalMinIntervalOnLowBatteryWhileCharging() {
+        setBattery(10, BatteryManager.BATTERY_STATUS_CHARGING);
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(true);
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.MIN_INTERVAL_MILLIS);
+
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldSyncPromptlyWhenOutboxHasDueWork() throws Exception {
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(true);
+        setBattery(10, BatteryManager.BATTERY_STATUS_DISCHARGING);
+        givenDueOutboxItem();
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.PENDING_WORK_DEBOUNCE_MILLIS);
+
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyAfterFailedSyncs() throws Exception {
+        givenDueOutboxItem();
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(false);
+        syncScheduler.onSyncStarted();
+        syncScheduler.onSyncFinished(false);
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.BASE_BACKOFF_MILLIS * 2 - 1);
+        verify(syncService, never()).requestSyncImmediately();
+
+        timer.advance(1);
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldBackOffAfterFailedSyncsWithNothingLeftInOutbox() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            syncScheduler.onSyncStarted();
+            syncScheduler.onSyncFinished(false);
+        }
+        verify(syncOutboxRepository, never()).listDue(any(SyncType.class), anyLong(), anyLong());
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.backoffMillis(6) - 1);
+        verify(syncService, never()).requestSyncImmediately();
+
+        timer.advance(1);
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldResetBackoffAfterSuccessfulSync() throws Exception {
+        givenDueOutboxItem();
+        for (int i = 0; i < 5; i++) {
+            syncScheduler.onSyncStarted();
+            syncScheduler.onSyncFinished(false);
+        }
+        syncScheduler.onSyncFinished(true);
+        timer.advance(SyncScheduler.MIN_INTERVAL_MILLIS);
+
+        syncScheduler.requestSync();
+        timer.advance(SyncScheduler.DEBOUNCE_MILLIS);
+
+        verify(syncService).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldReadOutboxOffCallingThreadAndDropRequestCancelledMeanwhile() throws Exception {
+        TestScheduler pendingWorkScheduler = new TestScheduler();
+        syncScheduler.pendingWorkScheduler = pendingWorkScheduler;
+
+        syncScheduler.requestSync();
+        verify(syncOutboxRepository, never()).listDue(any(SyncType.class), anyLong(), anyLong());
+
+        syncScheduler.cancel();
+        pendingWorkScheduler.triggerActions();
+
+        verify(syncOutboxRepository, times(SyncType.values().length)).listDue(any(SyncType.class), anyLong(), anyLong());
+        assertThat(syncScheduler.isSyncScheduled(), is(false));
+        timer.advance(SyncScheduler.MAX_DEBOUNCE_MILLIS);
+        verify(syncService, never()).requestSyncImmediately();
+    }
+
+    @Test
+    public void shouldCapBackoff() {
+        assertThat(SyncScheduler.backoffMillis(1), is(SyncScheduler.BASE_BACKOFF_MILLIS));
+        assertThat(SyncScheduler.backoffMillis(3), is(SyncScheduler.BASE_BACKOFF_MILLIS * 4));
+        assertThat(SyncScheduler.backoffMillis(30), is(SyncScheduler.MAX_BACKOFF_MILLIS));
+    }
+
+    private void givenDueOutboxItem() throws Exception {
+        when(syncOutboxRepository.listDue(eq(SyncType.StockCards), anyLong(), anyLong()))
+                .thenReturn(Collections.singletonList(new SyncOutboxItem(SyncType.StockCards, 1L, "key")));
+    }
+
+    private void setBattery(int percent, int status) {
+        Intent battery = new Intent(Intent.ACTION_BATTERY_CHANGED);
+        battery.putExtra(BatteryManager.EXTRA_LEVEL, percent);
+        battery.putExtra(BatteryManager.EXTRA_SCALE, 100);
+        battery.putExtra(BatteryManager.EXTRA_STATUS, status);
+        RuntimeEnvironment.application.sendStickyBroadcast(battery);
+    }
+
+    //runs scheduled tasks as the test clock moves past them
+    private static class FakeTimer implements SyncScheduler.Timer {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> dueTimes = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            dueTimes.add(now() + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            int index = tasks.indexOf(task);
+            while (index >= 0) {
+                tasks.remove(index);
+                dueTimes.remove(index);
+                index = tasks.indexOf(task);
+            }
+        }
+
+        void advance(long millis) {
+            long end = now() + millis;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (dueTimes.get(i) <= end && (next < 0 || dueTimes.get(i) < dueTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                LMISTestApp.getInstance().setCurrentTimeMillis(dueTimes.remove(next));
+                tasks.remove(next).run();
+            }
+            LMISTestApp.getInstance().setCurrentTimeMillis(end);
+        }
+
+        private static long now() {
+            return LMISTestApp.getInstance().getCurrentTimeMillis();
+        }
+    }
+}
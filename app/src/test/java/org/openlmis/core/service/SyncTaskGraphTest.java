@@ -0,0 +1,165 @@
+package org.openlmis.core.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.model.repository.SyncMetricRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(LMISTestRunner.class)
+public class SyncTaskGraphTest {
+
+    private final List<String> finishedSteps = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void shouldRunStepAfterItsDependencies() throws Exception {
+        Map<String, Long> timings = new SyncTaskGraph(3)
+                .addTask("report", step("report", 0), "push", "pull")
+                .addTask("push", step("push", 100))
+                .addTask("pull", step("pull", 50))
+                .run();
+
+        assertThat(finishedSteps.size(), is(3));
+        assertThat(finishedSteps.get(2), is("report"));
+        assertThat(timings.size(), is(3));
+        assertTrue(timings.get("push") >= 100);
+    }
+
+    @Test
+    public void shouldRunIndependentStepsConcurrently() throws Exception {
+        //each step waits for the others to start, which only happens when they run at the same time
+        final CountDownLatch stepsStarted = new CountDownLatch(4);
+        SyncTaskGraph graph = new SyncTaskGraph(4);
+        for (int i = 0; i < 4; i++) {
+            final String name = "step" + i;
+            graph.addTask(name, new Runnable() {
+                @Override
+                public void run() {
+                    stepsStarted.countDown();
+                    try {
+                        if (stepsStarted.await(5, TimeUnit.SECONDS)) {
+                            finishedSteps.add(name);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+
+        graph.run();
+
+        assertThat(finishedSteps.size(), is(4));
+    }
+
+    @Test
+    public void shouldNotRunMoreStepsThanMaxParallelismAtOnce() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        SyncTaskGraph graph = new SyncTaskGraph(2);
+        for (int i = 0; i < 6; i++) {
+            graph.addTask("step" + i, new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    sleep(50);
+                    running.decrementAndGet();
+                }
+            });
+        }
+
+        graph.run();
+
+        assertThat(maxRunning.get(), is(2));
+    }
+
+    @Test
+    public void shouldSkipDependentsOfFailedStepAndRunTheOthers() throws Exception {
+        SyncTaskGraph graph = new SyncTaskGraph(2)
+                .addTask("failing", new Runnable() {
+                    @Override
+                    public void run() {
+                        throw new RuntimeException("server error");
+                    }
+                })
+                .addTask("dependent", step("dependent", 0), "failing")
+                .addTask("independent", step("independent", 0));
+        Map<String, Long> timings = graph.run();
+
+        assertThat(finishedSteps.size(), is(1));
+        assertThat(finishedSteps.get(0), is("independent"));
+        assertTrue(timings.containsKey("failing"));
+        assertFalse(timings.containsKey("dependent"));
+        assertThat(graph.getFailedSteps(), contains("failing"));
+    }
+
+    @Test
+    public void shouldReportMeasuredStepThatRecoveredFromFailureAsFailed() throws Exception {
+        SyncMetricsRecorder metricsRecorder = new SyncMetricsRecorder();
+        metricsRecorder.syncMetricRepository = mock(SyncMetricRepository.class);
+        SyncTaskGraph graph = new SyncTaskGraph(2)
+                .addTask("recovering", new Runnable() {
+                    @Override
+                    public void run() {
+                        SyncMetricsRecorder.recordFailure(new LMISException("server error"));
+                    }
+                })
+                .addTask("dependent", step("dependent", 0), "recovering")
+                .measuredBy(metricsRecorder, "run", "up.");
+        graph.run();
+
+        assertThat(finishedSteps, contains("dependent"));
+        assertThat(graph.getFailedSteps(), contains("recovering"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDependencyCycle() throws Exception {
+        new SyncTaskGraph(2)
+                .addTask("a", step("a", 0), "b")
+                .addTask("b", step("b", 0), "a")
+                .run();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownDependency() throws Exception {
+        new SyncTaskGraph(2)
+                .addTask("a", step("a", 0), "missing")
+                .run();
+    }
+
+    private Runnable step(final String name, final long latencyMillis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                sleep(latencyMillis);
+                finishedSteps.add(name);
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.openlmis.core.service;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISRepositoryUnitTest;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.manager.MovementReasonManager;
+import org.openlmis.core.manager.SharedPreferenceMgr;
+import org.openlmis.core.manager.UserInfoMgr;
+import org.openlmis.core.model.Program;
+import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnrFormItem;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.StockMovementItem;
+import org.openlmis.core.model.User;
+import org.openlmis.core.model.builder.RnRFormBuilder;
+import org.openlmis.core.model.builder.RnrFormItemBuilder;
+import org.openlmis.core.model.repository.ProductRepository;
+import org.openlmis.core.model.repository.ProgramRepository;
+import org.openlmis.core.model.repository.RnrFormRepository;
+import org.openlmis.core.model.repository.StockMovementRepository;
+import org.openlmis.core.model.repository.StockRepository;
+import org.openlmis.core.model.repository.UserRepository;
+import org.openlmis.core.network.LMISRestApi;
+import org.openlmis.core.network.LMISRestManagerMock;
+import org.openlmis.core.network.SyntheticFacility;
+import org.openlmis.core.network.SyntheticFacilityServer;
+import org.openlmis.core.persistence.LmisSqliteOpenHelper;
+import org.openlmis.core.persistence.QueryCountingCursorFactory;
+import org.openlmis.core.utils.DateUtil;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import roboguice.RoboGuice;
+import rx.Scheduler;
+import rx.android.plugins.RxAndroidPlugins;
+import rx.android.plugins.RxAndroidSchedulersHook;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class SyncThroughputBenchmarkTest extends LMISRepositoryUnitTest {
+
+    //latest products, last month of movements, requisitions, rapid tests and the twelve monthly movement windows
+    private static final int SYNC_DOWN_REQUESTS = 16;
+    private static final int MOVEMENT_WINDOWS = 13;
+    //a synced record is a product, stock card, movement or requisition item; each may bring a few rows of its own along
+    private static final int ROWS_WRITTEN_PER_RECORD = 3;
+    //a movement refreshes its stock card and product, a requisition item its product and form
+    private static final int SYNC_UP_QUERIES_PER_RECORD = 5;
+
+    private SyntheticFacility facility;
+    private SyntheticFacilityServer server;
+    private SyncDownManager syncDownManager;
+    private SyncUpManager syncUpManager;
+    private StockRepository stockRepository;
+    private StockMovementRepository stockMovementRepository;
+    private RnrFormRepository rnrFormRepository;
+    private ProductRepository productRepository;
+    private ProgramRepository programRepository;
+    private SharedPreferenceMgr sharedPreferenceMgr;
+
+    @Before
+    public void setUp() throws Exception {
+        facility = SyntheticFacility.fromSystemProperties();
+        server = new SyntheticFacilityServer(facility);
+        LMISRestApi restApi = LMISRestManagerMock.getRestManagerWithClient(server, RuntimeEnvironment.application).getLmisRestApi();
+
+        syncDownManager = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncDownManager.class);
+        syncDownManager.lmisRestApi = restApi;
+        syncUpManager = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncUpManager.class);
+        syncUpManager.lmisRestApi = restApi;
+        stockRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockRepository.class);
+        stockMovementRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockMovementRepository.class);
+        rnrFormRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(RnrFormRepository.class);
+        productRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProductRepository.class);
+        programRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProgramRepository.class);
+        sharedPreferenceMgr = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SharedPreferenceMgr.class);
+
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setPassword("password");
+        user.setFacilityId("10");
+        user.setFacilityName("synthetic facility");
+        user.setFacilityCode("F1");
+        RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(UserRepository.class).createOrUpdate(user);
+        UserInfoMgr.getInstance().setUser(user);
+
+        RxAndroidPlugins.getInstance().reset();
+        RxAndroidPlugins.getInstance().registerSchedulersHook(new RxAndroidSchedulersHook() {
+            @Override
+            public Scheduler getMainThreadScheduler() {
+                return Schedulers.immediate();
+            }
+        });
+    }
+
+    @After
+    public void resetSchedulers() {
+        RxAndroidPlugins.getInstance().reset();
+    }
+
+    @Test
+    public void benchmarkSyncDownAndSyncUpOfSyntheticFacility() throws Exception {
+        PhaseReport syncDown = measure(syncDownServerData());
+
+        assertThat(syncDown.requests, is(SYNC_DOWN_REQUESTS));
+        assertThat(stockRepository.list().size(), is(facility.getProducts()));
+        assertThat(rnrFormRepository.list().size(), is(SyntheticFacility.REQUISITION_MONTHS));
+        //fewer queries than records saved, nothing is looked up per movement or requisition item
+        assertTrue(syncDown.queries < countRows("stock_items") + countRows("rnr_form_items"));
+        assertTrue(syncDown.rowsWritten <= ROWS_WRITTEN_PER_RECORD * syncedRecords());
+
+        createUnsyncedMovements();
+        createUnsyncedRequisitions();
+
+        PhaseReport syncUp = measure(new Runnable() {
+            @Override
+            public void run() {
+                syncUpManager.syncStockCards();
+                syncUpManager.syncRnr();
+            }
+        });
+
+        assertThat(server.getReceivedMovements(), is(facility.getUnsyncedMovements()));
+        assertThat(server.getReceivedRequisitions(), is(facility.getUnsyncedRequisitions()));
+        assertThat(stockMovementRepository.listUnSynced().size(), is(0));
+        int uploadedRecords = facility.getUnsyncedMovements() + facility.getUnsyncedRequisitions() * facility.getProducts();
+        assertTrue(syncUp.queries <= SYNC_UP_QUERIES_PER_RECORD * uploadedRecords);
+        assertTrue(syncUp.rowsWritten <= ROWS_WRITTEN_PER_RECORD * (facility.getUnsyncedMovements() + facility.getUnsyncedRequisitions()));
+    }
+
+    @Test
+    public void benchmarkResyncOfHeldStockCardsWithDigestHandshake() throws Exception {
+        PhaseReport firstSync = measure(syncDownServerData());
+        long firstSyncStockCardBytes = server.getStockCardBytes();
+        int firstSyncServedStockCards = server.getServedStockCards();
+
+        //a re-login on the same tablet asks for the last month and year of movements again, one card went missing meanwhile
+        deleteMovementsOf(SyntheticFacility.productCode(0));
+        sharedPreferenceMgr.setLastMonthStockCardDataSynced(false);
+        sharedPreferenceMgr.setShouldSyncLastYearStockCardData(true);
+
+        PhaseReport resync = measure(syncDownServerData());
+        long resyncStockCardBytes = server.getStockCardBytes() - firstSyncStockCardBytes;
+
+        assertThat(firstSyncServedStockCards, is(MOVEMENT_WINDOWS * facility.getProducts()));
+        assertThat(server.getServedStockCards() - firstSyncServedStockCards, is(MOVEMENT_WINDOWS));
+        assertTrue(resyncStockCardBytes < firstSyncStockCardBytes);
+        assertTrue(resync.queries < firstSync.queries);
+        assertTrue(resync.rowsWritten < firstSync.rowsWritten);
+    }
+
+    private Runnable syncDownServerData() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                TestSubscriber<SyncDownManager.SyncProgress> subscriber = new TestSubscriber<>();
+                syncDownManager.syncDownServerData(subscriber);
+                subscriber.awaitTerminalEvent();
+                subscriber.assertNoErrors();
+            }
+        };
+    }
+
+    private void deleteMovementsOf(String productCode) {
+        LmisSqliteOpenHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase().execSQL("DELETE FROM stock_items WHERE stockCard_id IN "
+                + "(SELECT s.id FROM stock_cards s JOIN products p ON s.product_id = p.id WHERE p.code = ?)", new Object[]{productCode});
+    }
+
+    private void createUnsyncedMovements() {
+        List<StockCard> stockCards = stockRepository.list();
+        for (int i = 0; i < facility.getUnsyncedMovements(); i++) {
+            StockCard stockCard = stockCards.get(i % stockCards.size());
+            StockMovementItem item = new StockMovementItem();
+            item.setStockCard(stockCard);
+            item.setDocumentNumber("benchmark-" + i);
+            item.setMovementType(MovementReasonManager.MovementType.ISSUE);
+            item.setReason("PUB_PHARMACY");
+            item.setMovementQuantity(10);
+            item.setStockOnHand(stockCard.getStockOnHand() - 10);
+            item.setMovementDate(new Date());
+            item.setSignature("benchmark");
+            stockCard.setStockOnHand(item.getStockOnHand());
+            stockRepository.addStockMovementAndUpdateStockCard(item);
+        }
+    }
+
+    //authorized forms of the coming months, so they never collide with the synced down periods
+    private void createUnsyncedRequisitions() throws Exception {
+        Program program = programRepository.queryByCode(SyntheticFacility.PROGRAM_CODE);
+        Calendar periodBegin = Calendar.getInstance();
+        periodBegin.setTime(DateUtil.truncateTimeStampInDate(new Date()));
+        periodBegin.set(Calendar.DAY_OF_MONTH, 21);
+        for (int i = 0; i < facility.getUnsyncedRequisitions(); i++) {
+            RnRForm form = new RnRFormBuilder().setProgram(program).setStatus(RnRForm.STATUS.AUTHORIZED).setSynced(false).build();
+            form.setPeriodBegin(periodBegin.getTime());
+            periodBegin.add(Calendar.MONTH, 1);
+            form.setPeriodEnd(periodBegin.getTime());
+
+            List<RnrFormItem> items = new ArrayList<>();
+            for (int product = 0; product < facility.getProducts(); product++) {
+                items.add(new RnrFormItemBuilder().setRnrForm(form)
+                        .setProduct(productRepository.getByCode(SyntheticFacility.productCode(product)))
+                        .setInitialAmount(1000).setReceived(200).setIssued(150).setInventory(1050)
+                        .setRequestAmount(100).setApprovedAmount(100).build());
+            }
+            form.setRnrFormItemListWrapper(items);
+            rnrFormRepository.createOrUpdateWithItems(form);
+        }
+    }
+
+    private PhaseReport measure(Runnable sync) {
+        int requests = server.getRequestCount();
+        long rowsWritten = totalChanges();
+        long queries = QueryCountingCursorFactory.getQueryCount();
+
+        sync.run();
+
+        PhaseReport report = new PhaseReport();
+        report.queries = QueryCountingCursorFactory.getQueryCount() - queries;
+        report.rowsWritten = totalChanges() - rowsWritten;
+        report.requests = server.getRequestCount() - requests;
+        return report;
+    }
+
+    private static long syncedRecords() {
+        return countRows("products") + countRows("stock_cards") + countRows("stock_items") + countRows("rnr_form_items");
+    }
+
+    private static long countRows(String table) {
+        return queryLong("SELECT COUNT(*) FROM " + table);
+    }
+
+    private static long totalChanges() {
+        return queryLong("SELECT total_changes()");
+    }
+
+    private static long queryLong(String sql) {
+        Cursor cursor = LmisSqliteOpenHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase().rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class PhaseReport {
+        private long queries;
+        private long rowsWritten;
+        private int requests;
+    }
+}
@@ -26,8 +26,10 @@ import com.google.inject.AbstractModule;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.exceptions.LMISException;
+import org.openlmis.core.exceptions.NetWorkException;
 import org.openlmis.core.manager.MovementReasonManager;
 import org.openlmis.core.manager.SharedPreferenceMgr;
 import org.openlmis.core.manager.UserInfoMgr;
@@ -35,9 +37,11 @@ import org.openlmis.core.model.Cmm;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.ProgramDataForm;
 import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnRFormSnapshot;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.SyncError;
+import org.openlmis.core.model.SyncOutboxItem;
 import org.openlmis.core.model.SyncType;
 import org.openlmis.core.model.User;
 import org.openlmis.core.model.builder.ProgramDataFormBuilder;
@@ -45,9 +49,11 @@ import org.openlmis.core.model.builder.StockCardBuilder;
 import org.openlmis.core.model.repository.CmmRepository;
 import org.openlmis.core.model.repository.ProductRepository;
 import org.openlmis.core.model.repository.ProgramDataFormRepository;
+import org.openlmis.core.model.repository.RnRFormSnapshotRepository;
 import org.openlmis.core.model.repository.RnrFormRepository;
 import org.openlmis.core.model.repository.StockRepository;
 import org.openlmis.core.model.repository.SyncErrorsRepository;
+import org.openlmis.core.model.repository.SyncOutboxRepository;
 import org.openlmis.core.network.LMISRestApi;
 import org.openlmis.core.network.model.AppInfoRequest;
 import org.openlmis.core.network.model.CmmEntry;
@@ -55,6 +61,9 @@ import org.openlmis.core.network.model.StockMovementEntry;
 import org.openlmis.core.network.model.SyncUpRequisitionResponse;
 import org.openlmis.core.utils.Constants;
 import org.openlmis.core.utils.DateUtil;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RuntimeEnvironment;
 
 import java.sql.SQLException;
@@ -63,6 +72,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
 import roboguice.RoboGuice;
 import rx.Scheduler;
 import rx.android.plugins.RxAndroidPlugins;
@@ -105,6 +116,10 @@ public class SyncUpManagerTest {
 
     private ProgramDataFormRepository mockedProgramDataFormRepository;
 
+    private SyncOutboxRepository syncOutboxRepository;
+
+    private RnRFormSnapshotRepository mockedRnRFormSnapshotRepository;
+
     @Before
     public void setup() throws LMISException {
         mockedRnrFormRepository = mock(RnrFormRepository.class);
@@ -112,6 +127,8 @@ public class SyncUpManagerTest {
         mockedProductRepository = mock(ProductRepository.class);
         mockedCmmRepository = mock(CmmRepository.class);
         mockedProgramDataFormRepository = mock(ProgramDataFormRepository.class);
+        mockedRnRFormSnapshotRepository = mock(RnRFormSnapshotRepository.class);
+        when(mockedRnRFormSnapshotRepository.queryByFormId(anyLong())).thenReturn(new RnRFormSnapshot(1L, false, "key", "{}".getBytes()));
 
         mockedSharedPreferenceMgr = mock(SharedPreferenceMgr.class);
         mockedLmisRestApi = mock(LMISRestApi.class);
@@ -122,6 +139,7 @@ public class SyncUpManagerTest {
         syncUpManager.lmisRestApi = mockedLmisRestApi;
 
         stockRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(StockRepository.class);
+        syncOutboxRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(SyncOutboxRepository.class);
 
         User user = new User("user", "123");
         user.setFacilityCode("FC1");
@@ -149,10 +167,10 @@ public class SyncUpManagerTest {
 
         SyncUpRequisitionResponse response = new SyncUpRequisitionResponse();
         response.setRequisitionId("1");
-        when(mockedLmisRestApi.submitRequisition(any(RnRForm.class))).thenReturn(response);
+        when(mockedLmisRestApi.submitRequisition(any(TypedInput.class), anyString())).thenReturn(response);
 
         syncUpManager.syncRnr();
-        verify(mockedLmisRestApi, times(10)).submitRequisition(any(RnRForm.class));
+        verify(mockedLmisRestApi, times(10)).submitRequisition(any(TypedInput.class), anyString());
         verify(mockedRnrFormRepository, times(10)).createOrUpdateWithItems(any(RnRForm.class));
         verify(mockedSyncErrorsRepository, times(10)).deleteBySyncTypeAndObjectId(any(SyncType.class), anyLong());
     }
@@ -162,16 +180,17 @@ public class SyncUpManagerTest {
         RnRForm form = new RnRForm();
         form.setEmergency(true);
         when(mockedRnrFormRepository.queryAllUnsyncedForms()).thenReturn(newArrayList(form));
+        when(mockedRnRFormSnapshotRepository.queryByFormId(anyLong())).thenReturn(new RnRFormSnapshot(1L, true, "key", "{}".getBytes()));
 
         syncUpManager.syncRnr();
-        verify(mockedLmisRestApi).submitEmergencyRequisition(any(RnRForm.class));
+        verify(mockedLmisRestApi).submitEmergencyRequisition(any(TypedInput.class), eq("key"));
     }
 
     @Test
     public void shouldSyncUnSyncedStockMovementData() throws LMISException, SQLException, ParseException {
         StockCard stockCard = createTestStockCardData();
 
-        doReturn(null).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList());
+        doReturn(null).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList(), anyString());
         syncUpManager.syncStockCards();
         stockRepository.refresh(stockCard);
         List<StockMovementItem> items = newArrayList(stockCard.getForeignStockMovementItems());
@@ -185,7 +204,7 @@ public class SyncUpManagerTest {
     @Test
     public void shouldSaveSyncErrorWhenUnSyncedStockMovementDataFail() throws LMISException, SQLException, ParseException {
         createTestStockCardData();
-        doThrow(new LMISException("mocked exception")).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList());
+        doThrow(new LMISException("mocked exception")).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList(), anyString());
 
         syncUpManager.syncStockCards();
 
@@ -196,7 +215,7 @@ public class SyncUpManagerTest {
     public void shouldNotMarkAsSyncedWhenStockMovementSyncFailed() throws LMISException, ParseException {
         StockCard stockCard = createTestStockCardData();
 
-        doThrow(new RuntimeException("Sync Failed")).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList());
+        doThrow(new RuntimeException("Sync Failed")).when(mockedLmisRestApi).syncUpStockMovementData(anyString(), anyList(), anyString());
 
         try {
             syncUpManager.syncStockCards();
@@ -288,12 +307,30 @@ public class SyncUpManagerTest {
 
         when(mockedRnrFormRepository.queryAllUnsyncedForms()).thenReturn(unSyncedList);
 
-        doThrow(new LMISException("mocked exception")).when(mockedLmisRestApi).submitRequisition(any(RnRForm.class));
+        doThrow(new LMISException("mocked exception")).when(mockedLmisRestApi).submitRequisition(any(TypedInput.class), anyString());
         syncUpManager.syncRnr();
 
         verify(mockedSyncErrorsRepository).save(any(SyncError.class));
     }
 
+    @Test
+    public void shouldResubmitSnapshotPayloadWithSameIdempotencyKey() throws Exception {
+        RnRForm form = new RnRForm();
+        when(mockedRnrFormRepository.queryAllUnsyncedForms()).thenReturn(newArrayList(form));
+        when(mockedRnRFormSnapshotRepository.queryByFormId(anyLong())).thenReturn(null, new RnRFormSnapshot(1L, false, "key", "{\"programCode\":\"MMIA\"}".getBytes()));
+        when(mockedRnRFormSnapshotRepository.createOrUpdate(form)).thenReturn(new RnRFormSnapshot(1L, false, "key", "{\"programCode\":\"MMIA\"}".getBytes()));
+        doThrow(new LMISException("timeout")).doReturn(new SyncUpRequisitionResponse()).when(mockedLmisRestApi).submitRequisition(any(TypedInput.class), anyString());
+
+        syncUpManager.syncRnr();
+        syncUpManager.syncRnr();
+
+        ArgumentCaptor<TypedInput> bodyCaptor = ArgumentCaptor.forClass(TypedInput.class);
+        verify(mockedLmisRestApi, times(2)).submitRequisition(bodyCaptor.capture(), eq("key"));
+        assertThat(new String(((TypedByteArray) bodyCaptor.getAllValues().get(1)).getBytes(), "UTF-8"), is("{\"programCode\":\"MMIA\"}"));
+        verify(mockedRnRFormSnapshotRepository, times(1)).createOrUpdate(form);
+        verify(mockedRnrFormRepository, times(1)).createOrUpdateWithItems(form);
+    }
+
     @Test
     public void shouldNotSyncAppVersion() throws Exception {
         when(mockedSharedPreferenceMgr.hasSyncedVersion()).thenReturn(true);
@@ -313,11 +350,11 @@ public class SyncUpManagerTest {
 
         SyncUpRequisitionResponse response = new SyncUpRequisitionResponse();
         response.setRequisitionId("1");
-        when(mockedLmisRestApi.submitRequisition(any(RnRForm.class))).thenReturn(response);
+        when(mockedLmisRestApi.submitRequisition(any(TypedInput.class), anyString())).thenReturn(response);
 
         syncUpManager.syncRnr();
         verify(mockedRnrFormRepository, times(1)).queryAllUnsyncedForms();
-        verify(mockedLmisRestApi, times(2)).submitRequisition(any(RnRForm.class));
+        verify(mockedLmisRestApi, times(2)).submitRequisition(any(TypedInput.class), anyString());
         verify(mockedRnrFormRepository, times(2)).createOrUpdateWithItems(any(RnRForm.class));
         verify(mockedSyncErrorsRepository, times(2)).deleteBySyncTypeAndObjectId(any(SyncType.class), anyLong());
     }
@@ -352,7 +389,7 @@ public class SyncUpManagerTest {
         List<Cmm> cmms = createCmmsData();
 
         Cmm cmm = cmms.get(0);
-        when(mockedCmmRepository.listUnsynced()).thenReturn(cmms);
+        when(mockedCmmRepository.queryByIds(anyListOf(Long.class))).thenReturn(cmms);
 
         assertThat(cmm.isSynced(), is(false));
 
@@ -360,22 +397,19 @@ public class SyncUpManagerTest {
         syncUpManager.syncUpCmms();
 
         //then
-        verify(mockedLmisRestApi, times(1)).syncUpCmms(eq("123"), anyListOf(CmmEntry.class));
+        verify(mockedLmisRestApi, times(1)).syncUpCmms(eq("123"), anyListOf(CmmEntry.class), anyString());
         assertThat(cmm.isSynced(), is(true));
         verify(mockedCmmRepository).save(cmm);
+        assertThat(syncOutboxRepository.listDue(SyncType.Cmm, Long.MAX_VALUE, 100).size(), is(0));
     }
 
     @Test
     public void shouldNotInvokeNetworkWhenNoUnsyncedCmmPresent() throws Exception {
-        //given
-        List<Cmm> emptyCmmsList = new ArrayList<>();
-        when(mockedCmmRepository.listUnsynced()).thenReturn(emptyCmmsList);
-
         //when
         syncUpManager.syncUpCmms();
 
         //then
-        verify(mockedLmisRestApi, never()).syncUpCmms(anyString(), anyList());
+        verify(mockedLmisRestApi, never()).syncUpCmms(anyString(), anyList(), anyString());
     }
 
     @Test
@@ -384,8 +418,8 @@ public class SyncUpManagerTest {
         List<Cmm> cmms = createCmmsData();
 
         Cmm cmm = cmms.get(0);
-        when(mockedCmmRepository.listUnsynced()).thenReturn(cmms);
-        when(mockedLmisRestApi.syncUpCmms(any(String.class), anyList())).thenThrow(new LMISException("some error"));
+        when(mockedCmmRepository.queryByIds(anyListOf(Long.class))).thenReturn(cmms);
+        when(mockedLmisRestApi.syncUpCmms(any(String.class), anyList(), anyString())).thenThrow(new LMISException("some error"));
 
         assertThat(cmm.isSynced(), is(false));
 
@@ -393,16 +427,123 @@ public class SyncUpManagerTest {
         syncUpManager.syncUpCmms();
 
         //then
-        verify(mockedLmisRestApi, times(1)).syncUpCmms(eq("123"), anyListOf(CmmEntry.class));
+        verify(mockedLmisRestApi, times(1)).syncUpCmms(eq("123"), anyListOf(CmmEntry.class), anyString());
         assertThat(cmm.isSynced(), is(false));
         verify(mockedCmmRepository, never()).save(cmm);
     }
 
+    @Test
+    public void shouldOnlyBackOffStockCardWithPoisonedMovementAndSyncTheOthers() throws Exception {
+        StockCard poisonedStockCard = createTestStockCardData();
+        StockCard otherStockCard = createStockCardWithOneUnsyncedMovement("PD2", "DOC2");
+
+        when(mockedLmisRestApi.syncUpStockMovementData(anyString(), anyList(), anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                for (StockMovementEntry entry : (List<StockMovementEntry>) invocation.getArguments()[1]) {
+                    if ("XXX123456".equals(entry.getReferenceNumber())) {
+                        throw new LMISException("rejected");
+                    }
+                }
+                return null;
+            }
+        });
+
+        assertThat(syncUpManager.syncStockCards(), is(false));
+
+        stockRepository.refresh(poisonedStockCard);
+        for (StockMovementItem item : poisonedStockCard.getForeignStockMovementItems()) {
+            assertThat(item.isSynced(), is(false));
+        }
+        stockRepository.refresh(otherStockCard);
+        assertThat(otherStockCard.getForeignStockMovementItems().iterator().next().isSynced(), is(true));
+        assertThat(syncOutboxRepository.listDueStockMovements(LMISTestApp.getInstance().getCurrentTimeMillis(), 100).size(), is(0));
+        List<SyncOutboxItem> backedOff = syncOutboxRepository.listDueStockMovements(Long.MAX_VALUE, 100);
+        assertThat(backedOff.size(), is(2));
+        assertThat(backedOff.get(0).getAttempts(), is(1));
+        assertThat(backedOff.get(1).getAttempts(), is(1));
+        verify(mockedSyncErrorsRepository).save(any(SyncError.class));
+    }
+
+    @Test
+    public void shouldNotSendLaterMovementOfStockCardWhileEarlierOneBacksOff() throws Exception {
+        createTestStockCardData();
+        long now = LMISTestApp.getInstance().getCurrentTimeMillis();
+        SyncOutboxItem earliest = syncOutboxRepository.listDueStockMovements(now, 100).get(0);
+        syncOutboxRepository.markFailed(earliest, "rejected", now);
+
+        assertThat(syncUpManager.syncStockCards(), is(false));
+        verify(mockedLmisRestApi, never()).syncUpStockMovementData(anyString(), anyList(), anyString());
+
+        LMISTestApp.getInstance().setCurrentTimeMillis(now + SyncOutboxRepository.BASE_BACKOFF_MILLIS);
+        assertThat(syncUpManager.syncStockCards(), is(true));
+        verify(mockedLmisRestApi, times(1)).syncUpStockMovementData(anyString(), anyListOf(StockMovementEntry.class), anyString());
+    }
+
+    @Test
+    public void shouldNotCountAttemptsWhenServerCanNotBeReached() throws Exception {
+        createTestStockCardData();
+        when(mockedLmisRestApi.syncUpStockMovementData(anyString(), anyList(), anyString())).thenThrow(new NetWorkException("offline"));
+
+        assertThat(syncUpManager.syncStockCards(), is(false));
+
+        List<SyncOutboxItem> due = syncOutboxRepository.listDueStockMovements(LMISTestApp.getInstance().getCurrentTimeMillis(), 100);
+        assertThat(due.size(), is(2));
+        assertThat(due.get(0).getAttempts(), is(0));
+        verify(mockedLmisRestApi, times(1)).syncUpStockMovementData(anyString(), anyList(), anyString());
+    }
+
+    @Test
+    public void shouldSendSameIdempotencyKeyWhenRetryingSameBatch() throws Exception {
+        createTestStockCardData();
+        final List<String> keys = new ArrayList<>();
+        when(mockedLmisRestApi.syncUpStockMovementData(anyString(), anyList(), anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                keys.add((String) invocation.getArguments()[2]);
+                throw new LMISException("timeout");
+            }
+        });
+
+        syncUpManager.syncStockCards();
+        LMISTestApp.getInstance().setCurrentTimeMillis(LMISTestApp.getInstance().getCurrentTimeMillis() + SyncOutboxRepository.MAX_BACKOFF_MILLIS);
+        syncUpManager.syncStockCards();
+
+        //both movements belong to one card, so the batch isn't retried in smaller groups
+        assertThat(keys.size(), is(2));
+        assertThat(keys.get(1), is(keys.get(0)));
+    }
+
+    private StockCard createStockCardWithOneUnsyncedMovement(String productCode, String documentNumber) throws LMISException {
+        ProductRepository productRepository = RoboGuice.getInjector(RuntimeEnvironment.application).getInstance(ProductRepository.class);
+        Product product = new Product();
+        product.setCode(productCode);
+        productRepository.createOrUpdate(product);
+
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setStockOnHand(100L);
+        stockRepository.createOrUpdate(stockCard);
+
+        StockMovementItem item = new StockMovementItem();
+        item.setMovementQuantity(100L);
+        item.setStockOnHand(100L);
+        item.setDocumentNumber(documentNumber);
+        item.setMovementDate(DateUtil.today());
+        item.setMovementType(MovementReasonManager.MovementType.RECEIVE);
+        item.setStockCard(stockCard);
+        item.setSynced(false);
+        stockRepository.addStockMovementAndUpdateStockCard(item);
+        stockRepository.refresh(stockCard);
+        return stockCard;
+    }
+
     private List<Cmm> createCmmsData() throws LMISException, ParseException {
         Cmm cmm = new Cmm();
         cmm.setStockCard(createTestStockCardData());
         cmm.setPeriodBegin(new Date());
         cmm.setPeriodEnd(new Date());
+        syncOutboxRepository.enqueue(SyncType.Cmm, 1L);
 
         List<Cmm> cmms = new ArrayList<>();
         cmms.add(cmm);
@@ -417,6 +558,7 @@ public class SyncUpManagerTest {
             bind(SyncErrorsRepository.class).toInstance(mockedSyncErrorsRepository);
             bind(CmmRepository.class).toInstance(mockedCmmRepository);
             bind(ProgramDataFormRepository.class).toInstance(mockedProgramDataFormRepository);
+            bind(RnRFormSnapshotRepository.class).toInstance(mockedRnRFormSnapshotRepository);
         }
     }
 }
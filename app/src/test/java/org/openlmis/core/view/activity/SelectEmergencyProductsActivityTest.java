@@ -37,6 +37,7 @@ import rx.Subscriber;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -60,14 +61,14 @@ public class SelectEmergencyProductsActivityTest {
             }
         });
 
-        when(productPresenter.loadEmergencyProducts()).thenReturn(createDummyObservable());
+        when(productPresenter.searchEmergencyProducts(anyString())).thenReturn(createDummyObservable());
 
         activity = Robolectric.buildActivity(SelectEmergencyProductsActivity.class).create().start().resume().visible().get();
     }
 
     @Test
     public void shouldLoadEmergencyProducts() throws Exception {
-        verify(productPresenter).loadEmergencyProducts();
+        verify(productPresenter).searchEmergencyProducts(null);
     }
 
 
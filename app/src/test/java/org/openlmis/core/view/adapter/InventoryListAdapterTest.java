@@ -0,0 +1,148 @@
+package org.openlmis.core.view.adapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.manager.MovementReasonManager;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.builder.ProductBuilder;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+import org.openlmis.core.view.viewmodel.LotMovementViewModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class InventoryListAdapterTest {
+
+    private StockCardListAdapter adapter;
+    private List<InventoryViewModel> viewModels;
+    private List<String> notifications;
+
+    @Before
+    public void setUp() {
+        viewModels = new ArrayList<>();
+        for (String name : new String[]{"Paracetamol", "Amoxicilina", "Paracetamol xarope", "Ibuprofeno", "Paroxetina"}) {
+            viewModels.add(viewModel(name));
+        }
+        adapter = new StockCardListAdapter(new ArrayList<InventoryViewModel>(), null);
+        adapter.setSortScheduler(Schedulers.immediate());
+        adapter.refreshList(viewModels);
+
+        notifications = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                notifications.add("all");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                notifications.add("changed " + positionStart + "+" + itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                notifications.add("inserted " + positionStart + "+" + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                notifications.add("removed " + positionStart + "+" + itemCount);
+            }
+        });
+    }
+
+    @Test
+    public void shouldNotifyOnlyTheRowsAQueryRemovesOrBringsBack() {
+        adapter.filter("par");
+        assertThat(namesOf(adapter.getFilteredList()), contains("Paracetamol", "Paracetamol xarope", "Paroxetina"));
+        assertThat(notifications, contains("removed 1+1", "removed 2+1", "changed 0+3"));
+
+        notifications.clear();
+        adapter.filter("parac");
+        assertThat(namesOf(adapter.getFilteredList()), contains("Paracetamol", "Paracetamol xarope"));
+        assertThat(notifications, contains("removed 2+1", "changed 0+2"));
+
+        notifications.clear();
+        adapter.filter("");
+        assertThat(adapter.getItemCount(), is(5));
+        assertThat(notifications, contains("inserted 1+1", "inserted 3+2", "changed 0+5"));
+    }
+
+    @Test
+    public void shouldSearchTheWholeListAgainAfterItWasSorted() throws Exception {
+        adapter.filter("par");
+        adapter.sortByName(false);
+        adapter.filter("para");
+
+        assertThat(namesOf(adapter.getFilteredList()), contains("Paracetamol xarope", "Paracetamol"));
+    }
+
+    @Test
+    public void shouldOnlyShowTheLastQueryTypedWithinTheDebounce() throws Exception {
+        final List<List<InventoryViewModel>> deliveries = Collections.synchronizedList(new ArrayList<List<InventoryViewModel>>());
+        adapter.setOnFilteredAsYouTypeListener(new InventoryListAdapter.OnFilteredAsYouTypeListener() {
+            @Override
+            public void onFiltered(List<InventoryViewModel> filteredList) {
+                deliveries.add(new ArrayList<>(filteredList));
+            }
+        });
+
+        adapter.filterAsYouType("p");
+        adapter.filterAsYouType("pa");
+        adapter.filterAsYouType("parox");
+
+        long deadline = System.currentTimeMillis() + 5 * InventoryListAdapter.SEARCH_DEBOUNCE_MILLIS;
+        while (deliveries.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(2 * InventoryListAdapter.SEARCH_DEBOUNCE_MILLIS);
+        adapter.stopFilteringAsYouType();
+
+        assertThat(deliveries.size(), is(1));
+        assertThat(namesOf(deliveries.get(0)), contains("Paroxetina"));
+        assertTrue(adapter.isFiltered());
+    }
+
+    @Test
+    public void shouldRebindOnlyTheRowsWhoseValidationStateChanged() {
+        viewModels.get(1).setValid(false);
+        viewModels.get(3).setChecked(true);
+        viewModels.get(3).getNewLotMovementViewModelList().add(new LotMovementViewModel("LOT-1", "Jan 2030", MovementReasonManager.MovementType.RECEIVE));
+
+        assertThat(adapter.validateAll(), is(3));
+        assertThat(notifications, contains("changed 1+1", "changed 3+1"));
+
+        notifications.clear();
+        assertThat(adapter.validateAll(), is(3));
+        assertTrue(notifications.isEmpty());
+    }
+
+    private List<String> namesOf(List<InventoryViewModel> inventoryViewModels) {
+        List<String> names = new ArrayList<>();
+        for (InventoryViewModel inventoryViewModel : inventoryViewModels) {
+            names.add(inventoryViewModel.getProduct().getPrimaryName());
+        }
+        return names;
+    }
+
+    private InventoryViewModel viewModel(String name) {
+        Product product = ProductBuilder.create().setPrimaryName(name).setCode(name.substring(0, 3)).build();
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        return new InventoryViewModel(stockCard);
+    }
+}
@@ -0,0 +1,116 @@
+package org.openlmis.core.view.adapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.network.SyntheticFacility;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+import org.roboguice.shaded.goole.common.base.Predicate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.roboguice.shaded.goole.common.collect.FluentIterable.from;
+
+@RunWith(LMISTestRunner.class)
+public class InventorySearchBenchmarkTest {
+
+    private static final String[] NAMES = {"Paracetamol", "Amoxicilina", "Ibuprofeno", "Cotrimoxazol", "Metronidazol",
+            "Zidovudina", "Lamivudina", "Nevirapina", "Efavirenz", "Tenofovir", "Artemeter", "Lumefantrina"};
+    private static final String[] TYPES = {"Comprimido", "Xarope", "Injectavel", "Capsula"};
+
+    private List<InventoryViewModel> catalog;
+    private int fullNamesBuilt;
+
+    @Before
+    public void setUp() {
+        catalog = new ArrayList<>();
+        int products = new SyntheticFacility(SyntheticFacility.Size.LARGE).getProducts();
+        for (int i = 0; i < products; i++) {
+            Product product = new Product() {
+                @Override
+                public String getProductFullName() {
+                    fullNamesBuilt++;
+                    return super.getProductFullName();
+                }
+            };
+            product.setPrimaryName(NAMES[i % NAMES.length] + " " + (i / NAMES.length));
+            product.setCode(SyntheticFacility.productCode(i));
+            product.setStrength(i % 10 * 50 + 50 + "mg");
+            product.setType(TYPES[i % TYPES.length]);
+            StockCard stockCard = new StockCard();
+            stockCard.setProduct(product);
+            catalog.add(new InventoryViewModel(stockCard));
+        }
+    }
+
+    @Test
+    public void benchmarkTypingAQueryOverTheFullCatalog() {
+        String query = "lamivudina 10";
+        VisitCountingList source = new VisitCountingList(catalog);
+
+        InventorySearchIndex searchIndex = new InventorySearchIndex();
+        List<List<InventoryViewModel>> results = new ArrayList<>();
+        fullNamesBuilt = 0;
+        for (int length = 1; length <= query.length(); length++) {
+            results.add(searchIndex.search(source, query.substring(0, length)));
+        }
+        int indexedNamesBuilt = fullNamesBuilt;
+
+        fullNamesBuilt = 0;
+        for (int length = 1; length <= query.length(); length++) {
+            assertThat(results.get(length - 1), is(naiveSearch(query.substring(0, length))));
+        }
+
+        //every name is lower-cased once, and only the first keystroke goes through the whole list
+        assertThat(indexedNamesBuilt, is(catalog.size()));
+        assertThat(source.visited, is(catalog.size()));
+        assertThat(fullNamesBuilt, is(query.length() * catalog.size()));
+    }
+
+    //what InventoryListAdapter.filter did before: every name lower-cased again on every keystroke
+    private List<InventoryViewModel> naiveSearch(final String keyword) {
+        return from(catalog).filter(new Predicate<InventoryViewModel>() {
+            @Override
+            public boolean apply(InventoryViewModel inventoryViewModel) {
+                return inventoryViewModel.getProduct().getProductFullName().toLowerCase().contains(keyword.toLowerCase());
+            }
+        }).toList();
+    }
+
+    private static class VisitCountingList extends ArrayList<InventoryViewModel> {
+        private int visited;
+
+        VisitCountingList(List<InventoryViewModel> items) {
+            super(items);
+        }
+
+        @Override
+        public Iterator<InventoryViewModel> iterator() {
+            final Iterator<InventoryViewModel> iterator = super.iterator();
+            return new Iterator<InventoryViewModel>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public InventoryViewModel next() {
+                    visited++;
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                }
+            };
+        }
+    }
+}
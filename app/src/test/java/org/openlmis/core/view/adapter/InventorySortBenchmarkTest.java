@@ -0,0 +1,104 @@
+package org.openlmis.core.view.adapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.network.SyntheticFacility;
+import org.openlmis.core.view.adapter.InventorySortIndex.SortOrder;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class InventorySortBenchmarkTest {
+
+    private static final String[] NAMES = {"Paracetamol", "Amoxicilina", "Ibuprofeno", "Cotrimoxazol", "Metronidazol",
+            "Zidovudina", "Lamivudina", "Nevirapina", "Efavirenz", "Tenofovir", "Artemeter", "Lumefantrina"};
+    private static final SortOrder[] SELECTIONS = {SortOrder.NAME_ASC, SortOrder.SOH_DESC, SortOrder.NAME_DESC, SortOrder.SOH_ASC,
+            SortOrder.NAME_ASC, SortOrder.SOH_DESC, SortOrder.NAME_ASC, SortOrder.SOH_ASC, SortOrder.NAME_DESC, SortOrder.NAME_ASC};
+
+    private List<InventoryViewModel> catalog;
+    private int primaryNamesRead;
+
+    @Before
+    public void setUp() {
+        catalog = new ArrayList<>();
+        int products = new SyntheticFacility(SyntheticFacility.Size.LARGE).getProducts();
+        for (int i = 0; i < products; i++) {
+            Product product = new Product() {
+                @Override
+                public String getPrimaryName() {
+                    primaryNamesRead++;
+                    return super.getPrimaryName();
+                }
+            };
+            product.setPrimaryName(NAMES[i * 7 % NAMES.length] + " " + (i * 31 % products));
+            product.setCode(SyntheticFacility.productCode(i));
+            StockCard stockCard = new StockCard();
+            stockCard.setProduct(product);
+            stockCard.setStockOnHand(i * 37 % products);
+            catalog.add(new InventoryViewModel(stockCard));
+        }
+    }
+
+    @Test
+    public void benchmarkSwitchingSortOrdersOverTheFullCatalog() {
+        InventorySortIndex sortIndex = new InventorySortIndex();
+        List<List<InventoryViewModel>> sortedLists = new ArrayList<>();
+        int sorts = 0;
+        primaryNamesRead = 0;
+        for (SortOrder sortOrder : SELECTIONS) {
+            List<InventoryViewModel> sortedList = sortIndex.getSorted(sortOrder);
+            if (sortedList == null) {
+                sortedList = sortIndex.sort(catalog, sortOrder);
+                sorts++;
+            }
+            sortedLists.add(sortedList);
+        }
+        int indexedNamesRead = primaryNamesRead;
+
+        List<InventoryViewModel> naiveList = new ArrayList<>(catalog);
+        List<List<InventoryViewModel>> naiveLists = new ArrayList<>();
+        primaryNamesRead = 0;
+        for (SortOrder sortOrder : SELECTIONS) {
+            naiveSort(naiveList, sortOrder);
+            naiveLists.add(new ArrayList<>(naiveList));
+        }
+        int naiveNamesRead = primaryNamesRead;
+
+        assertThat(sortedLists, is(naiveLists));
+        //every name is read once for its key, and each order is sorted once however often it is selected again
+        assertThat(indexedNamesRead, is(catalog.size()));
+        assertThat(sorts, is(SortOrder.values().length));
+        assertTrue(naiveNamesRead > SELECTIONS.length * catalog.size());
+    }
+
+    //what StockCardListAdapter did before: every comparison goes back to the view model and its product
+    private void naiveSort(List<InventoryViewModel> list, final SortOrder sortOrder) {
+        Collections.sort(list, new Comparator<InventoryViewModel>() {
+            @Override
+            public int compare(InventoryViewModel lhs, InventoryViewModel rhs) {
+                switch (sortOrder) {
+                    case NAME_ASC:
+                        return lhs.getProduct().getPrimaryName().compareTo(rhs.getProduct().getPrimaryName());
+                    case NAME_DESC:
+                        return rhs.getProduct().getPrimaryName().compareTo(lhs.getProduct().getPrimaryName());
+                    case SOH_DESC:
+                        return (int) (rhs.getStockOnHand() - lhs.getStockOnHand());
+                    default:
+                        return (int) (lhs.getStockOnHand() - rhs.getStockOnHand());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+package org.openlmis.core.view.adapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.Product;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.model.builder.ProductBuilder;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class ListDiffBenchmarkTest {
+
+    //one more than a multiple of 3, so narrowing to every third row keeps the last one
+    private static final int ROWS = 1201;
+
+    private int rowsRead;
+    private final ListDiff.ItemKeys<InventoryViewModel> keys = new ListDiff.ItemKeys<InventoryViewModel>() {
+        @Override
+        public Object idOf(InventoryViewModel inventoryViewModel) {
+            rowsRead++;
+            return ListDiff.identityOf(inventoryViewModel);
+        }
+
+        @Override
+        public Object contentOf(InventoryViewModel inventoryViewModel) {
+            return inventoryViewModel.getStockOnHand();
+        }
+    };
+
+    private List<InventoryViewModel> catalog;
+
+    @Before
+    public void setUp() {
+        catalog = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            catalog.add(viewModel(i));
+        }
+    }
+
+    @Test
+    public void benchmarkNarrowingTheListToAThird() {
+        List<InventoryViewModel> narrowed = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i += 3) {
+            narrowed.add(catalog.get(i));
+        }
+
+        ListDiff.Result result = diff(catalog, narrowed);
+
+        assertThat(reboundRows(result), is(0));
+        //the rows between two kept ones go in one removal
+        assertThat(result.updates.size(), is(narrowed.size() - 1));
+        assertTrue(result.getChangedPositions().isEmpty());
+    }
+
+    @Test
+    public void benchmarkEditingAFewRows() {
+        ListDiff.Snapshot before = ListDiff.snapshot(catalog, keys);
+        for (int i = 0; i < catalog.size(); i += 100) {
+            catalog.get(i).setStockOnHand(catalog.get(i).getStockOnHand() + 1);
+        }
+
+        rowsRead = 0;
+        ListDiff.Result result = ListDiff.diff(before, ListDiff.snapshot(catalog, keys));
+
+        assertThat(rowsRead, is(catalog.size()));
+        assertThat(reboundRows(result), is((catalog.size() + 99) / 100));
+        assertThat(result.updates.size(), is(reboundRows(result)));
+        assertThat(result.getChangedPositions().get(1), is(100));
+        assertFalse(result.hasStructuralChanges());
+    }
+
+    @Test
+    public void benchmarkRemovingAndAddingRowsAcrossTheList() {
+        List<InventoryViewModel> changed = new ArrayList<>(catalog);
+        for (int i = changed.size() - 1; i >= 0; i -= 60) {
+            changed.remove(i);
+        }
+        for (int i = 0; i < 20; i++) {
+            changed.add(i * 60, viewModel(catalog.size() + i));
+        }
+
+        ListDiff.Result result = diff(catalog, changed);
+
+        assertThat(reboundRows(result), is(20));
+        assertTrue(result.hasStructuralChanges());
+    }
+
+    @Test
+    public void benchmarkMovingARowToTheTop() {
+        List<InventoryViewModel> moved = new ArrayList<>(catalog);
+        moved.add(0, moved.remove(moved.size() / 2));
+
+        ListDiff.Result result = diff(catalog, moved);
+
+        assertThat(reboundRows(result), is(1));
+        assertThat(result.updates.size(), is(2));
+    }
+
+    private ListDiff.Result diff(List<InventoryViewModel> oldList, List<InventoryViewModel> newList) {
+        rowsRead = 0;
+        ListDiff.Result result = ListDiff.diff(ListDiff.snapshot(oldList, keys), ListDiff.snapshot(newList, keys));
+
+        //each row is read once when it is snapshot, diffing only reads the snapshots
+        assertThat(rowsRead, is(oldList.size() + newList.size()));
+        assertAppliesTo(result, oldList, newList);
+        return result;
+    }
+
+    //the updates dispatched one after the other turn the old list into the new one
+    private void assertAppliesTo(ListDiff.Result result, List<InventoryViewModel> oldList, List<InventoryViewModel> newList) {
+        List<InventoryViewModel> list = new ArrayList<>(oldList);
+        for (int[] update : result.updates) {
+            for (int i = 0; i < update[2]; i++) {
+                if (update[0] == ListDiff.REMOVE) {
+                    list.remove(update[1]);
+                } else if (update[0] == ListDiff.INSERT) {
+                    list.add(update[1] + i, newList.get(update[1] + i));
+                }
+            }
+        }
+        assertThat(list.size(), is(newList.size()));
+        for (int i = 0; i < list.size(); i++) {
+            assertSame(newList.get(i), list.get(i));
+        }
+    }
+
+    //rows a RecyclerView binds for the updates, notifyDataSetChanged binds every row shown
+    private int reboundRows(ListDiff.Result result) {
+        int rows = 0;
+        for (int[] update : result.updates) {
+            if (update[0] != ListDiff.REMOVE) {
+                rows += update[2];
+            }
+        }
+        return rows;
+    }
+
+    private InventoryViewModel viewModel(int index) {
+        Product product = ProductBuilder.create().setPrimaryName("Product " + index).setCode(String.format("%05d", index)).build();
+        StockCard stockCard = new StockCard();
+        stockCard.setProduct(product);
+        stockCard.setStockOnHand(index);
+        return new InventoryViewModel(stockCard);
+    }
+}
@@ -18,20 +18,26 @@
 
 package org.openlmis.core.view.adapter;
 
+import android.support.v7.widget.RecyclerView;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.manager.MovementReasonManager;
 import org.openlmis.core.model.Product;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.view.viewmodel.InventoryViewModel;
+import org.openlmis.core.view.viewmodel.LotMovementViewModel;
 import org.openlmis.core.view.viewmodel.PhysicalInventoryViewModel;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(LMISTestRunner.class)
 public class PhysicalInventoryAdapterTest {
@@ -71,4 +77,36 @@ public class PhysicalInventoryAdapterTest {
         assertThat(adapter.getItemCount(), is(1 + 1));
     }
 
+    @Test
+    public void shouldRebindOnlyTheRowsMarkedDoneOrInvalidByValidation() {
+        List<InventoryViewModel> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            list.add(new PhysicalInventoryViewModel(stockCard));
+        }
+        ((PhysicalInventoryViewModel) list.get(0)).setDone(true);
+        list.get(2).setChecked(true);
+        list.get(2).getExistingLotMovementViewModelList().add(new LotMovementViewModel("LOT-1", "Jan 2030", MovementReasonManager.MovementType.PHYSICAL_INVENTORY));
+        adapter.refreshList(list);
+
+        final List<String> notifications = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                notifications.add("all");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                notifications.add("changed " + positionStart + "+" + itemCount);
+            }
+        });
+
+        assertThat(adapter.validateAll(), is(2));
+        assertThat(notifications, contains("changed 1+2"));
+
+        notifications.clear();
+        adapter.validateAll();
+        assertTrue(notifications.isEmpty());
+    }
+
 }
@@ -0,0 +1,111 @@
+package org.openlmis.core.view.adapter;
+
+import android.database.DataSetObserver;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ListView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.model.RnrFormItem;
+import org.openlmis.core.presenter.VIARequisitionPresenter;
+import org.openlmis.core.view.viewmodel.RequisitionFormItemViewModel;
+import org.openlmis.core.view.viewmodel.RnRFormItemAdjustmentViewModel;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(LMISTestRunner.class)
+public class RequisitionFormAdapterTest {
+
+    private RequisitionFormAdapter adapter;
+    private List<RequisitionFormItemViewModel> viewModels;
+    private ListView listView;
+    private List<String> notifications;
+
+    @Before
+    public void setUp() {
+        viewModels = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            viewModels.add(viewModel("0" + i));
+        }
+        VIARequisitionPresenter presenter = mock(VIARequisitionPresenter.class);
+        when(presenter.getRequisitionFormItemViewModels()).thenReturn(viewModels);
+
+        listView = mock(ListView.class);
+        when(listView.getChildAt(anyInt())).thenReturn(mock(View.class));
+
+        notifications = new ArrayList<>();
+        adapter = new RequisitionFormAdapter(RuntimeEnvironment.application, presenter) {
+            @Override
+            public View getView(int position, View convertView, ViewGroup parent) {
+                notifications.add("bound " + position);
+                return convertView;
+            }
+        };
+        adapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifications.add("all");
+            }
+        });
+        adapter.updateStatus(RnRForm.STATUS.DRAFT);
+        notifications.clear();
+    }
+
+    @Test
+    public void shouldLeaveTheListAloneWhenNothingChangedSinceTheLastRefresh() {
+        assertFalse(adapter.refresh(listView, RnRForm.STATUS.DRAFT));
+
+        assertTrue(notifications.isEmpty());
+    }
+
+    @Test
+    public void shouldRebindOnlyTheRowsWhoseAmountsOrAdjustmentsChanged() {
+        viewModels.get(0).setApprovedAmount("20");
+        viewModels.get(2).getAdjustmentViewModels().get(0).setQuantity(2);
+
+        assertFalse(adapter.refresh(listView, RnRForm.STATUS.DRAFT));
+
+        assertThat(notifications, contains("bound 0", "bound 2"));
+    }
+
+    @Test
+    public void shouldRefreshTheWholeListWhenTheStatusChanges() {
+        assertFalse(adapter.refresh(listView, RnRForm.STATUS.SUBMITTED));
+
+        assertThat(notifications, contains("all"));
+    }
+
+    @Test
+    public void shouldRefreshTheWholeListAndTellWhenRowsCameOrWent() {
+        viewModels.remove(1);
+
+        assertTrue(adapter.refresh(listView, RnRForm.STATUS.DRAFT));
+
+        assertThat(notifications, contains("all"));
+    }
+
+    private RequisitionFormItemViewModel viewModel(String fmn) {
+        RequisitionFormItemViewModel viewModel = new RequisitionFormItemViewModel();
+        viewModel.setFmn(fmn);
+        viewModel.setProductName("Product " + fmn);
+        viewModel.setItem(new RnrFormItem());
+        viewModel.setTotalRequest("100");
+        viewModel.setAdjustmentViewModels(Arrays.asList(new RnRFormItemAdjustmentViewModel(10, 1, "Kit " + fmn)));
+        return viewModel;
+    }
+}
@@ -0,0 +1,78 @@
+package org.openlmis.core.view.adapter;
+
+import android.database.DataSetObserver;
+import android.widget.ListView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.StockCard;
+import org.openlmis.core.view.viewmodel.StockMovementViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(LMISTestRunner.class)
+public class StockMovementAdapterTest {
+
+    private StockMovementAdapter adapter;
+    private List<StockMovementViewModel> stockMovementViewModels;
+    private ListView listView;
+    private List<String> notifications;
+
+    @Before
+    public void setUp() {
+        stockMovementViewModels = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            stockMovementViewModels.add(viewModel(i));
+        }
+        adapter = new StockMovementAdapter(stockMovementViewModels, new StockCard());
+        listView = mock(ListView.class);
+
+        notifications = new ArrayList<>();
+        adapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                notifications.add("all");
+            }
+        });
+    }
+
+    @Test
+    public void shouldLeaveTheListAloneWhenTheMovementsLoadedAgainAreTheOnesShown() {
+        stockMovementViewModels.clear();
+        for (int i = 0; i < 3; i++) {
+            stockMovementViewModels.add(viewModel(i));
+        }
+
+        adapter.refresh(listView);
+
+        assertTrue(notifications.isEmpty());
+    }
+
+    @Test
+    public void shouldRefreshTheListWhenAMovementWasAdded() {
+        stockMovementViewModels.add(viewModel(3));
+
+        adapter.refresh(listView);
+
+        assertThat(notifications, contains("all"));
+
+        notifications.clear();
+        adapter.refresh(listView);
+        assertTrue(notifications.isEmpty());
+    }
+
+    private StockMovementViewModel viewModel(int index) {
+        StockMovementViewModel viewModel = new StockMovementViewModel();
+        viewModel.setDocumentNo("DOC-" + index);
+        viewModel.setStockExistence(String.valueOf(100 + index));
+        return viewModel;
+    }
+}
@@ -0,0 +1,62 @@
+package org.openlmis.core.view.adapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.builder.ProductBuilder;
+import org.openlmis.core.view.viewmodel.InventoryViewModel;
+import org.openlmis.core.view.viewmodel.UnpackKitInventoryViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(LMISTestRunner.class)
+public class UnpackKitAdapterTest {
+
+    private UnpackKitAdapter adapter;
+    private List<InventoryViewModel> viewModels;
+    private List<String> notifications;
+
+    @Before
+    public void setUp() {
+        viewModels = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            viewModels.add(new UnpackKitInventoryViewModel(ProductBuilder.create().setPrimaryName("Product " + i).setCode("0" + i).build()));
+        }
+        adapter = new UnpackKitAdapter(new ArrayList<InventoryViewModel>(), null);
+        adapter.refreshList(viewModels);
+
+        notifications = new ArrayList<>();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                notifications.add("all");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                notifications.add("changed " + positionStart + "+" + itemCount);
+            }
+        });
+    }
+
+    @Test
+    public void shouldRebindOnlyTheRowsShowingTheEmptyLotWarningForTheFirstTime() {
+        ((UnpackKitInventoryViewModel) viewModels.get(1)).setConfirmedNoStockReceived(true);
+
+        assertThat(adapter.validateAll(), is(0));
+        assertThat(notifications, contains("changed 0+1", "changed 2+1"));
+
+        notifications.clear();
+        assertThat(adapter.validateAll(), is(0));
+        assertTrue(notifications.isEmpty());
+    }
+}
@@ -40,8 +40,11 @@ import org.robolectric.Robolectric;
 import java.util.ArrayList;
 import java.util.List;
 
+import rx.schedulers.Schedulers;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -84,11 +87,17 @@ public class StockCardListFragmentTest {
         return fragment;
     }
 
+    private StockCardListAdapter createAdapterSortingInPlace() {
+        StockCardListAdapter adapter = createAdapterSortingInPlace();
+        adapter.setSortScheduler(Schedulers.immediate());
+        return adapter;
+    }
+
     @Test
-    public void shouldSortListByProductName() {
+    public void shouldSortListByProductName() throws Exception {
         when(fragment.presenter.getInventoryViewModels()).thenReturn(this.inventoryViewModels);
         List<InventoryViewModel> inventoryViewModels = fragment.presenter.getInventoryViewModels();
-        StockCardListAdapter adapter = new StockCardListAdapter(new ArrayList<InventoryViewModel>(), null);
+        StockCardListAdapter adapter = createAdapterSortingInPlace();
         adapter.refreshList(inventoryViewModels);
         adapter.sortByName(true);
 
@@ -99,9 +108,9 @@ public class StockCardListFragmentTest {
     }
 
     @Test
-    public void shouldSortListBySOH() {
+    public void shouldSortListBySOH() throws Exception {
         when(fragment.presenter.getInventoryViewModels()).thenReturn(inventoryViewModels);
-        StockCardListAdapter adapter = new StockCardListAdapter(new ArrayList<InventoryViewModel>(), null);
+        StockCardListAdapter adapter = createAdapterSortingInPlace();
         adapter.refreshList(inventoryViewModels);
         adapter.sortBySOH(true);
 
@@ -111,6 +120,19 @@ public class StockCardListFragmentTest {
         assertThat(sortedList.get(2).getStockOnHand(), is(3L));
     }
 
+    @Test
+    public void shouldShowAnOrderSortedBeforeAtOnce() throws Exception {
+        StockCardListAdapter adapter = createAdapterSortingInPlace();
+        adapter.refreshList(inventoryViewModels);
+        adapter.sortBySOH(true);
+        adapter.sortByName(true);
+
+        adapter.sortBySOH(true);
+
+        assertFalse(adapter.isSorting());
+        assertThat(adapter.getFilteredList().get(0).getStockOnHand(), is(1L));
+    }
+
     @Test
     public void shouldRefreshBannerText() {
         fragment.productsUpdateBanner = productUpdateBanner;
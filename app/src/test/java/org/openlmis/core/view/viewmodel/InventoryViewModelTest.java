@@ -85,6 +85,7 @@ public class InventoryViewModelTest {
     @Test
     public void shouldGetNormalLevelWhenAvgMonthlyConsumptionLessThanZero() throws LMISException {
         StockCard stockCard = new StockCard();
+        stockCard.setStockOnHand(100);
         stockCard.setAvgMonthlyConsumption(-1);
         viewModel.setStockCard(stockCard);
         viewModel.setStockOnHand(100);
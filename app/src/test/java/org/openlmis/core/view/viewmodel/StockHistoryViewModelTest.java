@@ -3,16 +3,16 @@ package org.openlmis.core.view.viewmodel;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
 import org.openlmis.core.manager.MovementReasonManager;
 import org.openlmis.core.model.StockCard;
 import org.openlmis.core.model.StockMovementItem;
 import org.openlmis.core.model.builder.StockCardBuilder;
 import org.openlmis.core.model.builder.StockMovementItemBuilder;
-import org.openlmis.core.utils.DateUtil;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
 
@@ -59,48 +59,22 @@ public class StockHistoryViewModelTest {
                 .build();
         stockMovementItem3.setId(3);
 
-        stockCard.getStockMovementItemsWrapper().add(stockMovementItem3);
-        stockCard.getStockMovementItemsWrapper().add(stockMovementItem2);
-        stockCard.getStockMovementItemsWrapper().add(stockMovementItem1);
-        viewModel = new StockHistoryViewModel(stockCard);
+        viewModel = new StockHistoryViewModel(stockCard, Arrays.asList(stockMovementItem1, stockMovementItem2, stockMovementItem3));
     }
 
     @Test
-    public void shouldConstructStockHistoryViewModelWithMovementItemsInAscendingOderByMovementDate() throws Exception {
-        assertEquals("1", viewModel.getAllMovementItemViewModelList().get(0).getDocumentNumber());
-        assertEquals("2", viewModel.getAllMovementItemViewModelList().get(1).getDocumentNumber());
-        assertEquals("3", viewModel.getAllMovementItemViewModelList().get(2).getDocumentNumber());
-
-
-        StockMovementItem stockMovementItem4 = new StockMovementItemBuilder()
-                .withDocumentNo("4")
-                .withMovementDate("2016-12-31")
-                .withStockOnHand(0)
-                .withQuantity(300)
-                .withMovementType(MovementReasonManager.MovementType.ISSUE)
-                .withMovementReason("INVENTORY")
-                .build();
-        stockMovementItem4.setId(4);
-
-        stockCard.getStockMovementItemsWrapper().add(0, stockMovementItem4);
-        viewModel = new StockHistoryViewModel(stockCard);
-
-        assertEquals("1", viewModel.getAllMovementItemViewModelList().get(0).getDocumentNumber());
-        assertEquals("2", viewModel.getAllMovementItemViewModelList().get(1).getDocumentNumber());
-        assertEquals("3", viewModel.getAllMovementItemViewModelList().get(2).getDocumentNumber());
-        assertEquals("4", viewModel.getAllMovementItemViewModelList().get(3).getDocumentNumber());
+    public void shouldShowMovementsInTheOrderTheyWereLoaded() throws Exception {
+        assertEquals(3, viewModel.getFilteredMovementItemViewModelList().size());
+        assertEquals("1", viewModel.getFilteredMovementItemViewModelList().get(0).getDocumentNumber());
+        assertEquals("2", viewModel.getFilteredMovementItemViewModelList().get(1).getDocumentNumber());
+        assertEquals("3", viewModel.getFilteredMovementItemViewModelList().get(2).getDocumentNumber());
+        assertEquals(viewModel.getAllMovementItemViewModelList(), viewModel.getFilteredMovementItemViewModelList());
     }
 
     @Test
-    public void shouldFilter() throws Exception {
-        LMISTestApp.getInstance().setCurrentTimeMillis(DateUtil.parseString("2017-01-06", DateUtil.DB_DATE_FORMAT).getTime());
-        viewModel.filter(7);
-        assertEquals(1, viewModel.getFilteredMovementItemViewModelList().size());
-        assertEquals("3", viewModel.getFilteredMovementItemViewModelList().get(0).getDocumentNumber());
+    public void shouldShowNoMovementsWhenNoneWereLoadedForTheWindow() throws Exception {
+        viewModel = new StockHistoryViewModel(stockCard, new ArrayList<StockMovementItem>());
 
-        viewModel.filter(365);
-        assertEquals(2, viewModel.getFilteredMovementItemViewModelList().size());
-        assertEquals("2", viewModel.getFilteredMovementItemViewModelList().get(0).getDocumentNumber());
-        assertEquals("3", viewModel.getFilteredMovementItemViewModelList().get(1).getDocumentNumber());
+        assertEquals(0, viewModel.getFilteredMovementItemViewModelList().size());
     }
-}
\ No newline at end of file
+}
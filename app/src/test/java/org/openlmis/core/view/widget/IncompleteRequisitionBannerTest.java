@@ -18,12 +18,15 @@ import org.openlmis.core.utils.Constants;
 import org.robolectric.RuntimeEnvironment;
 
 import roboguice.RoboGuice;
+import rx.Observable;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(LMISTestRunner.class)
@@ -35,6 +38,7 @@ public class IncompleteRequisitionBannerTest {
     @Before
     public void setUp() throws Exception {
         requisitionPeriodService = mock(RequisitionPeriodService.class);
+        when(requisitionPeriodService.isTimelineLoaded(anyString())).thenReturn(true);
         RoboGuice.overrideApplicationInjector(RuntimeEnvironment.application, new Module() {
             @Override
             public void configure(Binder binder) {
@@ -52,6 +56,16 @@ public class IncompleteRequisitionBannerTest {
     }
 
 
+    @Test
+    public void shouldLoadTimelinesInBackgroundInsteadOfQueryingOnMainThread() throws LMISException {
+        when(requisitionPeriodService.isTimelineLoaded(Constants.VIA_PROGRAM_CODE)).thenReturn(false);
+        when(requisitionPeriodService.loadTimelines(Constants.MMIA_PROGRAM_CODE, Constants.VIA_PROGRAM_CODE)).thenReturn(Observable.<Void>never());
+        incompleteRequisitionBanner = new IncompleteRequisitionBanner(LMISTestApp.getContext());
+
+        verify(requisitionPeriodService).loadTimelines(Constants.MMIA_PROGRAM_CODE, Constants.VIA_PROGRAM_CODE);
+        verify(requisitionPeriodService, never()).getIncompletePeriodOffsetMonth(anyString());
+    }
+
     @Test
     public void shouldShowMultipleMissedMmiaAndViaRequisitionBanner() throws LMISException {
         when(requisitionPeriodService.hasMissedPeriod(anyString())).thenReturn(true);
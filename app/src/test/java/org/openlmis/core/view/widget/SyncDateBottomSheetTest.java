@@ -8,6 +8,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.SyncStepSummary;
 import org.openlmis.core.presenter.SyncErrorsPresenter;
 import org.openlmis.core.utils.DateUtil;
 import org.robolectric.RuntimeEnvironment;
@@ -22,6 +23,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.roboguice.shaded.goole.common.collect.Lists.newArrayList;
 
 @RunWith(LMISTestRunner.class)
 public class SyncDateBottomSheetTest {
@@ -104,4 +106,17 @@ public class SyncDateBottomSheetTest {
         assertThat(fragment.ivRnRError.getVisibility(), is(View.VISIBLE));
         assertThat(fragment.ivStockcardError.getVisibility(), is(View.VISIBLE));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldShowSlowestSyncStepsWithNetworkAndDeviceTime() throws Exception {
+        when(presenter.getRecentSyncStepSummaries()).thenReturn(newArrayList(
+                new SyncStepSummary("down.lastMonthStockCards", 4, 1, 12500, 9000, 1024),
+                new SyncStepSummary("up.rnr", 2, 0, 2000, 1500, 10)));
+        fragment.onViewCreated(null, null);
+
+        assertThat(fragment.txSyncPerformance.getVisibility(), is(View.VISIBLE));
+        assertThat(fragment.txSyncPerformance.getText().toString(), equalTo(
+                "down.lastMonthStockCards: 12.5s on average (network 9.0s, device 3.5s), 1 of 4 failed\n"
+                        + "up.rnr: 2.0s on average (network 1.5s, device 0.5s), 0 of 2 failed"));
+    }
+}
@@ -1,5 +1,6 @@
 package org.openlmis.core.view.widget;
 
+import android.database.DataSetObserver;
 import android.view.ViewGroup;
 
 import org.junit.Before;
@@ -7,8 +8,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.openlmis.core.LMISTestApp;
 import org.openlmis.core.LMISTestRunner;
+import org.openlmis.core.model.RnRForm;
+import org.openlmis.core.presenter.VIARequisitionPresenter;
+import org.openlmis.core.view.viewmodel.RequisitionFormItemViewModel;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @RunWith(LMISTestRunner.class)
 public class ViaRequisitionBodyViewTest {
@@ -27,4 +36,44 @@ public class ViaRequisitionBodyViewTest {
         view.setEditable(false);
         assertEquals(view.requisitionFormList.getDescendantFocusability(), ViewGroup.FOCUS_BEFORE_DESCENDANTS);
     }
+
+    @Test
+    public void shouldRefreshProductNameListOnlyWhenRowsCameOrWent() throws Exception {
+        List<RequisitionFormItemViewModel> viewModels = new ArrayList<>();
+        viewModels.add(viewModel("01"));
+        viewModels.add(viewModel("02"));
+        VIARequisitionPresenter presenter = mock(VIARequisitionPresenter.class);
+        when(presenter.getRequisitionFormItemViewModels()).thenReturn(viewModels);
+        view.initUI(presenter);
+
+        final List<String> productListRefreshes = new ArrayList<>();
+        view.requisitionProductList.getAdapter().registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                productListRefreshes.add("all");
+            }
+        });
+        RnRForm rnRForm = new RnRForm();
+        rnRForm.setStatus(RnRForm.STATUS.DRAFT);
+
+        view.refresh(rnRForm);
+        assertEquals(1, productListRefreshes.size());
+
+        viewModels.get(0).setRequestAmount("20");
+        view.refresh(rnRForm);
+        view.refresh(rnRForm);
+        assertEquals(1, productListRefreshes.size());
+
+        viewModels.add(viewModel("03"));
+        view.refresh(rnRForm);
+        assertEquals(2, productListRefreshes.size());
+    }
+
+    private RequisitionFormItemViewModel viewModel(String fmn) {
+        RequisitionFormItemViewModel viewModel = new RequisitionFormItemViewModel();
+        viewModel.setFmn(fmn);
+        viewModel.setProductName("Product " + fmn);
+        viewModel.setRequestAmount("10");
+        return viewModel;
+    }
 }
\ No newline at end of file